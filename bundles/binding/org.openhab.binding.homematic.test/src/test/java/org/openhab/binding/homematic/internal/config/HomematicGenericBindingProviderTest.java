@@ -8,7 +8,14 @@
  */
 package org.openhab.binding.homematic.internal.config;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+
 import org.junit.Test;
+import org.openhab.core.library.items.NumberItem;
 import org.openhab.core.library.items.StringItem;
 import org.openhab.model.item.binding.BindingConfigParseException;
 
@@ -21,4 +28,31 @@ public class HomematicGenericBindingProviderTest {
         provider.processBindingConfiguration("homematic", new StringItem("Test"), "ADMIN:DUMP_UNCONFIGURED_DEVICES");
     }
 
+    @Test
+    public void itemNamesByParameterAddress() throws BindingConfigParseException {
+        HomematicParameterAddress temperature = new HomematicParameterAddress("IEQ0000001", "1", "TEMPERATURE");
+        HomematicParameterAddress humidity = new HomematicParameterAddress("IEQ0000001", "1", "HUMIDITY");
+        provider.processBindingConfiguration("homematic", new StringItem("Admin"), "ADMIN:DUMP_UNCONFIGURED_DEVICES");
+        provider.processBindingConfiguration("homematic", new NumberItem("Temperature"),
+                "{id=IEQ0000001, channel=1, parameter=TEMPERATURE}");
+        provider.processBindingConfiguration("homematic", new NumberItem("Temperature2"),
+                "{id=IEQ0000001, channel=1, parameter=TEMPERATURE}");
+
+        assertEquals(Arrays.asList("Temperature", "Temperature2"), list(provider.getItemNames(temperature)));
+        assertTrue(provider.getItemNames(humidity).isEmpty());
+
+        provider.processBindingConfiguration("homematic", new NumberItem("Temperature2"),
+                "{id=IEQ0000001, channel=1, parameter=HUMIDITY}");
+        assertEquals(Arrays.asList("Temperature"), list(provider.getItemNames(temperature)));
+        assertEquals(Arrays.asList("Temperature2"), list(provider.getItemNames(humidity)));
+
+        provider.removeConfigurations("homematic");
+        assertTrue(provider.getItemNames(temperature).isEmpty());
+        assertTrue(provider.getItemNames(humidity).isEmpty());
+    }
+
+    private static Collection<String> list(Collection<String> itemNames) {
+        return Arrays.asList(itemNames.toArray(new String[itemNames.size()]));
+    }
+
 }
@@ -52,6 +52,13 @@ public class HomematicBindingProviderMock implements HomematicBindingProvider {
         return parameterAddress;
     }
 
+    public Collection<String> getItemNames(HomematicParameterAddress parameterAddress) {
+        if (parameterAddress.equals(this.parameterAddress)) {
+            return itemNames;
+        }
+        return new ArrayList<String>();
+    }
+
     public void setParameterAddress(HomematicParameterAddress parameterAddress) {
         this.parameterAddress = parameterAddress;
     }
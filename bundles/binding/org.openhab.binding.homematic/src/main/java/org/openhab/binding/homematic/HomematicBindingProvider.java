@@ -8,6 +8,8 @@
  */
 package org.openhab.binding.homematic;
 
+import java.util.Collection;
+
 import org.openhab.binding.homematic.internal.config.AdminItem;
 import org.openhab.binding.homematic.internal.config.HomematicParameterAddress;
 import org.openhab.binding.homematic.internal.converter.state.StateConverter;
@@ -27,6 +29,11 @@ public interface HomematicBindingProvider extends BindingProvider {
      */
     HomematicParameterAddress getParameterAddress(String itemName);
 
+    /**
+     * @return the names of the device items which are bound to the given <code>parameterAddress</code>
+     */
+    Collection<String> getItemNames(HomematicParameterAddress parameterAddress);
+
     /**
      * @return the admin item to the given <code>itemName</code>
      */
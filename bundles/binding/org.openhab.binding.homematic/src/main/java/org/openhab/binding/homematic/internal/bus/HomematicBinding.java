@@ -14,6 +14,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Dictionary;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -384,10 +385,9 @@ public class HomematicBinding extends AbstractActiveBinding<HomematicBindingProv
 
     private String getItemNameForParameter(HomematicParameterAddress parameterAddress) {
         for (HomematicBindingProvider provider : providers) {
-            for (String itemName : provider.getItemNames()) {
-                if (parameterAddress.equals(provider.getParameterAddress(itemName))) {
-                    return itemName;
-                }
+            Iterator<String> itemNames = provider.getItemNames(parameterAddress).iterator();
+            if (itemNames.hasNext()) {
+                return itemNames.next();
             }
         }
         return null;
@@ -8,6 +8,7 @@
  */
 package org.openhab.binding.homematic.internal.config;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -18,6 +19,7 @@ import org.openhab.binding.homematic.internal.converter.state.StateConverter;
 import org.openhab.core.binding.BindingConfig;
 import org.openhab.core.items.Item;
 import org.openhab.model.item.binding.AbstractGenericBindingProvider;
+import org.openhab.model.item.binding.BindingConfigIndex;
 import org.openhab.model.item.binding.BindingConfigParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,6 +63,18 @@ public class HomematicGenericBindingProvider extends AbstractGenericBindingProvi
     private static final String PACKAGE_PREFIX_CONVERTERS = "org.openhab.binding.homematic.internal.converter.";
     private Map<String, Item> items = new HashMap<String, Item>();
 
+    /** the device items by their parameter address */
+    private BindingConfigIndex<String> itemNamesByParameterAddress = addIndex(new BindingConfigIndex<String>() {
+        @Override
+        protected String getKey(BindingConfig config) {
+            HomematicBindingConfig homematicConfig = (HomematicBindingConfig) config;
+            if (homematicConfig.admin != null) {
+                return null;
+            }
+            return getParameterAddress(homematicConfig).getAsString();
+        }
+    });
+
     @Override
     public String getBindingType() {
         return "homematic";
@@ -75,6 +89,7 @@ public class HomematicGenericBindingProvider extends AbstractGenericBindingProvi
 
     @Override
     public void processBindingConfiguration(String context, Item item, String bindingConfig) throws BindingConfigParseException {
+        super.processBindingConfiguration(context, item, bindingConfig);
         HomematicBindingConfig config = new HomematicBindingConfig();
         BindingConfigParser parser = new BindingConfigParser();
         parser.parse(bindingConfig, config);
@@ -104,9 +119,18 @@ public class HomematicGenericBindingProvider extends AbstractGenericBindingProvi
         if (config == null) {
             return null;
         }
+        return getParameterAddress(config);
+    }
+
+    private static HomematicParameterAddress getParameterAddress(HomematicBindingConfig config) {
         return new HomematicParameterAddress(config.id, config.channel, config.parameter);
     }
 
+    @Override
+    public Collection<String> getItemNames(HomematicParameterAddress parameterAddress) {
+        return itemNamesByParameterAddress.getItemNames(parameterAddress.getAsString());
+    }
+
     @Override
     public AdminItem getAdminItem(String itemName) {
         HomematicBindingConfig config = (HomematicBindingConfig) bindingConfigs.get(itemName);
@@ -14,6 +14,7 @@ import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
@@ -171,6 +172,36 @@ public class KNXGenericBindingProviderTest {
 		assertEquals(false, provider.providesBindingFor("someotheritem"));
 	}
 
+	@Test
+	public void testListeningItemNames() throws BindingConfigParseException, KNXFormatException {
+		
+		provider.processBindingConfiguration("text", item1, "<4/2/10+0/2/10, 5.005:4/2/11+0/2/11");
+		provider.processBindingConfiguration("text", item2, "0/2/10");
+
+		// method under Test
+		assertEquals(Arrays.asList("item1", "item2"), toList(provider.getListeningItemNames(new GroupAddress("0/2/10"))));
+		assertEquals(Arrays.asList("item1"), toList(provider.getListeningItemNames(new GroupAddress("4/2/11"))));
+		assertEquals(new GroupAddress("4/2/11"), 
+				provider.getDatapoints("item1", new GroupAddress("0/2/11")).iterator().next().getMainAddress());
+		assertEquals(false, provider.getDatapoints("item2", new GroupAddress("0/2/11")).iterator().hasNext());
+		
+		// a changed binding config replaces the previous one
+		provider.processBindingConfiguration("text", item1, "4/2/12");
+		assertEquals(Arrays.asList("item2"), toList(provider.getListeningItemNames(new GroupAddress("0/2/10"))));
+		assertEquals(Arrays.asList("item1"), toList(provider.getListeningItemNames(new GroupAddress("4/2/12"))));
+		
+		provider.removeConfigurations("text");
+		assertEquals(false, provider.getListeningItemNames(new GroupAddress("0/2/10")).iterator().hasNext());
+		assertEquals(false, provider.getListeningItemNames(new GroupAddress("4/2/12")).iterator().hasNext());
+	}
+	
+	private static List<String> toList(Iterable<String> iterable) {
+		List<String> list = new ArrayList<String>();
+		for (String element : iterable) {
+			list.add(element);
+		}
+		return list;
+	}
 
 	private class TestItem extends GenericItem {
 
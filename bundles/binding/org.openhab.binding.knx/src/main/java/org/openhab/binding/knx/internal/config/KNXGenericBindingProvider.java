@@ -8,9 +8,16 @@
  */
 package org.openhab.binding.knx.internal.config;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.openhab.binding.knx.config.KNXBindingProvider;
 import org.openhab.binding.knx.internal.dpt.KNXCoreTypeMapper;
@@ -79,6 +86,14 @@ public class KNXGenericBindingProvider extends AbstractGenericBindingProvider im
 
 	/** the binding type to register for as a binding config reader */
 	public static final String KNX_BINDING_TYPE = "knx";
+
+	/**
+	 * indexes the binding config items by all their group addresses, so that the items for
+	 * a received telegram can be found without going through all binding configs. It is
+	 * only changed while holding the lock of {@link #bindingConfigs}, but read without any
+	 * locking.
+	 */
+	private Map<GroupAddress, List<KNXBindingConfigItem>> configItemsByGA = new ConcurrentHashMap<GroupAddress, List<KNXBindingConfigItem>>();
 	
 	/**
 	 * {@inheritDoc}
@@ -103,39 +118,83 @@ public class KNXGenericBindingProvider extends AbstractGenericBindingProvider im
 
 		super.processBindingConfiguration(context, item, bindingConfig);
 		
-		addBindingConfig(item, parseBindingConfigString(item, bindingConfig));
+		KNXBindingConfig config = parseBindingConfigString(item, bindingConfig);
+		synchronized(bindingConfigs) {
+			removeFromIndex(bindingConfigs.get(item.getName()));
+			addToIndex(config);
+		}
+		addBindingConfig(item, config);
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
-	@SuppressWarnings("unchecked")
-	public Iterable<Datapoint> getDatapoints(final String itemName, final GroupAddress groupAddress) {
-		synchronized(bindingConfigs) {
-			try {
-				Iterable<KNXBindingConfig> configList = Iterables.filter(Iterables.concat(bindingConfigs.values()), KNXBindingConfig.class);
-				Iterable<KNXBindingConfigItem> configItemList = Iterables.filter(Iterables.concat(configList), KNXBindingConfigItem.class);
-				
-				Iterable<KNXBindingConfigItem> bindingConfigs = Iterables.filter(configItemList,
-						new Predicate<KNXBindingConfigItem>() {
-							public boolean apply(KNXBindingConfigItem input) {
-								return input.itemName.equals(itemName) && input.allDataPoints.contains(groupAddress);
-							}
-						});
-				
-				Iterable<Datapoint> datapoints = Iterables.transform(bindingConfigs, 
-					new Function<KNXBindingConfigItem, Datapoint>() {
-						public Datapoint apply(KNXBindingConfigItem configItem) {
-							return configItem.mainDataPoint;
+	@Override
+	public void removeConfigurations(String context) {
+		Set<Item> items = contextMap.get(context);
+		if(items!=null) {
+			synchronized(bindingConfigs) {
+				for(Item item : items) {
+					removeFromIndex(bindingConfigs.get(item.getName()));
+				}
+			}
+		}
+		super.removeConfigurations(context);
+	}
+
+	private void addToIndex(KNXBindingConfig config) {
+		for (KNXBindingConfigItem configItem : config) {
+			for (Object datapoint : configItem.allDataPoints.getDatapoints()) {
+				GroupAddress groupAddress = ((Datapoint) datapoint).getMainAddress();
+				List<KNXBindingConfigItem> configItems = configItemsByGA.get(groupAddress);
+				if(configItems==null) {
+					configItems = new CopyOnWriteArrayList<KNXBindingConfigItem>();
+					configItemsByGA.put(groupAddress, configItems);
+				}
+				configItems.add(configItem);
+			}
+		}
+	}
+
+	private void removeFromIndex(BindingConfig config) {
+		if(config instanceof KNXBindingConfig) {
+			for (KNXBindingConfigItem configItem : (KNXBindingConfig) config) {
+				for (Object datapoint : configItem.allDataPoints.getDatapoints()) {
+					GroupAddress groupAddress = ((Datapoint) datapoint).getMainAddress();
+					List<KNXBindingConfigItem> configItems = configItemsByGA.get(groupAddress);
+					if(configItems!=null) {
+						configItems.remove(configItem);
+						if(configItems.isEmpty()) {
+							configItemsByGA.remove(groupAddress);
 						}
-					});
-				
-				return datapoints;
+					}
+				}
 			}
-			catch(NoSuchElementException e) {
-				return null;
+		}
+	}
+
+	/**
+	 * @return the binding config items which contain the given group address
+	 */
+	private List<KNXBindingConfigItem> getConfigItems(GroupAddress groupAddress) {
+		List<KNXBindingConfigItem> configItems = configItemsByGA.get(groupAddress);
+		if(configItems==null) {
+			return Collections.emptyList();
+		}
+		return configItems;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Iterable<Datapoint> getDatapoints(final String itemName, final GroupAddress groupAddress) {
+		List<Datapoint> datapoints = new ArrayList<Datapoint>();
+		for (KNXBindingConfigItem configItem : getConfigItems(groupAddress)) {
+			if (configItem.itemName.equals(itemName)) {
+				datapoints.add(configItem.mainDataPoint);
 			}
 		}
+		return datapoints;
 	}
 
 	/**
@@ -180,54 +239,26 @@ public class KNXGenericBindingProvider extends AbstractGenericBindingProvider im
 	/**
 	 * {@inheritDoc}
 	 */
-	@SuppressWarnings("unchecked")
 	public Iterable<String> getListeningItemNames(final GroupAddress groupAddress) {
-		synchronized(bindingConfigs) {
-			Iterable<KNXBindingConfig> configList = Iterables.filter(Iterables.concat(bindingConfigs.values()), KNXBindingConfig.class);
-			Iterable<KNXBindingConfigItem> configItemList = Iterables.filter(Iterables.concat(configList), KNXBindingConfigItem.class);
-			Iterable<KNXBindingConfigItem> filteredBindingConfigs = Iterables.filter(configItemList,
-					new Predicate<KNXBindingConfigItem>() {
-						public boolean apply(KNXBindingConfigItem input) {
-							if(input==null) {
-								return false;
-							}
-							return input.allDataPoints.contains(groupAddress);
-						}
-					});
-			return Iterables.transform(filteredBindingConfigs, new Function<KNXBindingConfigItem, String>() {
-				public String apply(KNXBindingConfigItem from) {
-					if(from==null) {
-						return null;
-					}
-					return from.itemName;
-				}
-			});
+		List<String> itemNames = new ArrayList<String>();
+		for (KNXBindingConfigItem configItem : getConfigItems(groupAddress)) {
+			itemNames.add(configItem.itemName);
 		}
+		return itemNames;
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	public boolean isCommandGA(final GroupAddress groupAddress) {
-		synchronized(bindingConfigs) {
-			for (BindingConfig config : bindingConfigs.values()) {
-				KNXBindingConfig knxConfig = (KNXBindingConfig) config;
-				for (KNXBindingConfigItem configItem : knxConfig) {
-					if (configItem.allDataPoints.contains(groupAddress)) {
-						if(configItem.mainDataPoint instanceof CommandDP) {
-							if(configItem.mainDataPoint.getMainAddress().equals(groupAddress)) {
-								// the first GA in a CommandDP is always a command GA
-								return true;
-							} else {
-								return false;
-							}
-						} else {
-							// it is a StateDP, so the GA cannot be a command GA
-							return false;
-						}
-					}
-				}
+		Iterator<KNXBindingConfigItem> it = getConfigItems(groupAddress).iterator();
+		if (it.hasNext()) {
+			KNXBindingConfigItem configItem = it.next();
+			if(configItem.mainDataPoint instanceof CommandDP) {
+				// the first GA in a CommandDP is always a command GA
+				return configItem.mainDataPoint.getMainAddress().equals(groupAddress);
 			}
+			// it is a StateDP, so the GA cannot be a command GA
 		}
 		return false;
 	}
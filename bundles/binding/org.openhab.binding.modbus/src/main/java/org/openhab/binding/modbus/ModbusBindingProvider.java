@@ -8,6 +8,8 @@
  */
 package org.openhab.binding.modbus;
 
+import java.util.Collection;
+
 import org.openhab.binding.modbus.internal.ModbusGenericBindingProvider.ModbusBindingConfig;
 import org.openhab.core.binding.BindingProvider;
 
@@ -44,4 +46,12 @@ public interface ModbusBindingProvider extends BindingProvider {
 	 */
 	ModbusBindingConfig getConfig(String itemName);
 
+	/**
+	 * Returns the names of the items which are bound to a slave
+	 * 
+	 * @param slaveName slave name as defined in openhab.cfg
+	 * @return names of the items bound to the slave
+	 */
+	Collection<String> getItemNames(String slaveName);
+
 }
@@ -8,6 +8,7 @@
  */
 package org.openhab.binding.modbus.internal;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Dictionary;
 import java.util.Enumeration;
@@ -160,6 +161,19 @@ public class ModbusBinding extends AbstractActiveBinding<ModbusBindingProvider>
 		}
 		return items;
 	}
+
+	/**
+	 * Returns names of the items which are bound to a slave
+	 * @param slaveName name of the slave
+	 * @return list of item names
+	 */
+	public Collection<String> getItemNames(String slaveName) {
+		Collection<String> items = new ArrayList<String>();
+		for (ModbusBindingProvider provider : providers) {
+			items.addAll(provider.getItemNames(slaveName));
+		}
+		return items;
+	}
 	
 	
 	/**
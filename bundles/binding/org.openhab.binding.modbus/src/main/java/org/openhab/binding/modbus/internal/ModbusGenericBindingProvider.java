@@ -8,6 +8,8 @@
  */
 package org.openhab.binding.modbus.internal;
 
+import java.util.Collection;
+
 import org.openhab.binding.modbus.ModbusBindingProvider;
 import org.openhab.core.binding.BindingConfig;
 import org.openhab.core.items.Item;
@@ -19,6 +21,7 @@ import org.openhab.core.library.types.OpenClosedType;
 import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
 import org.openhab.model.item.binding.AbstractGenericBindingProvider;
+import org.openhab.model.item.binding.BindingConfigIndex;
 import org.openhab.model.item.binding.BindingConfigParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +49,14 @@ public class ModbusGenericBindingProvider extends AbstractGenericBindingProvider
 	static final Logger logger = LoggerFactory.getLogger(ModbusGenericBindingProvider.class);
 	static final String BINDING_TYPE = "modbus";
 
+	/** the items by the name of their slave */
+	private BindingConfigIndex<String> itemNamesBySlave = addIndex(new BindingConfigIndex<String>() {
+		@Override
+		protected String getKey(BindingConfig config) {
+			return ((ModbusBindingConfig) config).slaveName;
+		}
+	});
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -109,6 +120,14 @@ public class ModbusGenericBindingProvider extends AbstractGenericBindingProvider
 		return (ModbusBindingConfig) bindingConfigs.get(name);
 	}
 
+	/* (non-Javadoc)
+	 * @see org.openhab.binding.modbus.ModbusBindingProvider#getItemNames(java.lang.String)
+	 */
+	@Override
+	public Collection<String> getItemNames(String slaveName) {
+		return itemNamesBySlave.getItemNames(slaveName);
+	}
+
 	/**
 	 * ModbusBindingConfig stores configuration of the item bound to Modbus
 	 * 
@@ -276,7 +276,7 @@ public abstract class ModbusSlave implements ModbusSlaveConnection {
 					storage = local;
 				}
 			}
-			Collection<String> items = binding.getItemNames();
+			Collection<String> items = binding.getItemNames(name);
 			for (String item : items) {
 				updateItem(binding, item);
 			}
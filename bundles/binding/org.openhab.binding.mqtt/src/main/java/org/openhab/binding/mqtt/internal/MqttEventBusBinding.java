@@ -115,6 +115,14 @@ public class MqttEventBusBinding extends AbstractBinding<MqttBindingProvider> im
 		return itemName;
 	}
 
+	/**
+	 * All items are broadcast, not only the ones which have a binding.
+	 */
+	@Override
+	protected boolean isEventFilterEnabled() {
+		return false;
+	}
+
 	@Override
 	public void receiveUpdate(String itemName, State newState) {
 		if (newState == null || statePublisher == null
@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.library.types;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.items.GroupFunction;
+import org.openhab.core.items.GroupItem;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.items.SwitchItem;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+
+/**
+ * Checks that the incrementally aggregated group states are always the same as
+ * the ones calculated from all members.
+ *
+ * @since 1.5.0
+ */
+public class IncrementalGroupFunctionTest {
+
+	private static final State[] SWITCH_STATES = { OnOffType.ON, OnOffType.OFF, UnDefType.UNDEF };
+
+	private static final State[] NUMBER_STATES = { new DecimalType("1"), new DecimalType("2.5"),
+			new DecimalType("-3.25"), new DecimalType("0.125"), new DecimalType("1E+3"),
+			new DecimalType("7.10"), UnDefType.UNDEF };
+
+	private Random random;
+
+	@Before
+	public void init() {
+		random = new Random(4711);
+	}
+
+	@Test
+	public void testAnd() {
+		checkSwitchGroup(new ArithmeticGroupFunction.And(OnOffType.ON, OnOffType.OFF));
+	}
+
+	@Test
+	public void testOr() {
+		checkSwitchGroup(new ArithmeticGroupFunction.Or(OnOffType.ON, OnOffType.OFF));
+	}
+
+	@Test
+	public void testNAnd() {
+		checkSwitchGroup(new ArithmeticGroupFunction.NAnd(OnOffType.ON, OnOffType.OFF));
+	}
+
+	@Test
+	public void testNOr() {
+		checkSwitchGroup(new ArithmeticGroupFunction.NOr(OnOffType.ON, OnOffType.OFF));
+	}
+
+	@Test
+	public void testSum() {
+		checkNumberGroup(new ArithmeticGroupFunction.Sum());
+	}
+
+	@Test
+	public void testAvg() {
+		checkNumberGroup(new ArithmeticGroupFunction.Avg());
+	}
+
+	@Test
+	public void testScaleOfSumShrinks() {
+		GroupItem group = new GroupItem("group", null, new ArithmeticGroupFunction.Sum());
+		NumberItem first = addNumberItem(group, "first");
+		NumberItem second = addNumberItem(group, "second");
+		first.setState(new DecimalType("1"));
+		second.setState(new DecimalType("0.125"));
+		assertEquals("1.125", ((DecimalType) group.getState()).toBigDecimal().toString());
+		second.setState(new DecimalType("2"));
+		assertEquals("3", ((DecimalType) group.getState()).toBigDecimal().toString());
+	}
+
+	@Test
+	public void testMembershipChanges() {
+		GroupFunction function = new ArithmeticGroupFunction.Sum();
+		GroupItem group = new GroupItem("group", null, function);
+		List<NumberItem> items = new ArrayList<NumberItem>();
+		for (int i = 0; i < 200; i++) {
+			if (items.isEmpty() || random.nextInt(4) == 0) {
+				items.add(addNumberItem(group, "item" + i));
+			} else if (random.nextInt(4) == 0) {
+				NumberItem item = items.remove(random.nextInt(items.size()));
+				group.removeMember(item);
+				item.removeStateChangeListener(group);
+				continue;
+			}
+			items.get(random.nextInt(items.size())).setState(randomState(NUMBER_STATES));
+			assertEquals(function.calculate(group.getMembers()), group.getState());
+		}
+	}
+
+	@Test
+	public void testNestedGroups() {
+		GroupFunction function = new ArithmeticGroupFunction.Avg();
+		GroupItem parent = new GroupItem("parent", null, function);
+		List<NumberItem> items = new ArrayList<NumberItem>();
+		for (int i = 0; i < 3; i++) {
+			GroupItem child = new GroupItem("child" + i, new NumberItem("base" + i), new ArithmeticGroupFunction.Sum());
+			parent.addMember(child);
+			child.addStateChangeListener(parent);
+			for (int j = 0; j < 3; j++) {
+				items.add(addNumberItem(child, "item" + i + j));
+			}
+		}
+		for (int i = 0; i < 200; i++) {
+			items.get(random.nextInt(items.size())).setState(randomState(NUMBER_STATES));
+			assertEquals(function.calculate(parent.getMembers()), parent.getState());
+		}
+	}
+
+	private void checkSwitchGroup(GroupFunction function) {
+		GroupItem group = new GroupItem("group", null, function);
+		List<GenericItem> items = new ArrayList<GenericItem>();
+		for (int i = 0; i < 5; i++) {
+			SwitchItem item = new SwitchItem("item" + i);
+			group.addMember(item);
+			item.addStateChangeListener(group);
+			items.add(item);
+		}
+		checkRandomUpdates(group, function, items, SWITCH_STATES);
+	}
+
+	private void checkNumberGroup(GroupFunction function) {
+		GroupItem group = new GroupItem("group", null, function);
+		List<GenericItem> items = new ArrayList<GenericItem>();
+		for (int i = 0; i < 5; i++) {
+			items.add(addNumberItem(group, "item" + i));
+		}
+		checkRandomUpdates(group, function, items, NUMBER_STATES);
+	}
+
+	private void checkRandomUpdates(GroupItem group, GroupFunction function, List<GenericItem> items, State[] states) {
+		for (int i = 0; i < 500; i++) {
+			items.get(random.nextInt(items.size())).setState(randomState(states));
+			assertEquals(function.calculate(group.getMembers()), group.getState());
+		}
+	}
+
+	private NumberItem addNumberItem(GroupItem group, String name) {
+		NumberItem item = new NumberItem(name);
+		group.addMember(item);
+		item.addStateChangeListener(group);
+		return item;
+	}
+
+	private State randomState(State[] states) {
+		return states[random.nextInt(states.length)];
+	}
+
+}
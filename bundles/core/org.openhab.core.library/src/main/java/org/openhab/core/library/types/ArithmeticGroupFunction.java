@@ -11,8 +11,10 @@ package org.openhab.core.library.types;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.List;
+import java.util.TreeMap;
 
 import org.openhab.core.items.GroupFunction;
+import org.openhab.core.items.IncrementalGroupFunction;
 import org.openhab.core.items.Item;
 import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
@@ -38,7 +40,7 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 	 * @since 0.7.0
 	 *
 	 */
-	static class And implements GroupFunction {
+	static class And implements IncrementalGroupFunction {
 		
 		protected final State activeState;
 		protected final State passiveState;
@@ -67,6 +69,29 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 				return passiveState;
 			}
 		}
+		
+		/**
+		 * Returns the state for the given number of items in the 'activeState'.
+		 * 
+		 * @param activeCount the number of items in the 'activeState'
+		 * @param count the number of all items
+		 * @return the state, the same as {@link #calculate(List)} would return
+		 */
+		protected State getState(int activeCount, int count) {
+			return count>0 && activeCount==count ? activeState : passiveState;
+		}
+		
+		/**
+		 * @{inheritDoc
+		 */
+		public Aggregator<?> createAggregator() {
+			return new CountingAggregator(activeState) {
+				@Override
+				protected State getState(int memberCount) {
+					return And.this.getState(getActiveCount(), memberCount);
+				}
+			};
+		}
 
 		/**
 		 * @{inheritDoc
@@ -113,7 +138,7 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 	 * @since 0.7.0
 	 *
 	 */
-	static class Or implements GroupFunction {
+	static class Or implements IncrementalGroupFunction {
 
 		protected final State activeState;
 		protected final State passiveState;
@@ -140,6 +165,28 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 			return passiveState;
 		}
 		
+		/**
+		 * Returns the state for the given number of items in the 'activeState'.
+		 * 
+		 * @param activeCount the number of items in the 'activeState'
+		 * @return the state, the same as {@link #calculate(List)} would return
+		 */
+		protected State getState(int activeCount) {
+			return activeCount>0 ? activeState : passiveState;
+		}
+		
+		/**
+		 * @{inheritDoc
+		 */
+		public Aggregator<?> createAggregator() {
+			return new CountingAggregator(activeState) {
+				@Override
+				protected State getState(int memberCount) {
+					return Or.this.getState(getActiveCount());
+				}
+			};
+		}
+		
 		/**
 		 * @{inheritDoc
 		 */
@@ -191,6 +238,12 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 			return notResult;
 		}
 		
+		@Override
+		protected State getState(int activeCount, int count) {
+			State result = super.getState(activeCount, count);
+			return result.equals(activeState) ? passiveState : activeState;
+		}
+		
 	}
 
 	/**
@@ -215,6 +268,12 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 			return notResult;
 		}
 		
+		@Override
+		protected State getState(int activeCount) {
+			State result = super.getState(activeCount);
+			return result.equals(activeState) ? passiveState : activeState;
+		}
+		
 	}
 	
 	/**
@@ -224,7 +283,7 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 	 * @since 0.7.0
 	 *
 	 */
-	static class Avg implements GroupFunction {
+	static class Avg implements IncrementalGroupFunction {
 		
 		public Avg() {}
 
@@ -250,6 +309,22 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 			}
 		}
 		
+		/**
+		 * @{inheritDoc
+		 */
+		public Aggregator<?> createAggregator() {
+			return new SumAggregator() {
+				@Override
+				protected State getState(BigDecimal sum, int count) {
+					if(count>0) {
+						return new DecimalType(sum.divide(new BigDecimal(count), RoundingMode.HALF_UP));
+					} else {
+						return UnDefType.UNDEF;
+					}
+				}
+			};
+		}
+		
 		/**
 		 * @{inheritDoc
 		 */
@@ -270,7 +345,7 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 	 * @since 1.1.0
 	 *
 	 */
-	static class Sum implements GroupFunction {
+	static class Sum implements IncrementalGroupFunction {
 		
 		public Sum() {}
 
@@ -290,6 +365,18 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 			return new DecimalType(sum);
 		}
 		
+		/**
+		 * @{inheritDoc
+		 */
+		public Aggregator<?> createAggregator() {
+			return new SumAggregator() {
+				@Override
+				protected State getState(BigDecimal sum, int count) {
+					return new DecimalType(sum);
+				}
+			};
+		}
+		
 		/**
 		 * @{inheritDoc
 		 */
@@ -393,5 +480,113 @@ public interface ArithmeticGroupFunction extends GroupFunction {
 		}
 	}
 	
+	/**
+	 * Counts the members which are in a given state.
+	 * 
+	 * @since 1.5.0
+	 */
+	static abstract class CountingAggregator extends IncrementalGroupFunction.Aggregator<Boolean> {
+		
+		private final State activeState;
+		private int activeCount = 0;
+		
+		CountingAggregator(State activeState) {
+			this.activeState = activeState;
+		}
+		
+		protected int getActiveCount() {
+			return activeCount;
+		}
+
+		@Override
+		protected Boolean getContribution(Item member) {
+			return activeState.equals(member.getState());
+		}
+
+		@Override
+		protected void reset() {
+			activeCount = 0;
+		}
+
+		@Override
+		protected void add(Boolean active) {
+			if(active) activeCount++;
+		}
+
+		@Override
+		protected void remove(Boolean active) {
+			if(active) activeCount--;
+		}
+	}
+	
+	/**
+	 * Keeps the sum and the number of all member states of decimal type. As the
+	 * scale of a sum of {@link BigDecimal}s is the largest scale of its summands,
+	 * the scales of the summands are counted as well, so that the sum has the same
+	 * scale as if it had been calculated from scratch.
+	 * 
+	 * @since 1.5.0
+	 */
+	static abstract class SumAggregator extends IncrementalGroupFunction.Aggregator<BigDecimal> {
+		
+		private BigDecimal sum = BigDecimal.ZERO;
+		private int count = 0;
+		
+		/** the number of summands by scale */
+		private final TreeMap<Integer, Integer> scales = new TreeMap<Integer, Integer>();
+
+		@Override
+		protected BigDecimal getContribution(Item member) {
+			DecimalType itemState = (DecimalType) member.getStateAs(DecimalType.class);
+			return itemState!=null ? itemState.toBigDecimal() : null;
+		}
+
+		@Override
+		protected void reset() {
+			sum = BigDecimal.ZERO;
+			count = 0;
+			scales.clear();
+		}
+
+		@Override
+		protected void add(BigDecimal value) {
+			if(value!=null) {
+				sum = sum.add(value);
+				count++;
+				Integer scaleCount = scales.get(value.scale());
+				scales.put(value.scale(), scaleCount!=null ? scaleCount + 1 : 1);
+			}
+		}
+
+		@Override
+		protected void remove(BigDecimal value) {
+			if(value!=null) {
+				sum = sum.subtract(value);
+				count--;
+				int scaleCount = scales.get(value.scale());
+				if(scaleCount > 1) {
+					scales.put(value.scale(), scaleCount - 1);
+				} else {
+					scales.remove(value.scale());
+				}
+			}
+		}
+
+		@Override
+		protected State getState(int memberCount) {
+			int scale = scales.isEmpty() ? 0 : Math.max(0, scales.lastKey());
+			// the running sum only holds summands of at most this scale, so nothing is rounded
+			return getState(sum.setScale(scale, RoundingMode.UNNECESSARY), count);
+		}
+
+		/**
+		 * Returns the group state for the given sum.
+		 * 
+		 * @param sum the sum of all member states of decimal type
+		 * @param count the number of member states of decimal type
+		 * @return the group state
+		 */
+		protected abstract State getState(BigDecimal sum, int count);
+	}
 	
 }
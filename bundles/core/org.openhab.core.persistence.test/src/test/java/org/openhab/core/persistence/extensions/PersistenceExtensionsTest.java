@@ -10,6 +10,7 @@ package org.openhab.core.persistence.extensions;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 import java.util.List;
 
@@ -21,9 +22,11 @@ import org.openhab.core.items.GenericItem;
 import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.persistence.PersistenceService;
+import org.openhab.core.persistence.test.AggregatingTestPersistenceService;
 import org.openhab.core.persistence.test.TestPersistenceService;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
 
 /**
  * @author Kai Kreuzer
@@ -33,6 +36,7 @@ import org.openhab.core.types.State;
 public class PersistenceExtensionsTest {
 
 	private PersistenceService testPersistenceService = new TestPersistenceService();
+	private AggregatingTestPersistenceService aggregatingPersistenceService = new AggregatingTestPersistenceService();
 	private PersistenceExtensions ext;
 	private GenericItem item;
 	
@@ -40,6 +44,7 @@ public class PersistenceExtensionsTest {
 	public void setUp() {
 		ext = new PersistenceExtensions();
 		ext.addPersistenceService(testPersistenceService);
+		ext.addPersistenceService(aggregatingPersistenceService);
 		item = new GenericItem("Test") {
 			@Override
 			public List<Class<? extends State>> getAcceptedDataTypes() {
@@ -56,6 +61,7 @@ public class PersistenceExtensionsTest {
 	@After
 	public void tearDown() {
 		ext.removePersistenceService(testPersistenceService);	
+		ext.removePersistenceService(aggregatingPersistenceService);
 	}
 	
 	@Test
@@ -103,4 +109,50 @@ public class PersistenceExtensionsTest {
 		DecimalType average = PersistenceExtensions.averageSince(item, new DateMidnight(2003, 1, 1), "test");
 		assertEquals("2100", average.toString());
 	}
+
+	@Test
+	public void testUpdatedAndChangedSince() {
+		assertEquals(true, PersistenceExtensions.updatedSince(item, new DateMidnight(2005, 1, 1), "test"));
+		assertEquals(false, PersistenceExtensions.updatedSince(item, new DateMidnight(2012, 1, 1), "test"));
+		assertEquals(true, PersistenceExtensions.changedSince(item, new DateMidnight(2005, 1, 1), "test"));
+		assertEquals(false, PersistenceExtensions.changedSince(item, new DateMidnight(2012, 1, 1), "test"));
+	}
+
+	@Test
+	public void testAggregatingService() {
+		int[] years = { 1940, 1950, 1980, 2005, 2011, 2012, 2013 };
+		State[] states = { UnDefType.UNDEF, new DecimalType(1), new DecimalType(2000), new DecimalType(5000) };
+		for (State state : states) {
+			item.setState(state);
+			for (int year : years) {
+				DateMidnight since = new DateMidnight(year, 1, 1);
+				assertSameItem(PersistenceExtensions.minimumSince(item, since, "test"),
+						PersistenceExtensions.minimumSince(item, since, "aggregating"));
+				assertSameItem(PersistenceExtensions.maximumSince(item, since, "test"),
+						PersistenceExtensions.maximumSince(item, since, "aggregating"));
+				assertEquals(PersistenceExtensions.averageSince(item, since, "test").doubleValue(),
+						PersistenceExtensions.averageSince(item, since, "aggregating").doubleValue(), 0.000001);
+				assertEquals(PersistenceExtensions.updatedSince(item, since, "test"),
+						PersistenceExtensions.updatedSince(item, since, "aggregating"));
+				assertEquals(PersistenceExtensions.changedSince(item, since, "test"),
+						PersistenceExtensions.changedSince(item, since, "aggregating"));
+			}
+		}
+		// no historic state has been transferred
+		assertEquals(0, aggregatingPersistenceService.rangeQueries);
+		// each average has been determined by a single call
+		assertEquals(states.length * years.length, aggregatingPersistenceService.summaries);
+	}
+
+	private void assertSameItem(HistoricItem expected, HistoricItem actual) {
+		if (expected == null) {
+			assertNull(actual);
+		} else {
+			assertEquals(expected.getState(), actual.getState());
+			if (!expected.getState().equals(item.getState())) {
+				assertEquals(expected.getTimestamp(), actual.getTimestamp());
+			}
+		}
+	}
+
 }
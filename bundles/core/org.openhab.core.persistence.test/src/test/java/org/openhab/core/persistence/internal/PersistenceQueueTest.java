@@ -0,0 +1,231 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.openhab.core.items.GroupFunction;
+import org.openhab.core.items.GroupItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.items.SwitchItem;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.persistence.BatchPersistenceService;
+import org.openhab.core.persistence.PersistenceSample;
+import org.openhab.core.persistence.PersistenceService;
+import org.openhab.core.persistence.internal.PersistenceQueue.OverflowPolicy;
+import org.openhab.core.types.UnDefType;
+
+/**
+ * @since 1.5.0
+ */
+public class PersistenceQueueTest {
+
+	@Test
+	public void testAllRequestsAreStoredInOrder() throws InterruptedException {
+		RecordingService service = new RecordingService();
+		PersistenceQueue queue = new PersistenceQueue(service, 100, OverflowPolicy.BLOCK);
+		queue.start();
+		NumberItem item = new NumberItem("Temperature");
+		for(int i = 0; i < 10; i++) {
+			item.setState(new DecimalType(i));
+			queue.add(item, null);
+		}
+		queue.stop(5000);
+
+		assertEquals(10, service.stored.size());
+		assertEquals(10, queue.getStoredCount());
+		assertEquals(0, queue.getQueueDepth());
+	}
+
+	@Test
+	public void testDropOldest() throws InterruptedException {
+		RecordingService service = new RecordingService();
+		service.blocker = new CountDownLatch(1);
+		PersistenceQueue queue = new PersistenceQueue(service, 2, OverflowPolicy.DROP_OLDEST);
+		queue.start();
+		NumberItem item = new NumberItem("Temperature");
+
+		// the first request is taken by the writer, which blocks
+		queue.add(item, "first");
+		assertTrue(service.started.await(5, TimeUnit.SECONDS));
+		queue.add(item, "a");
+		queue.add(item, "b");
+		queue.add(item, "c");
+		assertEquals(2, queue.getQueueDepth());
+		assertEquals(1, queue.getDroppedCount());
+
+		service.blocker.countDown();
+		queue.stop(5000);
+		assertEquals(3, service.stored.size());
+		assertEquals("first", service.stored.get(0));
+		assertEquals("b", service.stored.get(1));
+		assertEquals("c", service.stored.get(2));
+	}
+
+	@Test
+	public void testCoalesce() throws InterruptedException {
+		RecordingService service = new RecordingService();
+		service.blocker = new CountDownLatch(1);
+		PersistenceQueue queue = new PersistenceQueue(service, 10, OverflowPolicy.COALESCE);
+		queue.start();
+		NumberItem item = new NumberItem("Temperature");
+
+		queue.add(item, "first");
+		assertTrue(service.started.await(5, TimeUnit.SECONDS));
+		for(int i = 0; i < 5; i++) {
+			queue.add(item, null);
+			queue.add(new NumberItem("Humidity"), null);
+		}
+		assertEquals(2, queue.getQueueDepth());
+		assertEquals(8, queue.getCoalescedCount());
+
+		service.blocker.countDown();
+		queue.stop(5000);
+		assertEquals(3, service.stored.size());
+	}
+
+	@Test
+	public void testServiceReceivesQueuedStates() throws InterruptedException {
+		RecordingService service = new RecordingService();
+		service.blocker = new CountDownLatch(1);
+		PersistenceQueue queue = new PersistenceQueue(service, 100, OverflowPolicy.BLOCK);
+		queue.start();
+		NumberItem item = new NumberItem("Temperature");
+		item.getGroupNames().add("Sensors");
+
+		queue.add(item, "first");
+		assertTrue(service.started.await(5, TimeUnit.SECONDS));
+		for(int i = 0; i < 5; i++) {
+			item.setState(new DecimalType(i));
+			queue.add(item, null);
+		}
+		service.blocker.countDown();
+		queue.stop(5000);
+
+		assertEquals(6, service.items.size());
+		for(int i = 0; i < 5; i++) {
+			Item stored = service.items.get(i + 1);
+			assertEquals(new DecimalType(i), stored.getState());
+			assertEquals("Temperature", stored.getName());
+			assertTrue(stored instanceof NumberItem);
+			assertEquals(item.getGroupNames(), stored.getGroupNames());
+		}
+		// the last sample has the current state, so the item itself is stored
+		assertSame(item, service.items.get(5));
+	}
+
+	@Test
+	public void testGroupSnapshotHasItsOwnBaseItem() {
+		SwitchItem baseItem = new SwitchItem("Base");
+		GroupFunction function = new GroupFunction.Equality();
+		GroupItem group = new GroupItem("Lights", baseItem, function);
+		SwitchItem member = new SwitchItem("Light");
+		group.addMember(member);
+		member.setState(OnOffType.ON);
+
+		GroupItem snapshot = (GroupItem) PersistenceQueue.getSnapshot(
+				new PersistenceSample(group, null, OnOffType.OFF, new Date()));
+		assertEquals(OnOffType.OFF, snapshot.getStateAs(OnOffType.class));
+		assertNotSame(baseItem, snapshot.getBaseItem());
+		assertTrue(snapshot.getBaseItem() instanceof SwitchItem);
+		assertSame(function, snapshot.getFunction());
+		assertEquals(group.getMembers(), snapshot.getMembers());
+
+		// the snapshot neither touches the group nor follows its members
+		member.setState(OnOffType.OFF);
+		assertEquals(OnOffType.OFF, group.getState());
+		member.setState(OnOffType.ON);
+		assertEquals(OnOffType.OFF, snapshot.getState());
+		assertEquals(UnDefType.NULL, baseItem.getState());
+	}
+
+	@Test
+	public void testBatchServiceReceivesSnapshots() throws InterruptedException {
+		final List<PersistenceSample> stored = Collections.synchronizedList(new ArrayList<PersistenceSample>());
+		BatchPersistenceService service = new BatchPersistenceService() {
+			public String getName() {
+				return "batch";
+			}
+			public void store(Item item) {
+				throw new UnsupportedOperationException();
+			}
+			public void store(Item item, String alias) {
+				throw new UnsupportedOperationException();
+			}
+			public void store(List<PersistenceSample> samples) {
+				stored.addAll(samples);
+			}
+		};
+		PersistenceQueue queue = new PersistenceQueue(service, 100, OverflowPolicy.BLOCK);
+		queue.start();
+		NumberItem item = new NumberItem("Temperature");
+		for(int i = 0; i < 10; i++) {
+			item.setState(new DecimalType(i));
+			queue.add(item, "alias");
+		}
+		queue.stop(5000);
+
+		assertEquals(10, stored.size());
+		for(int i = 0; i < 10; i++) {
+			assertEquals(new DecimalType(i), stored.get(i).getState());
+			assertEquals("alias", stored.get(i).getAlias());
+		}
+		assertEquals(10, queue.getStoredCount());
+	}
+
+	@Test
+	public void testPolicyNames() {
+		assertEquals(OverflowPolicy.DROP_OLDEST, OverflowPolicy.fromString("drop-oldest"));
+		assertEquals(OverflowPolicy.COALESCE, OverflowPolicy.fromString(" Coalesce "));
+		assertEquals(null, OverflowPolicy.fromString("unknown"));
+	}
+
+	private static class RecordingService implements PersistenceService {
+
+		final List<String> stored = Collections.synchronizedList(new ArrayList<String>());
+		final List<Item> items = Collections.synchronizedList(new ArrayList<Item>());
+		final CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch blocker;
+
+		public String getName() {
+			return "recording";
+		}
+
+		public void store(Item item) {
+			store(item, null);
+		}
+
+		public void store(Item item, String alias) {
+			started.countDown();
+			if(blocker!=null) {
+				try {
+					blocker.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			stored.add(alias!=null ? alias : item.getName());
+			items.add(item);
+		}
+	}
+
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.openhab.core.items.Item;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.BulkQueryablePersistenceService;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.PersistenceService;
+import org.openhab.core.persistence.QueryablePersistenceService;
+import org.openhab.core.types.State;
+
+/**
+ * @since 1.5.0
+ */
+public class StateRestorerTest {
+
+	@Test
+	public void testBulkQueriesAreChunked() {
+		BulkService bulk = new BulkService();
+		Map<String, List<String>> servicesByItem = new LinkedHashMap<String, List<String>>();
+		for(int i = 0; i < 1200; i++) {
+			bulk.states.put("Item" + i, i);
+			servicesByItem.put("Item" + i, Arrays.asList("bulk"));
+		}
+
+		Map<String, HistoricItem> result = createRestorer(4, bulk).restore(servicesByItem);
+		assertEquals(1200, result.size());
+		assertEquals(new DecimalType(1199), result.get("Item1199").getState());
+		assertEquals(3, bulk.queries.get());
+	}
+
+	@Test
+	public void testServicesAreAskedInOrder() {
+		BulkService bulk = new BulkService();
+		bulk.states.put("First", 1);
+		SingleService single = new SingleService(0);
+		single.states.put("First", 2);
+		single.states.put("Second", 3);
+		Map<String, List<String>> servicesByItem = new LinkedHashMap<String, List<String>>();
+		servicesByItem.put("First", Arrays.asList("bulk", "single"));
+		servicesByItem.put("Second", Arrays.asList("bulk", "unknown", "single"));
+		servicesByItem.put("Third", Arrays.asList("bulk", "single"));
+
+		Map<String, HistoricItem> result = createRestorer(4, bulk, single).restore(servicesByItem);
+		assertEquals(2, result.size());
+		assertEquals(new DecimalType(1), result.get("First").getState());
+		assertEquals(new DecimalType(3), result.get("Second").getState());
+		assertEquals(2, single.queries.get());
+	}
+
+	@Test
+	public void testSingleQueriesRunConcurrently() {
+		SingleService single = new SingleService(20);
+		Map<String, List<String>> servicesByItem = new LinkedHashMap<String, List<String>>();
+		for(int i = 0; i < 20; i++) {
+			single.states.put("Item" + i, i);
+			servicesByItem.put("Item" + i, Arrays.asList("single"));
+		}
+
+		Map<String, HistoricItem> result = createRestorer(4, single).restore(servicesByItem);
+		assertEquals(20, result.size());
+		assertEquals(20, single.queries.get());
+		assertTrue(single.maxConcurrency > 1);
+		assertTrue(single.maxConcurrency <= 4);
+	}
+
+	@Test
+	public void testFailingQueriesAreSkipped() {
+		SingleService single = new SingleService(0);
+		single.states.put("Item", 1);
+		single.failing = "Failing";
+		Map<String, List<String>> servicesByItem = new LinkedHashMap<String, List<String>>();
+		servicesByItem.put("Failing", Arrays.asList("single"));
+		servicesByItem.put("Item", Arrays.asList("single"));
+
+		Map<String, HistoricItem> result = createRestorer(2, single).restore(servicesByItem);
+		assertEquals(1, result.size());
+		assertEquals(new DecimalType(1), result.get("Item").getState());
+	}
+
+	private StateRestorer createRestorer(int threads, PersistenceService... services) {
+		Map<String, PersistenceService> serviceMap = new HashMap<String, PersistenceService>();
+		for(PersistenceService service : services) {
+			serviceMap.put(service.getName(), service);
+		}
+		return new StateRestorer(serviceMap, threads);
+	}
+
+	private static HistoricItem createHistoricItem(final String name, final int value) {
+		return new HistoricItem() {
+			public Date getTimestamp() {
+				return new Date(0);
+			}
+
+			public State getState() {
+				return new DecimalType(value);
+			}
+
+			public String getName() {
+				return name;
+			}
+		};
+	}
+
+	private static class BulkService implements BulkQueryablePersistenceService {
+
+		final Map<String, Integer> states = new HashMap<String, Integer>();
+		final AtomicInteger queries = new AtomicInteger();
+
+		public String getName() {
+			return "bulk";
+		}
+
+		public void store(Item item) {
+		}
+
+		public void store(Item item, String alias) {
+		}
+
+		public Iterable<HistoricItem> query(FilterCriteria filter) {
+			throw new UnsupportedOperationException();
+		}
+
+		public Map<String, HistoricItem> queryLatest(Collection<String> itemNames) {
+			assertTrue(itemNames.size() <= StateRestorer.CHUNK_SIZE);
+			queries.incrementAndGet();
+			Map<String, HistoricItem> result = new HashMap<String, HistoricItem>();
+			for(String itemName : itemNames) {
+				if(states.containsKey(itemName)) {
+					result.put(itemName, createHistoricItem(itemName, states.get(itemName)));
+				}
+			}
+			return result;
+		}
+
+	}
+
+	private static class SingleService implements QueryablePersistenceService {
+
+		final Map<String, Integer> states = new HashMap<String, Integer>();
+		final AtomicInteger queries = new AtomicInteger();
+		final long delay;
+		String failing;
+
+		private int concurrency = 0;
+		int maxConcurrency = 0;
+
+		SingleService(long delay) {
+			this.delay = delay;
+		}
+
+		public String getName() {
+			return "single";
+		}
+
+		public void store(Item item) {
+		}
+
+		public void store(Item item, String alias) {
+		}
+
+		public Iterable<HistoricItem> query(FilterCriteria filter) {
+			assertEquals(1, filter.getPageSize());
+			queries.incrementAndGet();
+			if(filter.getItemName().equals(failing)) {
+				throw new IllegalStateException("The database is gone");
+			}
+			synchronized(this) {
+				maxConcurrency = Math.max(maxConcurrency, ++concurrency);
+			}
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			synchronized(this) {
+				concurrency--;
+			}
+			Integer state = states.get(filter.getItemName());
+			List<HistoricItem> result = new ArrayList<HistoricItem>();
+			if(state!=null) {
+				result.add(createHistoricItem(filter.getItemName(), state));
+			}
+			return result;
+		}
+
+	}
+
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence.test;
+
+import java.util.Date;
+
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.AggregatingPersistenceService;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Operator;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.NumericSummary;
+import org.openhab.core.types.State;
+
+/**
+ * A persistence service used for unit tests, which has the same entries as the
+ * {@link TestPersistenceService}, but aggregates them without iterating them.
+ * It counts the queries for entries after a begin date, which the aggregations
+ * should make unnecessary.
+ *
+ * @since 1.5.0
+ */
+public class AggregatingTestPersistenceService extends TestPersistenceService implements AggregatingPersistenceService {
+
+	public int rangeQueries = 0;
+
+	public int summaries = 0;
+
+	@Override
+	public String getName() {
+		return "aggregating";
+	}
+
+	@Override
+	public Iterable<HistoricItem> query(FilterCriteria filter) {
+		if (filter.getBeginDate() != null) {
+			rangeQueries++;
+		}
+		return super.query(filter);
+	}
+
+	public boolean canAggregate(FilterCriteria filter, boolean numeric) {
+		return filter.getState() == null || filter.getOperator() == Operator.NEQ;
+	}
+
+	public HistoricItem minimum(FilterCriteria filter) {
+		int[] range = getRange(filter);
+		return range != null ? createItem(range[0]) : null;
+	}
+
+	public HistoricItem maximum(FilterCriteria filter) {
+		int[] range = getRange(filter);
+		return range != null ? createItem(range[1]) : null;
+	}
+
+	public NumericSummary summarize(FilterCriteria filter) {
+		summaries++;
+		int[] range = getRange(filter);
+		if (range == null) {
+			return NumericSummary.EMPTY;
+		}
+		return new NumericSummary(new DecimalType((long) (range[0] + range[1]) * (range[1] - range[0] + 1) / 2),
+				range[1] - range[0] + 1);
+	}
+
+	public boolean exists(FilterCriteria filter) {
+		int[] range = getRange(filter);
+		if (range == null) {
+			return false;
+		}
+		if (filter.getState() == null) {
+			return true;
+		}
+		if (filter.getOperator() != Operator.NEQ) {
+			throw new UnsupportedOperationException();
+		}
+		return range[0] != range[1] || !new DecimalType(range[0]).equals(filter.getState());
+	}
+
+	/**
+	 * Determines the first and the last year of the entries, just like {@link TestPersistenceService#query(FilterCriteria)}.
+	 */
+	@SuppressWarnings("deprecation")
+	private int[] getRange(FilterCriteria filter) {
+		int startValue = 1950;
+		int endValue = 2012;
+
+		if (filter.getBeginDate() != null) startValue = filter.getBeginDate().getYear() + 1900;
+		if (filter.getEndDate() != null) endValue = filter.getEndDate().getYear() + 1900;
+
+		if (endValue <= startValue || startValue < 1950) return null;
+		return new int[] { startValue, endValue };
+	}
+
+	private HistoricItem createItem(final int year) {
+		return new HistoricItem() {
+			@SuppressWarnings("deprecation")
+			public Date getTimestamp() {
+				return new Date(year - 1900, 0, 1);
+			}
+
+			public State getState() {
+				return new DecimalType(year);
+			}
+
+			public String getName() {
+				return "Test";
+			}
+		};
+	}
+
+}
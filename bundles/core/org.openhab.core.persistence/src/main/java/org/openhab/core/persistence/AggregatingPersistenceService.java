@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence;
+
+import org.openhab.core.library.types.DecimalType;
+
+/**
+ * A queryable persistence service which is able to aggregate historic states itself,
+ * so that they do not have to be transferred one by one, e.g. by means of SQL aggregate
+ * functions.
+ * <p>All methods consider the entries which match the item name, the begin and end date
+ * and the state criteria of the given filter, ordering and paging are ignored. The
+ * numeric aggregations only consider entries with a {@link DecimalType} state, just as
+ * {@link #query(FilterCriteria)} would return it.</p>
+ * <p>A service may not be able to aggregate the entries of every filter, e.g. as they
+ * are not stored as numbers. Callers therefore check {@link #canAggregate(FilterCriteria, boolean)}
+ * first and otherwise query and aggregate the entries themselves.</p>
+ *
+ * @since 1.5.0
+ */
+public interface AggregatingPersistenceService extends QueryablePersistenceService {
+
+	/**
+	 * Checks whether the entries of a filter can be aggregated by this service.
+	 *
+	 * @param filter the filter to apply
+	 * @param numeric <code>true</code> for {@link #minimum(FilterCriteria)}, {@link #maximum(FilterCriteria)}
+	 *        and {@link #summarize(FilterCriteria)}, <code>false</code> for {@link #exists(FilterCriteria)}
+	 * @return <code>true</code>, if the aggregating methods can be called with this filter
+	 */
+	boolean canAggregate(FilterCriteria filter, boolean numeric);
+
+	/**
+	 * Returns the entry with the smallest numeric state. If there are several of them,
+	 * the oldest one is returned.
+	 *
+	 * @param filter the filter to apply
+	 * @return the entry or <code>null</code>, if there is no entry with a numeric state
+	 * @throws UnsupportedOperationException if {@link #canAggregate(FilterCriteria, boolean)} does not allow the filter
+	 */
+	HistoricItem minimum(FilterCriteria filter);
+
+	/**
+	 * Returns the entry with the largest numeric state. If there are several of them,
+	 * the oldest one is returned.
+	 *
+	 * @param filter the filter to apply
+	 * @return the entry or <code>null</code>, if there is no entry with a numeric state
+	 * @throws UnsupportedOperationException if {@link #canAggregate(FilterCriteria, boolean)} does not allow the filter
+	 */
+	HistoricItem maximum(FilterCriteria filter);
+
+	/**
+	 * Returns the sum and the number of all numeric states, from which e.g. their
+	 * average can be determined. Both are returned by a single call, so that
+	 * services only have to go through their entries once.
+	 *
+	 * @param filter the filter to apply
+	 * @return the summary, which has a zero sum and count if there is no entry with a numeric state
+	 * @throws UnsupportedOperationException if {@link #canAggregate(FilterCriteria, boolean)} does not allow the filter
+	 */
+	NumericSummary summarize(FilterCriteria filter);
+
+	/**
+	 * Checks whether there is any entry, regardless of its state type.
+	 *
+	 * @param filter the filter to apply
+	 * @return <code>true</code>, if there is at least one entry
+	 * @throws UnsupportedOperationException if {@link #canAggregate(FilterCriteria, boolean)} does not allow the filter
+	 */
+	boolean exists(FilterCriteria filter);
+
+}
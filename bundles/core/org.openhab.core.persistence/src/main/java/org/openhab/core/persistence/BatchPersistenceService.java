@@ -0,0 +1,33 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence;
+
+import java.util.List;
+
+/**
+ * A persistence service which is able to store several samples at once, so
+ * that it can write them with a single (or at least fewer) database operations.
+ * <p>If a {@link PersistenceService} implements this interface, the persistence
+ * manager hands over all queued samples of the service through
+ * {@link #store(List)} instead of calling {@link #store(org.openhab.core.items.Item, String)} for each
+ * of them.</p>
+ * 
+ * @since 1.5.0
+ */
+public interface BatchPersistenceService extends PersistenceService {
+
+	/**
+	 * Stores the given samples. The samples are in the order in which they 
+	 * have been taken and should be persisted with their own timestamp.
+	 * 
+	 * @param samples the samples to persist
+	 */
+	void store(List<PersistenceSample> samples);
+
+}
@@ -0,0 +1,34 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A queryable persistence service which is able to look up the latest entries of many
+ * items at once, e.g. with a single database query instead of one per item.
+ * <p>The persistence manager uses it to restore the states of items on startup. For
+ * services which do not implement this interface, it queries the latest entry of each
+ * item through {@link #query(FilterCriteria)}.</p>
+ *
+ * @since 1.5.0
+ */
+public interface BulkQueryablePersistenceService extends QueryablePersistenceService {
+
+	/**
+	 * Returns the latest entry of each of the given items, just as a query with the item
+	 * name and a page size of 1 would return it.
+	 *
+	 * @param itemNames the names of the items
+	 * @return the latest entries by item name; items without any entry are left out
+	 */
+	Map<String, HistoricItem> queryLatest(Collection<String> itemNames);
+
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import org.openhab.core.library.types.DecimalType;
+
+/**
+ * The sum and the number of the numeric states which an
+ * {@link AggregatingPersistenceService} has aggregated.
+ *
+ * @since 1.5.0
+ */
+public final class NumericSummary {
+
+	/** the summary of no states at all */
+	public static final NumericSummary EMPTY = new NumericSummary(DecimalType.ZERO, 0);
+
+	private final DecimalType sum;
+	private final long count;
+
+	public NumericSummary(DecimalType sum, long count) {
+		this.sum = sum;
+		this.count = count;
+	}
+
+	/**
+	 * @return the sum of the states, zero if there are none
+	 */
+	public DecimalType getSum() {
+		return sum;
+	}
+
+	/**
+	 * @return the number of states
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the average of the states or <code>null</code>, if there are none
+	 */
+	public DecimalType getAverage() {
+		if(count==0) {
+			return null;
+		}
+		return new DecimalType(sum.toBigDecimal().divide(BigDecimal.valueOf(count), MathContext.DECIMAL64));
+	}
+
+	@Override
+	public String toString() {
+		return "sum=" + sum + ", count=" + count;
+	}
+
+}
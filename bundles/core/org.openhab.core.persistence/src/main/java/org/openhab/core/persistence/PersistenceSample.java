@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence;
+
+import java.util.Date;
+
+import org.openhab.core.items.Item;
+import org.openhab.core.types.State;
+
+/**
+ * A snapshot of an item state that is to be persisted. Other than the item
+ * itself, a sample is immutable: its state and timestamp are the ones the
+ * item had when the sample was taken, even if the item state changed since.
+ * 
+ * @since 1.5.0
+ */
+public final class PersistenceSample implements HistoricItem {
+
+	private final Item item;
+	private final String alias;
+	private final State state;
+	private final Date timestamp;
+
+	/**
+	 * Takes a sample of the current state of the given item.
+	 * 
+	 * @param item the item to take the sample of
+	 * @param alias the alias under which the item should be persisted, might be <code>null</code>
+	 */
+	public PersistenceSample(Item item, String alias) {
+		this(item, alias, item.getState(), new Date());
+	}
+
+	public PersistenceSample(Item item, String alias, State state, Date timestamp) {
+		this.item = item;
+		this.alias = alias;
+		this.state = state;
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * returns the item this sample has been taken of. Its state
+	 * might already differ from the state of this sample.
+	 * 
+	 * @return the item of this sample
+	 */
+	public Item getItem() {
+		return item;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getName() {
+		return item.getName();
+	}
+
+	/**
+	 * returns the alias under which the item should be persisted
+	 * 
+	 * @return the alias or <code>null</code>, if there is none
+	 */
+	public String getAlias() {
+		return alias;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Date getTimestamp() {
+		return timestamp;
+	}
+
+	@Override
+	public String toString() {
+		return getName() + (alias!=null ? " (" + alias + ")" : "") + " -> " + state + " @ " + timestamp;
+	}
+
+}
@@ -19,10 +19,13 @@ import java.util.Map;
 import org.joda.time.base.AbstractInstant;
 import org.openhab.core.items.Item;
 import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.AggregatingPersistenceService;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.NumericSummary;
 import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.QueryablePersistenceService;
+import org.openhab.core.persistence.FilterCriteria.Operator;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.types.State;
 import org.osgi.service.cm.ConfigurationException;
@@ -33,6 +36,10 @@ import org.slf4j.LoggerFactory;
 /** 
  * This class provides static methods that can be used in automation rules
  * for using persistence services
+ * <p>
+ * If a service implements {@link AggregatingPersistenceService}, the minimum, maximum,
+ * average and the checks for changes and updates are calculated by the service itself.
+ * Otherwise the historic states are queried and iterated one by one.
  * 
  * @author Thomas.Eichstaedt-Engelen
  * @author Kai Kreuzer
@@ -158,15 +165,27 @@ public class PersistenceExtensions implements ManagedService {
 	 * @return true, if item state had changed
 	 */
 	static public Boolean changedSince(Item item, AbstractInstant timestamp, String serviceName) {
-		Iterable<HistoricItem> result = getAllStatesSince(item, timestamp, serviceName);
-		Iterator<HistoricItem> it = result.iterator();
-		HistoricItem itemThen = historicState(item, timestamp);
+		HistoricItem itemThen = historicState(item, timestamp, serviceName);
+		AggregatingPersistenceService aService = getAggregatingService(serviceName);
+		if(aService!=null) {
+			FilterCriteria filter = createFilterSince(item, timestamp);
+			if(itemThen!=null) {
+				// the state has changed, if there is any state which is different from the one back then
+				filter.setState(itemThen.getState());
+				filter.setOperator(Operator.NEQ);
+			}
+			if(aService.canAggregate(filter, false)) {
+				return aService.exists(filter);
+			}
+		}
 		if(itemThen == null) {
 			// Can't get the state at the start time
 			// If we've got results more recent that this, it must have changed
-			return(it.hasNext());
+			return(getStatesSince(item, timestamp, serviceName, 1).iterator().hasNext());
 		}
 
+		Iterable<HistoricItem> result = getAllStatesSince(item, timestamp, serviceName);
+		Iterator<HistoricItem> it = result.iterator();
 		State state = itemThen.getState();
 		while(it.hasNext()) {
 			HistoricItem hItem = it.next();
@@ -204,7 +223,13 @@ public class PersistenceExtensions implements ManagedService {
 	 * @return true, if item state was updated
 	 */
 	static public Boolean updatedSince(Item item, AbstractInstant timestamp, String serviceName) {
-		Iterable<HistoricItem> result = getAllStatesSince(item, timestamp, serviceName);
+		AggregatingPersistenceService aService = getAggregatingService(serviceName);
+		FilterCriteria filter = createFilterSince(item, timestamp);
+		if(aService!=null && aService.canAggregate(filter, false)) {
+			return aService.exists(filter);
+		}
+		// a single historic state is enough to know
+		Iterable<HistoricItem> result = getStatesSince(item, timestamp, serviceName, 1);
 		if(result.iterator().hasNext()) {
 			return true;
 		} else {
@@ -240,10 +265,19 @@ public class PersistenceExtensions implements ManagedService {
 	 * @return a historic item with the maximum state value since the given point in time
 	 */
 	static public HistoricItem maximumSince(final Item item, AbstractInstant timestamp, String serviceName) {
-		Iterable<HistoricItem> result = getAllStatesSince(item, timestamp, serviceName);
-		Iterator<HistoricItem> it = result.iterator();
 		HistoricItem maximumHistoricItem = null;
 		DecimalType maximum = (DecimalType) item.getStateAs(DecimalType.class);
+		AggregatingPersistenceService aService = getAggregatingService(serviceName);
+		FilterCriteria filter = createFilterSince(item, timestamp);
+		if(aService!=null && aService.canAggregate(filter, true)) {
+			HistoricItem historicItem = aService.maximum(filter);
+			if(historicItem!=null && (maximum==null || ((DecimalType) historicItem.getState()).compareTo(maximum)>0)) {
+				return historicItem;
+			}
+			return maximum!=null ? createCurrentHistoricItem(item, maximum) : null;
+		}
+		Iterable<HistoricItem> result = getAllStatesSince(item, timestamp, serviceName);
+		Iterator<HistoricItem> it = result.iterator();
 		while(it.hasNext()) {
 			HistoricItem historicItem = it.next();
 			State state = historicItem.getState();
@@ -257,21 +291,7 @@ public class PersistenceExtensions implements ManagedService {
 		}
 		if(maximumHistoricItem==null && maximum!=null) {
 			// the maximum state is the current one, so construct a historic item on the fly
-			final DecimalType state = maximum;
-			return new HistoricItem() {
-				
-				public Date getTimestamp() {
-					return Calendar.getInstance().getTime();
-				}
-				
-				public State getState() {
-					return state;
-				}
-				
-				public String getName() {
-					return item.getName();
-				}
-			};
+			return createCurrentHistoricItem(item, maximum);
 		} else {
 			return maximumHistoricItem;
 		}
@@ -305,10 +325,19 @@ public class PersistenceExtensions implements ManagedService {
 	 * @return the historic item with the minimum state value since the given point in time
 	 */
 	static public HistoricItem minimumSince(final Item item, AbstractInstant timestamp, String serviceName) {
-		Iterable<HistoricItem> result = getAllStatesSince(item, timestamp, serviceName);
-		Iterator<HistoricItem> it = result.iterator();
 		HistoricItem minimumHistoricItem = null;
 		DecimalType minimum = (DecimalType) item.getStateAs(DecimalType.class);
+		AggregatingPersistenceService aService = getAggregatingService(serviceName);
+		FilterCriteria filter = createFilterSince(item, timestamp);
+		if(aService!=null && aService.canAggregate(filter, true)) {
+			HistoricItem historicItem = aService.minimum(filter);
+			if(historicItem!=null && (minimum==null || ((DecimalType) historicItem.getState()).compareTo(minimum)<0)) {
+				return historicItem;
+			}
+			return minimum!=null ? createCurrentHistoricItem(item, minimum) : null;
+		}
+		Iterable<HistoricItem> result = getAllStatesSince(item, timestamp, serviceName);
+		Iterator<HistoricItem> it = result.iterator();
 		while(it.hasNext()) {
 			HistoricItem historicItem = it.next();
 			State state = historicItem.getState();
@@ -322,21 +351,7 @@ public class PersistenceExtensions implements ManagedService {
 		}
 		if(minimumHistoricItem==null && minimum!=null) {
 			// the minimal state is the current one, so construct a historic item on the fly
-			final DecimalType state = minimum;
-			return new HistoricItem() {
-				
-				public Date getTimestamp() {
-					return Calendar.getInstance().getTime();
-				}
-				
-				public State getState() {
-					return state;
-				}
-				
-				public String getName() {
-					return item.getName();
-				}
-			};
+			return createCurrentHistoricItem(item, minimum);
 		} else {
 			return minimumHistoricItem;
 		}
@@ -368,14 +383,21 @@ public class PersistenceExtensions implements ManagedService {
 	 * @return the average state value since the given point in time
 	 */
 	static public DecimalType averageSince(Item item, AbstractInstant timestamp, String serviceName) {
-		Iterable<HistoricItem> result = getAllStatesSince(item, timestamp, serviceName);
-		Iterator<HistoricItem> it = result.iterator();
-		
 		DecimalType value = (DecimalType) item.getStateAs(DecimalType.class);
 		if (value == null) {
 			value = DecimalType.ZERO;
 		}
 		
+		AggregatingPersistenceService aService = getAggregatingService(serviceName);
+		FilterCriteria filter = createFilterSince(item, timestamp);
+		if(aService!=null && aService.canAggregate(filter, true)) {
+			NumericSummary summary = aService.summarize(filter);
+			// the current state is part of the average as well
+			return new DecimalType((value.doubleValue() + summary.getSum().doubleValue()) / (summary.getCount() + 1));
+		}
+		
+		Iterable<HistoricItem> result = getAllStatesSince(item, timestamp, serviceName);
+		Iterator<HistoricItem> it = result.iterator();
 		double average = value.doubleValue();
 		int quantity = 1;
 		while(it.hasNext()) {
@@ -392,13 +414,16 @@ public class PersistenceExtensions implements ManagedService {
 	} 
 	
 	static private Iterable<HistoricItem> getAllStatesSince(Item item, AbstractInstant timestamp, String serviceName) {
+		return getStatesSince(item, timestamp, serviceName, Integer.MAX_VALUE);
+	}
+	
+	static private Iterable<HistoricItem> getStatesSince(Item item, AbstractInstant timestamp, String serviceName, int pageSize) {
 		PersistenceService service = services.get(serviceName);
 		if (service instanceof QueryablePersistenceService) {
 			QueryablePersistenceService qService = (QueryablePersistenceService) service;
-			FilterCriteria filter = new FilterCriteria();
-			filter.setBeginDate(timestamp.toDate());
-			filter.setItemName(item.getName());
+			FilterCriteria filter = createFilterSince(item, timestamp);
 			filter.setOrdering(Ordering.ASCENDING);
+			filter.setPageSize(pageSize);
 			return qService.query(filter);
 		} else {
 			logger.warn("There is no queryable persistence service registered with the name '{}'", serviceName);
@@ -406,6 +431,45 @@ public class PersistenceExtensions implements ManagedService {
 		}
 	}
 	
+	static private FilterCriteria createFilterSince(Item item, AbstractInstant timestamp) {
+		FilterCriteria filter = new FilterCriteria();
+		filter.setBeginDate(timestamp.toDate());
+		filter.setItemName(item.getName());
+		return filter;
+	}
+	
+	/**
+	 * Returns the service with the given name, if it is able to aggregate historic states itself.
+	 */
+	static private AggregatingPersistenceService getAggregatingService(String serviceName) {
+		PersistenceService service = services.get(serviceName);
+		if (service instanceof AggregatingPersistenceService) {
+			return (AggregatingPersistenceService) service;
+		} else {
+			return null;
+		}
+	}
+	
+	/**
+	 * Creates a historic item with the current time for a given state of an item.
+	 */
+	static private HistoricItem createCurrentHistoricItem(final Item item, final State state) {
+		return new HistoricItem() {
+			
+			public Date getTimestamp() {
+				return Calendar.getInstance().getTime();
+			}
+			
+			public State getState() {
+				return state;
+			}
+			
+			public String getName() {
+				return item.getName();
+			}
+		};
+	}
+	
 	/**
 	 * Returns <code>true</code>, if a default service is configured and returns <code>false</code> and logs a warning otherwise.
 	 * @return true, if a default service is available
@@ -12,17 +12,23 @@ import static org.quartz.JobBuilder.newJob;
 import static org.quartz.TriggerBuilder.newTrigger;
 
 import java.text.DateFormat;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Dictionary;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.apache.commons.lang.StringUtils;
 import org.eclipse.emf.ecore.EObject;
 import org.openhab.core.events.AbstractEventSubscriber;
 import org.openhab.core.items.GenericItem;
@@ -32,10 +38,9 @@ import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.items.ItemRegistry;
 import org.openhab.core.items.ItemRegistryChangeListener;
 import org.openhab.core.items.StateChangeListener;
-import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.persistence.PersistenceService;
-import org.openhab.core.persistence.QueryablePersistenceService;
+import org.openhab.core.persistence.internal.PersistenceQueue.OverflowPolicy;
 import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
 import org.openhab.model.core.EventType;
@@ -49,6 +54,8 @@ import org.openhab.model.persistence.persistence.PersistenceConfiguration;
 import org.openhab.model.persistence.persistence.PersistenceModel;
 import org.openhab.model.persistence.persistence.Strategy;
 import org.openhab.model.persistence.scoping.GlobalStrategies;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.cm.ManagedService;
 import org.quartz.CronScheduleBuilder;
 import org.quartz.Job;
 import org.quartz.JobDetail;
@@ -64,15 +71,36 @@ import org.slf4j.LoggerFactory;
 /**
  * This class is the central part of the persistence management and delegation. It reads the persistence
  * models, schedules timers and manages the invocation of {@link PersistenceService}s upon events.
+ * <p>
+ * The {@link PersistenceService}s are not invoked directly, but through a {@link PersistenceQueue}
+ * per service, whose capacity and overflow policy can be configured (globally or per service) in
+ * openhab.cfg through <code>persistence-queue:capacity</code> and <code>persistence-queue:policy</code>
+ * resp. <code>persistence-queue:&lt;service&gt;.capacity</code> and <code>persistence-queue:&lt;service&gt;.policy</code>.
+ * </p>
+ * <p>
+ * The states of items with the "restoreOnStartup" strategy are looked up in bulk through a
+ * {@link StateRestorer}, which runs up to <code>persistence-queue:restorethreads</code> queries
+ * concurrently. The restores run one after the other on a background thread, so that binding
+ * the persistence services and the item registry does not wait for the databases.
+ * </p>
  * 
  * @author Kai Kreuzer
  * @since 1.0.0
  *
  */
-public class PersistenceManager extends AbstractEventSubscriber implements ModelRepositoryChangeListener, ItemRegistryChangeListener, StateChangeListener {
+public class PersistenceManager extends AbstractEventSubscriber implements ModelRepositoryChangeListener, ItemRegistryChangeListener, StateChangeListener, ManagedService {
 	
 	private static final Logger logger = LoggerFactory.getLogger(PersistenceManager.class);
 
+	/** the default maximum number of queued store requests per persistence service */
+	private static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+	/** the maximum time to wait for a persistence queue to be drained when it is stopped */
+	private static final long QUEUE_SHUTDOWN_TIMEOUT_MS = 5000;
+
+	/** the default maximum number of concurrent queries when restoring item states */
+	private static final int DEFAULT_RESTORE_THREADS = 4;
+
 	private static PersistenceManager instance;
 	
 	// the scheduler used for timer events
@@ -82,7 +110,7 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 
 	private ItemRegistry itemRegistry;
 
-	/*default */ Map<String, PersistenceService> persistenceServices = new HashMap<String, PersistenceService>();
+	/*default */ Map<String, PersistenceService> persistenceServices = new ConcurrentHashMap<String, PersistenceService>();
 	
 	/** keeps a list of configurations for each persistence service */
 	protected Map<String, List<PersistenceConfiguration>> persistenceConfigurations = new ConcurrentHashMap<String, List<PersistenceConfiguration>>();
@@ -91,6 +119,23 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	protected Map<String, List<Strategy>> defaultStrategies = 
 			Collections.synchronizedMap(new HashMap<String, List<Strategy>>());
 	
+	/** 
+	 * maps item names to the persistence services (and aliases/strategies) they have to be handed over to;
+	 * the map is never modified, but replaced as a whole whenever the models or the items change 
+	 */
+	private volatile Map<String, List<PersistenceRoute>> routingTable = Collections.emptyMap();
+
+	private final Object routingTableLock = new Object();
+	
+	/** keeps the queue of store requests for each persistence service */
+	/*default */ Map<String, PersistenceQueue> persistenceQueues = new ConcurrentHashMap<String, PersistenceQueue>();
+	
+	/** the queue configuration as read from openhab.cfg */
+	private Dictionary<String, ?> queueConfig;
+	
+	/** runs the restores of item states, created when it is needed */
+	private ExecutorService restoreExecutor;
+	
 	
 	public PersistenceManager() {
 		PersistenceManager.instance = this;
@@ -110,6 +155,16 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	}
 	
 	public void deactivate() {
+		synchronized(this) {
+			if(restoreExecutor!=null) {
+				restoreExecutor.shutdownNow();
+				restoreExecutor = null;
+			}
+		}
+		for(PersistenceQueue queue : persistenceQueues.values()) {
+			queue.stop(QUEUE_SHUTDOWN_TIMEOUT_MS);
+		}
+		persistenceQueues.clear();
 	}
 	
 	
@@ -145,6 +200,13 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	public void addPersistenceService(PersistenceService persistenceService) {
 		logger.debug("Initializing {} persistence service.", persistenceService.getName());
 		persistenceServices.put(persistenceService.getName(), persistenceService);
+		PersistenceQueue queue = new PersistenceQueue(persistenceService, 
+				getQueueCapacity(persistenceService.getName()), getQueuePolicy(persistenceService.getName()));
+		queue.start();
+		PersistenceQueue oldQueue = persistenceQueues.put(persistenceService.getName(), queue);
+		if(oldQueue!=null) {
+			oldQueue.stop(QUEUE_SHUTDOWN_TIMEOUT_MS);
+		}
 		stopEventHandling(persistenceService.getName());
 		startEventHandling(persistenceService.getName());
 	}
@@ -152,6 +214,10 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	public void removePersistenceService(PersistenceService persistenceService) {
 		stopEventHandling(persistenceService.getName());
 		persistenceServices.remove(persistenceService.getName());
+		PersistenceQueue queue = persistenceQueues.remove(persistenceService.getName());
+		if(queue!=null) {
+			queue.stop(QUEUE_SHUTDOWN_TIMEOUT_MS);
+		}
 	}
 	
 	
@@ -180,13 +246,16 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 		if(model!=null) {
 			persistenceConfigurations.put(modelName, model.getConfigs());
 			defaultStrategies.put(modelName, model.getDefaults());
+			rebuildRoutingTable();
+			Set<Item> items = new LinkedHashSet<Item>();
 			for(PersistenceConfiguration config : model.getConfigs()) {
 				if(hasStrategy(modelName, config, GlobalStrategies.RESTORE)) {
 					for(Item item : getAllItems(config)) {
-						initialize(item);
+						items.add(item);
 					}
 				}
 			}
+			restore(items);
 			createTimers(modelName);
 		}
 	}
@@ -199,6 +268,7 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	private void stopEventHandling(String modelName) {
 		persistenceConfigurations.remove(modelName);
 		defaultStrategies.remove(modelName);
+		rebuildRoutingTable();
 		removeTimers(modelName);
 	}
 
@@ -217,22 +287,154 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	 * @param onlyChanges true, if it has the change strategy, false otherwise
 	 */
 	private void handleStateEvent(Item item, boolean onlyChanges) {
-		synchronized (persistenceConfigurations) {
-			for(Entry<String, List<PersistenceConfiguration>> entry : persistenceConfigurations.entrySet()) {
-				String serviceName = entry.getKey();
-				if(persistenceServices.containsKey(serviceName)) {				
+		List<PersistenceRoute> routes = routingTable.get(item.getName());
+		if(routes!=null) {
+			for(PersistenceRoute route : routes) {
+				if(onlyChanges ? route.onChange : route.onUpdate) {
+					store(route.serviceName, item, route.alias);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Recomputes the routes of all items from the persistence configurations.
+	 */
+	private void rebuildRoutingTable() {
+		synchronized(routingTableLock) {
+			Map<String, List<PersistenceRoute>> table = new HashMap<String, List<PersistenceRoute>>();
+			if(itemRegistry!=null) {
+				for(Entry<String, List<PersistenceConfiguration>> entry : persistenceConfigurations.entrySet()) {
+					String serviceName = entry.getKey();
 					for(PersistenceConfiguration config : entry.getValue()) {
-						if(hasStrategy(serviceName, config, onlyChanges ? GlobalStrategies.CHANGE : GlobalStrategies.UPDATE)) {
-							if(appliesToItem(config, item)) {
-								persistenceServices.get(serviceName).store(item, config.getAlias());
+						PersistenceRoute route = createRoute(serviceName, config);
+						if(route!=null) {
+							for(Item item : getAllItems(config)) {
+								List<PersistenceRoute> routes = table.get(item.getName());
+								if(routes==null) {
+									routes = new ArrayList<PersistenceRoute>(1);
+									table.put(item.getName(), routes);
+								}
+								routes.add(route);
 							}
 						}
 					}
 				}
 			}
+			routingTable = table;
+			logger.debug("Rebuilt persistence routing table for {} items.", table.size());
+		}
+	}
+
+	/**
+	 * Recomputes the routes of the given items, leaving the routes of all other items untouched.
+	 * 
+	 * @param items the items to update the routes for
+	 */
+	private void updateRoutes(Collection<Item> items) {
+		synchronized(routingTableLock) {
+			Map<String, List<PersistenceRoute>> table = new HashMap<String, List<PersistenceRoute>>(routingTable);
+			for(Item item : items) {
+				List<PersistenceRoute> routes = new ArrayList<PersistenceRoute>(1);
+				for(Entry<String, List<PersistenceConfiguration>> entry : persistenceConfigurations.entrySet()) {
+					String serviceName = entry.getKey();
+					for(PersistenceConfiguration config : entry.getValue()) {
+						PersistenceRoute route = createRoute(serviceName, config);
+						if(route!=null && appliesToItem(config, item)) {
+							routes.add(route);
+						}
+					}
+				}
+				if(routes.isEmpty()) {
+					table.remove(item.getName());
+				} else {
+					table.put(item.getName(), routes);
+				}
+			}
+			routingTable = table;
+		}
+	}
+
+	/**
+	 * Removes the routes of an item that is no longer available. If it is a group,
+	 * the routes of its members are recomputed.
+	 * 
+	 * @param item the removed item
+	 */
+	private void removeRoutes(Item item) {
+		synchronized(routingTableLock) {
+			Map<String, List<PersistenceRoute>> table = new HashMap<String, List<PersistenceRoute>>(routingTable);
+			table.remove(item.getName());
+			routingTable = table;
+			if(item instanceof GroupItem) {
+				updateRoutes(((GroupItem) item).getAllMembers());
+			}
+		}
+	}
+
+	/**
+	 * Creates a route for the given configuration entry, if it has any event based strategy.
+	 * 
+	 * @param serviceName the service the configuration belongs to
+	 * @param config the persistence configuration entry
+	 * @return the route or <code>null</code>, if the configuration only uses cron strategies
+	 */
+	private PersistenceRoute createRoute(String serviceName, PersistenceConfiguration config) {
+		boolean onChange = hasStrategy(serviceName, config, GlobalStrategies.CHANGE);
+		boolean onUpdate = hasStrategy(serviceName, config, GlobalStrategies.UPDATE);
+		boolean onRestore = hasStrategy(serviceName, config, GlobalStrategies.RESTORE);
+		if(onChange || onUpdate || onRestore) {
+			return new PersistenceRoute(serviceName, config, onChange, onUpdate, onRestore);
+		} else {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the given item together with all items whose group membership
+	 * might be affected if the item is added or removed.
+	 */
+	private Collection<Item> getAffectedItems(Item item) {
+		if(item instanceof GroupItem) {
+			Collection<Item> items = new ArrayList<Item>(((GroupItem) item).getAllMembers());
+			items.add(item);
+			return items;
+		} else {
+			return Collections.singletonList(item);
 		}
 	}
 	
+	/**
+	 * Hands the current state of an item over to the queue of the given persistence service.
+	 * If there is no queue for the service, the service is called directly.
+	 * 
+	 * @param serviceName the name of the persistence service to use
+	 * @param item the item to persist
+	 * @param alias the alias under which the item should be persisted, might be <code>null</code>
+	 */
+	/*default */ void store(String serviceName, Item item, String alias) {
+		PersistenceQueue queue = persistenceQueues.get(serviceName);
+		if(queue!=null) {
+			queue.add(item, alias);
+		} else {
+			PersistenceService service = persistenceServices.get(serviceName);
+			if(service!=null) {
+				service.store(item, alias);
+			}
+		}
+	}
+
+	/**
+	 * Returns the queue of store requests for the given persistence service,
+	 * which provides statistics like the queue depth and the store latency.
+	 * 
+	 * @param serviceName the name of the persistence service
+	 * @return the queue or <code>null</code>, if the service is not known
+	 */
+	public PersistenceQueue getPersistenceQueue(String serviceName) {
+		return persistenceQueues.get(serviceName);
+	}
+
 	/**
 	 * Checks if a given persistence configuration entry has a certain strategy for the given service
 	 * 
@@ -242,7 +444,8 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	 * @return true, if it has the given strategy
 	 */
 	protected boolean hasStrategy(String serviceName, PersistenceConfiguration config, Strategy strategy) {
-		if(defaultStrategies.get(serviceName).contains(strategy) && config.getStrategies().isEmpty()) {
+		List<Strategy> defaults = defaultStrategies.get(serviceName);
+		if(defaults!=null && defaults.contains(strategy) && config.getStrategies().isEmpty()) {
 			return true;
 		} else {
 			for(Strategy s : config.getStrategies()) {
@@ -333,12 +536,18 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 	}
 
 	public void allItemsChanged(Collection<String> oldItemNames) {
+		rebuildRoutingTable();
+		restore(itemRegistry.getItems());
 		for(Item item : itemRegistry.getItems()) {
-			itemAdded(item);
+			if (item instanceof GenericItem) {
+				GenericItem genericItem = (GenericItem) item;
+				genericItem.addStateChangeListener(this);
+			}
 		}
 	}
 
 	public void itemAdded(Item item) {
+		updateRoutes(getAffectedItems(item));
 		initialize(item);
 		if (item instanceof GenericItem) {
 			GenericItem genericItem = (GenericItem) item;
@@ -348,48 +557,79 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 
 	/**
 	 * Handles the "restoreOnStartup" strategy for the item.
-	 * If the item state is still undefined when entering this method, all persistence configurations are checked,
-	 * if they have the "restoreOnStartup" strategy configured for the item. If so, the item state will be set
-	 * to its last persisted value.
 	 * 
 	 * @param item the item to restore the state for
+	 * @see #restore(Iterable)
 	 */
 	protected void initialize(Item item) {
-		// get the last persisted state from the persistence service if no state is yet set
-		if(item.getState().equals(UnDefType.NULL) && item instanceof GenericItem) {
-			for(Entry<String, List<PersistenceConfiguration>> entry : persistenceConfigurations.entrySet()) {
-				String serviceName = entry.getKey();
-				for(PersistenceConfiguration config : entry.getValue()) {
-					if(hasStrategy(serviceName, config, GlobalStrategies.RESTORE)) {
-						if(appliesToItem(config, item)) {
-							PersistenceService service = persistenceServices.get(serviceName);
-							if(service instanceof QueryablePersistenceService) {
-								QueryablePersistenceService queryService = (QueryablePersistenceService) service;
-								FilterCriteria filter = new FilterCriteria().setItemName(item.getName()).setPageSize(1);
-								Iterable<HistoricItem> result = queryService.query(filter);
-								Iterator<HistoricItem> it = result.iterator();
-								if(it.hasNext()) {
-									HistoricItem historicItem = it.next();
-									GenericItem genericItem = (GenericItem) item;
-									genericItem.removeStateChangeListener(this);
-									genericItem.setState(historicItem.getState());
-									genericItem.addStateChangeListener(this);
-									logger.debug("Restored item state from '{}' for item '{}' -> '{}'", 
-											new Object[] { DateFormat.getDateTimeInstance().format(historicItem.getTimestamp()), 
-											item.getName(), historicItem.getState().toString() } );
-									return;
-								}
-							} else if(service!=null) {
-								logger.warn("Failed to restore item states as persistence service '{}' can not be queried.", serviceName);
-							}
-						}
+		restore(Collections.singletonList(item));
+	}
+
+	/**
+	 * Handles the "restoreOnStartup" strategy for the given items.
+	 * The states of all items whose state is still undefined are looked up at once in the persistence services
+	 * which have the "restoreOnStartup" strategy configured for them. Each item is set to the last persisted
+	 * state of the first of these services which has one. The lookup runs in the background, this method
+	 * does not wait for it.
+	 * 
+	 * @param items the items to restore the states for
+	 */
+	protected void restore(Iterable<? extends Item> items) {
+		final Map<String, GenericItem> itemsToRestore = new HashMap<String, GenericItem>();
+		final Map<String, List<String>> servicesByItem = new LinkedHashMap<String, List<String>>();
+		for(Item item : items) {
+			// get the last persisted state from the persistence service if no state is yet set
+			List<PersistenceRoute> routes = routingTable.get(item.getName());
+			if(routes!=null && item.getState().equals(UnDefType.NULL) && item instanceof GenericItem) {
+				List<String> serviceNames = new ArrayList<String>(1);
+				for(PersistenceRoute route : routes) {
+					if(route.onRestore && !serviceNames.contains(route.serviceName)) {
+						serviceNames.add(route.serviceName);
 					}
 				}
-			}	
-		}		
+				if(!serviceNames.isEmpty()) {
+					itemsToRestore.put(item.getName(), (GenericItem) item);
+					servicesByItem.put(item.getName(), serviceNames);
+				}
+			}
+		}
+		if(servicesByItem.isEmpty()) {
+			return;
+		}
+
+		final StateRestorer restorer = new StateRestorer(persistenceServices, getRestoreThreads());
+		getRestoreExecutor().execute(new Runnable() {
+			public void run() {
+				setStates(itemsToRestore, restorer.restore(servicesByItem));
+			}
+		});
+	}
+
+	/**
+	 * Sets the restored states of items, unless they have got a state while the restore was running.
+	 * 
+	 * @param items the items by name
+	 * @param states the restored states by item name
+	 */
+	private void setStates(Map<String, GenericItem> items, Map<String, HistoricItem> states) {
+		for(Entry<String, HistoricItem> entry : states.entrySet()) {
+			GenericItem genericItem = items.get(entry.getKey());
+			HistoricItem historicItem = entry.getValue();
+			if(!genericItem.getState().equals(UnDefType.NULL)) {
+				// the item has been updated in the meantime
+				continue;
+			}
+			genericItem.removeStateChangeListener(this);
+			genericItem.setState(historicItem.getState());
+			genericItem.addStateChangeListener(this);
+			logger.debug("Restored item state from '{}' for item '{}' -> '{}'", 
+					new Object[] { DateFormat.getDateTimeInstance().format(historicItem.getTimestamp()), 
+					genericItem.getName(), historicItem.getState().toString() } );
+		}
 	}
 
 	public void itemRemoved(Item item) {
+		removeRoutes(item);
 		if (item instanceof GenericItem) {
 			GenericItem genericItem = (GenericItem) item;
 			genericItem.removeStateChangeListener(this);
@@ -458,6 +698,84 @@ public class PersistenceManager extends AbstractEventSubscriber implements Model
 			logger.warn("Failed to delete cron jobs of group '{}'", persistModelName);
 		}
 	}
-		
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@SuppressWarnings("unchecked")
+	public void updated(Dictionary config) throws ConfigurationException {
+		this.queueConfig = config;
+		if(config!=null) {
+			for(Entry<String, PersistenceQueue> entry : persistenceQueues.entrySet()) {
+				String serviceName = entry.getKey();
+				entry.getValue().configure(getQueueCapacity(serviceName), getQueuePolicy(serviceName));
+			}
+		}
+	}
+
+	private int getQueueCapacity(String serviceName) {
+		String capacity = getQueueProperty(serviceName, "capacity");
+		if(capacity!=null) {
+			try {
+				int value = Integer.parseInt(capacity);
+				if(value > 0) {
+					return value;
+				}
+			} catch (NumberFormatException e) {}
+			logger.warn("Invalid persistence queue capacity '{}' for service '{}', using default.", capacity, serviceName);
+		}
+		return DEFAULT_QUEUE_CAPACITY;
+	}
+
+	private synchronized ExecutorService getRestoreExecutor() {
+		if(restoreExecutor==null) {
+			restoreExecutor = Executors.newSingleThreadExecutor(new StateRestorer.RestoreThreadFactory("Persistence restore"));
+		}
+		return restoreExecutor;
+	}
+
+	private int getRestoreThreads() {
+		String threads = getQueueProperty(null, "restorethreads");
+		if(threads!=null) {
+			try {
+				int value = Integer.parseInt(threads);
+				if(value > 0) {
+					return value;
+				}
+			} catch (NumberFormatException e) {}
+			logger.warn("Invalid number of persistence restore threads '{}', using default.", threads);
+		}
+		return DEFAULT_RESTORE_THREADS;
+	}
+
+	private OverflowPolicy getQueuePolicy(String serviceName) {
+		String policyName = getQueueProperty(serviceName, "policy");
+		if(policyName!=null) {
+			OverflowPolicy policy = OverflowPolicy.fromString(policyName);
+			if(policy!=null) {
+				return policy;
+			}
+			logger.warn("Invalid persistence queue policy '{}' for service '{}', using default.", policyName, serviceName);
+		}
+		return OverflowPolicy.BLOCK;
+	}
+
+	/**
+	 * Returns a queue configuration property, where a service specific value takes precedence
+	 * over the global one.
+	 * 
+	 * @param serviceName the name of the service or <code>null</code> for a global property
+	 */
+	private String getQueueProperty(String serviceName, String property) {
+		Dictionary<String, ?> config = queueConfig;
+		if(config==null) {
+			return null;
+		}
+		Object value = serviceName!=null ? config.get(serviceName + "." + property) : null;
+		if(value==null) {
+			value = config.get(property);
+		}
+		return value!=null && StringUtils.isNotBlank(value.toString()) ? value.toString().trim() : null;
+	}
 
 }
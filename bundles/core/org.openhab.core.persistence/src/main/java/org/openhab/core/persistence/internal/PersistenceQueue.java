@@ -0,0 +1,485 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.items.GroupItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.persistence.BatchPersistenceService;
+import org.openhab.core.persistence.PersistenceSample;
+import org.openhab.core.persistence.PersistenceService;
+import org.openhab.core.types.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded queue of store requests for a single {@link PersistenceService}, which
+ * is processed by a dedicated writer thread. This decouples the (potentially slow)
+ * persistence services from the thread that updated the item state and from each other.
+ * <p>
+ * The item state and timestamp are captured as a {@link PersistenceSample} when the request
+ * is queued. What happens if the queue is full is determined by the {@link OverflowPolicy}.
+ * Services which implement {@link BatchPersistenceService} receive all queued samples at once,
+ * other services receive an item with the queued state (see {@link #getSnapshot(PersistenceSample)}).
+ * </p>
+ *
+ * @since 1.5.0
+ */
+public class PersistenceQueue {
+
+	private static final Logger logger = LoggerFactory.getLogger(PersistenceQueue.class);
+
+	/** the maximum number of samples that are passed to a {@link BatchPersistenceService} at once */
+	private static final int MAX_BATCH_SIZE = 500;
+
+	/** the interval in which queue statistics are logged on debug level */
+	private static final long STATISTICS_INTERVAL_MS = 60000;
+
+	/**
+	 * Determines how {@link PersistenceQueue#add(Item, String)} behaves if the queue is full.
+	 */
+	public enum OverflowPolicy {
+		/** the calling thread waits until there is room in the queue */
+		BLOCK,
+		/** the oldest queued request is discarded to make room for the new one */
+		DROP_OLDEST,
+		/**
+		 * a request for an item/alias that is already queued replaces the state of the queued
+		 * request; if the queue is full nonetheless, the calling thread waits
+		 */
+		COALESCE;
+
+		/**
+		 * Parses a policy name case-insensitively, ignoring dashes.
+		 *
+		 * @param name the name of the policy, e.g. "drop-oldest"
+		 * @return the policy or <code>null</code>, if the name is unknown
+		 */
+		public static OverflowPolicy fromString(String name) {
+			if(name!=null) {
+				String normalized = name.trim().replace('-', '_').toUpperCase();
+				for(OverflowPolicy policy : values()) {
+					if(policy.name().equals(normalized)) {
+						return policy;
+					}
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * A queued store request, which holds a sample of the item state at the time it was queued.
+	 */
+	static class StoreRequest {
+		final String key;
+		final long enqueuedNanos;
+		PersistenceSample sample;
+
+		StoreRequest(PersistenceSample sample) {
+			this.sample = sample;
+			this.key = sample.getAlias()!=null ? sample.getName() + "/" + sample.getAlias() : sample.getName();
+			this.enqueuedNanos = System.nanoTime();
+		}
+	}
+
+	private final PersistenceService service;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+
+	/** the queued requests in the order of their arrival */
+	private final LinkedList<StoreRequest> requests = new LinkedList<StoreRequest>();
+
+	/** the queued requests by item/alias key, only maintained for the COALESCE policy */
+	private final Map<String, StoreRequest> pendingRequests = new HashMap<String, StoreRequest>();
+
+	private int capacity;
+	private OverflowPolicy policy;
+
+	private Thread writer;
+	private volatile boolean running;
+
+	private final AtomicLong storedCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private final AtomicLong coalescedCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+	private final AtomicLong totalLatencyNanos = new AtomicLong();
+	private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+	/** only accessed by the writer thread */
+	private long lastStatisticsLog = System.currentTimeMillis();
+
+	public PersistenceQueue(PersistenceService service, int capacity, OverflowPolicy policy) {
+		this.service = service;
+		this.capacity = capacity;
+		this.policy = policy;
+	}
+
+	/**
+	 * Starts the writer thread of this queue.
+	 */
+	public void start() {
+		running = true;
+		writer = new Thread(new Runnable() {
+			public void run() {
+				processRequests();
+			}
+		}, "Persistence writer '" + service.getName() + "'");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Stops the writer thread after all queued requests have been processed,
+	 * waiting at most the given time for this to happen.
+	 *
+	 * @param timeoutMs the maximum time to wait for the writer to finish
+	 */
+	public void stop(long timeoutMs) {
+		lock.lock();
+		try {
+			running = false;
+			notEmpty.signalAll();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		if(writer!=null) {
+			try {
+				writer.join(timeoutMs);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if(writer.isAlive()) {
+				logger.warn("Persistence writer for service '{}' did not finish in time, {} requests are discarded.",
+					service.getName(), getQueueDepth());
+				writer.interrupt();
+			}
+			writer = null;
+		}
+		logger.debug("Stopped persistence queue: {}", this);
+	}
+
+	/**
+	 * Changes the capacity and the overflow policy of this queue.
+	 *
+	 * @param capacity the maximum number of queued requests
+	 * @param policy the policy to apply when the queue is full
+	 */
+	public void configure(int capacity, OverflowPolicy policy) {
+		lock.lock();
+		try {
+			this.capacity = capacity;
+			if(this.policy!=policy) {
+				pendingRequests.clear();
+				if(policy==OverflowPolicy.COALESCE) {
+					for(StoreRequest request : requests) {
+						pendingRequests.put(request.key, request);
+					}
+				}
+				this.policy = policy;
+			}
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Queues a request to store the current state of the given item.
+	 *
+	 * @param item the item to persist
+	 * @param alias the alias under which the item should be persisted, might be <code>null</code>
+	 */
+	public void add(Item item, String alias) {
+		StoreRequest request = new StoreRequest(new PersistenceSample(item, alias));
+		lock.lock();
+		try {
+			if(policy==OverflowPolicy.COALESCE) {
+				StoreRequest pending = pendingRequests.get(request.key);
+				if(pending!=null) {
+					pending.sample = request.sample;
+					coalescedCount.incrementAndGet();
+					return;
+				}
+			}
+			while(requests.size() >= capacity && running) {
+				if(policy==OverflowPolicy.DROP_OLDEST) {
+					StoreRequest dropped = requests.removeFirst();
+					pendingRequests.remove(dropped.key);
+					if(droppedCount.incrementAndGet() % 1000 == 1) {
+						logger.warn("Persistence queue of service '{}' is full, dropped {} requests so far.",
+							service.getName(), droppedCount.get());
+					}
+				} else {
+					notFull.await();
+				}
+			}
+			if(!running) {
+				logger.debug("Persistence queue of service '{}' is stopped, ignoring item '{}'.", service.getName(), item.getName());
+				return;
+			}
+			requests.addLast(request);
+			if(policy==OverflowPolicy.COALESCE) {
+				pendingRequests.put(request.key, request);
+			}
+			notEmpty.signal();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.warn("Interrupted while waiting to persist item '{}' with service '{}'.", item.getName(), service.getName());
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Takes all currently queued requests from the queue, waiting for at least one
+	 * to become available.
+	 *
+	 * @return the queued requests or an empty list, if the queue has been stopped
+	 * @throws InterruptedException if the writer thread has been interrupted
+	 */
+	private List<StoreRequest> takeRequests() throws InterruptedException {
+		lock.lock();
+		try {
+			while(requests.isEmpty()) {
+				if(!running) {
+					return new ArrayList<StoreRequest>(0);
+				}
+				notEmpty.await(STATISTICS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+				logStatistics();
+			}
+			List<StoreRequest> result = new ArrayList<StoreRequest>(requests);
+			requests.clear();
+			pendingRequests.clear();
+			notFull.signalAll();
+			return result;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void processRequests() {
+		try {
+			while(true) {
+				List<StoreRequest> batch = takeRequests();
+				if(batch.isEmpty()) {
+					break;
+				}
+				if(service instanceof BatchPersistenceService) {
+					for(int i = 0; i < batch.size(); i += MAX_BATCH_SIZE) {
+						storeBatch(batch.subList(i, Math.min(i + MAX_BATCH_SIZE, batch.size())));
+					}
+				} else {
+					for(StoreRequest request : batch) {
+						store(request);
+					}
+				}
+				logStatistics();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void store(StoreRequest request) {
+		PersistenceSample sample = request.sample;
+		try {
+			service.store(getSnapshot(sample), sample.getAlias());
+			storedCount.incrementAndGet();
+		} catch (RuntimeException e) {
+			failedCount.incrementAndGet();
+			logger.error("Persistence service '" + service.getName() + "' failed to store item '"
+					+ sample.getName() + "'.", e);
+		}
+		recordLatency(System.nanoTime() - request.enqueuedNanos);
+	}
+
+	/**
+	 * Returns an item which has the state of the given sample, so that services which
+	 * only accept items store the queued state and not the state the item has when
+	 * the request is processed. If the item state has not changed since, the item itself
+	 * is returned. Otherwise a copy of the item is created, which is not registered
+	 * anywhere and carries the name, group names and the sampled state of the item.
+	 * The copy of a {@link GroupItem} has a copy of its base item (see {@link GroupItemSnapshot}).
+	 * The timestamp of the sample cannot be passed on, these services determine the
+	 * timestamp themselves.
+	 * 
+	 * @param sample the sample to get an item for
+	 * @return an item with the state of the sample
+	 */
+	static Item getSnapshot(PersistenceSample sample) {
+		Item item = sample.getItem();
+		if(sample.getState().equals(item.getState()) || !(item instanceof GenericItem)) {
+			return item;
+		}
+		GenericItem snapshot;
+		try {
+			if(item instanceof GroupItem) {
+				GroupItem group = (GroupItem) item;
+				GenericItem baseItem = group.getBaseItem();
+				snapshot = new GroupItemSnapshot(group, baseItem != null ? newItem(baseItem) : null);
+			} else {
+				snapshot = newItem((GenericItem) item);
+			}
+		} catch (Exception e) {
+			logger.debug("Cannot create a snapshot of item '{}', storing its current state instead: {}",
+					item.getName(), e.getMessage());
+			return item;
+		}
+		snapshot.getGroupNames().addAll(item.getGroupNames());
+		snapshot.setState(sample.getState());
+		return snapshot;
+	}
+
+	private static GenericItem newItem(GenericItem item) throws Exception {
+		return item.getClass().getConstructor(String.class).newInstance(item.getName());
+	}
+
+	/**
+	 * The copy of a {@link GroupItem} with a queued state. It has the function and the
+	 * members of the group, but does not listen to the members, and it has its own base
+	 * item, so that converting its state does not touch the base item of the group.
+	 * Its state is only converted by the base item, as the group function would
+	 * calculate the current state of the members instead of the queued one.
+	 */
+	static class GroupItemSnapshot extends GroupItem {
+
+		GroupItemSnapshot(GroupItem group, GenericItem baseItem) {
+			super(group.getName(), baseItem, group.getFunction());
+			members.addAll(group.getMembers());
+		}
+
+		@Override
+		public State getStateAs(Class<? extends State> typeClass) {
+			if(baseItem!=null) {
+				baseItem.setState(state);
+				State newState = baseItem.getStateAs(typeClass);
+				if(newState!=null) {
+					return newState;
+				}
+			}
+			return typeClass!=null && typeClass.isInstance(state) ? state : null;
+		}
+	}
+
+	private void storeBatch(List<StoreRequest> batch) {
+		List<PersistenceSample> samples = new ArrayList<PersistenceSample>(batch.size());
+		for(StoreRequest request : batch) {
+			samples.add(request.sample);
+		}
+		try {
+			((BatchPersistenceService) service).store(samples);
+			storedCount.addAndGet(samples.size());
+		} catch (RuntimeException e) {
+			failedCount.addAndGet(samples.size());
+			logger.error("Persistence service '" + service.getName() + "' failed to store "
+					+ samples.size() + " samples.", e);
+		}
+		long now = System.nanoTime();
+		for(StoreRequest request : batch) {
+			recordLatency(now - request.enqueuedNanos);
+		}
+	}
+
+	private void recordLatency(long latencyNanos) {
+		totalLatencyNanos.addAndGet(latencyNanos);
+		long max = maxLatencyNanos.get();
+		while(latencyNanos > max && !maxLatencyNanos.compareAndSet(max, latencyNanos)) {
+			max = maxLatencyNanos.get();
+		}
+	}
+
+	private void logStatistics() {
+		long now = System.currentTimeMillis();
+		if(now - lastStatisticsLog >= STATISTICS_INTERVAL_MS) {
+			lastStatisticsLog = now;
+			logger.debug("Persistence queue statistics: {}", this);
+		}
+	}
+
+	/**
+	 * @return the number of requests that are currently waiting to be stored
+	 */
+	public int getQueueDepth() {
+		lock.lock();
+		try {
+			return requests.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of requests that have been handed over to the persistence service
+	 */
+	public long getStoredCount() {
+		return storedCount.get();
+	}
+
+	/**
+	 * @return the number of requests that have been discarded because the queue was full
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * @return the number of requests that have been merged into an already queued request
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	/**
+	 * @return the number of requests for which the persistence service threw an exception
+	 */
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	/**
+	 * @return the average time in milliseconds between queuing a request and having it stored
+	 */
+	public double getAverageLatencyMillis() {
+		long count = storedCount.get() + failedCount.get();
+		return count == 0 ? 0.0 : totalLatencyNanos.get() / 1000000.0 / count;
+	}
+
+	/**
+	 * @return the maximum time in milliseconds between queuing a request and having it stored
+	 */
+	public double getMaxLatencyMillis() {
+		return maxLatencyNanos.get() / 1000000.0;
+	}
+
+	public PersistenceService getService() {
+		return service;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("service=%s, policy=%s, capacity=%d, depth=%d, stored=%d, coalesced=%d, dropped=%d, failed=%d, avgLatency=%.2fms, maxLatency=%.2fms",
+			service.getName(), policy, capacity, getQueueDepth(), getStoredCount(), getCoalescedCount(),
+			getDroppedCount(), getFailedCount(), getAverageLatencyMillis(), getMaxLatencyMillis());
+	}
+
+}
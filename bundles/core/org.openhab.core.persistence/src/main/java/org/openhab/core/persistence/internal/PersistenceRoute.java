@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence.internal;
+
+import org.openhab.model.persistence.persistence.PersistenceConfiguration;
+
+/**
+ * An entry of the routing table of the {@link PersistenceManager}. It states that
+ * an item has to be handed over to a certain persistence service under a certain
+ * alias, and for which of the event based strategies this applies.
+ * <p>
+ * Routes are computed from the persistence models whenever the models or the items
+ * change, so that the strategies and item patterns do not have to be evaluated on
+ * every state update.
+ * </p>
+ * 
+ * @since 1.5.0
+ */
+class PersistenceRoute {
+
+	final String serviceName;
+	final String alias;
+	final boolean onChange;
+	final boolean onUpdate;
+	final boolean onRestore;
+
+	PersistenceRoute(String serviceName, PersistenceConfiguration config, boolean onChange, boolean onUpdate, boolean onRestore) {
+		this.serviceName = serviceName;
+		this.alias = config.getAlias();
+		this.onChange = onChange;
+		this.onUpdate = onUpdate;
+		this.onRestore = onRestore;
+	}
+
+	@Override
+	public String toString() {
+		return serviceName + (alias!=null ? " as '" + alias + "'" : "") 
+				+ (onChange ? " [change]" : "") + (onUpdate ? " [update]" : "") + (onRestore ? " [restore]" : "");
+	}
+
+}
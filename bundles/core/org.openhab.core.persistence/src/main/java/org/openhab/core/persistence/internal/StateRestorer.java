@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.persistence.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openhab.core.persistence.BulkQueryablePersistenceService;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.PersistenceService;
+import org.openhab.core.persistence.QueryablePersistenceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Looks up the latest persisted states of items for the "restoreOnStartup" strategy.
+ * <p>
+ * Each item is looked up in the persistence services it is configured for, in their
+ * order, until one of them has a state. Services which implement
+ * {@link BulkQueryablePersistenceService} are asked for up to {@link #CHUNK_SIZE} items
+ * at once, all others once per item. The queries run concurrently on a limited number
+ * of threads, which only live as long as the restore.
+ * </p>
+ *
+ * @since 1.5.0
+ */
+class StateRestorer {
+
+	private static final Logger logger = LoggerFactory.getLogger(StateRestorer.class);
+
+	/** the maximum number of items which are looked up with a single bulk query */
+	static final int CHUNK_SIZE = 500;
+
+	private final Map<String, PersistenceService> services;
+
+	private final int threads;
+
+	/**
+	 * @param services the available persistence services by name, which may change while
+	 *            the restore runs
+	 * @param threads the maximum number of concurrent queries
+	 */
+	StateRestorer(Map<String, PersistenceService> services, int threads) {
+		this.services = services;
+		this.threads = threads;
+	}
+
+	/**
+	 * Looks up the latest states of the given items.
+	 *
+	 * @param servicesByItem the names of the persistence services to ask for the state of
+	 *            each item, in the order in which they are asked
+	 * @return the latest entries by item name; items without any entry are left out
+	 */
+	Map<String, HistoricItem> restore(Map<String, List<String>> servicesByItem) {
+		long start = System.currentTimeMillis();
+		Map<String, HistoricItem> result = new HashMap<String, HistoricItem>();
+		Map<String, List<String>> pending = new LinkedHashMap<String, List<String>>(servicesByItem);
+		for(int round = 0; !pending.isEmpty() && !Thread.currentThread().isInterrupted(); round++) {
+			// ask the next service of each item which has not been restored yet
+			Map<String, List<String>> itemsByService = new LinkedHashMap<String, List<String>>();
+			for(Iterator<Entry<String, List<String>>> it = pending.entrySet().iterator(); it.hasNext();) {
+				Entry<String, List<String>> entry = it.next();
+				if(round >= entry.getValue().size()) {
+					it.remove();
+					continue;
+				}
+				String serviceName = entry.getValue().get(round);
+				List<String> itemNames = itemsByService.get(serviceName);
+				if(itemNames==null) {
+					itemNames = new ArrayList<String>();
+					itemsByService.put(serviceName, itemNames);
+				}
+				itemNames.add(entry.getKey());
+			}
+			for(Entry<String, HistoricItem> entry : queryLatest(itemsByService).entrySet()) {
+				if(entry.getValue()!=null && pending.remove(entry.getKey())!=null) {
+					result.put(entry.getKey(), entry.getValue());
+				}
+			}
+		}
+		Object[] args = new Object[] { result.size(), servicesByItem.size(), System.currentTimeMillis() - start };
+		if(servicesByItem.size() > 1) {
+			logger.info("Restored the states of {} of {} items in {}ms.", args);
+		} else {
+			logger.debug("Restored the states of {} of {} items in {}ms.", args);
+		}
+		return result;
+	}
+
+	/**
+	 * Runs the queries for the latest entries of the given items.
+	 *
+	 * @param itemsByService the names of the items to look up in each service
+	 * @return the entries which have been found by item name
+	 */
+	private Map<String, HistoricItem> queryLatest(Map<String, List<String>> itemsByService) {
+		List<Callable<Map<String, HistoricItem>>> queries = new ArrayList<Callable<Map<String, HistoricItem>>>();
+		for(Entry<String, List<String>> entry : itemsByService.entrySet()) {
+			PersistenceService service = services.get(entry.getKey());
+			List<String> itemNames = entry.getValue();
+			if(service instanceof BulkQueryablePersistenceService) {
+				for(int i = 0; i < itemNames.size(); i += CHUNK_SIZE) {
+					queries.add(new BulkQuery((BulkQueryablePersistenceService) service,
+							itemNames.subList(i, Math.min(itemNames.size(), i + CHUNK_SIZE))));
+				}
+			} else if(service instanceof QueryablePersistenceService) {
+				for(String itemName : itemNames) {
+					queries.add(new SingleQuery((QueryablePersistenceService) service, itemName));
+				}
+			} else if(service!=null) {
+				logger.warn("Failed to restore item states as persistence service '{}' can not be queried.", entry.getKey());
+			}
+		}
+
+		Map<String, HistoricItem> result = new HashMap<String, HistoricItem>();
+		if(queries.size() <= 1 || threads <= 1) {
+			for(Callable<Map<String, HistoricItem>> query : queries) {
+				try {
+					result.putAll(query.call());
+				} catch (Exception e) {
+					logger.warn("Failed to restore item states: {}", e.toString());
+				}
+			}
+			return result;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, queries.size()), 
+				new RestoreThreadFactory("Persistence restore query"));
+		try {
+			for(Future<Map<String, HistoricItem>> future : executor.invokeAll(queries)) {
+				try {
+					result.putAll(future.get());
+				} catch (ExecutionException e) {
+					logger.warn("Failed to restore item states: {}", e.getCause().toString());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
+		}
+		return result;
+	}
+
+	/**
+	 * Looks up the latest entries of several items in a bulk queryable service.
+	 */
+	private static class BulkQuery implements Callable<Map<String, HistoricItem>> {
+
+		private final BulkQueryablePersistenceService service;
+		private final List<String> itemNames;
+
+		BulkQuery(BulkQueryablePersistenceService service, List<String> itemNames) {
+			this.service = service;
+			this.itemNames = itemNames;
+		}
+
+		public Map<String, HistoricItem> call() {
+			return service.queryLatest(itemNames);
+		}
+
+	}
+
+	/**
+	 * Looks up the latest entry of an item in a queryable service.
+	 */
+	private static class SingleQuery implements Callable<Map<String, HistoricItem>> {
+
+		private final QueryablePersistenceService service;
+		private final String itemName;
+
+		SingleQuery(QueryablePersistenceService service, String itemName) {
+			this.service = service;
+			this.itemName = itemName;
+		}
+
+		public Map<String, HistoricItem> call() {
+			FilterCriteria filter = new FilterCriteria().setItemName(itemName).setPageSize(1);
+			Iterator<HistoricItem> it = service.query(filter).iterator();
+			if(it.hasNext()) {
+				return Collections.singletonMap(itemName, it.next());
+			}
+			return Collections.emptyMap();
+		}
+
+	}
+
+	/**
+	 * Creates numbered daemon threads for restoring item states.
+	 */
+	static class RestoreThreadFactory implements ThreadFactory {
+
+		private final String name;
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		RestoreThreadFactory(String name) {
+			this.name = name;
+		}
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, name + " " + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.binding;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openhab.core.binding.AbstractBindingTest.TestBinding;
+import org.openhab.core.binding.AbstractBindingTest.TestBindingProvider;
+import org.osgi.service.event.Event;
+
+/**
+ * Measures the cost of delivering an event to a growing number of bindings,
+ * the way EventAdmin does it: every binding gets every event, but only one
+ * of them binds the item. Bindings which filter events by the index of their
+ * bound items are compared to bindings which parse every event and ask their
+ * providers, the way all bindings did before the index.
+ * <p>
+ * This is not a unit test, run it as Java application.
+ *
+ * @since 1.5.0
+ */
+public class AbstractBindingBenchmark {
+
+	private static final int EVENTS = 200000;
+
+	private static final int ITEMS_PER_BINDING = 20;
+
+	private static final int[] BINDING_COUNTS = { 1, 10, 40, 100 };
+
+	public static void main(String[] args) {
+		Event[] events = new Event[ITEMS_PER_BINDING];
+		for (int i = 0; i < events.length; i++) {
+			events[i] = AbstractBindingTest.createCommandEvent("item0_" + i);
+		}
+		System.out.println("Dispatching " + EVENTS + " command events");
+		System.out.println(String.format("%-12s %8s %16s", "dispatch", "bindings", "ns/event"));
+		// the first rounds warm up the JIT compiler
+		for (int i = 0; i < 3; i++) {
+			for (int bindingCount : BINDING_COUNTS) {
+				run("unfiltered", createBindings(bindingCount, false), events);
+				run("filtered", createBindings(bindingCount, true), events);
+			}
+		}
+	}
+
+	private static List<TestBinding> createBindings(int bindingCount, boolean filtered) {
+		List<TestBinding> bindings = new ArrayList<TestBinding>();
+		for (int i = 0; i < bindingCount; i++) {
+			TestBindingProvider provider = new TestBindingProvider();
+			for (int j = 0; j < ITEMS_PER_BINDING; j++) {
+				provider.bind("item" + i + "_" + j);
+			}
+			TestBinding binding = filtered ? new TestBinding() : new UnfilteredBinding();
+			binding.addBindingProvider(provider);
+			bindings.add(binding);
+		}
+		return bindings;
+	}
+
+	private static void run(String name, List<TestBinding> bindings, Event[] events) {
+		long begin = System.nanoTime();
+		for (int i = 0; i < EVENTS; i++) {
+			Event event = events[i % events.length];
+			for (TestBinding binding : bindings) {
+				binding.handleEvent(event);
+			}
+		}
+		long nanos = System.nanoTime() - begin;
+		if (bindings.get(0).commands != EVENTS) {
+			throw new IllegalStateException("The bound binding received " + bindings.get(0).commands + " commands");
+		}
+		System.out.println(String.format("%-12s %8d %16d", name, bindings.size(), nanos / EVENTS));
+	}
+
+	static class UnfilteredBinding extends TestBinding {
+		@Override
+		protected boolean isEventFilterEnabled() {
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.binding;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+import org.osgi.service.event.Event;
+
+/**
+ * Tests that {@link AbstractBinding} only handles events for items that are
+ * bound by one of its providers.
+ *
+ * @since 1.5.0
+ */
+public class AbstractBindingTest {
+
+	private static final Command COMMAND = new Command() {
+		public String format(String pattern) {
+			return "COMMAND";
+		}
+	};
+
+	private TestBindingProvider provider;
+	private TestBinding binding;
+
+	@Before
+	public void setup() {
+		provider = new TestBindingProvider();
+		provider.bind("bound");
+		binding = new TestBinding();
+		binding.addBindingProvider(provider);
+	}
+
+	@Test
+	public void testEventsForBoundItemsAreHandled() {
+		binding.handleEvent(createCommandEvent("bound"));
+		binding.handleEvent(createUpdateEvent("bound"));
+		assertEquals(1, binding.commands);
+		assertEquals(1, binding.updates);
+	}
+
+	@Test
+	public void testEventsForUnboundItemsAreDiscarded() {
+		binding.handleEvent(createCommandEvent("unbound"));
+		binding.handleEvent(createUpdateEvent("unbound"));
+		assertEquals(0, binding.commands);
+		assertEquals(0, binding.updates);
+	}
+
+	@Test
+	public void testIndexFollowsBindingChanges() {
+		provider.bind("added");
+		binding.handleEvent(createCommandEvent("added"));
+		assertEquals(1, binding.commands);
+
+		provider.unbind("added");
+		binding.handleEvent(createCommandEvent("added"));
+		assertEquals(1, binding.commands);
+	}
+
+	@Test
+	public void testIndexFollowsProviders() {
+		TestBindingProvider otherProvider = new TestBindingProvider();
+		otherProvider.bind("other");
+		binding.addBindingProvider(otherProvider);
+		binding.handleEvent(createCommandEvent("other"));
+		assertEquals(1, binding.commands);
+
+		binding.removeBindingProvider(otherProvider);
+		binding.handleEvent(createCommandEvent("other"));
+		binding.handleEvent(createCommandEvent("bound"));
+		assertEquals(2, binding.commands);
+	}
+
+	@Test
+	public void testBindingsWithoutEventFilterGetAllEvents() {
+		AllItemsBinding allItemsBinding = new AllItemsBinding();
+		allItemsBinding.addBindingProvider(provider);
+		allItemsBinding.handleEvent(createCommandEvent("unbound"));
+		assertEquals(1, allItemsBinding.commands);
+	}
+
+	static Event createCommandEvent(String itemName) {
+		Dictionary<String, Object> properties = new Hashtable<String, Object>();
+		properties.put("item", itemName);
+		properties.put("command", COMMAND);
+		return new Event("openhab/command/" + itemName, properties);
+	}
+
+	private static Event createUpdateEvent(String itemName) {
+		Dictionary<String, Object> properties = new Hashtable<String, Object>();
+		properties.put("item", itemName);
+		properties.put("state", UnDefType.UNDEF);
+		return new Event("openhab/update/" + itemName, properties);
+	}
+
+	static class TestBinding extends AbstractBinding<TestBindingProvider> {
+		int commands = 0;
+		int updates = 0;
+
+		@Override
+		protected void internalReceiveCommand(String itemName, Command command) {
+			commands++;
+		}
+
+		@Override
+		protected void internalReceiveUpdate(String itemName, State newState) {
+			updates++;
+		}
+	}
+
+	static class AllItemsBinding extends AbstractBinding<TestBindingProvider> {
+		int commands = 0;
+
+		@Override
+		protected boolean isEventFilterEnabled() {
+			return false;
+		}
+
+		@Override
+		public void receiveCommand(String itemName, Command command) {
+			commands++;
+		}
+	}
+
+	static class TestBindingProvider implements BindingProvider {
+		private Collection<BindingChangeListener> listeners = new CopyOnWriteArraySet<BindingChangeListener>();
+		private Map<String, Boolean> itemNames = new HashMap<String, Boolean>();
+
+		void bind(String itemName) {
+			itemNames.put(itemName, Boolean.TRUE);
+			for (BindingChangeListener listener : listeners) {
+				listener.bindingChanged(this, itemName);
+			}
+		}
+
+		void unbind(String itemName) {
+			itemNames.remove(itemName);
+			for (BindingChangeListener listener : listeners) {
+				listener.bindingChanged(this, itemName);
+			}
+		}
+
+		public void addBindingChangeListener(BindingChangeListener listener) {
+			listeners.add(listener);
+		}
+
+		public void removeBindingChangeListener(BindingChangeListener listener) {
+			listeners.remove(listener);
+		}
+
+		public boolean providesBindingFor(String itemName) {
+			return itemNames.containsKey(itemName);
+		}
+
+		public boolean providesBinding() {
+			return !itemNames.isEmpty();
+		}
+
+		public Collection<String> getItemNames() {
+			return new ArrayList<String>(itemNames.keySet());
+		}
+	}
+
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.internal.events;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openhab.core.internal.events.EventPublisherImplTest.CountingSubscriber;
+import org.openhab.core.types.EventType;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+
+/**
+ * Compares the bytes allocated per update event delivered to a number of
+ * subscribers, between events which carry a decoded item event and events
+ * which every subscriber decodes by splitting the topic, the way it was done
+ * before.
+ * <p>
+ * This is not a unit test, run it as Java application. It needs a VM which
+ * provides per-thread allocation counters (<code>com.sun.management.ThreadMXBean</code>).
+ *
+ * @since 1.5.0
+ */
+public class EventPublisherImplBenchmark {
+
+	private static final int EVENTS = 50000;
+
+	private static final int SUBSCRIBERS = 10;
+
+	private final List<LegacySubscriber> subscribers = new ArrayList<LegacySubscriber>();
+
+	private final EventPublisherImpl eventPublisher = new EventPublisherImpl();
+
+	private final Method allocatedBytesMethod;
+
+	private EventPublisherImplBenchmark(Method allocatedBytesMethod) {
+		this.allocatedBytesMethod = allocatedBytesMethod;
+		for (int i = 0; i < SUBSCRIBERS; i++) {
+			subscribers.add(new LegacySubscriber());
+		}
+		eventPublisher.setEventAdmin(new EventAdmin() {
+			public void postEvent(Event event) {
+				sendEvent(event);
+			}
+
+			public void sendEvent(Event event) {
+				for (int i = 0; i < subscribers.size(); i++) {
+					subscribers.get(i).handleEvent(event);
+				}
+			}
+		});
+	}
+
+	public static void main(String[] args) throws Exception {
+		Method allocatedBytesMethod;
+		try {
+			allocatedBytesMethod = Class.forName("com.sun.management.ThreadMXBean").getMethod(
+					"getThreadAllocatedBytes", long.class);
+		} catch (ClassNotFoundException e) {
+			System.out.println("This VM does not provide per-thread allocation counters");
+			return;
+		}
+		EventPublisherImplBenchmark benchmark = new EventPublisherImplBenchmark(allocatedBytesMethod);
+		System.out.println("Posting " + EVENTS + " update events to " + SUBSCRIBERS + " subscribers");
+		System.out.println(String.format("%-10s %16s", "decoding", "bytes/event"));
+		// the first rounds warm up the JIT compiler
+		for (int i = 0; i < 3; i++) {
+			benchmark.runLegacy();
+			benchmark.runItemEvent();
+		}
+	}
+
+	private void runLegacy() throws Exception {
+		long begin = getAllocatedBytes();
+		for (int i = 0; i < EVENTS; i++) {
+			String itemName = "item" + (i % 100);
+			Event event = EventPublisherImplTest.createLegacyUpdateEvent("openhab" + "/" + EventType.UPDATE + "/"
+					+ itemName, itemName);
+			for (int j = 0; j < SUBSCRIBERS; j++) {
+				subscribers.get(j).handleLegacyEvent(event);
+			}
+		}
+		report("legacy", getAllocatedBytes() - begin);
+	}
+
+	private void runItemEvent() throws Exception {
+		long begin = getAllocatedBytes();
+		for (int i = 0; i < EVENTS; i++) {
+			eventPublisher.postUpdate("item" + (i % 100), UnDefType.UNDEF);
+		}
+		report("item event", getAllocatedBytes() - begin);
+	}
+
+	private long getAllocatedBytes() throws Exception {
+		return (Long) allocatedBytesMethod.invoke(ManagementFactory.getThreadMXBean(), Thread.currentThread().getId());
+	}
+
+	private static void report(String name, long bytes) {
+		System.out.println(String.format("%-10s %16d", name, bytes / EVENTS));
+	}
+
+	private static class LegacySubscriber extends CountingSubscriber {
+
+		/** the way events have been decoded before */
+		void handleLegacyEvent(Event event) {
+			String itemName = (String) event.getProperty("item");
+			String[] topicParts = event.getTopic().split("/");
+			if (!(topicParts.length > 2) || !topicParts[0].equals("openhab")) {
+				return;
+			}
+			if (topicParts[1].equals(EventType.UPDATE.toString())) {
+				State newState = (State) event.getProperty("state");
+				if (newState != null) receiveUpdate(itemName, newState);
+			}
+		}
+	}
+
+}
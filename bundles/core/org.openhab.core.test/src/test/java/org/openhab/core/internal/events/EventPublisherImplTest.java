@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.internal.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.events.AbstractEventSubscriber;
+import org.openhab.core.events.ItemEvent;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.EventType;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventAdmin;
+
+/**
+ * @since 1.5.0
+ */
+public class EventPublisherImplTest {
+
+	private static final Command COMMAND = new Command() {
+		public String format(String pattern) {
+			return "COMMAND";
+		}
+	};
+
+	private List<Event> events;
+	private EventPublisherImpl eventPublisher;
+
+	@Before
+	public void setup() {
+		events = new ArrayList<Event>();
+		eventPublisher = new EventPublisherImpl();
+		eventPublisher.setEventAdmin(new EventAdmin() {
+			public void postEvent(Event event) {
+				events.add(event);
+			}
+
+			public void sendEvent(Event event) {
+				events.add(event);
+			}
+		});
+	}
+
+	@Test
+	public void testUpdateEvent() {
+		eventPublisher.postUpdate("item", UnDefType.UNDEF);
+		Event event = events.get(0);
+		assertEquals("openhab/update/item", event.getTopic());
+		assertEquals("item", event.getProperty("item"));
+		assertEquals(UnDefType.UNDEF, event.getProperty("state"));
+		assertNull(event.getProperty("command"));
+
+		ItemEvent itemEvent = ItemEvent.fromEvent(event);
+		assertSame(event.getProperty(ItemEvent.PROPERTY), itemEvent);
+		assertEquals(EventType.UPDATE, itemEvent.getType());
+		assertEquals("item", itemEvent.getItemName());
+		assertEquals(UnDefType.UNDEF, itemEvent.getState());
+	}
+
+	@Test
+	public void testCommandEvent() {
+		eventPublisher.sendCommand("item", COMMAND);
+		eventPublisher.postCommand("item", COMMAND);
+		assertEquals("openhab/command/item", events.get(0).getTopic());
+		assertSame(events.get(0).getTopic(), events.get(1).getTopic());
+		assertEquals(COMMAND, events.get(1).getProperty("command"));
+
+		ItemEvent itemEvent = ItemEvent.fromEvent(events.get(1));
+		assertEquals(EventType.COMMAND, itemEvent.getType());
+		assertEquals(COMMAND, itemEvent.getCommand());
+	}
+
+	@Test
+	public void testDecodeForeignEvents() {
+		ItemEvent itemEvent = ItemEvent.fromEvent(createLegacyUpdateEvent("openhab/update/item", "item"));
+		assertEquals(EventType.UPDATE, itemEvent.getType());
+		assertEquals("item", itemEvent.getItemName());
+		assertEquals(UnDefType.UNDEF, itemEvent.getState());
+
+		assertNull(ItemEvent.fromEvent(createLegacyUpdateEvent("openhab/update/", "item")));
+		assertNull(ItemEvent.fromEvent(createLegacyUpdateEvent("openhab/update", "item")));
+		assertNull(ItemEvent.fromEvent(createLegacyUpdateEvent("openhabx/update/item", "item")));
+		assertNull(ItemEvent.fromEvent(createLegacyUpdateEvent("other/update/item", "item")));
+		assertNull(ItemEvent.fromEvent(createLegacyUpdateEvent("openhab/updates/item", "item")));
+		assertNull(ItemEvent.fromEvent(createLegacyUpdateEvent("openhab/command/item", "item")));
+	}
+
+	@Test
+	public void testSubscriberReceivesEvents() {
+		CountingSubscriber subscriber = new CountingSubscriber();
+		eventPublisher.postUpdate("item", UnDefType.UNDEF);
+		eventPublisher.postCommand("item", COMMAND);
+		subscriber.handleEvent(events.get(0));
+		subscriber.handleEvent(events.get(1));
+		subscriber.handleEvent(createLegacyUpdateEvent("openhab/update/item", "item"));
+		assertEquals(2, subscriber.updates);
+		assertEquals(1, subscriber.commands);
+	}
+
+	static Event createLegacyUpdateEvent(String topic, String itemName) {
+		Dictionary<String, Object> properties = new Hashtable<String, Object>();
+		properties.put("item", itemName);
+		properties.put("state", UnDefType.UNDEF);
+		return new Event(topic, properties);
+	}
+
+	static class CountingSubscriber extends AbstractEventSubscriber {
+		int updates = 0;
+		int commands = 0;
+
+		@Override
+		public void receiveUpdate(String itemName, State newState) {
+			updates++;
+		}
+
+		@Override
+		public void receiveCommand(String itemName, Command command) {
+			commands++;
+		}
+	}
+
+}
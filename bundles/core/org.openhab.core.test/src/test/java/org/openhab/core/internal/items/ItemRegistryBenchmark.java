@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.internal.items;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Random;
+
+import org.openhab.core.internal.items.ItemRegistryImplTest.TestItem;
+import org.openhab.core.internal.items.ItemRegistryImplTest.TestItemProvider;
+import org.openhab.core.items.Item;
+import org.openhab.core.items.ItemNotFoundException;
+
+/**
+ * Compares the item lookups of the registry with the way it used to do them:
+ * {@link ItemRegistryImpl#getItem(String)} went through all items and matched
+ * the name as a regular expression, {@link ItemRegistryImpl#getItems(String)}
+ * translated the search pattern into a regular expression for every item.
+ * <p>
+ * This is not a unit test, run it as Java application. The lookups are
+ * measured with 100, 1000 and 10000 items, or with the numbers of items given
+ * as arguments.
+ *
+ * @since 1.5.0
+ */
+public class ItemRegistryBenchmark {
+
+	private static final int LOOKUPS = 100000;
+
+	/** the old lookup goes through all items, so it only does a fraction of the lookups */
+	private static final int SCAN_LOOKUPS = 1000;
+
+	private static final int PATTERN_LOOKUPS = 200;
+
+	private static final String PATTERN = "Light_*_7?";
+
+	private static final int[] ITEM_COUNTS = { 100, 1000, 10000 };
+
+	private final ItemRegistryImpl registry = new ItemRegistryImpl();
+
+	private final TestItemProvider provider = new TestItemProvider();
+
+	private final String[] names = new String[LOOKUPS];
+
+	private ItemRegistryBenchmark(int itemCount) {
+		for (int i = 0; i < itemCount; i++) {
+			provider.items.add(new TestItem((i % 2 == 0 ? "Light_" : "Temperature_") + "Room" + (i / 100) + "_" + i));
+		}
+		registry.addItemProvider(provider);
+		Random random = new Random(42);
+		for (int i = 0; i < LOOKUPS; i++) {
+			names[i] = provider.items.get(random.nextInt(itemCount)).getName();
+		}
+	}
+
+	public static void main(String[] args) throws ItemNotFoundException {
+		int[] itemCounts = ITEM_COUNTS;
+		if (args.length > 0) {
+			itemCounts = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				itemCounts[i] = Integer.parseInt(args[i]);
+			}
+		}
+		for (int itemCount : itemCounts) {
+			ItemRegistryBenchmark benchmark = new ItemRegistryBenchmark(itemCount);
+			System.out.println("Looking up items among " + itemCount + " items");
+			System.out.println(String.format("%-16s %16s %12s", "lookup", "lookups/s", "found"));
+			// the first rounds warm up the JIT compiler
+			for (int i = 0; i < 3; i++) {
+				benchmark.runScan();
+				benchmark.runIndex();
+				benchmark.runPatternPerItem();
+				benchmark.runPatternCached();
+			}
+			System.out.println();
+		}
+	}
+
+	private void runScan() throws ItemNotFoundException {
+		long found = 0;
+		long begin = System.nanoTime();
+		for (int i = 0; i < SCAN_LOOKUPS; i++) {
+			found += getItemByScan(names[i]).getName().length() > 0 ? 1 : 0;
+		}
+		report("getItem scan", SCAN_LOOKUPS, System.nanoTime() - begin, found);
+	}
+
+	private void runIndex() throws ItemNotFoundException {
+		long found = 0;
+		long begin = System.nanoTime();
+		for (String name : names) {
+			found += registry.getItem(name).getName().length() > 0 ? 1 : 0;
+		}
+		report("getItem index", LOOKUPS, System.nanoTime() - begin, found);
+	}
+
+	private void runPatternPerItem() {
+		long found = 0;
+		long begin = System.nanoTime();
+		for (int i = 0; i < PATTERN_LOOKUPS; i++) {
+			found += getItemsByPatternPerItem(PATTERN).size();
+		}
+		report("getItems regex", PATTERN_LOOKUPS, System.nanoTime() - begin, found);
+	}
+
+	private void runPatternCached() {
+		long found = 0;
+		long begin = System.nanoTime();
+		for (int i = 0; i < PATTERN_LOOKUPS; i++) {
+			found += registry.getItems(PATTERN).size();
+		}
+		report("getItems cached", PATTERN_LOOKUPS, System.nanoTime() - begin, found);
+	}
+
+	/**
+	 * The item lookup which the registry used before the index.
+	 */
+	private Item getItemByScan(String name) throws ItemNotFoundException {
+		for (Item item : provider.items) {
+			if (item.getName().matches(name)) {
+				return item;
+			}
+		}
+		throw new ItemNotFoundException(name);
+	}
+
+	/**
+	 * The pattern lookup which the registry used before the pattern cache.
+	 */
+	private Collection<Item> getItemsByPatternPerItem(String pattern) {
+		String regex = pattern.replace("?", ".?").replace("*", ".*?");
+		Collection<Item> matchedItems = new ArrayList<Item>();
+		for (Item item : provider.items) {
+			if (item.getName().matches(regex)) {
+				matchedItems.add(item);
+			}
+		}
+		return matchedItems;
+	}
+
+	private static void report(String name, int lookups, long nanos, long found) {
+		System.out.println(String.format("%-16s %16.0f %12d", name, lookups / (nanos / 1e9), found));
+	}
+
+}
@@ -0,0 +1,140 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.internal.items;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.items.GenericItem;
+import org.openhab.core.items.GroupItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.items.ItemNotFoundException;
+import org.openhab.core.items.ItemProvider;
+import org.openhab.core.items.ItemsChangeListener;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+
+/**
+ * @since 1.5.0
+ */
+public class ItemRegistryImplTest {
+
+	private ItemRegistryImpl registry;
+	private TestItemProvider provider;
+
+	@Before
+	public void setup() {
+		registry = new ItemRegistryImpl();
+		provider = new TestItemProvider();
+		provider.items.add(new TestItem("Light_Kitchen"));
+		provider.items.add(new TestItem("Light_Bath"));
+		provider.items.add(new TestItem("Temperature_Kitchen"));
+		registry.addItemProvider(provider);
+	}
+
+	@Test
+	public void testGetItem() throws ItemNotFoundException {
+		assertEquals("Light_Bath", registry.getItem("Light_Bath").getName());
+	}
+
+	@Test(expected = ItemNotFoundException.class)
+	public void testGetItemIsNotInterpretedAsPattern() throws ItemNotFoundException {
+		registry.getItem("Light_.*");
+	}
+
+	@Test
+	public void testGetItemsByPattern() {
+		assertEquals(2, registry.getItems("Light_*").size());
+		assertEquals(2, registry.getItems("*Kitchen").size());
+		assertEquals(1, registry.getItems("Light_Bat?").size());
+		// the second call is served from the pattern cache
+		assertEquals(2, registry.getItems("Light_*").size());
+	}
+
+	@Test
+	public void testIndexFollowsItemChanges() throws ItemNotFoundException {
+		Item added = new TestItem("Light_Garage");
+		registry.itemAdded(provider, added);
+		assertSame(added, registry.getItem("Light_Garage"));
+
+		registry.itemRemoved(provider, added);
+		assertNotFound("Light_Garage");
+
+		List<String> oldNames = new ArrayList<String>();
+		provider.items.clear();
+		provider.items.add(new TestItem("Light_Hall"));
+		registry.allItemsChanged(provider, oldNames);
+		assertNotFound("Light_Kitchen");
+		assertEquals("Light_Hall", registry.getItem("Light_Hall").getName());
+
+		registry.removeItemProvider(provider);
+		assertNotFound("Light_Hall");
+		assertTrue(registry.getItems().isEmpty());
+	}
+
+	@Test
+	public void testGroupMembershipIsResolved() throws ItemNotFoundException {
+		TestItem member = new TestItem("Light_Cellar");
+		member.getGroupNames().add("gLights");
+		registry.itemAdded(provider, new GroupItem("gLights"));
+		registry.itemAdded(provider, member);
+		GroupItem group = (GroupItem) registry.getItem("gLights");
+		assertTrue(group.getMembers().contains(member));
+	}
+
+	private void assertNotFound(String itemName) {
+		try {
+			registry.getItem(itemName);
+			fail("item '" + itemName + "' should not be registered");
+		} catch (ItemNotFoundException e) {
+			// expected
+		}
+	}
+
+	static class TestItemProvider implements ItemProvider {
+
+		List<Item> items = new ArrayList<Item>();
+
+		public Collection<Item> getItems() {
+			return new ArrayList<Item>(items);
+		}
+
+		public void addItemChangeListener(ItemsChangeListener listener) {
+		}
+
+		public void removeItemChangeListener(ItemsChangeListener listener) {
+		}
+	}
+
+	static class TestItem extends GenericItem {
+
+		public TestItem(String name) {
+			super(name);
+		}
+
+		@Override
+		public List<Class<? extends State>> getAcceptedDataTypes() {
+			return null;
+		}
+
+		@Override
+		public List<Class<? extends Command>> getAcceptedCommandTypes() {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.items;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+
+/**
+ * @since 1.5.0
+ */
+public class GenericItemTest {
+
+	private TestItem item;
+
+	@Before
+	public void setup() {
+		item = new TestItem("item");
+	}
+
+	@Test
+	public void testListenersAreNotified() {
+		CountingListener listener = new CountingListener();
+		item.addStateChangeListener(listener);
+
+		item.setState(UnDefType.UNDEF);
+		assertEquals(1, listener.updates);
+		assertEquals(1, listener.changes);
+
+		item.setState(UnDefType.UNDEF);
+		assertEquals(2, listener.updates);
+		assertEquals(1, listener.changes);
+	}
+
+	@Test
+	public void testListenerIsRegisteredOnce() {
+		CountingListener listener = new CountingListener();
+		item.addStateChangeListener(listener);
+		item.addStateChangeListener(listener);
+		item.setState(UnDefType.UNDEF);
+		assertEquals(1, listener.updates);
+
+		item.removeStateChangeListener(listener);
+		item.setState(UnDefType.NULL);
+		assertEquals(1, listener.updates);
+	}
+
+	@Test
+	public void testListenerCanUnregisterWhileNotified() {
+		final CountingListener other = new CountingListener();
+		StateChangeListener unregistering = new CountingListener() {
+			@Override
+			public void stateUpdated(Item item, State state) {
+				((GenericItem) item).removeStateChangeListener(this);
+				((GenericItem) item).removeStateChangeListener(other);
+			}
+		};
+		item.addStateChangeListener(unregistering);
+		item.addStateChangeListener(other);
+
+		// the notification in progress still reaches all listeners
+		item.setState(UnDefType.UNDEF);
+		assertEquals(1, other.updates);
+
+		item.setState(UnDefType.NULL);
+		assertEquals(1, other.updates);
+	}
+
+	class CountingListener implements StateChangeListener {
+		int updates = 0;
+		int changes = 0;
+
+		public void stateUpdated(Item item, State state) {
+			updates++;
+		}
+
+		public void stateChanged(Item item, State oldState, State newState) {
+			changes++;
+		}
+	}
+
+	class TestItem extends GenericItem {
+
+		public TestItem(String name) {
+			super(name);
+		}
+
+		@Override
+		public List<Class<? extends State>> getAcceptedDataTypes() {
+			return null;
+		}
+
+		@Override
+		public List<Class<? extends Command>> getAcceptedCommandTypes() {
+			return null;
+		}
+
+	}
+
+}
@@ -9,16 +9,26 @@
 package org.openhab.core.binding;
 
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.openhab.core.events.AbstractEventSubscriber;
 import org.openhab.core.events.EventPublisher;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.State;
+import org.osgi.service.event.Event;
 
 
 /**
  * Base class for bindings which send events.
+ * <p>
+ * The binding keeps an index of the names of all items which are bound by its
+ * {@link BindingProvider}s. Events for other items are discarded in
+ * {@link #handleEvent(Event)} right away. Bindings which want to receive events
+ * for items they do not bind have to override {@link #isEventFilterEnabled()}.
  * 
  * @author Thomas.Eichstaedt-Engelen
  * @author Kai Kreuzer
@@ -32,6 +42,9 @@ public abstract class AbstractBinding<P extends BindingProvider> extends Abstrac
 	
 	protected EventPublisher eventPublisher = null;
 	
+	/** the names of all items bound by any of the providers */
+	private final BoundItemIndex boundItems = new BoundItemIndex();
+	
 	
 	public void setEventPublisher(EventPublisher eventPublisher) {
 		this.eventPublisher = eventPublisher;
@@ -55,7 +68,9 @@ public abstract class AbstractBinding<P extends BindingProvider> extends Abstrac
 	 */
 	public void addBindingProvider(P provider) {
 		this.providers.add(provider);
+		provider.addBindingChangeListener(boundItems);
         provider.addBindingChangeListener(this);
+        boundItems.allBindingsChanged(provider);
         allBindingsChanged(provider);
     }
 
@@ -68,6 +83,8 @@ public abstract class AbstractBinding<P extends BindingProvider> extends Abstrac
 	public void removeBindingProvider(P provider) {
 		this.providers.remove(provider);
 		provider.removeBindingChangeListener(this);
+		provider.removeBindingChangeListener(boundItems);
+		boundItems.allBindingsChanged(provider);
 	}
 	
 	
@@ -84,6 +101,35 @@ public abstract class AbstractBinding<P extends BindingProvider> extends Abstrac
 		return false;
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Events for items which are not bound by any provider are discarded without 
+	 * looking at the event any further, unless the filter is disabled.
+	 */
+	@Override
+	public void handleEvent(Event event) {
+		if (isEventFilterEnabled()) {
+			String itemName = (String) event.getProperty("item");
+			if (itemName != null && !boundItems.contains(itemName)) {
+				return;
+			}
+		}
+		super.handleEvent(event);
+	}
+	
+	/**
+	 * Tells whether {@link #handleEvent(Event)} discards events for items which
+	 * are not bound by any of the providers. Bindings which override
+	 * {@link #receiveCommand(String, Command)} or {@link #receiveUpdate(String, State)}
+	 * to handle events for other items as well must return <code>false</code>.
+	 * 
+	 * @return <code>true</code> by default
+	 */
+	protected boolean isEventFilterEnabled() {
+		return true;
+	}
+	
 	/**
 	 * @{inheritDoc}
 	 */
@@ -154,5 +200,37 @@ public abstract class AbstractBinding<P extends BindingProvider> extends Abstrac
 	 */
 	public void bindingChanged(BindingProvider provider, String itemName) {
 	}
+	
+	/**
+	 * Keeps track of the items bound by any of the providers of this binding. It is registered
+	 * as a separate listener, because subclasses override the binding change callbacks.
+	 */
+	private class BoundItemIndex implements BindingChangeListener {
+		
+		private final ConcurrentMap<String, Boolean> itemNames = new ConcurrentHashMap<String, Boolean>();
+		
+		boolean contains(String itemName) {
+			return itemNames.containsKey(itemName);
+		}
+		
+		public synchronized void bindingChanged(BindingProvider provider, String itemName) {
+			if (AbstractBinding.this.providesBindingFor(itemName)) {
+				itemNames.put(itemName, Boolean.TRUE);
+			} else {
+				itemNames.remove(itemName);
+			}
+		}
+		
+		public synchronized void allBindingsChanged(BindingProvider provider) {
+			Set<String> boundItemNames = new HashSet<String>();
+			for (P bindingProvider : providers) {
+				boundItemNames.addAll(bindingProvider.getItemNames());
+			}
+			itemNames.keySet().retainAll(boundItemNames);
+			for (String itemName : boundItemNames) {
+				itemNames.put(itemName, Boolean.TRUE);
+			}
+		}
+	}
 
 }
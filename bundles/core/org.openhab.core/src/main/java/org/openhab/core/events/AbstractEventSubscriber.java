@@ -8,12 +8,8 @@
  */
 package org.openhab.core.events;
 
-import static org.openhab.core.events.EventConstants.TOPIC_PREFIX;
-import static org.openhab.core.events.EventConstants.TOPIC_SEPERATOR;
-
 import org.openhab.core.types.Command;
 import org.openhab.core.types.State;
-import org.openhab.core.types.EventType;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventHandler;
 
@@ -23,23 +19,14 @@ abstract public class AbstractEventSubscriber implements EventSubscriber, EventH
 	 * {@inheritDoc}
 	 */
 	public void handleEvent(Event event) {  
-		String itemName = (String) event.getProperty("item");
-		
-		String topic = event.getTopic();
-		String[] topicParts = topic.split(TOPIC_SEPERATOR);
-		
-		if(!(topicParts.length > 2) || !topicParts[0].equals(TOPIC_PREFIX)) {
-			return; // we have received an event with an invalid topic
+		ItemEvent itemEvent = ItemEvent.fromEvent(event);
+		if(itemEvent==null) {
+			return; // we have received an event with an invalid topic or without a state or command
 		}
-		String operation = topicParts[1];
 		
-		if(operation.equals(EventType.UPDATE.toString())) {
-			State newState = (State) event.getProperty("state");
-			if(newState!=null) receiveUpdate(itemName, newState);
-		}
-		if(operation.equals(EventType.COMMAND.toString())) {
-			Command command = (Command) event.getProperty("command");
-			if(command!=null) receiveCommand(itemName, command);
+		switch(itemEvent.getType()) {
+			case UPDATE: receiveUpdate(itemEvent.getItemName(), itemEvent.getState()); break;
+			case COMMAND: receiveCommand(itemEvent.getItemName(), itemEvent.getCommand()); break;
 		}
 	}
 	
@@ -0,0 +1,158 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.events;
+
+import static org.openhab.core.events.EventConstants.TOPIC_PREFIX;
+import static org.openhab.core.events.EventConstants.TOPIC_SEPERATOR;
+
+import org.openhab.core.types.Command;
+import org.openhab.core.types.EventType;
+import org.openhab.core.types.State;
+import org.osgi.service.event.Event;
+
+/**
+ * This is the decoded form of a command or status update event for an item.
+ * <p>
+ * Events created by the openHAB event publisher carry their <code>ItemEvent</code>
+ * as an event property, so that all subscribers share the same instance and do not
+ * need to parse the event topic. Events from other sources are decoded from their
+ * topic and properties.
+ *
+ * @since 1.5.0
+ */
+public final class ItemEvent {
+
+	/** the name of the event property which holds the <code>ItemEvent</code> */
+	public static final String PROPERTY = "itemEvent";
+
+	private final EventType type;
+	private final String itemName;
+	private final State state;
+	private final Command command;
+
+	private ItemEvent(EventType type, String itemName, State state, Command command) {
+		this.type = type;
+		this.itemName = itemName;
+		this.state = state;
+		this.command = command;
+	}
+
+	/**
+	 * Creates a status update event.
+	 *
+	 * @param itemName the name of the updated item
+	 * @param state the new state of the item
+	 * @return the update event
+	 */
+	public static ItemEvent createUpdate(String itemName, State state) {
+		return new ItemEvent(EventType.UPDATE, itemName, state, null);
+	}
+
+	/**
+	 * Creates a command event.
+	 *
+	 * @param itemName the name of the item the command is sent to
+	 * @param command the command
+	 * @return the command event
+	 */
+	public static ItemEvent createCommand(String itemName, Command command) {
+		return new ItemEvent(EventType.COMMAND, itemName, null, command);
+	}
+
+	/**
+	 * Returns the item event of an OSGi event. If the event has been created by the
+	 * openHAB event publisher, the attached instance is returned, otherwise the
+	 * event is decoded from its topic and properties.
+	 *
+	 * @param event the OSGi event
+	 * @return the item event or <code>null</code>, if <code>event</code> is
+	 *         neither a valid command nor a valid update event
+	 */
+	public static ItemEvent fromEvent(Event event) {
+		Object itemEvent = event.getProperty(PROPERTY);
+		if (itemEvent instanceof ItemEvent) {
+			return (ItemEvent) itemEvent;
+		}
+		return decode(event);
+	}
+
+	private static ItemEvent decode(Event event) {
+		EventType type = getEventType(event.getTopic());
+		if (type == null) {
+			return null; // we have received an event with an invalid topic
+		}
+		String itemName = (String) event.getProperty("item");
+		switch (type) {
+			case UPDATE:
+				State state = (State) event.getProperty("state");
+				return state != null ? createUpdate(itemName, state) : null;
+			case COMMAND:
+				Command command = (Command) event.getProperty("command");
+				return command != null ? createCommand(itemName, command) : null;
+		}
+		return null;
+	}
+
+	/**
+	 * Determines the event type of a topic of the form
+	 * <code>openhab/&lt;type&gt;/&lt;item&gt;</code> without splitting it.
+	 */
+	private static EventType getEventType(String topic) {
+		int prefixLength = TOPIC_PREFIX.length();
+		if (!topic.startsWith(TOPIC_PREFIX) || !topic.startsWith(TOPIC_SEPERATOR, prefixLength)) {
+			return null;
+		}
+		int typeStart = prefixLength + TOPIC_SEPERATOR.length();
+		int typeEnd = topic.indexOf(TOPIC_SEPERATOR, typeStart);
+		if (typeEnd < 0 || typeEnd + TOPIC_SEPERATOR.length() >= topic.length()) {
+			return null;
+		}
+		for (EventType type : EventType.values()) {
+			String name = type.toString();
+			if (name.length() == typeEnd - typeStart && topic.startsWith(name, typeStart)) {
+				return type;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return whether this is a command or a status update event
+	 */
+	public EventType getType() {
+		return type;
+	}
+
+	/**
+	 * @return the name of the item this event is about
+	 */
+	public String getItemName() {
+		return itemName;
+	}
+
+	/**
+	 * @return the new state of an update event, <code>null</code> for command events
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * @return the command of a command event, <code>null</code> for update events
+	 */
+	public Command getCommand() {
+		return command;
+	}
+
+	@Override
+	public String toString() {
+		return type + " " + itemName + ": " + (type == EventType.UPDATE ? state : command);
+	}
+
+}
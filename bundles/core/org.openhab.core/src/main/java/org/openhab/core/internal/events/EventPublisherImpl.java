@@ -13,8 +13,11 @@ import static org.openhab.core.events.EventConstants.TOPIC_SEPERATOR;
 
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.openhab.core.events.EventPublisher;
+import org.openhab.core.events.ItemEvent;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.EventType;
 import org.openhab.core.types.State;
@@ -27,6 +30,10 @@ import org.slf4j.LoggerFactory;
  * This is the main implementation of the {@link EventPublisher} interface.
  * Through it, openHAB events can be sent to the OSGi EventAdmin service
  * in order to broadcast them.
+ * <p>
+ * The topics of the events are cached per item, and every event carries an 
+ * immutable {@link ItemEvent}, which subscribers use instead of decoding the
+ * event themselves.
  * 
  * @author Kai Kreuzer
  *
@@ -36,8 +43,14 @@ public class EventPublisherImpl implements EventPublisher {
 	private static final Logger logger = 
 		LoggerFactory.getLogger(EventPublisherImpl.class);
 		
+	/** the maximum number of items for which the event topics are cached */
+	private static final int MAX_CACHED_TOPICS = 10000;
+		
 	private EventAdmin eventAdmin;
 	
+	/** the event topics per item name, indexed by the ordinal of their {@link EventType} */
+	private final ConcurrentMap<String, String[]> topicCache = new ConcurrentHashMap<String, String[]>();
+	
 	
 	public void setEventAdmin(EventAdmin eventAdmin) {
 		this.eventAdmin = eventAdmin;
@@ -85,14 +98,32 @@ public class EventPublisherImpl implements EventPublisher {
 		Dictionary<String, Object> properties = new Hashtable<String, Object>();
 		properties.put("item", itemName);
 		properties.put("state", newState);
-		return new Event(createTopic(EventType.UPDATE, itemName), properties);
+		properties.put(ItemEvent.PROPERTY, ItemEvent.createUpdate(itemName, newState));
+		return new Event(getTopic(EventType.UPDATE, itemName), properties);
 	}
 
 	private Event createCommandEvent(String itemName, Command command) {
 		Dictionary<String, Object> properties = new Hashtable<String, Object>();
 		properties.put("item", itemName);
 		properties.put("command", command);
-		return new Event(createTopic(EventType.COMMAND, itemName) , properties);
+		properties.put(ItemEvent.PROPERTY, ItemEvent.createCommand(itemName, command));
+		return new Event(getTopic(EventType.COMMAND, itemName), properties);
+	}
+
+	private String getTopic(EventType type, String itemName) {
+		String[] topics = topicCache.get(itemName);
+		if (topics == null) {
+			if (topicCache.size() >= MAX_CACHED_TOPICS) {
+				// events are sent for unknown item names, do not let the cache grow without limit
+				topicCache.clear();
+			}
+			topics = new String[EventType.values().length];
+			for (EventType eventType : EventType.values()) {
+				topics[eventType.ordinal()] = createTopic(eventType, itemName);
+			}
+			topicCache.put(itemName, topics);
+		}
+		return topics[type.ordinal()];
 	}
 
 	private String createTopic(EventType type, String itemName) {
@@ -13,8 +13,10 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.regex.Pattern;
 
 import org.openhab.core.events.EventPublisher;
 import org.openhab.core.items.GenericItem;
@@ -50,6 +52,15 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 	/** this is our local map in which we store all our items */
 	protected Map<ItemProvider, Collection<Item>> itemMap = new ConcurrentHashMap<ItemProvider, Collection<Item>>();
 	
+	/** name based index over all items of all providers, used for fast lookups by item name */
+	protected ConcurrentMap<String, Item> itemIndex = new ConcurrentHashMap<String, Item>();
+	
+	/** cache of the compiled regular expressions for the search patterns passed to {@link #getItems(String)} */
+	private final ConcurrentMap<String, Pattern> patternCache = new ConcurrentHashMap<String, Pattern>();
+	
+	/** upper bound for the number of cached search patterns */
+	private static final int MAX_CACHED_PATTERNS = 256;
+	
 	/** to keep track of all item change listeners */
 	protected Collection<ItemRegistryChangeListener> listeners = new CopyOnWriteArraySet<ItemRegistryChangeListener>();
 
@@ -63,6 +74,7 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 		}
 		// then release all items
 		itemMap.clear();
+		itemIndex.clear();
     }
 
 	/* (non-Javadoc)
@@ -70,14 +82,11 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 	 */
     @Override
 	public Item getItem(String name) throws ItemNotFoundException {
-		for(Collection<Item> items : itemMap.values()) {
-			for(Item item : items) {
-				if(item.getName().matches(name)) {
-					return item;
-				}
-			}
+		Item item = name != null ? itemIndex.get(name) : null;
+		if(item == null) {
+			throw new ItemNotFoundException(name);
 		}
-		throw new ItemNotFoundException(name);
+		return item;
 	}
 
 	/* (non-Javadoc)
@@ -116,17 +125,37 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 	 */
     @Override
 	public Collection<Item> getItems(String pattern) {
-		String regex = pattern.replace("?", ".?").replace("*", ".*?");
+		Pattern regex = getCompiledPattern(pattern);
 		Collection<Item> matchedItems = new ArrayList<Item>();
 		for(Collection<Item> items : itemMap.values()) {
 			for(Item item : items) {
-				if(item.getName().matches(regex)) {
+				if(regex.matcher(item.getName()).matches()) {
 					matchedItems.add(item);
 				}
 			}
 		}
         return matchedItems;
 	}
+	
+	/**
+	 * Returns the compiled regular expression for the given search pattern,
+	 * where '?' and '*' are treated as wildcards. Compiled patterns are cached,
+	 * since the same patterns are typically requested over and over again.
+	 * 
+	 * @param pattern the search pattern
+	 * @return the compiled regular expression
+	 */
+	private Pattern getCompiledPattern(String pattern) {
+		Pattern regex = patternCache.get(pattern);
+		if(regex == null) {
+			regex = Pattern.compile(pattern.replace("?", ".?").replace("*", ".*?"));
+			if(patternCache.size() >= MAX_CACHED_PATTERNS) {
+				patternCache.clear();
+			}
+			patternCache.put(pattern, regex);
+		}
+		return regex;
+	}
 
 	public void addItemProvider(ItemProvider itemProvider) {
 		// only add this provider if it does not already exist
@@ -152,6 +181,7 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 				if(item instanceof GenericItem) {
 					((GenericItem) item).dispose();
 				}
+				itemIndex.remove(item.getName(), item);
 			}
 			itemMap.remove(itemProvider);
 
@@ -189,11 +219,19 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 			}
 		}
 
+		Collection<Item> oldItems = itemMap.get(provider);
+		if(oldItems!=null) {
+			for(Item oldItem : oldItems) {
+				itemIndex.remove(oldItem.getName(), oldItem);
+			}
+		}
+
 		Collection<Item> items = new CopyOnWriteArrayList<Item>();
     	itemMap.put(provider, items);
 		for(Item item : provider.getItems()) {
 			if(initializeItem(item)) {
 				items.add(item);
+				itemIndex.put(item.getName(), item);
 			}
 		}
 
@@ -209,6 +247,7 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
 		if(items!=null) {
 			if(initializeItem(item)) {
 				items.add(item);
+				itemIndex.put(item.getName(), item);
 			} else {
 				return;
 			}
@@ -224,6 +263,7 @@ public class ItemRegistryImpl implements ItemRegistry, ItemsChangeListener {
         items = itemMap.get(provider);
 		if(items!=null) {
 			items.remove(item);
+			itemIndex.remove(item.getName(), item);
 		}
 		for(ItemRegistryChangeListener listener : listeners) {
 			listener.itemRemoved(item);
@@ -9,11 +9,9 @@
 package org.openhab.core.items;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.WeakHashMap;
-import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.openhab.core.events.EventPublisher;
 import org.openhab.core.types.Command;
@@ -33,7 +31,16 @@ abstract public class GenericItem implements Item {
 	
 	protected EventPublisher eventPublisher;
 
-	protected Set<StateChangeListener> listeners = new CopyOnWriteArraySet<StateChangeListener>(Collections.newSetFromMap(new WeakHashMap<StateChangeListener, Boolean>()));
+	private static final StateChangeListener[] NO_LISTENERS = new StateChangeListener[0];
+
+	/** 
+	 * the registered listeners; must only be changed through {@link #addStateChangeListener(StateChangeListener)}
+	 * and {@link #removeStateChangeListener(StateChangeListener)}, as these keep {@link #listenerSnapshot} up to date
+	 */
+	protected Set<StateChangeListener> listeners = new LinkedHashSet<StateChangeListener>();
+	
+	/** an immutable copy of the listeners, which is replaced whenever a listener is added or removed */
+	private volatile StateChangeListener[] listenerSnapshot = NO_LISTENERS;
 	
 	protected List<String> groupNames = new ArrayList<String>();
 	
@@ -101,15 +108,15 @@ abstract public class GenericItem implements Item {
 	}
 
 	private void notifyListeners(State oldState, State newState) {
+		// iterate over the current snapshot, so that listeners can (un)register themselves while being notified
+		StateChangeListener[] snapshot = listenerSnapshot;
 		// if nothing has changed, we send update notifications
-		Set<StateChangeListener> clonedListeners = null;
-		clonedListeners = new CopyOnWriteArraySet<StateChangeListener>(listeners);
-		for(StateChangeListener listener : clonedListeners) {
-			listener.stateUpdated(this, newState);
+		for(int i = 0; i < snapshot.length; i++) {
+			snapshot[i].stateUpdated(this, newState);
 		}
 		if(!oldState.equals(newState)) {
-			for(StateChangeListener listener : clonedListeners) {
-				listener.stateChanged(this, oldState, newState);
+			for(int i = 0; i < snapshot.length; i++) {
+				snapshot[i].stateChanged(this, oldState, newState);
 			}
 		}
 	}
@@ -126,13 +133,17 @@ abstract public class GenericItem implements Item {
 
 	public void addStateChangeListener(StateChangeListener listener) {
 		synchronized(listeners) {
-			listeners.add(listener);
+			if(listeners.add(listener)) {
+				listenerSnapshot = listeners.toArray(new StateChangeListener[listeners.size()]);
+			}
 		}
 	}
 	
 	public void removeStateChangeListener(StateChangeListener listener) {
 		synchronized(listeners) {
-			listeners.remove(listener);
+			if(listeners.remove(listener)) {
+				listenerSnapshot = listeners.isEmpty() ? NO_LISTENERS : listeners.toArray(new StateChangeListener[listeners.size()]);
+			}
 		}
 	}
 	
@@ -29,6 +29,12 @@ public class GroupItem extends GenericItem implements StateChangeListener {
 	protected final List<Item> members;
 	
 	protected GroupFunction function;
+	
+	/** keeps the running aggregate, if the function supports incremental updates */
+	private final IncrementalGroupFunction.Aggregator<?> aggregator;
+	
+	/** the function the aggregator has been created by */
+	private final GroupFunction aggregatorFunction;
 
 	public GroupItem(String name) {
 		this(name, null);
@@ -43,6 +49,9 @@ public class GroupItem extends GenericItem implements StateChangeListener {
 		members = new CopyOnWriteArrayList<Item>();
 		this.function = function;
 		this.baseItem = baseItem;
+		this.aggregator = function instanceof IncrementalGroupFunction ?
+				((IncrementalGroupFunction) function).createAggregator() : null;
+		this.aggregatorFunction = function;
 	}
 	
 	/**
@@ -56,6 +65,16 @@ public class GroupItem extends GenericItem implements StateChangeListener {
 		return baseItem;
 	}
 
+	/**
+	 * Returns the function which calculates the state of this {@link GroupItem}
+	 * from its members.
+	 * 
+	 * @return the group function of this GroupItem
+	 */
+	public GroupFunction getFunction() {
+		return function;
+	}
+
 	/**
 	 * Returns the direct members of this {@link GroupItem} regardless if these
 	 * members are {@link GroupItem}s as well.
@@ -92,6 +111,7 @@ public class GroupItem extends GenericItem implements StateChangeListener {
 
 	public void addMember(Item item) {
 		members.add(item);
+		invalidateAggregator();
 		if (item instanceof GenericItem) {
 			GenericItem genericItem = (GenericItem) item;
 			genericItem.addStateChangeListener(this);
@@ -100,6 +120,7 @@ public class GroupItem extends GenericItem implements StateChangeListener {
 	
 	public void removeMember(Item item) {
 		members.remove(item);
+		invalidateAggregator();
 		if (item instanceof GenericItem) {
 			GenericItem genericItem = (GenericItem) item;
 			genericItem.removeStateChangeListener(this);
@@ -210,13 +231,34 @@ public class GroupItem extends GenericItem implements StateChangeListener {
 	 * @{inheritDoc
 	 */
 	public void stateChanged(Item item, State oldState, State newState) {
-		setState(function.calculate(members));
+		setState(calculateState(item));
 	}
 
 	/**
 	 * @{inheritDoc
 	 */
 	public void stateUpdated(Item item, State state) {
-		setState(function.calculate(members));
+		setState(calculateState(item));
+	}
+	
+	/**
+	 * Calculates the group state after a member has been updated. Functions which 
+	 * support it only apply the change of this member, all others look at all
+	 * members again.
+	 * 
+	 * @param member the updated member
+	 * @return the new group state
+	 */
+	private State calculateState(Item member) {
+		if(aggregator!=null && function==aggregatorFunction) {
+			return aggregator.update(members, member);
+		}
+		return function.calculate(members);
+	}
+	
+	private void invalidateAggregator() {
+		if(aggregator!=null) {
+			aggregator.invalidate();
+		}
 	}
 }
@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.core.items;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openhab.core.types.State;
+
+/**
+ * A group function which can update the group state incrementally when a single
+ * member changes, instead of looking at all members again.
+ * <p>
+ * A {@link GroupItem} with such a function keeps an {@link Aggregator}, which
+ * remembers the contribution of every member to the group state (e.g. its numeric
+ * value). When a member is updated, only the difference between its former and
+ * its current contribution is applied. All members are only evaluated again after
+ * the membership of the group has changed.
+ * <p>
+ * The aggregated state must always be equal to the result of
+ * {@link GroupFunction#calculate(List)} for the same members.
+ *
+ * @since 1.5.0
+ */
+public interface IncrementalGroupFunction extends GroupFunction {
+
+	/**
+	 * Creates a new aggregator, each group item needs an aggregator of its own.
+	 *
+	 * @return a new aggregator for this function
+	 */
+	public Aggregator<?> createAggregator();
+
+	/**
+	 * Keeps the running aggregate of a group.
+	 *
+	 * @param <C> the type of the contribution of a single member
+	 */
+	public static abstract class Aggregator<C> {
+
+		/** the contributions by member; items are compared by identity, as their hash code depends on their state */
+		private final Map<Item, C> contributions = new IdentityHashMap<Item, C>();
+
+		private boolean valid = false;
+
+		/**
+		 * Forces a full recalculation on the next update, e.g. because members have been
+		 * added or removed.
+		 */
+		public synchronized void invalidate() {
+			valid = false;
+		}
+
+		/**
+		 * Updates the aggregate after the state of a member has been updated.
+		 *
+		 * @param members the current members of the group
+		 * @param member the member whose state has been updated
+		 * @return the new group state
+		 */
+		public synchronized State update(List<Item> members, Item member) {
+			if (!valid || !contributions.containsKey(member)) {
+				return recalculate(members);
+			}
+			C oldContribution = contributions.get(member);
+			C newContribution = getContribution(member);
+			contributions.put(member, newContribution);
+			remove(oldContribution);
+			add(newContribution);
+			return getState(contributions.size());
+		}
+
+		/**
+		 * Calculates the aggregate from scratch.
+		 *
+		 * @param members the current members of the group
+		 * @return the new group state
+		 */
+		public synchronized State recalculate(List<Item> members) {
+			reset();
+			contributions.clear();
+			boolean duplicates = false;
+			for (Item member : members) {
+				C contribution = getContribution(member);
+				add(contribution);
+				duplicates |= contributions.containsKey(member);
+				contributions.put(member, contribution);
+			}
+			// an item which is a member more than once cannot be updated incrementally
+			valid = !duplicates;
+			return getState(members.size());
+		}
+
+		/**
+		 * Determines the contribution of a member from its current state.
+		 *
+		 * @param member the member
+		 * @return the contribution, may be <code>null</code>
+		 */
+		protected abstract C getContribution(Item member);
+
+		/**
+		 * Clears the aggregate.
+		 */
+		protected abstract void reset();
+
+		/**
+		 * Adds the contribution of a member to the aggregate.
+		 */
+		protected abstract void add(C contribution);
+
+		/**
+		 * Removes the contribution of a member from the aggregate.
+		 */
+		protected abstract void remove(C contribution);
+
+		/**
+		 * Returns the group state for the current aggregate.
+		 *
+		 * @param memberCount the number of members of the group
+		 * @return the group state
+		 */
+		protected abstract State getState(int memberCount);
+	}
+
+}
@@ -9,6 +9,11 @@
 package org.openhab.io.rest.internal.filter;
 
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import javax.servlet.http.HttpServletRequest;
 
 import org.atmosphere.cpr.AtmosphereResource;
@@ -32,6 +37,14 @@ public class DuplicateBroadcastProtectionFilter implements PerRequestBroadcastFi
 
 	private static final Logger logger = LoggerFactory.getLogger(DuplicateBroadcastProtectionFilter.class);
 	
+	private static final ObjectMapper mapper = new ObjectMapper();
+
+	/**
+	 * the serialized response objects; as the response objects of a broadcast are shared by all
+	 * resources of a broadcaster, they only need to be serialized once for all clients
+	 */
+	private static final Map<Object, String> serializedResponses = Collections.synchronizedMap(new WeakHashMap<Object, String>());
+	
 	@Override
 	public BroadcastAction filter(Object arg0, Object message) {
 		return new BroadcastAction(ACTION.CONTINUE, message);
@@ -63,10 +76,13 @@ public class DuplicateBroadcastProtectionFilter implements PerRequestBroadcastFi
 		if(clientId == null || clientId.isEmpty()){
 			return false;
 		}
-		ObjectMapper mapper = new ObjectMapper();
 		try{
-			String firedResponse =  mapper.writeValueAsString(ResourceStateChangeListener.getMap().put(clientId, responseEntity)); 
-			String responseValue =  mapper.writeValueAsString(responseEntity);
+			Object firedEntity = ResourceStateChangeListener.getMap().put(clientId, responseEntity);
+			if(firedEntity == responseEntity) {
+				return true;
+			}
+			String firedResponse =  serialize(firedEntity); 
+			String responseValue =  serialize(responseEntity);
             if(responseValue.equals(firedResponse)) {
             	return true;
 			}
@@ -76,4 +92,16 @@ public class DuplicateBroadcastProtectionFilter implements PerRequestBroadcastFi
         return false;
 	}
 
+	private String serialize(Object entity) throws IOException {
+		if(entity==null) {
+			return mapper.writeValueAsString(entity);
+		}
+		String serialized = serializedResponses.get(entity);
+		if(serialized==null) {
+			serialized = mapper.writeValueAsString(entity);
+			serializedResponses.put(entity, serialized);
+		}
+		return serialized;
+	}
+
 }
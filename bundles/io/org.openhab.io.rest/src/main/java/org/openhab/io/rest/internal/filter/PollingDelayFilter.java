@@ -46,8 +46,8 @@ public class PollingDelayFilter implements PerRequestBroadcastFilter {
 	public BroadcastAction filter(final AtmosphereResource resource, Object originalMessage, final Object message) {
 		final  HttpServletRequest request = resource.getRequest();
 		try {	
-			// delay first broadcast for long-polling and other polling transports
-			if(!ResponseTypeHelper.isStreamingTransport(request) && message instanceof PageBean && originalMessage instanceof Item) {
+			// delay first broadcast for long-polling and other polling transports, unless they only want the changed widgets
+			if(!ResponseTypeHelper.isDeltaResponse(request) && message instanceof PageBean && originalMessage instanceof Item) {
 				final String delayedBroadcasterName = resource.getRequest().getPathInfo();
 				Executors.newSingleThreadExecutor().submit(new Runnable() {
 		            public void run() {
@@ -47,8 +47,8 @@ public class ResponseObjectFilter implements PerRequestBroadcastFilter {
 		final  HttpServletRequest request = resource.getRequest();
 		
 		try {	
-			// websocket and HTTP streaming
-			if(ResponseTypeHelper.isStreamingTransport(request) && message instanceof PageBean && originalMessage instanceof Item) {
+			// websocket, HTTP streaming and clients which requested only the changed widgets
+			if(ResponseTypeHelper.isDeltaResponse(request) && message instanceof PageBean && originalMessage instanceof Item) {
 				return new BroadcastAction(ACTION.CONTINUE,  getSingleResponseObject((PageBean)message, (Item)originalMessage, request)	);
 			}
 			
@@ -15,6 +15,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.HttpHeaders;
 
 import org.atmosphere.cpr.AtmosphereResource;
 import org.atmosphere.cpr.BroadcastFilter.BroadcastAction.ACTION;
@@ -31,6 +32,7 @@ import org.openhab.io.rest.internal.filter.PollingDelayFilter;
 import org.openhab.io.rest.internal.filter.ResponseObjectFilter;
 import org.openhab.io.rest.internal.filter.SendPageUpdateFilter;
 import org.openhab.io.rest.internal.resources.ItemResource;
+import org.openhab.io.rest.internal.resources.ResponseTypeHelper;
 
 /**
  * This is an abstract super class which adds Broadcaster config, lifecycle and filters to its derived classes and registers listeners to subscribed resources.   
@@ -46,6 +48,12 @@ abstract public class ResourceStateChangeListener {
 	private StateChangeListener stateChangeListener;
 	private GeneralBroadcaster broadcaster;
 
+	/**
+	 * the response objects for the current states of the relevant items, by the response key of the requests.
+	 * They are shared by all resources of the broadcaster and the map is replaced whenever a state changes.
+	 */
+	private volatile ConcurrentMap<String, Object> responseObjects = new ConcurrentHashMap<String, Object>();
+
 	public ResourceStateChangeListener(){}
 
 
@@ -77,7 +85,7 @@ abstract public class ResourceStateChangeListener {
 			@Override
 			public BroadcastAction filter(AtmosphereResource resource, Object originalMessage, Object message) {
 				 HttpServletRequest request = resource.getRequest();
-				 return new BroadcastAction(ACTION.CONTINUE,  getResponseObject(request));
+				 return new BroadcastAction(ACTION.CONTINUE,  getSharedResponseObject(request));
 			}
 		});
 		
@@ -99,6 +107,7 @@ abstract public class ResourceStateChangeListener {
 				if(item instanceof GroupItem) {
 					GroupItem gItem = (GroupItem) item;
 					if(gItem.getBaseItem()!=null) {
+						responseObjects = new ConcurrentHashMap<String, Object>();
 						if(!broadcaster.getAtmosphereResources().isEmpty()) {
 							broadcaster.broadcast(item);
 						}
@@ -107,6 +116,7 @@ abstract public class ResourceStateChangeListener {
 			}
 			
 			public void stateChanged(final Item item, State oldState, State newState) {	
+				responseObjects = new ConcurrentHashMap<String, Object>();
 				if(!broadcaster.getAtmosphereResources().isEmpty()) {
 					broadcaster.broadcast(item);
 				}
@@ -155,6 +165,43 @@ abstract public class ResourceStateChangeListener {
 		}
 	}
 
+	/**
+	 * Returns the response content for an HTTP request, which is shared by all requests with
+	 * the same response key. It is only determined once per state change, so that the response
+	 * is not created again for every client which is subscribed to the broadcaster.
+	 * 
+	 * @param request the HttpServletRequest
+	 * @return the response content
+	 */
+	protected Object getSharedResponseObject(final HttpServletRequest request) {
+		ConcurrentMap<String, Object> responses = responseObjects;
+		String key = getResponseKey(request);
+		Object responseObject = responses.get(key);
+		if(responseObject==null) {
+			responseObject = getResponseObject(request);
+			if(responseObject!=null) {
+				Object sharedObject = responses.putIfAbsent(key, responseObject);
+				if(sharedObject!=null) {
+					responseObject = sharedObject;
+				}
+			}
+		}
+		return responseObject;
+	}
+
+	/**
+	 * Determines the key of the response for an HTTP request. Requests with the same key get the
+	 * same response object for a state change. The default key consists of the base URI, which is
+	 * used for the links in the response, and the accepted and requested media types.
+	 * 
+	 * @param request the HttpServletRequest
+	 * @return the response key
+	 */
+	protected String getResponseKey(final HttpServletRequest request) {
+		return request.getScheme() + "://" + request.getServerName() + ":" + request.getServerPort() + request.getContextPath()
+				+ " " + request.getHeader(HttpHeaders.ACCEPT) + " " + (new ResponseTypeHelper()).getQueryParam(request, "type");
+	}
+
 	/**
 	 * Returns a set of all items that should be observed for this request. A status change of any of
 	 * those items will resume the suspended request.
@@ -19,6 +19,9 @@ import org.atmosphere.cpr.HeaderConfig;
 
 public class ResponseTypeHelper {
 	
+	/** the query parameter to request only the changed widgets of a page on a state change */
+	public static final String DELTA_PARAM = "delta";
+
 	public String getResponseType(HttpServletRequest request) {
 		List<MediaType> mediaTypes = getAcceptedMediaTypes(request);
 		String type = getQueryParam(request, "type");		
@@ -55,6 +58,18 @@ public class ResponseTypeHelper {
 		return value!=null ? value : defaultValue;
 	}
 	
+	/**
+	 * Detects, whether the client has requested to receive only the widgets of the changed item
+	 * instead of the full page on a state change (by adding "delta=true" to the request). This is
+	 * always done for streaming transports and is an opt-in for polling transports.
+	 * 
+	 * @param request the HttpServletRequest
+	 * @return true, if only the changed widgets should be sent
+	 */
+	public static boolean isDeltaResponse(HttpServletRequest request) {
+		return isStreamingTransport(request) || "true".equals(new ResponseTypeHelper().getQueryParam(request, DELTA_PARAM));
+	}
+
 	/**
 	 * Returns a boolean. The method detects if the underlying connection should be resumed after broadcast
 	 * 
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.transport.mqtt.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.lang.StringUtils;
+import org.openhab.io.transport.mqtt.MqttMessageConsumer;
+import org.openhab.io.transport.mqtt.internal.TopicTrieTest.TestConsumer;
+
+/**
+ * Compares the dispatch rate of the topic trie with matching each message
+ * against the topic of every consumer, the way the broker connection used to
+ * do it with regular expressions for wildcard topics. Every tenth consumer
+ * subscribes with a wildcard, the messages are sent to random consumer
+ * topics.
+ * <p>
+ * This is not a unit test, run it as Java application. The number of
+ * consumers can be given as argument.
+ *
+ * @since 1.5.0
+ */
+public class TopicTrieBenchmark {
+
+	private static final int MESSAGES = 200000;
+
+	private static final byte[] PAYLOAD = "21.5".getBytes();
+
+	private final List<MqttMessageConsumer> consumers = new ArrayList<MqttMessageConsumer>();
+
+	private final String[] topics = new String[MESSAGES];
+
+	private TopicTrieBenchmark(int consumerCount) {
+		for (int i = 0; i < consumerCount; i++) {
+			String topic = i % 10 == 0 ? "home/room" + i + "/+/state" : "home/room" + (i / 10 * 10)
+					+ "/sensor" + i + "/state";
+			consumers.add(new TestConsumer(topic));
+		}
+		Random random = new Random(42);
+		for (int i = 0; i < MESSAGES; i++) {
+			int consumer = random.nextInt(consumerCount);
+			topics[i] = "home/room" + (consumer / 10 * 10) + "/sensor" + consumer + "/state";
+		}
+	}
+
+	public static void main(String[] args) {
+		int consumerCount = args.length > 0 ? Integer.parseInt(args[0]) : 800;
+		TopicTrieBenchmark benchmark = new TopicTrieBenchmark(consumerCount);
+		System.out.println("Dispatching " + MESSAGES + " messages to " + consumerCount + " consumers");
+		System.out.println(String.format("%-12s %16s %16s", "dispatch", "messages/s", "deliveries"));
+		// the first rounds warm up the JIT compiler
+		for (int i = 0; i < 3; i++) {
+			benchmark.runRegex();
+			benchmark.runTrie();
+		}
+	}
+
+	private void runRegex() {
+		long deliveries = 0;
+		long begin = System.nanoTime();
+		for (String topic : topics) {
+			for (MqttMessageConsumer consumer : consumers) {
+				if (isTopicMatch(topic, consumer.getTopic())) {
+					consumer.processMessage(topic, PAYLOAD);
+					deliveries++;
+				}
+			}
+		}
+		report("regex", System.nanoTime() - begin, deliveries);
+	}
+
+	private void runTrie() {
+		TopicTrie trie = new TopicTrie();
+		for (MqttMessageConsumer consumer : consumers) {
+			trie.add(consumer);
+		}
+		long deliveries = 0;
+		long begin = System.nanoTime();
+		for (String topic : topics) {
+			for (MqttMessageConsumer consumer : trie.match(topic)) {
+				consumer.processMessage(topic, PAYLOAD);
+				deliveries++;
+			}
+		}
+		report("trie", System.nanoTime() - begin, deliveries);
+	}
+
+	/**
+	 * The topic matching which the broker connection used before the trie.
+	 */
+	private static boolean isTopicMatch(String source, String target) {
+		if (source.equals(target)) {
+			return true;
+		}
+		if (target.indexOf('+') == -1 && target.indexOf('#') == -1) {
+			return false;
+		}
+		String regex = target;
+		regex = StringUtils.replace(regex, "+", "[^/]*");
+		regex = StringUtils.replace(regex, "#", ".*");
+		return source.matches(regex);
+	}
+
+	private static void report(String name, long nanos, long deliveries) {
+		System.out.println(String.format("%-12s %16.0f %16d", name, MESSAGES / (nanos / 1e9), deliveries));
+	}
+
+}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.transport.mqtt.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.events.EventPublisher;
+import org.openhab.io.transport.mqtt.MqttMessageConsumer;
+
+/**
+ * @since 1.5.0
+ */
+public class TopicTrieTest {
+
+	private TopicTrie trie;
+
+	@Before
+	public void init() {
+		trie = new TopicTrie();
+	}
+
+	@Test
+	public void testExactTopics() {
+		add("home/kitchen/temperature");
+		add("home/kitchen");
+		add("home//temperature");
+
+		assertMatches("home/kitchen/temperature", "home/kitchen/temperature");
+		assertMatches("home/kitchen", "home/kitchen");
+		assertMatches("home//temperature", "home//temperature");
+		assertMatches("home");
+		assertMatches("home/kitchen/temperature/sensor");
+		assertMatches("home/kitchen/");
+	}
+
+	@Test
+	public void testSingleLevelWildcard() {
+		add("home/+/temperature");
+		add("+/+");
+		add("+");
+
+		assertMatches("home/kitchen/temperature", "home/+/temperature");
+		assertMatches("home//temperature", "home/+/temperature");
+		assertMatches("home/kitchen", "+/+");
+		assertMatches("home", "+");
+		assertMatches("home/kitchen/humidity");
+		assertMatches("home/kitchen/temperature/sensor");
+	}
+
+	@Test
+	public void testMultiLevelWildcard() {
+		add("home/#");
+		add("home/+/temperature/#");
+		add("#");
+
+		assertMatches("home", "home/#", "#");
+		assertMatches("home/kitchen/temperature", "home/#", "home/+/temperature/#", "#");
+		assertMatches("home/kitchen/temperature/sensor", "home/#", "home/+/temperature/#", "#");
+		assertMatches("garden", "#");
+	}
+
+	@Test
+	public void testSystemTopics() {
+		add("#");
+		add("+/broker/uptime");
+		add("$SYS/#");
+		add("$SYS/+/uptime");
+
+		assertMatches("$SYS/broker/uptime", "$SYS/#", "$SYS/+/uptime");
+		assertMatches("home/broker/uptime", "#", "+/broker/uptime");
+	}
+
+	@Test
+	public void testRemove() {
+		MqttMessageConsumer first = add("home/+/temperature");
+		MqttMessageConsumer second = add("home/+/temperature");
+		MqttMessageConsumer all = add("home/#");
+
+		trie.remove(first, first.getTopic());
+		assertMatches("home/kitchen/temperature", "home/+/temperature", "home/#");
+		trie.remove(second, second.getTopic());
+		trie.remove(all, "home/unknown");
+		assertMatches("home/kitchen/temperature", "home/#");
+		trie.remove(all, all.getTopic());
+		assertMatches("home/kitchen/temperature");
+		assertMatches("home");
+
+		add("home/kitchen");
+		assertMatches("home/kitchen", "home/kitchen");
+	}
+
+	private MqttMessageConsumer add(String topic) {
+		MqttMessageConsumer consumer = new TestConsumer(topic);
+		trie.add(consumer);
+		return consumer;
+	}
+
+	/**
+	 * Assert that exactly the consumers with the given topics match.
+	 */
+	private void assertMatches(String topic, String... expected) {
+		Set<String> topics = new HashSet<String>();
+		for (MqttMessageConsumer consumer : trie.match(topic)) {
+			assertTrue(topics.add(consumer.getTopic()));
+		}
+		Set<String> expectedTopics = new HashSet<String>();
+		for (String expectedTopic : expected) {
+			expectedTopics.add(expectedTopic);
+		}
+		assertEquals(expectedTopics, topics);
+	}
+
+	static class TestConsumer implements MqttMessageConsumer {
+
+		private String topic;
+
+		int messages;
+
+		TestConsumer(String topic) {
+			this.topic = topic;
+		}
+
+		public void processMessage(String topic, byte[] payload) {
+			messages++;
+		}
+
+		public String getTopic() {
+			return topic;
+		}
+
+		public void setTopic(String topic) {
+			this.topic = topic;
+		}
+
+		public void setEventPublisher(EventPublisher eventPublisher) {
+		}
+
+	}
+
+}
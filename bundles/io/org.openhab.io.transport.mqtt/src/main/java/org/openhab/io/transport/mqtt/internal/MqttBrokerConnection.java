@@ -78,6 +78,8 @@ public class MqttBrokerConnection implements MqttCallback {
 
 	private List<MqttMessageConsumer> consumers = new CopyOnWriteArrayList<MqttMessageConsumer>();
 
+	private TopicTrie consumersByTopic = new TopicTrie();
+
 	private List<MqttMessageProducer> producers = new CopyOnWriteArrayList<MqttMessageProducer>();
 
 	private Timer reconnectTimer;
@@ -455,6 +457,7 @@ public class MqttBrokerConnection implements MqttCallback {
 	 */
 	public synchronized void addConsumer(MqttMessageConsumer subscriber) {
 		consumers.add(subscriber);
+		consumersByTopic.add(subscriber);
 		if (started) {
 			startConsumer(subscriber);
 		}
@@ -508,6 +511,7 @@ public class MqttBrokerConnection implements MqttCallback {
 			logger.error("Error unsubscribing topic from broker", e);
 		}
 		consumers.remove(subscriber);
+		consumersByTopic.remove(subscriber, subscriber.getTopic());
 
 	}
 
@@ -559,48 +563,13 @@ public class MqttBrokerConnection implements MqttCallback {
 	public void messageArrived(String topic, MqttMessage message)
 			throws Exception {
 
-		logger.trace("Received message on topic '{}' : {}", topic, new String(
-				message.getPayload()));
-		for (MqttMessageConsumer consumer : consumers) {
-			if (isTopicMatch(topic, consumer.getTopic())) {
-				consumer.processMessage(topic, message.getPayload());
-			}
+		if (logger.isTraceEnabled()) {
+			logger.trace("Received message on topic '{}' : {}", topic,
+					new String(message.getPayload()));
 		}
-	}
-
-	/**
-	 * Check if the topic on which a message was received matches provided
-	 * target topic. The matching will take into account the + and # wildcards.
-	 * 
-	 * @param source
-	 *            topic from received message
-	 * @param target
-	 *            topic as defined with possible wildcards.
-	 * @return true if both topics match.
-	 */
-	private boolean isTopicMatch(String source, String target) {
-		if (source.equals(target)) {
-			return true;
+		for (MqttMessageConsumer consumer : consumersByTopic.match(topic)) {
+			consumer.processMessage(topic, message.getPayload());
 		}
-		if (target.indexOf('+') == -1 && target.indexOf('#') == -1) {
-			return false;
-		} else {
-
-			String regex = target;
-			regex = StringUtils.replace(regex, "+", "[^/]*");
-			regex = StringUtils.replace(regex, "#", ".*");
-			boolean result = source.matches(regex);
-			if (result) {
-				logger.trace("Topic match for '{}' and '{}' using regex {}",
-						source, target, regex);
-				return true;
-			} else {
-				logger.trace("No topic match for '{}' and '{}' using regex {}",
-						source, target, regex);
-				return false;
-			}
-		}
-
 	}
 
 }
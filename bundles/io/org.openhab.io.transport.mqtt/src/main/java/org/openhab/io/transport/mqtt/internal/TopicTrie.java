@@ -0,0 +1,180 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.io.transport.mqtt.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.openhab.io.transport.mqtt.MqttMessageConsumer;
+
+/**
+ * A trie of the topics of the message consumers of a broker connection, with
+ * one node per topic level. It finds the consumers of a received message by
+ * walking down the levels of its topic, so the effort depends on the depth of
+ * the topic rather than on the number of consumers.
+ *
+ * The wildcards are handled as defined by MQTT: a + matches exactly one
+ * level, a # matches any number of levels including the parent level, so
+ * a/# matches a, a/b and a/b/c. Topics starting with $ are not matched by
+ * wildcards on the first level.
+ *
+ * Consumers are added and removed while holding the lock of the connection,
+ * whereas messages are matched concurrently without any locking.
+ *
+ * @since 1.5.0
+ */
+class TopicTrie {
+
+	private static final String SINGLE_LEVEL_WILDCARD = "+";
+
+	private static final String MULTI_LEVEL_WILDCARD = "#";
+
+	private final Node root = new Node();
+
+	/**
+	 * Add a consumer for the topic it subscribes to.
+	 *
+	 * @param consumer
+	 *            to add.
+	 */
+	public void add(MqttMessageConsumer consumer) {
+		Node node = root;
+		for (String level : split(consumer.getTopic())) {
+			Node child = node.children.get(level);
+			if (child == null) {
+				child = new Node();
+				node.children.put(level, child);
+			}
+			node = child;
+		}
+		node.consumers.add(consumer);
+	}
+
+	/**
+	 * Remove a consumer which was added for the given topic.
+	 *
+	 * @param consumer
+	 *            to remove.
+	 * @param topic
+	 *            the consumer was added for.
+	 */
+	public void remove(MqttMessageConsumer consumer, String topic) {
+		List<String> levels = split(topic);
+		List<Node> path = new ArrayList<Node>(levels.size() + 1);
+		Node node = root;
+		path.add(node);
+		for (String level : levels) {
+			node = node.children.get(level);
+			if (node == null) {
+				return;
+			}
+			path.add(node);
+		}
+		node.consumers.remove(consumer);
+
+		// prune the nodes which are no longer needed
+		for (int i = levels.size(); i > 0; i--) {
+			Node child = path.get(i);
+			if (!child.consumers.isEmpty() || !child.children.isEmpty()) {
+				break;
+			}
+			path.get(i - 1).children.remove(levels.get(i - 1));
+		}
+	}
+
+	/**
+	 * Find the consumers whose topic matches the topic of a received message.
+	 *
+	 * @param topic
+	 *            topic from received message.
+	 * @return the matching consumers.
+	 */
+	public List<MqttMessageConsumer> match(String topic) {
+		List<MqttMessageConsumer> result = new ArrayList<MqttMessageConsumer>();
+		boolean wildcards = !topic.startsWith("$");
+		match(root, topic, 0, wildcards, result);
+		return result;
+	}
+
+	/**
+	 * Collect the consumers below a node which match the remaining levels of
+	 * a topic.
+	 *
+	 * @param node
+	 *            the node for the levels before the given position.
+	 * @param topic
+	 *            topic from received message.
+	 * @param start
+	 *            the position of the next level in the topic, or a position
+	 *            after the end of the topic if there are no more levels.
+	 * @param wildcards
+	 *            whether the next level may be matched by a wildcard.
+	 * @param result
+	 *            the list to add the matching consumers to.
+	 */
+	private void match(Node node, String topic, int start, boolean wildcards,
+			List<MqttMessageConsumer> result) {
+		if (wildcards) {
+			Node rest = node.children.get(MULTI_LEVEL_WILDCARD);
+			if (rest != null) {
+				result.addAll(rest.consumers);
+			}
+		}
+		if (start > topic.length()) {
+			result.addAll(node.consumers);
+			return;
+		}
+
+		int end = topic.indexOf('/', start);
+		if (end == -1) {
+			end = topic.length();
+		}
+		Node child = node.children.get(topic.substring(start, end));
+		if (child != null) {
+			match(child, topic, end + 1, true, result);
+		}
+		if (wildcards) {
+			child = node.children.get(SINGLE_LEVEL_WILDCARD);
+			if (child != null) {
+				match(child, topic, end + 1, true, result);
+			}
+		}
+	}
+
+	/**
+	 * @return the levels of a topic.
+	 */
+	private static List<String> split(String topic) {
+		List<String> levels = new ArrayList<String>();
+		int start = 0;
+		int end;
+		while ((end = topic.indexOf('/', start)) != -1) {
+			levels.add(topic.substring(start, end));
+			start = end + 1;
+		}
+		levels.add(topic.substring(start));
+		return levels;
+	}
+
+	/**
+	 * A topic level with its sub levels and the consumers of the topic which
+	 * ends at this level.
+	 */
+	private static class Node {
+
+		final Map<String, Node> children = new ConcurrentHashMap<String, Node>();
+
+		final List<MqttMessageConsumer> consumers = new CopyOnWriteArrayList<MqttMessageConsumer>();
+
+	}
+
+}
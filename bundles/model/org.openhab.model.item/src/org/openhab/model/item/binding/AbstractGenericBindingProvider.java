@@ -11,10 +11,12 @@ package org.openhab.model.item.binding;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.openhab.core.binding.BindingChangeListener;
@@ -49,6 +51,9 @@ public abstract class AbstractGenericBindingProvider implements BindingConfigRea
 	 * structure: context -> Set of Items
 	 */ 
 	protected Map<String, Set<Item>> contextMap = new ConcurrentHashMap<String, Set<Item>>();
+
+	/** the secondary indexes of the binding configurations, see {@link #addIndex(BindingConfigIndex)} */
+	private List<BindingConfigIndex<?>> indexes = new CopyOnWriteArrayList<BindingConfigIndex<?>>();
 	
 
 	public AbstractGenericBindingProvider() {
@@ -90,7 +95,12 @@ public abstract class AbstractGenericBindingProvider implements BindingConfigRea
 		if(items!=null) {
 			for(Item item : items) {
 				// we remove all binding configurations for all items
-				bindingConfigs.remove(item.getName());
+				synchronized(bindingConfigs) {
+					bindingConfigs.remove(item.getName());
+					for(BindingConfigIndex<?> index : indexes) {
+						index.remove(item.getName());
+					}
+				}
 				notifyListeners(item);
 			}
 			contextMap.remove(context);
@@ -98,10 +108,35 @@ public abstract class AbstractGenericBindingProvider implements BindingConfigRea
 	}
 	
 	protected void addBindingConfig(Item item, BindingConfig config) {
-		bindingConfigs.put(item.getName(), config);
+		synchronized(bindingConfigs) {
+			bindingConfigs.put(item.getName(), config);
+			for(BindingConfigIndex<?> index : indexes) {
+				index.remove(item.getName());
+				index.add(item.getName(), config);
+			}
+		}
 		notifyListeners(item);
 	}
 
+	/**
+	 * Registers a secondary index of the binding configurations, which is kept up to date
+	 * when binding configurations are added through {@link #addBindingConfig(Item, BindingConfig)}
+	 * or removed through {@link #removeConfigurations(String)}. Subclasses usually call it
+	 * when initializing a field for the index.
+	 * 
+	 * @param index the index to register
+	 * @return the given index, which already contains the current binding configurations
+	 */
+	protected <I extends BindingConfigIndex<?>> I addIndex(I index) {
+		synchronized(bindingConfigs) {
+			for(Map.Entry<String, BindingConfig> entry : bindingConfigs.entrySet()) {
+				index.add(entry.getKey(), entry.getValue());
+			}
+			indexes.add(index);
+		}
+		return index;
+	}
+
 	private void notifyListeners(Item item) {
 		for (BindingChangeListener listener : listeners) {
             try {
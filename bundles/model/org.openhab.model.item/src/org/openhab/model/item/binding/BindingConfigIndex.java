@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.model.item.binding;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import org.openhab.core.binding.BindingConfig;
+
+/**
+ * <p>A secondary index of the binding configs of an {@link AbstractGenericBindingProvider},
+ * which maps a key derived from each binding config to the names of the items with this
+ * key. Bindings use it to find the items of an incoming message, e.g. by a device address,
+ * instead of going through the binding configs of all items.</p>
+ *
+ * <p>A binding provider creates an index by implementing {@link #getKey(BindingConfig)}
+ * and registering it with {@link AbstractGenericBindingProvider#addIndex(BindingConfigIndex)}.
+ * The provider keeps it up to date whenever binding configs are added or removed. Lookups
+ * do not lock and can be done from any thread.</p>
+ *
+ * <pre>
+ * private final BindingConfigIndex&lt;String&gt; itemsByAddress = addIndex(new BindingConfigIndex&lt;String&gt;() {
+ * 	protected String getKey(BindingConfig config) {
+ * 		return ((MyBindingConfig) config).address;
+ * 	}
+ * });
+ * </pre>
+ *
+ * @param <K> the type of the keys
+ * @since 1.5.0
+ */
+public abstract class BindingConfigIndex<K> {
+
+	/** maps the keys to the names of the items with this key */
+	private final Map<K, Set<String>> itemNamesByKey = new ConcurrentHashMap<K, Set<String>>();
+
+	/** maps the item names to their keys, so that they can be removed even if the config has changed */
+	private final Map<String, K> keysByItemName = new ConcurrentHashMap<String, K>();
+
+	/**
+	 * Returns the key by which a binding config is indexed.
+	 *
+	 * @param config the binding config
+	 * @return the key of the binding config or <code>null</code>, if it is not indexed
+	 */
+	protected abstract K getKey(BindingConfig config);
+
+	/**
+	 * Returns the names of the items whose binding config has the given key.
+	 *
+	 * @param key the key to look up
+	 * @return the item names in the order in which they were added, an empty collection
+	 *   if there are none
+	 */
+	public Collection<String> getItemNames(K key) {
+		Set<String> itemNames = key!=null ? itemNamesByKey.get(key) : null;
+		if(itemNames==null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(itemNames);
+	}
+
+	/**
+	 * Adds the binding config of an item. Has to be called while holding the lock of the binding configs.
+	 */
+	void add(String itemName, BindingConfig config) {
+		K key = getKey(config);
+		if(key!=null) {
+			Set<String> itemNames = itemNamesByKey.get(key);
+			if(itemNames==null) {
+				itemNames = new CopyOnWriteArraySet<String>();
+				itemNamesByKey.put(key, itemNames);
+			}
+			itemNames.add(itemName);
+			keysByItemName.put(itemName, key);
+		}
+	}
+
+	/**
+	 * Removes the binding config of an item. Has to be called while holding the lock of the binding configs.
+	 */
+	void remove(String itemName) {
+		K key = keysByItemName.remove(itemName);
+		if(key!=null) {
+			Set<String> itemNames = itemNamesByKey.get(key);
+			if(itemNames!=null) {
+				itemNames.remove(itemName);
+				if(itemNames.isEmpty()) {
+					itemNamesByKey.remove(key);
+				}
+			}
+		}
+	}
+
+}
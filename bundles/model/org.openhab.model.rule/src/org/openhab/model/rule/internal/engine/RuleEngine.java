@@ -8,8 +8,6 @@
  */
 package org.openhab.model.rule.internal.engine;
 
-import static org.openhab.core.events.EventConstants.TOPIC_PREFIX;
-import static org.openhab.core.events.EventConstants.TOPIC_SEPERATOR;
 import static org.openhab.model.rule.internal.engine.RuleTriggerManager.TriggerTypes.CHANGE;
 import static org.openhab.model.rule.internal.engine.RuleTriggerManager.TriggerTypes.COMMAND;
 import static org.openhab.model.rule.internal.engine.RuleTriggerManager.TriggerTypes.SHUTDOWN;
@@ -18,10 +16,14 @@ import static org.openhab.model.rule.internal.engine.RuleTriggerManager.TriggerT
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Dictionary;
 import java.util.List;
 
+import org.apache.commons.lang.StringUtils;
+
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.xtext.naming.QualifiedName;
+import org.openhab.core.events.ItemEvent;
 import org.openhab.core.items.GenericItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
@@ -31,7 +33,6 @@ import org.openhab.core.items.StateChangeListener;
 import org.openhab.core.scriptengine.Script;
 import org.openhab.core.scriptengine.ScriptEngine;
 import org.openhab.core.scriptengine.ScriptExecutionException;
-import org.openhab.core.scriptengine.ScriptExecutionThread;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.EventType;
 import org.openhab.core.types.State;
@@ -39,6 +40,8 @@ import org.openhab.model.core.ModelRepository;
 import org.openhab.model.core.ModelRepositoryChangeListener;
 import org.openhab.model.rule.rules.Rule;
 import org.openhab.model.rule.rules.RuleModel;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.cm.ManagedService;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventHandler;
 import org.slf4j.Logger;
@@ -51,24 +54,44 @@ import com.google.common.collect.Lists;
  * This class is the core of the openHAB rule engine.
  * It listens to changes to the rules folder, evaluates the trigger conditions of the rules and
  * schedules them for execution dependent on their triggering conditions.
+ * Triggered rules are executed by a {@link RuleExecutor}, whose pool size, queue size
+ * and per-rule serialization and coalescing can be configured through the
+ * <code>rules:</code> section of openhab.cfg.
  * 
  * @author Kai Kreuzer
  * @since 0.9.0
  *
  */
 @SuppressWarnings("restriction")
-public class RuleEngine implements EventHandler, ItemRegistryChangeListener, StateChangeListener, ModelRepositoryChangeListener {
+public class RuleEngine implements EventHandler, ItemRegistryChangeListener, StateChangeListener, ModelRepositoryChangeListener, ManagedService {
 
 		static private final Logger logger = LoggerFactory.getLogger(RuleEngine.class);
 		
+		/** the default number of rules that can be executed concurrently */
+		private static final int DEFAULT_POOL_SIZE = 10;
+
+		/** the default number of rule executions that can wait for a free worker thread */
+		private static final int DEFAULT_QUEUE_SIZE = 1000;
+
+		/** the time to wait for running rules when the rule executor is shut down */
+		private static final long SHUTDOWN_TIMEOUT_MS = 5000;
+		
 		private ItemRegistry itemRegistry;
 		private ModelRepository modelRepository;
 		private ScriptEngine scriptEngine;
 
 		private RuleTriggerManager triggerManager;
+
+		private volatile RuleExecutor ruleExecutor;
+
+		private int poolSize = DEFAULT_POOL_SIZE;
+		private int queueSize = DEFAULT_QUEUE_SIZE;
+		private boolean serialize = false;
+		private boolean coalesce = false;
 						
 		public void activate() {
 			triggerManager = new RuleTriggerManager();
+			ruleExecutor = createRuleExecutor();
 
 			if(!isEnabled()) {
 				logger.info("Rule engine is disabled.");
@@ -100,6 +123,63 @@ public class RuleEngine implements EventHandler, ItemRegistryChangeListener, Sta
 			executeRules(triggerManager.getRules(SHUTDOWN));
 			triggerManager.clearAll();
 			triggerManager = null;
+			
+			RuleExecutor executor = ruleExecutor;
+			ruleExecutor = null;
+			if(executor!=null) {
+				executor.shutdown(SHUTDOWN_TIMEOUT_MS);
+			}
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 */
+		@SuppressWarnings("rawtypes")
+		public void updated(Dictionary config) throws ConfigurationException {
+			if(config==null) {
+				return;
+			}
+			poolSize = parseSize(config, "poolsize", DEFAULT_POOL_SIZE);
+			queueSize = parseSize(config, "queuesize", DEFAULT_QUEUE_SIZE);
+			serialize = "true".equalsIgnoreCase(StringUtils.trim((String) config.get("serialize")));
+			coalesce = "true".equalsIgnoreCase(StringUtils.trim((String) config.get("coalesce")));
+			
+			// replace a running executor, the old one finishes the rules it has already accepted
+			RuleExecutor oldExecutor = ruleExecutor;
+			if(oldExecutor!=null) {
+				ruleExecutor = createRuleExecutor();
+				oldExecutor.shutdown(SHUTDOWN_TIMEOUT_MS);
+			}
+		}
+		
+		@SuppressWarnings("rawtypes")
+		private int parseSize(Dictionary config, String key, int defaultValue) throws ConfigurationException {
+			String value = (String) config.get(key);
+			if(StringUtils.isBlank(value)) {
+				return defaultValue;
+			}
+			try {
+				int size = Integer.parseInt(value.trim());
+				if(size > 0) {
+					return size;
+				}
+			} catch(NumberFormatException e) {}
+			throw new ConfigurationException(key, "The value '" + value + "' is not a positive number.");
+		}
+		
+		private RuleExecutor createRuleExecutor() {
+			logger.debug("Creating rule executor (pool size {}, queue size {}, serialize {}, coalesce {})",
+					new Object[] { poolSize, queueSize, serialize, coalesce });
+			return new RuleExecutor(poolSize, queueSize, serialize, coalesce);
+		}
+		
+		/**
+		 * Returns the executor which runs the triggered rules.
+		 * 
+		 * @return the rule executor or <code>null</code>, if the rule engine is not active
+		 */
+		public RuleExecutor getRuleExecutor() {
+			return ruleExecutor;
 		}
 		
 		public void setItemRegistry(ItemRegistry itemRegistry) {
@@ -166,9 +246,7 @@ public class RuleEngine implements EventHandler, ItemRegistryChangeListener, Sta
 		public void stateChanged(Item item, State oldState, State newState) {			
 			if(triggerManager!=null) {
 				Iterable<Rule> rules = triggerManager.getRules(CHANGE, item, oldState, newState);
-				RuleEvaluationContext context = new RuleEvaluationContext();
-				context.newValue(QualifiedName.create(RuleContextHelper.VAR_PREVIOUS_STATE), oldState);
-				executeRules(rules, context);
+				executeRules(rules, QualifiedName.create(RuleContextHelper.VAR_PREVIOUS_STATE), oldState);
 			}
 		}
 
@@ -187,9 +265,7 @@ public class RuleEngine implements EventHandler, ItemRegistryChangeListener, Sta
 				try {
 					Item item = itemRegistry.getItem(itemName);
 					Iterable<Rule> rules = triggerManager.getRules(COMMAND, item, command);
-					RuleEvaluationContext context = new RuleEvaluationContext();
-					context.newValue(QualifiedName.create(RuleContextHelper.VAR_RECEIVED_COMMAND), command);
-					executeRules(rules, context);
+					executeRules(rules, QualifiedName.create(RuleContextHelper.VAR_RECEIVED_COMMAND), command);
 				} catch (ItemNotFoundException e) {
 					// ignore commands for non-existent items
 				}
@@ -207,19 +283,9 @@ public class RuleEngine implements EventHandler, ItemRegistryChangeListener, Sta
 		 * {@inheritDoc}
 		 */
 		public void handleEvent(Event event) {  
-			String itemName = (String) event.getProperty("item");
-			
-			String topic = event.getTopic();
-			String[] topicParts = topic.split(TOPIC_SEPERATOR);
-			
-			if(!(topicParts.length > 2) || !topicParts[0].equals(TOPIC_PREFIX)) {
-				return; // we have received an event with an invalid topic
-			}
-			String operation = topicParts[1];
-			
-			if(operation.equals(EventType.COMMAND.toString())) {
-				Command command = (Command) event.getProperty("command");
-				if(command!=null) receiveCommand(itemName, command);
+			ItemEvent itemEvent = ItemEvent.fromEvent(event);
+			if(itemEvent!=null && itemEvent.getType()==EventType.COMMAND) {
+				receiveCommand(itemEvent.getItemName(), itemEvent.getCommand());
 			}
 		}
 
@@ -275,27 +341,43 @@ public class RuleEngine implements EventHandler, ItemRegistryChangeListener, Sta
 			}
 		}
 
-		protected synchronized void executeRule(Rule rule) {
+		protected void executeRule(Rule rule) {
 			executeRule(rule, new RuleEvaluationContext());
 		}
 			
-		protected synchronized void executeRule(Rule rule, RuleEvaluationContext context) {
+		protected void executeRule(Rule rule, RuleEvaluationContext context) {
 			Script script = scriptEngine.newScriptFromXExpression(rule.getScript());
 			
-			logger.debug("Executing rule '{}'", rule.getName());
+			logger.debug("Scheduling rule '{}' for execution", rule.getName());
 			
 			context.setGlobalContext(RuleContextHelper.getContext(rule));
 			
-			ScriptExecutionThread thread = new ScriptExecutionThread(rule.getName(), script, context);
-			thread.start();
+			RuleExecutor executor = ruleExecutor;
+			if(executor!=null) {
+				executor.execute(rule.getName(), script, context);
+			} else {
+				logger.debug("Rule engine is not active, skipping execution of rule '{}'", rule.getName());
+			}
 		}
 
-		protected synchronized void executeRules(Iterable<Rule> rules) {
-			executeRules(rules, new RuleEvaluationContext());
+		protected void executeRules(Iterable<Rule> rules) {
+			executeRules(rules, null, null);
 		}
 		
-		protected synchronized void executeRules(Iterable<Rule> rules, RuleEvaluationContext context) {
+		/**
+		 * Executes the given rules, each of them with its own evaluation context, as the
+		 * rules might run concurrently.
+		 * 
+		 * @param rules the rules to execute
+		 * @param variable the name of a variable to set in the context of each rule, may be <code>null</code>
+		 * @param value the value of the variable
+		 */
+		protected void executeRules(Iterable<Rule> rules, QualifiedName variable, Object value) {
 			for(Rule rule : rules) {
+				RuleEvaluationContext context = new RuleEvaluationContext();
+				if(variable!=null) {
+					context.newValue(variable, value);
+				}
 				executeRule(rule, context);
 			}
 		}
@@ -0,0 +1,353 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.model.rule.internal.engine;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.xtext.xbase.interpreter.IEvaluationContext;
+import org.openhab.core.scriptengine.Script;
+import org.openhab.core.scriptengine.ScriptExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes rule scripts on a bounded pool of worker threads instead of starting
+ * a new thread for every rule firing.
+ * <p>
+ * Rule executions which cannot be handed to a worker because the pool and its
+ * queue are exhausted are executed by the calling thread, so that no rule firing
+ * gets lost. Optionally the executions of a single rule can be serialized (a rule
+ * never runs concurrently with itself) and coalesced (a firing which is still
+ * waiting for execution is replaced by a newer one instead of queueing both).
+ *
+ * @since 1.5.0
+ */
+@SuppressWarnings("restriction")
+public class RuleExecutor {
+
+	static private final Logger logger = LoggerFactory.getLogger(RuleExecutor.class);
+
+	private final ThreadPoolExecutor executor;
+
+	private final boolean serialize;
+
+	private final boolean coalesce;
+
+	/** the pending and running executions per rule name (guarded by itself) */
+	private final Map<String, RuleQueue> ruleQueues = new HashMap<String, RuleQueue>();
+
+	private final ConcurrentMap<String, RuleStatistics> statistics = new ConcurrentHashMap<String, RuleStatistics>();
+
+	/**
+	 * Creates a new rule executor.
+	 *
+	 * @param poolSize the maximum number of rules which are executed concurrently
+	 * @param queueSize the number of rule executions which may wait for a free worker
+	 * @param serialize <code>true</code>, if the executions of a single rule must not overlap
+	 * @param coalesce <code>true</code>, if a waiting execution of a rule should be replaced
+	 *        by a newer firing of the same rule
+	 */
+	public RuleExecutor(int poolSize, int queueSize, boolean serialize, boolean coalesce) {
+		this.serialize = serialize;
+		this.coalesce = coalesce;
+		this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), new RuleThreadFactory(), new CallerRunsWithWarningPolicy());
+	}
+
+	/**
+	 * Schedules the execution of a rule script.
+	 *
+	 * @param ruleName the name of the rule, used for serialization, statistics and logging
+	 * @param script the script to execute
+	 * @param context the evaluation context to execute the script with
+	 */
+	public void execute(String ruleName, Script script, IEvaluationContext context) {
+		RuleExecution execution;
+		synchronized (ruleQueues) {
+			RuleQueue queue = ruleQueues.get(ruleName);
+			if (queue == null) {
+				queue = new RuleQueue();
+				ruleQueues.put(ruleName, queue);
+			}
+			if (coalesce && !queue.pending.isEmpty()) {
+				// a firing of this rule is still waiting, let it run with the latest context instead
+				RuleExecution waiting = queue.pending.getLast();
+				waiting.script = script;
+				waiting.context = context;
+				getStatistics(ruleName).coalescedCount.incrementAndGet();
+				logger.debug("Coalesced execution of rule '{}' with a waiting one", ruleName);
+				return;
+			}
+			execution = new RuleExecution(ruleName, queue, script, context);
+			queue.pending.add(execution);
+			if (serialize) {
+				if (queue.running) {
+					// will be dispatched as soon as the running execution has finished
+					return;
+				}
+				queue.running = true;
+			}
+		}
+		dispatch(execution);
+	}
+
+	/**
+	 * Stops accepting new rule executions and waits for the queued and running ones
+	 * to finish.
+	 *
+	 * @param timeout the maximum time to wait in milliseconds
+	 */
+	public void shutdown(long timeout) {
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(timeout, TimeUnit.MILLISECONDS)) {
+				logger.warn("Rule executions did not finish within {}ms, interrupting them", timeout);
+				executor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return the number of rule executions which are waiting for a free worker thread
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * @return the number of worker threads which are currently executing a rule
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * Returns the execution statistics of all rules that have been executed so far.
+	 *
+	 * @return an unmodifiable map of rule names to their statistics
+	 */
+	public Map<String, RuleStatistics> getStatistics() {
+		return Collections.unmodifiableMap(statistics);
+	}
+
+	private RuleStatistics getStatistics(String ruleName) {
+		RuleStatistics ruleStatistics = statistics.get(ruleName);
+		if (ruleStatistics == null) {
+			RuleStatistics newStatistics = new RuleStatistics();
+			ruleStatistics = statistics.putIfAbsent(ruleName, newStatistics);
+			if (ruleStatistics == null) {
+				ruleStatistics = newStatistics;
+			}
+		}
+		return ruleStatistics;
+	}
+
+	private void dispatch(RuleExecution execution) {
+		if (executor.isShutdown()) {
+			// we are shutting down, so execute the remaining rules right away
+			execution.run();
+		} else {
+			executor.execute(execution);
+		}
+	}
+
+	private void finished(RuleExecution execution) {
+		if (!serialize) {
+			return;
+		}
+		RuleExecution next;
+		synchronized (ruleQueues) {
+			next = execution.queue.pending.peek();
+			if (next == null) {
+				execution.queue.running = false;
+			}
+		}
+		if (next != null) {
+			dispatch(next);
+		}
+	}
+
+	/**
+	 * The pending executions of a single rule.
+	 */
+	private static class RuleQueue {
+		/** executions which have not been started yet, in the order of their firing */
+		final LinkedList<RuleExecution> pending = new LinkedList<RuleExecution>();
+		/** whether an execution of this rule is dispatched or running (only used when serializing) */
+		boolean running = false;
+	}
+
+	private class RuleExecution implements Runnable {
+
+		final String ruleName;
+		final RuleQueue queue;
+		final long submittedNanos = System.nanoTime();
+
+		// may be replaced through coalescing as long as the execution is pending
+		Script script;
+		IEvaluationContext context;
+
+		RuleExecution(String ruleName, RuleQueue queue, Script script, IEvaluationContext context) {
+			this.ruleName = ruleName;
+			this.queue = queue;
+			this.script = script;
+			this.context = context;
+		}
+
+		public void run() {
+			Script script;
+			IEvaluationContext context;
+			synchronized (ruleQueues) {
+				queue.pending.remove(this);
+				script = this.script;
+				context = this.context;
+			}
+
+			Thread thread = Thread.currentThread();
+			String threadName = thread.getName();
+			thread.setName(ruleName);
+			long startNanos = System.nanoTime();
+			try {
+				logger.debug("Executing rule '{}'", ruleName);
+				script.execute(context);
+			} catch (ScriptExecutionException e) {
+				String msg = e.getCause().getMessage();
+				if (msg == null) {
+					logger.error("Error during the execution of rule '{}'", ruleName, e.getCause());
+				} else {
+					logger.error("Error during the execution of rule '{}': {}", new String[] { ruleName, msg });
+				}
+			} catch (RuntimeException e) {
+				logger.error("Error during the execution of rule '{}'", ruleName, e);
+			} finally {
+				long endNanos = System.nanoTime();
+				thread.setName(threadName);
+				getStatistics(ruleName).record(startNanos - submittedNanos, endNanos - startNanos);
+				finished(this);
+			}
+		}
+	}
+
+	/**
+	 * Execution statistics of a single rule.
+	 */
+	public static class RuleStatistics {
+
+		private final AtomicLong executionCount = new AtomicLong();
+		private final AtomicLong coalescedCount = new AtomicLong();
+		private final AtomicLong totalWaitNanos = new AtomicLong();
+		private final AtomicLong maxWaitNanos = new AtomicLong();
+		private final AtomicLong totalExecutionNanos = new AtomicLong();
+		private final AtomicLong maxExecutionNanos = new AtomicLong();
+
+		void record(long waitNanos, long executionNanos) {
+			executionCount.incrementAndGet();
+			totalWaitNanos.addAndGet(waitNanos);
+			totalExecutionNanos.addAndGet(executionNanos);
+			updateMax(maxWaitNanos, waitNanos);
+			updateMax(maxExecutionNanos, executionNanos);
+		}
+
+		private static void updateMax(AtomicLong max, long value) {
+			long current = max.get();
+			while (value > current && !max.compareAndSet(current, value)) {
+				current = max.get();
+			}
+		}
+
+		/**
+		 * @return the number of finished executions
+		 */
+		public long getExecutionCount() {
+			return executionCount.get();
+		}
+
+		/**
+		 * @return the number of firings which have been merged into an already waiting execution
+		 */
+		public long getCoalescedCount() {
+			return coalescedCount.get();
+		}
+
+		/**
+		 * @return the average time in milliseconds an execution waited for a worker thread
+		 */
+		public double getAverageWaitMillis() {
+			long count = executionCount.get();
+			return count == 0 ? 0 : totalWaitNanos.get() / (count * 1000000.0);
+		}
+
+		/**
+		 * @return the longest time in milliseconds an execution waited for a worker thread
+		 */
+		public double getMaxWaitMillis() {
+			return maxWaitNanos.get() / 1000000.0;
+		}
+
+		/**
+		 * @return the average execution time in milliseconds
+		 */
+		public double getAverageExecutionMillis() {
+			long count = executionCount.get();
+			return count == 0 ? 0 : totalExecutionNanos.get() / (count * 1000000.0);
+		}
+
+		/**
+		 * @return the longest execution time in milliseconds
+		 */
+		public double getMaxExecutionMillis() {
+			return maxExecutionNanos.get() / 1000000.0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("executions=%d, coalesced=%d, wait avg/max=%.1f/%.1fms, execution avg/max=%.1f/%.1fms",
+					getExecutionCount(), getCoalescedCount(), getAverageWaitMillis(), getMaxWaitMillis(),
+					getAverageExecutionMillis(), getMaxExecutionMillis());
+		}
+	}
+
+	private static class RuleThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "RuleExecutor-" + threadNumber.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * Runs a rule in the calling thread if it cannot be handed over to a worker.
+	 */
+	private static class CallerRunsWithWarningPolicy implements RejectedExecutionHandler {
+
+		public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+			logger.warn("Rule execution queue is full, executing rule in the calling thread");
+			runnable.run();
+		}
+	}
+
+}
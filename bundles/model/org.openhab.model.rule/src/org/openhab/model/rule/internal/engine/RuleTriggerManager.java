@@ -17,12 +17,17 @@ import static org.openhab.model.rule.internal.engine.RuleTriggerManager.TriggerT
 import static org.quartz.JobBuilder.newJob;
 import static org.quartz.TriggerBuilder.newTrigger;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.eclipse.emf.ecore.util.EcoreUtil;
 import org.openhab.core.items.Item;
@@ -51,7 +56,6 @@ import org.quartz.impl.matchers.GroupMatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -78,10 +82,10 @@ public class RuleTriggerManager {
 		TIMER		// fires at a given time
 	}
 	
-	// lookup maps for different triggering conditions
-	private Map<String, Set<Rule>> updateEventTriggeredRules = Maps.newHashMap();
-	private Map<String, Set<Rule>> changedEventTriggeredRules = Maps.newHashMap();
-	private Map<String, Set<Rule>> commandEventTriggeredRules = Maps.newHashMap();
+	// lookup maps for different triggering conditions, the arrays are never modified but replaced
+	private ConcurrentMap<String, RuleMatcher[]> updateEventTriggeredRules = new ConcurrentHashMap<String, RuleMatcher[]>();
+	private ConcurrentMap<String, RuleMatcher[]> changedEventTriggeredRules = new ConcurrentHashMap<String, RuleMatcher[]>();
+	private ConcurrentMap<String, RuleMatcher[]> commandEventTriggeredRules = new ConcurrentHashMap<String, RuleMatcher[]>();
 	private List<Rule> systemStartupTriggeredRules = Lists.newArrayList();
 	private List<Rule> systemShutdownTriggeredRules = Lists.newArrayList();
 	private List<Rule> timerEventTriggeredRules = Lists.newArrayList();
@@ -109,9 +113,9 @@ public class RuleTriggerManager {
 			case STARTUP:  result = systemStartupTriggeredRules; break;
 			case SHUTDOWN: result = systemShutdownTriggeredRules; break;
 			case TIMER:    result = timerEventTriggeredRules; break;
-			case UPDATE:   result = Iterables.concat(updateEventTriggeredRules.values()); break;
-			case CHANGE:   result = Iterables.concat(changedEventTriggeredRules.values()); break;
-			case COMMAND:  result = Iterables.concat(commandEventTriggeredRules.values()); break;
+			case UPDATE:   result = getAllRules(updateEventTriggeredRules); break;
+			case CHANGE:   result = getAllRules(changedEventTriggeredRules); break;
+			case COMMAND:  result = getAllRules(commandEventTriggeredRules); break;
 			default:       result = Sets.newHashSet();
 		}
 		return result;
@@ -154,94 +158,62 @@ public class RuleTriggerManager {
 		return internalGetRules(triggerType, item, null, command);
 	}
 
-	private Iterable<Rule> getAllRules(TriggerTypes type, String itemName) {
-		switch(type) {
-			case STARTUP:  return systemStartupTriggeredRules;
-			case SHUTDOWN: return systemShutdownTriggeredRules;
-			case UPDATE:   return updateEventTriggeredRules.get(itemName);
-			case CHANGE:   return changedEventTriggeredRules.get(itemName);
-			case COMMAND:  return commandEventTriggeredRules.get(itemName);
-			default:       return Sets.newHashSet();
+	private Iterable<Rule> getAllRules(Map<String, RuleMatcher[]> matcherMap) {
+		Set<Rule> result = new LinkedHashSet<Rule>();
+		for(RuleMatcher[] matchers : matcherMap.values()) {
+			for(RuleMatcher matcher : matchers) {
+				result.add(matcher.rule);
+			}
 		}
+		return result;
 	}
 
 	private Iterable<Rule> internalGetRules(TriggerTypes triggerType, Item item, Type oldType, Type newType) {
-		List<Rule> result = Lists.newArrayList();
-		Iterable<Rule> rules = getAllRules(triggerType, item.getName());
-		if(rules==null) {
-			rules = Lists.newArrayList();
-		}
 		switch(triggerType) {
 		case STARTUP:  return systemStartupTriggeredRules;
 		case SHUTDOWN: return systemShutdownTriggeredRules;
 		case TIMER :   return timerEventTriggeredRules;
 		case UPDATE:   
 			if(newType instanceof State) {
-				State state = (State) newType;
-				for(Rule rule : rules) {
-					for(EventTrigger t : rule.getEventtrigger()) {
-						if (t instanceof UpdateEventTrigger) {
-							UpdateEventTrigger ut = (UpdateEventTrigger) t;
-							if(ut.getItem().equals(item.getName())) {
-								if(ut.getState()!=null) {
-									State triggerState = TypeParser.parseState(item.getAcceptedDataTypes(), ut.getState());
-									if(!state.equals(triggerState)) {
-										continue;
-									}
-								}
-								result.add(rule);
-							}
-						}
-					}
-				}
+				return getMatchingRules(updateEventTriggeredRules, triggerType, item, null, newType);
 			}
 			break;
 		case CHANGE:
 			if(newType instanceof State && oldType instanceof State) {
-				State newState = (State) newType;
-				State oldState = (State) oldType;
-				for(Rule rule : rules) {
-					for(EventTrigger t : rule.getEventtrigger()) {
-						if (t instanceof ChangedEventTrigger) {
-							ChangedEventTrigger ct = (ChangedEventTrigger) t;						
-							if(ct.getItem().equals(item.getName())) {
-								if(ct.getOldState()!=null) {
-									State triggerOldState = TypeParser.parseState(item.getAcceptedDataTypes(), ct.getOldState());
-									if(!oldState.equals(triggerOldState)) {
-										continue;
-									}								
-								}
-								if(ct.getNewState()!=null) {
-									State triggerNewState = TypeParser.parseState(item.getAcceptedDataTypes(), ct.getNewState());
-									if(!newState.equals(triggerNewState)) {
-										continue;
-									}								
-								}
-								result.add(rule);
-							}
-						}
-					}
-				}
+				return getMatchingRules(changedEventTriggeredRules, triggerType, item, oldType, newType);
 			}
 			break;
 		case COMMAND:  
 			if(newType instanceof Command) {
-				Command command = (Command) newType;
-				for(Rule rule : rules) {
-					for(EventTrigger t : rule.getEventtrigger()) {
-						if (t instanceof CommandEventTrigger) {
-							CommandEventTrigger ct = (CommandEventTrigger) t;
-							Command triggerCommand = TypeParser.parseCommand(item.getAcceptedCommandTypes(), ct.getCommand());
-							if(ct.getItem().equals(item.getName()) &&
-									(triggerCommand==null || command.equals(triggerCommand))) {
-								result.add(rule);
-							}
-						}
-					}
-				}
+				return getMatchingRules(commandEventTriggeredRules, triggerType, item, null, newType);
 			}
 			break;
 		}
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Evaluates the precompiled trigger conditions for an item. Unless a rule matches,
+	 * this does not allocate any objects.
+	 */
+	private Iterable<Rule> getMatchingRules(Map<String, RuleMatcher[]> matcherMap, TriggerTypes triggerType, 
+			Item item, Type oldType, Type newType) {
+		RuleMatcher[] matchers = matcherMap.get(item.getName());
+		if(matchers==null) {
+			return Collections.emptyList();
+		}
+		List<Rule> result = null;
+		for(int i = 0; i < matchers.length; i++) {
+			if(matchers[i].matches(triggerType, item, oldType, newType)) {
+				if(result==null) {
+					result = new ArrayList<Rule>(matchers.length);
+				}
+				result.add(matchers[i].rule);
+			}
+		}
+		if(result==null) {
+			return Collections.emptyList();
+		}
 		return result;
 	}
 
@@ -277,11 +249,16 @@ public class RuleTriggerManager {
 	}
 	
 	/**
-	 * Adds a given rule to the mapping tables
+	 * Adds a given rule to the mapping tables. The trigger conditions of the rule are
+	 * compiled into {@link RuleMatcher}s per item, so that the state and command literals 
+	 * do not need to be parsed again for every event.
 	 * 
 	 * @param rule the rule to add
 	 */
 	public synchronized void addRule(Rule rule) {
+		Map<String, List<TriggerCondition>> updateConditions = Maps.newHashMap();
+		Map<String, List<TriggerCondition>> changedConditions = Maps.newHashMap();
+		Map<String, List<TriggerCondition>> commandConditions = Maps.newHashMap();
 		for(EventTrigger t : rule.getEventtrigger()) {
 			// add the rule to the lookup map for the trigger kind
 			if(t instanceof SystemOnStartupTrigger) {
@@ -290,28 +267,16 @@ public class RuleTriggerManager {
 				systemShutdownTriggeredRules.add(rule);
 			} else if(t instanceof CommandEventTrigger) {
 				CommandEventTrigger ceTrigger = (CommandEventTrigger) t;
-				Set<Rule> rules = commandEventTriggeredRules.get(ceTrigger.getItem());
-				if(rules==null) {
-					rules = new HashSet<Rule>();
-					commandEventTriggeredRules.put(ceTrigger.getItem(), rules);
-				}
-				rules.add(rule);
+				addCondition(commandConditions, ceTrigger.getItem(), 
+						new TriggerCondition(new TypeLiteral(ceTrigger.getCommand()), null));
 			} else if(t instanceof UpdateEventTrigger) {
 				UpdateEventTrigger ueTrigger = (UpdateEventTrigger) t;
-				Set<Rule> rules = updateEventTriggeredRules.get(ueTrigger.getItem());
-				if(rules==null) {
-					rules = new HashSet<Rule>();
-					updateEventTriggeredRules.put(ueTrigger.getItem(), rules);
-				}
-				rules.add(rule);
+				addCondition(updateConditions, ueTrigger.getItem(), 
+						new TriggerCondition(TypeLiteral.create(ueTrigger.getState()), null));
 			} else if(t instanceof ChangedEventTrigger) {
 				ChangedEventTrigger ceTrigger = (ChangedEventTrigger) t;
-				Set<Rule> rules = changedEventTriggeredRules.get(ceTrigger.getItem());
-				if(rules==null) {
-					rules = new HashSet<Rule>();
-					changedEventTriggeredRules.put(ceTrigger.getItem(), rules);
-				}
-				rules.add(rule);
+				addCondition(changedConditions, ceTrigger.getItem(), 
+						new TriggerCondition(TypeLiteral.create(ceTrigger.getOldState()), TypeLiteral.create(ceTrigger.getNewState())));
 			} else if(t instanceof TimerTrigger) {
 				timerEventTriggeredRules.add(rule);
 				try {
@@ -321,6 +286,38 @@ public class RuleTriggerManager {
 				}
 			}
 		}
+		addMatchers(updateEventTriggeredRules, rule, updateConditions);
+		addMatchers(changedEventTriggeredRules, rule, changedConditions);
+		addMatchers(commandEventTriggeredRules, rule, commandConditions);
+	}
+
+	private void addCondition(Map<String, List<TriggerCondition>> conditions, String itemName, TriggerCondition condition) {
+		List<TriggerCondition> itemConditions = conditions.get(itemName);
+		if(itemConditions==null) {
+			itemConditions = Lists.newArrayList();
+			conditions.put(itemName, itemConditions);
+		}
+		itemConditions.add(condition);
+	}
+
+	private void addMatchers(ConcurrentMap<String, RuleMatcher[]> matcherMap, Rule rule, Map<String, List<TriggerCondition>> conditions) {
+		for(Entry<String, List<TriggerCondition>> entry : conditions.entrySet()) {
+			List<TriggerCondition> itemConditions = entry.getValue();
+			RuleMatcher matcher = new RuleMatcher(rule, itemConditions.toArray(new TriggerCondition[itemConditions.size()]));
+			
+			List<RuleMatcher> matchers = Lists.newArrayList();
+			RuleMatcher[] existingMatchers = matcherMap.get(entry.getKey());
+			if(existingMatchers!=null) {
+				for(RuleMatcher existingMatcher : existingMatchers) {
+					// a rule which is added again replaces its former conditions
+					if(!existingMatcher.rule.equals(rule)) {
+						matchers.add(existingMatcher);
+					}
+				}
+			}
+			matchers.add(matcher);
+			matcherMap.put(entry.getKey(), matchers.toArray(new RuleMatcher[matchers.size()]));
+		}
 	}
 		
 	/**
@@ -329,13 +326,13 @@ public class RuleTriggerManager {
 	 * @param type the trigger type for which the rule should be removed
 	 * @param rule the rule to add
 	 */
-	public void removeRule(TriggerTypes type, Rule rule) {
+	public synchronized void removeRule(TriggerTypes type, Rule rule) {
 		switch(type) {
 			case STARTUP:  	systemStartupTriggeredRules.remove(rule); break;
 			case SHUTDOWN: 	systemShutdownTriggeredRules.remove(rule); break;
-			case UPDATE:   	updateEventTriggeredRules.remove(rule); break;
-			case CHANGE:   	changedEventTriggeredRules.remove(rule); break;
-			case COMMAND:  	commandEventTriggeredRules.remove(rule); break;
+			case UPDATE:   	removeMatchers(updateEventTriggeredRules, Collections.singleton(rule)); break;
+			case CHANGE:   	removeMatchers(changedEventTriggeredRules, Collections.singleton(rule)); break;
+			case COMMAND:  	removeMatchers(commandEventTriggeredRules, Collections.singleton(rule)); break;
 			case TIMER:    	timerEventTriggeredRules.remove(rule); 
 							removeTimerRule(rule);
 							break;
@@ -358,15 +355,35 @@ public class RuleTriggerManager {
 	 * 
 	 * @param ruleModel the rule model
 	 */
-	public void removeRuleModel(RuleModel ruleModel) {
-		removeRules(UPDATE, updateEventTriggeredRules.values(), ruleModel);
-		removeRules(CHANGE, changedEventTriggeredRules.values(), ruleModel);
-		removeRules(COMMAND, commandEventTriggeredRules.values(), ruleModel);
+	public synchronized void removeRuleModel(RuleModel ruleModel) {
+		Collection<Rule> modelRules = ruleModel!=null ? ruleModel.getRules() : Collections.<Rule>emptyList();
+		removeMatchers(updateEventTriggeredRules, modelRules);
+		removeMatchers(changedEventTriggeredRules, modelRules);
+		removeMatchers(commandEventTriggeredRules, modelRules);
 		removeRules(STARTUP, Collections.singletonList(systemStartupTriggeredRules), ruleModel);
 		removeRules(SHUTDOWN, Collections.singletonList(systemShutdownTriggeredRules), ruleModel);		
 		removeRules(TIMER, Collections.singletonList(timerEventTriggeredRules), ruleModel);		
 	}
 
+	/**
+	 * Removes the matchers of the given rules and of all proxified rules from a lookup map.
+	 */
+	private void removeMatchers(ConcurrentMap<String, RuleMatcher[]> matcherMap, Collection<Rule> rules) {
+		for(Entry<String, RuleMatcher[]> entry : matcherMap.entrySet()) {
+			List<RuleMatcher> matchers = Lists.newArrayList();
+			for(RuleMatcher matcher : entry.getValue()) {
+				if(!rules.contains(matcher.rule) && !matcher.rule.eIsProxy()) {
+					matchers.add(matcher);
+				}
+			}
+			if(matchers.isEmpty()) {
+				matcherMap.remove(entry.getKey());
+			} else if(matchers.size() < entry.getValue().length) {
+				entry.setValue(matchers.toArray(new RuleMatcher[matchers.size()]));
+			}
+		}
+	}
+
 	private void removeRules(TriggerTypes type, Collection<? extends Collection<Rule>> ruleSets, RuleModel model) {
 		for(Collection<Rule> ruleSet : ruleSets) {
 			// first remove all rules of the model, if not null (=non-existent)
@@ -474,4 +491,113 @@ public class RuleTriggerManager {
 		}
 		return jobIdentity;
 	}
+
+	/**
+	 * The precompiled trigger conditions of a single rule for a single item and trigger type.
+	 * The rule matches, if any of its conditions is fulfilled.
+	 */
+	private static final class RuleMatcher {
+		
+		final Rule rule;
+		final TriggerCondition[] conditions;
+
+		RuleMatcher(Rule rule, TriggerCondition[] conditions) {
+			this.rule = rule;
+			this.conditions = conditions;
+		}
+
+		boolean matches(TriggerTypes triggerType, Item item, Type oldType, Type newType) {
+			for(int i = 0; i < conditions.length; i++) {
+				if(conditions[i].matches(triggerType, item, oldType, newType)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * A single event trigger condition. For update and command triggers only the first
+	 * literal is used, for change triggers the first literal is the old and the second the
+	 * new state. A <code>null</code> literal matches any state.
+	 */
+	private static final class TriggerCondition {
+		
+		final TypeLiteral first;
+		final TypeLiteral second;
+
+		TriggerCondition(TypeLiteral first, TypeLiteral second) {
+			this.first = first;
+			this.second = second;
+		}
+
+		boolean matches(TriggerTypes triggerType, Item item, Type oldType, Type newType) {
+			switch(triggerType) {
+				case UPDATE:
+					return first==null || newType.equals(first.getState(item.getAcceptedDataTypes()));
+				case CHANGE:
+					return (first==null || oldType.equals(first.getState(item.getAcceptedDataTypes())))
+							&& (second==null || newType.equals(second.getState(item.getAcceptedDataTypes())));
+				case COMMAND:
+					// an unset or unparseable command matches all commands
+					Command triggerCommand = first.getCommand(item.getAcceptedCommandTypes());
+					return triggerCommand==null || newType.equals(triggerCommand);
+				default:
+					return false;
+			}
+		}
+	}
+
+	/**
+	 * A state or command literal of a trigger. As the literal can only be parsed for the
+	 * accepted types of an item, the parsed value is cached together with these types and
+	 * only parsed again if the item's accepted types change.
+	 */
+	private static final class TypeLiteral {
+
+		private final String value;
+		private volatile ParsedType parsedType;
+
+		TypeLiteral(String value) {
+			this.value = value;
+		}
+
+		static TypeLiteral create(String value) {
+			return value!=null ? new TypeLiteral(value) : null;
+		}
+
+		State getState(List<Class<? extends State>> acceptedTypes) {
+			ParsedType parsed = parsedType;
+			if(parsed==null || !parsed.isParsedFor(acceptedTypes)) {
+				parsed = new ParsedType(acceptedTypes, TypeParser.parseState(acceptedTypes, value));
+				parsedType = parsed;
+			}
+			return (State) parsed.type;
+		}
+
+		Command getCommand(List<Class<? extends Command>> acceptedTypes) {
+			ParsedType parsed = parsedType;
+			if(parsed==null || !parsed.isParsedFor(acceptedTypes)) {
+				parsed = new ParsedType(acceptedTypes, TypeParser.parseCommand(acceptedTypes, value));
+				parsedType = parsed;
+			}
+			return (Command) parsed.type;
+		}
+	}
+
+	private static final class ParsedType {
+		
+		final List<?> acceptedTypes;
+		final Type type;
+
+		ParsedType(List<?> acceptedTypes, Type type) {
+			this.acceptedTypes = acceptedTypes;
+			this.type = type;
+		}
+
+		boolean isParsedFor(List<?> types) {
+			// items usually return a constant list, so the equality check is rarely needed
+			return acceptedTypes==types || acceptedTypes.equals(types);
+		}
+	}
 }
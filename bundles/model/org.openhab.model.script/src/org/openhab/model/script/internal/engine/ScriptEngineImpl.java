@@ -11,7 +11,10 @@ package org.openhab.model.script.internal.engine;
 import static com.google.common.collect.Iterables.filter;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 
 import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.common.util.URI;
@@ -39,6 +42,11 @@ import com.google.inject.Injector;
 
 /**
  * This is the implementation of a {@link ScriptEngine} which is made available as an OSGi service.
+ * <p>
+ * The expressions parsed from script strings are kept in a LRU cache, so that frequently
+ * executed scripts are parsed and validated only once. The resources of evicted expressions
+ * are removed from the resource set again. Every script gets its own {@link ScriptImpl}, as
+ * its interpreter must not be shared by concurrent executions.
  * 
  * @author Kai Kreuzer
  * @since 0.9.0
@@ -47,9 +55,29 @@ import com.google.inject.Injector;
 @SuppressWarnings("restriction")
 public class ScriptEngineImpl implements ScriptEngine {
 
+	/** the maximum number of parsed scripts that are kept in the cache */
+	protected static final int MAX_CACHED_SCRIPTS = 100;
+
 	protected Injector guiceInjector;
 	protected XtextResourceSet resourceSet;
 
+	/** parsed expressions by their source text in access order */
+	private final Map<String, XExpression> expressionCache = new LinkedHashMap<String, XExpression>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Entry<String, XExpression> eldest) {
+			if(size() > MAX_CACHED_SCRIPTS) {
+				unloadExpression(eldest.getValue());
+				return true;
+			}
+			return false;
+		}
+	};
+
+	/** guards the resource set, which is not thread-safe */
+	private final Object resourceSetLock = new Object();
+
 	public ScriptEngineImpl() {}
 	
 	public void activate() {
@@ -59,6 +87,9 @@ public class ScriptEngineImpl implements ScriptEngine {
 	}
 	
 	public void deactivate() {
+		synchronized(expressionCache) {
+			expressionCache.clear();
+		}
 		this.guiceInjector = null;
 		this.resourceSet = null;
 	}
@@ -68,7 +99,29 @@ public class ScriptEngineImpl implements ScriptEngine {
 	 */
 	public Script newScriptFromString(String scriptAsString)
 			throws ScriptParsingException {
-		return newScriptFromXExpression(parseScriptIntoXTextEObject(scriptAsString));
+		XExpression expression;
+		synchronized(expressionCache) {
+			expression = expressionCache.get(scriptAsString);
+		}
+		if(expression==null) {
+			// parse without holding the cache, so that cached scripts are not held up
+			XExpression parsed = parseScriptIntoXTextEObject(scriptAsString);
+			if(parsed==null) {
+				return newScriptFromXExpression(null);
+			}
+			synchronized(expressionCache) {
+				expression = expressionCache.get(scriptAsString);
+				if(expression==null) {
+					expression = parsed;
+					expressionCache.put(scriptAsString, expression);
+				}
+			}
+			if(expression!=parsed) {
+				// another thread has parsed the same script in the meantime
+				unloadExpression(parsed);
+			}
+		}
+		return newScriptFromXExpression(expression);
 	}
 
 	/**
@@ -89,29 +142,60 @@ public class ScriptEngineImpl implements ScriptEngine {
 	}
 
 	private XExpression parseScriptIntoXTextEObject(String scriptAsString) throws ScriptParsingException {
+		synchronized(resourceSetLock) {
+			return parseScriptIntoResource(scriptAsString);
+		}
+	}
+
+	private XExpression parseScriptIntoResource(String scriptAsString) throws ScriptParsingException {
 		Resource resource = resourceSet.createResource(computeUnusedUri(resourceSet)); // IS-A XtextResource
+		boolean valid = false;
 		try {
-			resource.load(new StringInputStream(scriptAsString), resourceSet.getLoadOptions());
-		} catch (IOException e) {
-			throw new ScriptParsingException("Unexpected IOException; from close() of a String-based ByteArrayInputStream, no real I/O; how is that possible???", scriptAsString, e);
-		}
-		
-		List<Diagnostic> errors = resource.getErrors();
-		if (errors.size() != 0) {
-			throw new ScriptParsingException("Failed to parse expression (due to managed SyntaxError/s)", scriptAsString).addDiagnosticErrors(errors);
+			try {
+				resource.load(new StringInputStream(scriptAsString), resourceSet.getLoadOptions());
+			} catch (IOException e) {
+				throw new ScriptParsingException("Unexpected IOException; from close() of a String-based ByteArrayInputStream, no real I/O; how is that possible???", scriptAsString, e);
+			}
+			
+			List<Diagnostic> errors = resource.getErrors();
+			if (errors.size() != 0) {
+				throw new ScriptParsingException("Failed to parse expression (due to managed SyntaxError/s)", scriptAsString).addDiagnosticErrors(errors);
+			}
+			
+			EList<EObject> contents = resource.getContents();
+	
+			if (!contents.isEmpty()) {
+				Iterable<Issue> validationErrors = getValidationErrors(contents.get(0));
+				if(!validationErrors.iterator().hasNext()) {
+					valid = true;
+					return (XExpression) contents.get(0);
+				} else {
+					throw new ScriptParsingException("Failed to parse expression (due to managed ValidationError/s)", scriptAsString).addValidationIssues(validationErrors);
+				}
+			} else {
+				return null;
+			}
+		} finally {
+			if(!valid) {
+				// the resource is of no use anymore, so do not keep it in the resource set
+				unloadResource(resource);
+			}
 		}
-		
-		EList<EObject> contents = resource.getContents();
+	}
 
-		if (!contents.isEmpty()) {
-			Iterable<Issue> validationErrors = getValidationErrors(contents.get(0));
-			if(!validationErrors.iterator().hasNext()) {
-				return (XExpression) contents.get(0);
-			} else {
-				throw new ScriptParsingException("Failed to parse expression (due to managed ValidationError/s)", scriptAsString).addValidationIssues(validationErrors);
+	private void unloadExpression(XExpression expression) {
+		Resource resource = expression.eResource();
+		if(resource!=null) {
+			synchronized(resourceSetLock) {
+				unloadResource(resource);
 			}
-		} else {
-			return null;
+		}
+	}
+
+	private void unloadResource(Resource resource) {
+		resource.unload();
+		if(resourceSet!=null) {
+			resourceSet.getResources().remove(resource);
 		}
 	}
 
@@ -23,12 +23,15 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
 
 import org.openhab.core.items.Item;
+import org.openhab.core.persistence.BatchPersistenceService;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.PersistenceSample;
 import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.QueryablePersistenceService;
 import org.quartz.CronScheduleBuilder;
@@ -61,7 +64,7 @@ import com.db4o.query.Query;
  * @author Kai Kreuzer
  * @since 1.0.0
  */
-public class Db4oPersistenceService implements QueryablePersistenceService {
+public class Db4oPersistenceService implements QueryablePersistenceService, BatchPersistenceService {
 
 	private static final Logger logger = LoggerFactory.getLogger(Db4oPersistenceService.class);
 	
@@ -121,6 +124,26 @@ public class Db4oPersistenceService implements QueryablePersistenceService {
 		}
 	}
 
+	/**
+	 * Stores all samples with their own timestamps. Just like single states,
+	 * they are committed by the {@link CommitJob} within the commit interval.
+	 */
+	public void store(List<PersistenceSample> samples) {
+		try {
+			for(PersistenceSample sample : samples) {
+				Db4oItem historicItem = new Db4oItem();
+				historicItem.setName(sample.getAlias()!=null ? sample.getAlias() : sample.getName());
+				historicItem.setState(sample.getState());
+				historicItem.setTimestamp(sample.getTimestamp());
+				db.store(historicItem);
+			}
+			logger.debug("Stored {} item states", samples.size());
+		} catch(Db4oException e) {
+			db.rollback();
+			logger.warn("Error storing {} item states: {}", samples.size(), e.getMessage());
+		}
+	}
+
 	public Iterable<HistoricItem> query(FilterCriteria filter) {
 		Query query = queryWithReconnect();
 		
@@ -10,10 +10,15 @@ package org.openhab.persistence.influxdb.internal;
 import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang.StringUtils;
@@ -24,19 +29,26 @@ import org.influxdb.dto.Serie;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.items.ItemRegistry;
+import org.openhab.core.library.items.ColorItem;
 import org.openhab.core.library.items.ContactItem;
 import org.openhab.core.library.items.DimmerItem;
+import org.openhab.core.library.items.StringItem;
 import org.openhab.core.library.items.SwitchItem;
 import org.openhab.core.library.types.DateTimeType;
 import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.library.types.OpenClosedType;
 import org.openhab.core.library.types.PercentType;
+import org.openhab.core.persistence.AggregatingPersistenceService;
+import org.openhab.core.persistence.BatchPersistenceService;
+import org.openhab.core.persistence.BulkQueryablePersistenceService;
 import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Operator;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.NumericSummary;
+import org.openhab.core.persistence.PersistenceSample;
 import org.openhab.core.persistence.PersistenceService;
-import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
 import org.osgi.service.cm.ConfigurationException;
@@ -59,7 +71,8 @@ import retrofit.RetrofitError;
  * @author Theo Weiss - Initial Contribution
  * @since 1.5.0
  */
-public class InfluxDBPersistenceService implements QueryablePersistenceService, ManagedService {
+public class InfluxDBPersistenceService implements BulkQueryablePersistenceService,
+    AggregatingPersistenceService, BatchPersistenceService, ManagedService {
 
 
   private static final String DEFAULT_URL = "http://127.0.0.1:8086";
@@ -191,6 +204,56 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService,
     }
   }
 
+  /**
+   * Stores all samples with a single multi-point write. As the samples might have been queued for
+   * a while, their timestamps are written explicitly instead of being calculated by influxdb.
+   */
+  @Override
+  public void store(List<PersistenceSample> samples) {
+    if (!isProperlyConfigured) {
+      logger.error("Configuration for influxdb not yet loaded or broken.");
+      return;
+    }
+
+    if (!isConnected()) {
+      logger.error("InfluxDB is not yet? connected");
+      return;
+    }
+
+    Map<String, List<Object[]>> pointsBySerie = new LinkedHashMap<String, List<Object[]>>();
+    for (PersistenceSample sample : samples) {
+      if (sample.getState() instanceof UnDefType) {
+        continue;
+      }
+      String name = (sample.getAlias() != null) ? sample.getAlias() : sample.getName();
+      List<Object[]> points = pointsBySerie.get(name);
+      if (points == null) {
+        points = new ArrayList<Object[]>();
+        pointsBySerie.put(name, points);
+      }
+      points.add(new Object[] {sample.getTimestamp().getTime(), stateToObject(sample.getState())});
+    }
+    if (pointsBySerie.isEmpty()) {
+      return;
+    }
+
+    Serie[] series = new Serie[pointsBySerie.size()];
+    int i = 0;
+    for (Map.Entry<String, List<Object[]>> entry : pointsBySerie.entrySet()) {
+      Serie serie = new Serie(entry.getKey());
+      serie.setColumns(new String[] {TIME_COLUMN_NAME.toString(), VALUE_COLUMN_NAME});
+      serie.setPoints(entry.getValue().toArray(new Object[entry.getValue().size()][]));
+      series[i++] = serie;
+    }
+    logger.trace("storing {} samples in {} series in influxdb", samples.size(), series.length);
+    try {
+      influxDB.write(dbName, series, TimeUnit.MILLISECONDS);
+    } catch (RuntimeException e) {
+      logger.error("storing failed with exception for {} series", series.length);
+      handleDatabaseException(e);
+    }
+  }
+
   private void handleDatabaseException(Exception e) {
     if (e instanceof RetrofitError) {
       // e.g. raised if influxdb is not running
@@ -247,6 +310,51 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService,
     }
   }
 
+  /**
+   * Reads the latest point of all given series with a single query, as InfluxDB applies the
+   * limit to each series matched by a regular expression. Series which do not exist are not
+   * matched, instead of failing the query.
+   */
+  @Override
+  public Map<String, HistoricItem> queryLatest(Collection<String> itemNames) {
+    Map<String, HistoricItem> latest = new HashMap<String, HistoricItem>();
+    if (!isProperlyConfigured || !isConnected()) {
+      return latest;
+    }
+
+    StringBuilder names = new StringBuilder();
+    for (String itemName : itemNames) {
+      if (itemName.matches("\\w+")) {
+        names.append(names.length() > 0 ? "|" : "").append(itemName);
+      }
+    }
+    if (names.length() == 0) {
+      return latest;
+    }
+    String query = "select " + VALUE_COLUMN_NAME + ", " + TIME_COLUMN_NAME + " from /^(" + names + ")$/ limit 1";
+    logger.debug("query string: {}", query);
+    List<Serie> results = Collections.emptyList();
+    try {
+      results = influxDB.Query(dbName, query, TimeUnit.MILLISECONDS);
+    } catch (RuntimeException e) {
+      logger.error("query failed with database error");
+      handleDatabaseException(e);
+    }
+    for (Serie result : results) {
+      String historicItemName = result.getName();
+      List<String> columns = Arrays.asList(result.getColumns());
+      int timeColumnNum = columns.indexOf(TIME_COLUMN_NAME);
+      int valueColumnNum = columns.indexOf(VALUE_COLUMN_NAME);
+      Object[][] points = result.getPoints();
+      if (points.length > 0 && timeColumnNum >= 0 && valueColumnNum >= 0) {
+        latest.put(historicItemName, new InfluxdbItem(historicItemName, stringToState(
+            String.valueOf(points[0][valueColumnNum]), historicItemName), new Date(
+            ((Double) points[0][timeColumnNum]).longValue())));
+      }
+    }
+    return latest;
+  }
+
   @Override
   public Iterable<HistoricItem> query(FilterCriteria filter) {
     Integer pageSize = null;
@@ -279,59 +387,20 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService,
       query.append("/.*/");
     }
 
-    if (filter.getState() != null || filter.getOperator() != null || filter.getBeginDate() != null
-        || filter.getEndDate() != null) {
-      query.append(" where ");
-      boolean foundState = false;
-      boolean foundBeginDate = false;
-      if (filter.getState() != null && filter.getOperator() != null) {
-        String value = stateToString(filter.getState());
-        if (value != null) {
-          foundState = true;
-          query.append(VALUE_COLUMN_NAME);
-          query.append(" ");
-          query.append(filter.getOperator().toString());
-          query.append(" ");
-          query.append(value);
-        }
-      }
+    appendWhereClause(query, filter);
 
-      if (filter.getBeginDate() != null) {
-        foundBeginDate = true;
-        if (foundState) {
-          query.append(" and");
-        }
-        query.append(" ");
-        query.append(TIME_COLUMN_NAME);
-        query.append(" > '");
-        query.append(dateFormat.format(filter.getBeginDate()));
-        query.append("'");
-      }
-
-      if (filter.getEndDate() != null) {
-        if (foundState || foundBeginDate) {
-          query.append(" and");
-        }
-        query.append(" ");
-        query.append(TIME_COLUMN_NAME);
-        query.append(" < '");
-        query.append(dateFormat.format(filter.getEndDate().getTime()));
-        query.append("'");
-      }
-
-      if (filter.getOrdering() == Ordering.ASCENDING) {
-        query.append(" order asc");
-      }
+    if (filter.getOrdering() == Ordering.ASCENDING) {
+      query.append(" order asc");
+    }
 
-      if (filter.getPageSize() != 0) {
-        logger.debug("got page size {}", filter.getPageSize());
-        pageSize = filter.getPageSize();
-      }
+    if (filter.getPageSize() != 0) {
+      logger.debug("got page size {}", filter.getPageSize());
+      pageSize = filter.getPageSize();
+    }
 
-      if (filter.getPageNumber() != 0) {
-        logger.debug("got page number {}", filter.getPageNumber());
-        pageNumber = filter.getPageNumber();
-      }
+    if (filter.getPageNumber() != 0) {
+      logger.debug("got page number {}", filter.getPageNumber());
+      pageNumber = filter.getPageNumber();
     }
     logger.debug("query string: {}", query.toString());
     List<Serie> results = Collections.emptyList();
@@ -375,6 +444,225 @@ public class InfluxDBPersistenceService implements QueryablePersistenceService,
     return historicItems;
   }
 
+  @Override
+  public boolean canAggregate(FilterCriteria filter, boolean numeric) {
+    return !numeric || isNumeric(filter.getItemName());
+  }
+
+  @Override
+  public HistoricItem minimum(FilterCriteria filter) {
+    return getExtremum(filter, "min");
+  }
+
+  @Override
+  public HistoricItem maximum(FilterCriteria filter) {
+    return getExtremum(filter, "max");
+  }
+
+  /**
+   * Determines the smallest or largest value and then queries the oldest point with this value.
+   */
+  private HistoricItem getExtremum(FilterCriteria filter, String function) {
+    Object extremum = aggregate(filter, function);
+    if (extremum == null) {
+      return null;
+    }
+    StringBuffer query = new StringBuffer();
+    query.append("select ");
+    query.append(VALUE_COLUMN_NAME);
+    query.append(", ");
+    query.append(TIME_COLUMN_NAME);
+    query.append(" from ");
+    query.append(filter.getItemName());
+    appendWhereClause(query, filter, VALUE_COLUMN_NAME + " = " + extremum);
+    query.append(" order asc limit 1");
+    Object[] point = queryFirstPoint(query.toString());
+    if (point == null) {
+      return null;
+    }
+    return new InfluxdbItem(filter.getItemName(), new DecimalType(String.valueOf(point[0])), new Date(
+        ((Number) point[1]).longValue()));
+  }
+
+  @Override
+  public NumericSummary summarize(FilterCriteria filter) {
+    Map<String, Object> columns = aggregate(filter, "sum", "count");
+    if (columns == null || columns.get("sum") == null || columns.get("count") == null) {
+      return NumericSummary.EMPTY;
+    }
+    return new NumericSummary(new DecimalType(String.valueOf(columns.get("sum"))),
+        ((Number) columns.get("count")).longValue());
+  }
+
+  @Override
+  public boolean exists(FilterCriteria filter) {
+    StringBuffer query = new StringBuffer();
+    query.append("select ");
+    query.append(VALUE_COLUMN_NAME);
+    query.append(" from ");
+    query.append(filter.getItemName());
+    appendWhereClause(query, filter);
+    query.append(" limit 1");
+    return queryFirstPoint(query.toString()) != null;
+  }
+
+  /**
+   * Applies aggregate functions to the values of the filtered item with a single query.
+   * 
+   * @param filter the filter to apply
+   * @param functions the influxdb aggregate functions, e.g. <code>sum</code>
+   * @return the results by the names of the functions (as influxdb names their columns) or
+   *         <code>null</code>, if there are no values
+   * @throws UnsupportedOperationException if the values of the item are not numeric
+   */
+  private Map<String, Object> aggregate(FilterCriteria filter, String... functions) {
+    if (!isNumeric(filter.getItemName())) {
+      throw new UnsupportedOperationException("The values of item '" + filter.getItemName()
+          + "' are not numeric");
+    }
+    StringBuffer query = new StringBuffer();
+    query.append("select ");
+    for (int i = 0; i < functions.length; i++) {
+      if (i > 0) {
+        query.append(", ");
+      }
+      query.append(functions[i]);
+      query.append("(");
+      query.append(VALUE_COLUMN_NAME);
+      query.append(")");
+    }
+    query.append(" from ");
+    query.append(filter.getItemName());
+    appendWhereClause(query, filter);
+    return queryFirstPointColumns(query.toString());
+  }
+
+  /**
+   * Runs a query and returns the values of its first point, with the time as the last value.
+   * 
+   * @return the values or <code>null</code>, if there is no point or an error occurred
+   */
+  private Object[] queryFirstPoint(String query) {
+    Map<String, Object> columns = queryFirstPointColumns(query);
+    if (columns == null) {
+      return null;
+    }
+    Object[] values = new Object[2];
+    for (Map.Entry<String, Object> column : columns.entrySet()) {
+      if (column.getKey().equals(TIME_COLUMN_NAME)) {
+        values[1] = column.getValue();
+      } else if (!column.getKey().equals("sequence_number")) {
+        values[0] = column.getValue();
+      }
+    }
+    return values[0] != null ? values : null;
+  }
+
+  /**
+   * Runs a query and returns the values of its first point by their column names.
+   * 
+   * @return the values or <code>null</code>, if there is no point or an error occurred
+   */
+  private Map<String, Object> queryFirstPointColumns(String query) {
+    if (!isProperlyConfigured) {
+      logger.error("Configuration for influxdb not yet loaded or broken.");
+      return null;
+    }
+
+    if (!isConnected()) {
+      logger.error("InfluxDB is not yet? connected");
+      return null;
+    }
+
+    logger.debug("query string: {}", query);
+    List<Serie> results = Collections.emptyList();
+    try {
+      results = influxDB.Query(dbName, query, TimeUnit.MILLISECONDS);
+    } catch (RuntimeException e) {
+      logger.error("query failed with database error");
+      handleDatabaseException(e);
+    }
+    for (Serie result : results) {
+      String[] columns = result.getColumns();
+      Object[][] points = result.getPoints();
+      if (points.length == 0) {
+        continue;
+      }
+      Map<String, Object> values = new LinkedHashMap<String, Object>();
+      for (int i = 0; i < columns.length; i++) {
+        values.put(columns[i], points[0][i]);
+      }
+      return values;
+    }
+    return null;
+  }
+
+  /**
+   * Appends the where clause for the state criteria and the date range of a filter.
+   */
+  private void appendWhereClause(StringBuffer query, FilterCriteria filter) {
+    appendWhereClause(query, filter, null);
+  }
+
+  private void appendWhereClause(StringBuffer query, FilterCriteria filter, String extraCondition) {
+    List<String> conditions = new ArrayList<String>();
+    if (extraCondition != null) {
+      conditions.add(extraCondition);
+    }
+    if (filter.getState() != null && filter.getOperator() != null) {
+      String value = stateToString(filter.getState());
+      if (value != null) {
+        conditions.add(VALUE_COLUMN_NAME + " " + getOperatorSymbol(filter.getOperator()) + " " + value);
+      }
+    }
+    if (filter.getBeginDate() != null) {
+      conditions.add(TIME_COLUMN_NAME + " > '" + dateFormat.format(filter.getBeginDate()) + "'");
+    }
+    if (filter.getEndDate() != null) {
+      conditions.add(TIME_COLUMN_NAME + " < '" + dateFormat.format(filter.getEndDate().getTime()) + "'");
+    }
+    if (!conditions.isEmpty()) {
+      query.append(" where ");
+      query.append(StringUtils.join(conditions, " and "));
+    }
+  }
+
+  private String getOperatorSymbol(Operator operator) {
+    switch (operator) {
+      case NEQ:
+        return "<>";
+      case GT:
+        return ">";
+      case LT:
+        return "<";
+      case GTE:
+        return ">=";
+      case LTE:
+        return "<=";
+      default:
+        return "=";
+    }
+  }
+
+  /**
+   * Checks whether {@link #stringToState(String, String)} returns the values of an item as
+   * {@link DecimalType}s.
+   */
+  private boolean isNumeric(String itemName) {
+    if (itemRegistry != null) {
+      try {
+        Item item = itemRegistry.getItem(itemName);
+        if ((item instanceof SwitchItem && !(item instanceof DimmerItem)) || item instanceof ContactItem
+            || item instanceof ColorItem || item instanceof StringItem) {
+          return false;
+        }
+      } catch (ItemNotFoundException e) {
+        logger.warn("Could not find item '{}' in registry", itemName);
+      }
+    }
+    return true;
+  }
+
   /**
    * This method returns an integer if possible if not a double is returned. This is an optimization
    * for influxdb because integers have less overhead.
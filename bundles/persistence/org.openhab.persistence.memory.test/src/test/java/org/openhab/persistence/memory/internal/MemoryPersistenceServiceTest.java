@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.memory.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Operator;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.NumericSummary;
+import org.openhab.core.persistence.PersistenceSample;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+import org.osgi.service.cm.ConfigurationException;
+
+/**
+ * @since 1.5.0
+ */
+public class MemoryPersistenceServiceTest {
+
+	private static final long MINUTE = 60 * 1000L;
+
+	private MemoryPersistenceService service;
+
+	private long start;
+
+	@Before
+	public void init() {
+		start = System.currentTimeMillis() / MINUTE * MINUTE - 1000 * MINUTE;
+		service = new MemoryPersistenceService();
+		service.activate();
+	}
+
+	@Test
+	public void testStatesAreRestored() {
+		List<State> states = Arrays.<State> asList(new DecimalType("21.35"), new DecimalType(-7), new PercentType(42),
+				OnOffType.ON, new StringType("text"));
+		for (int i = 0; i < states.size(); i++) {
+			store("Item", start + i, states.get(i));
+		}
+		store("Item", start + states.size(), UnDefType.UNDEF);
+
+		List<HistoricItem> items = query(new FilterCriteria().setItemName("Item").setOrdering(Ordering.ASCENDING));
+		assertEquals(states.size(), items.size());
+		for (int i = 0; i < states.size(); i++) {
+			assertEquals(states.get(i), items.get(i).getState());
+			assertEquals(states.get(i).getClass(), items.get(i).getState().getClass());
+			assertEquals(start + i, items.get(i).getTimestamp().getTime());
+			assertEquals("Item", items.get(i).getName());
+		}
+	}
+
+	@Test
+	public void testRangeQueryAndPaging() {
+		storeMinutes("Item", 500);
+
+		FilterCriteria filter = new FilterCriteria().setItemName("Item").setOrdering(Ordering.ASCENDING)
+				.setBeginDate(new Date(start + 123 * MINUTE)).setEndDate(new Date(start + 456 * MINUTE));
+		List<HistoricItem> items = query(filter);
+		assertEquals(456 - 123 + 1, items.size());
+		assertEquals(new DecimalType(123), items.get(0).getState());
+		assertEquals(new DecimalType(456), items.get(items.size() - 1).getState());
+
+		items = query(filter.setOrdering(Ordering.DESCENDING).setPageSize(10).setPageNumber(2));
+		assertEquals(10, items.size());
+		assertEquals(new DecimalType(436), items.get(0).getState());
+
+		items = query(new FilterCriteria().setItemName("Item").setEndDate(new Date(start + 200 * MINUTE + 1))
+				.setPageSize(1));
+		assertEquals(1, items.size());
+		assertEquals(new DecimalType(200), items.get(0).getState());
+		assertEquals(0, query(new FilterCriteria().setItemName("Other")).size());
+	}
+
+	@Test
+	public void testQueryLatest() {
+		storeMinutes("First", 100);
+		store("Second", start, OnOffType.ON);
+
+		Map<String, HistoricItem> latest = service.queryLatest(Arrays.asList("First", "Second", "Other"));
+		assertEquals(2, latest.size());
+		assertEquals(new DecimalType(99), latest.get("First").getState());
+		assertEquals(start + 99 * MINUTE, latest.get("First").getTimestamp().getTime());
+		assertEquals(OnOffType.ON, latest.get("Second").getState());
+	}
+
+	@Test
+	public void testOperators() {
+		storeMinutes("Item", 100);
+		FilterCriteria filter = new FilterCriteria().setItemName("Item").setOperator(Operator.GT)
+				.setState(new DecimalType(95));
+		assertEquals(4, query(filter).size());
+		assertEquals(1, query(filter.setOperator(Operator.EQ)).size());
+		assertEquals(99, query(filter.setOperator(Operator.NEQ)).size());
+		assertEquals(0, query(filter.setState(OnOffType.ON).setOperator(Operator.EQ)).size());
+	}
+
+	@Test
+	public void testMaxSamples() throws ConfigurationException {
+		configure("maxsamples", "50");
+		storeMinutes("Item", 120);
+
+		List<HistoricItem> items = query(new FilterCriteria().setItemName("Item").setOrdering(Ordering.ASCENDING));
+		assertEquals(50, items.size());
+		assertEquals(new DecimalType(70), items.get(0).getState());
+		assertEquals(new DecimalType(119), items.get(49).getState());
+	}
+
+	@Test
+	public void testMaxAge() throws ConfigurationException {
+		configure("maxage", "60");
+		storeMinutes("Item", 1000);
+
+		long before = System.currentTimeMillis();
+		List<HistoricItem> items = query(new FilterCriteria().setItemName("Item").setOrdering(Ordering.ASCENDING));
+		long after = System.currentTimeMillis();
+		long oldest = items.get(0).getTimestamp().getTime();
+		assertTrue(oldest >= before - 60 * MINUTE);
+		assertTrue(oldest - MINUTE < after - 60 * MINUTE);
+		assertEquals(new DecimalType(999), items.get(items.size() - 1).getState());
+	}
+
+	@Test
+	public void testStatesAreAppendedInOrder() {
+		store("Item", start + 1000, new DecimalType(1));
+		store("Item", start, new DecimalType(2));
+
+		List<HistoricItem> items = query(new FilterCriteria().setItemName("Item").setOrdering(Ordering.ASCENDING));
+		assertEquals(2, items.size());
+		assertEquals(start + 1000, items.get(1).getTimestamp().getTime());
+		assertEquals(new DecimalType(2), items.get(1).getState());
+	}
+
+	@Test
+	public void testQueryAllItems() {
+		store("First", start, new DecimalType(1));
+		store("Second", start + 1, new DecimalType(2));
+		store("First", start + 2, new DecimalType(3));
+
+		List<HistoricItem> items = query(new FilterCriteria().setOrdering(Ordering.ASCENDING));
+		assertEquals(3, items.size());
+		assertEquals("Second", items.get(1).getName());
+		assertEquals(new DecimalType(3), items.get(2).getState());
+	}
+
+	@Test
+	public void testAggregation() {
+		storeMinutes("Item", 100);
+		store("Item", start + 100 * MINUTE, OnOffType.ON);
+		store("Item", start + 101 * MINUTE, new DecimalType(10));
+
+		FilterCriteria filter = new FilterCriteria().setItemName("Item").setBeginDate(new Date(start + 10 * MINUTE));
+		NumericSummary summary = service.summarize(filter);
+		assertEquals(91, summary.getCount());
+		assertEquals(new DecimalType(10), service.minimum(filter).getState());
+		assertEquals(start + 10 * MINUTE, service.minimum(filter).getTimestamp().getTime());
+		assertEquals(new DecimalType(99), service.maximum(filter).getState());
+		assertEquals(new DecimalType(4915), summary.getSum());
+		assertEquals(4915.0 / 91, summary.getAverage().doubleValue(), 1e-9);
+		assertTrue(service.exists(filter));
+
+		filter.setBeginDate(new Date(start + 100 * MINUTE)).setEndDate(new Date(start + 100 * MINUTE));
+		summary = service.summarize(filter);
+		assertEquals(0, summary.getCount());
+		assertNull(summary.getAverage());
+		assertTrue(service.exists(filter));
+		assertFalse(service.exists(filter.setOperator(Operator.NEQ).setState(OnOffType.ON)));
+	}
+
+	private void configure(String key, String value) throws ConfigurationException {
+		Hashtable<String, String> config = new Hashtable<String, String>();
+		config.put(key, value);
+		service.updated(config);
+	}
+
+	private void store(String name, long time, State state) {
+		service.store(Arrays.asList(new PersistenceSample(new NumberItem(name), null, state, new Date(time))));
+	}
+
+	private void storeMinutes(String name, int count) {
+		List<PersistenceSample> samples = new ArrayList<PersistenceSample>();
+		for (int i = 0; i < count; i++) {
+			samples.add(new PersistenceSample(new NumberItem(name), null, new DecimalType(i), new Date(start + i
+					* MINUTE)));
+		}
+		service.store(samples);
+	}
+
+	private List<HistoricItem> query(FilterCriteria filter) {
+		List<HistoricItem> items = new ArrayList<HistoricItem>();
+		for (HistoricItem item : service.query(filter)) {
+			items.add(item);
+		}
+		return items;
+	}
+
+}
@@ -0,0 +1,275 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.memory.internal;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.openhab.core.items.Item;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.AggregatingPersistenceService;
+import org.openhab.core.persistence.BatchPersistenceService;
+import org.openhab.core.persistence.BulkQueryablePersistenceService;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.NumericSummary;
+import org.openhab.core.persistence.PersistenceSample;
+import org.openhab.core.persistence.PersistenceService;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.cm.ManagedService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This is a {@link PersistenceService} implementation which keeps the recent states of
+ * each item in memory, see {@link RingBuffer}. It keeps the last samples up to the
+ * configured number and age, which are lost on restart. It is meant for the short term
+ * history rules ask for, like the average of the last hour or whether an item changed
+ * in the last minutes, which it answers without any I/O.
+ * <p>
+ * Which items are stored and when is defined in a <code>memory.persist</code> file like
+ * for any other persistence service.
+ *
+ * @since 1.5.0
+ */
+public class MemoryPersistenceService implements AggregatingPersistenceService, BulkQueryablePersistenceService,
+		BatchPersistenceService, ManagedService {
+
+	private static final Logger logger = LoggerFactory.getLogger(MemoryPersistenceService.class);
+
+	private static final String SERVICE_NAME = "memory";
+
+	/** the default maximum number of samples per item */
+	private static final int DEFAULT_MAX_SAMPLES = 1000;
+
+	private final Map<String, RingBuffer> buffers = new ConcurrentHashMap<String, RingBuffer>();
+
+	/** the maximum number of samples per item */
+	private volatile int maxSamples = DEFAULT_MAX_SAMPLES;
+
+	/** the maximum age of samples in minutes, 0 for no limit */
+	private volatile int maxAge = 0;
+
+	public String getName() {
+		return SERVICE_NAME;
+	}
+
+	public void activate() {
+	}
+
+	public void deactivate() {
+		buffers.clear();
+	}
+
+	public void store(Item item) {
+		store(item, null);
+	}
+
+	public void store(Item item, String alias) {
+		store(alias != null ? alias : item.getName(), System.currentTimeMillis(), item.getState());
+	}
+
+	public void store(List<PersistenceSample> samples) {
+		for (PersistenceSample sample : samples) {
+			store(sample.getAlias() != null ? sample.getAlias() : sample.getName(), sample.getTimestamp().getTime(),
+					sample.getState());
+		}
+	}
+
+	private void store(String name, long time, State state) {
+		// undefined states are not stored
+		if (state instanceof UnDefType) {
+			return;
+		}
+		RingBuffer buffer = buffers.get(name);
+		if (buffer == null) {
+			synchronized (buffers) {
+				buffer = buffers.get(name);
+				if (buffer == null) {
+					buffer = new RingBuffer(name);
+					buffers.put(name, buffer);
+				}
+			}
+		}
+		buffer.append(time, state, maxSamples, maxAge * 60 * 1000L);
+	}
+
+	/**
+	 * If there is no item name in the filter, the entries of all items are collected and
+	 * sorted.
+	 */
+	public Iterable<HistoricItem> query(FilterCriteria filter) {
+		if (filter == null) {
+			filter = new FilterCriteria();
+		}
+		long offset = (long) filter.getPageNumber() * filter.getPageSize();
+		boolean ascending = filter.getOrdering() == Ordering.ASCENDING;
+		List<HistoricItem> items = new ArrayList<HistoricItem>();
+		if (filter.getItemName() != null) {
+			RingBuffer buffer = buffers.get(filter.getItemName());
+			if (buffer != null) {
+				buffer.query(getBegin(filter), getEnd(filter), ascending, filter.getOperator(), filter.getState(),
+						offset, filter.getPageSize(), items);
+			}
+			return items;
+		}
+
+		for (RingBuffer buffer : buffers.values()) {
+			buffer.query(getBegin(filter), getEnd(filter), ascending, filter.getOperator(), filter.getState(), 0,
+					Long.MAX_VALUE, items);
+		}
+		final int sign = ascending ? 1 : -1;
+		Collections.sort(items, new Comparator<HistoricItem>() {
+			public int compare(HistoricItem o1, HistoricItem o2) {
+				return sign * o1.getTimestamp().compareTo(o2.getTimestamp());
+			}
+		});
+		if (offset >= items.size()) {
+			return Collections.emptyList();
+		}
+		return items.subList((int) offset, (int) Math.min(items.size(), offset + filter.getPageSize()));
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	public Map<String, HistoricItem> queryLatest(Collection<String> itemNames) {
+		long begin = getBegin(new FilterCriteria());
+		Map<String, HistoricItem> latest = new HashMap<String, HistoricItem>();
+		List<HistoricItem> items = new ArrayList<HistoricItem>(1);
+		for (String itemName : itemNames) {
+			RingBuffer buffer = buffers.get(itemName);
+			if (buffer != null) {
+				items.clear();
+				buffer.query(begin, Long.MAX_VALUE, false, null, null, 0, 1, items);
+				if (!items.isEmpty()) {
+					latest.put(itemName, items.get(0));
+				}
+			}
+		}
+		return latest;
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	public boolean canAggregate(FilterCriteria filter, boolean numeric) {
+		// the entries are only kept per item
+		return filter.getItemName() != null;
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	public HistoricItem minimum(FilterCriteria filter) {
+		return aggregate(filter, true).minimum;
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	public HistoricItem maximum(FilterCriteria filter) {
+		return aggregate(filter, true).maximum;
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	public NumericSummary summarize(FilterCriteria filter) {
+		RingBuffer.Aggregate aggregate = aggregate(filter, true);
+		return new NumericSummary(new DecimalType(BigDecimal.valueOf(aggregate.sum)), aggregate.count);
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	public boolean exists(FilterCriteria filter) {
+		return aggregate(filter, false).count > 0;
+	}
+
+	/**
+	 * Aggregates the entries of the item of a filter.
+	 *
+	 * @param filter the filter with an item name
+	 * @param numeric whether the entries are used as numbers
+	 * @throws UnsupportedOperationException if the filter has no item name
+	 */
+	private RingBuffer.Aggregate aggregate(FilterCriteria filter, boolean numeric) {
+		if (filter.getItemName() == null) {
+			throw new UnsupportedOperationException("The memory persistence service only aggregates single items");
+		}
+		RingBuffer.Aggregate aggregate = new RingBuffer.Aggregate();
+		RingBuffer buffer = buffers.get(filter.getItemName());
+		if (buffer != null) {
+			buffer.aggregate(getBegin(filter), getEnd(filter), filter.getOperator(), filter.getState(), numeric,
+					aggregate);
+		}
+		return aggregate;
+	}
+
+	/**
+	 * @return the begin of the range of a filter, which is not older than the maximum age
+	 */
+	private long getBegin(FilterCriteria filter) {
+		long begin = filter.getBeginDate() != null ? filter.getBeginDate().getTime() : Long.MIN_VALUE;
+		int maxAge = this.maxAge;
+		if (maxAge > 0) {
+			begin = Math.max(begin, System.currentTimeMillis() - maxAge * 60 * 1000L);
+		}
+		return begin;
+	}
+
+	private static long getEnd(FilterCriteria filter) {
+		return filter.getEndDate() != null ? filter.getEndDate().getTime() : Long.MAX_VALUE;
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	public void updated(Dictionary<String, ?> config) throws ConfigurationException {
+		if (config != null) {
+			int newMaxSamples = parseInt(config, "maxsamples", DEFAULT_MAX_SAMPLES);
+			if (newMaxSamples == 0) {
+				throw new ConfigurationException("memory:maxsamples", "The value must be a positive number");
+			}
+			maxSamples = newMaxSamples;
+			maxAge = parseInt(config, "maxage", 0);
+			logger.debug("Keeping up to {} samples of at most {} minutes per item", maxSamples, maxAge);
+		}
+	}
+
+	private int parseInt(Dictionary<String, ?> config, String key, int defaultValue) throws ConfigurationException {
+		String value = (String) config.get(key);
+		if (StringUtils.isBlank(value)) {
+			return defaultValue;
+		}
+		try {
+			int result = Integer.parseInt(value.trim());
+			if (result >= 0) {
+				return result;
+			}
+		} catch (NumberFormatException e) {
+			// handled below
+		}
+		throw new ConfigurationException("memory:" + key, "The value must be a number, but is '" + value + "'");
+	}
+
+}
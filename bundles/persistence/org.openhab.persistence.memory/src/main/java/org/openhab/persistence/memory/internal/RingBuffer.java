@@ -0,0 +1,290 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.memory.internal;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.FilterCriteria.Operator;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.types.State;
+
+/**
+ * The recent states of one item in a ring buffer of parallel arrays, sorted by time.
+ * <p>
+ * Numbers are kept as <code>double</code> values, so that a sample of a number item
+ * does not need any object. Only other states are referenced, which mostly are enum
+ * constants like <code>ON</code> or <code>OFF</code>. Historic items are only created
+ * for the entries returned by a query. A number is restored with the precision of a
+ * <code>double</code>, which is plenty for measured values.
+ * <p>
+ * The buffer grows as needed up to the maximum number of samples, then the oldest
+ * entries are overwritten. Samples must be appended in chronological order, earlier
+ * timestamps are moved to the time of the latest sample. All methods are synchronized,
+ * they take a few microseconds at most.
+ *
+ * @since 1.5.0
+ */
+class RingBuffer {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final String name;
+
+	private long[] times = new long[INITIAL_CAPACITY];
+
+	/** the numeric values, <code>NaN</code> for states which are no numbers */
+	private double[] values = new double[INITIAL_CAPACITY];
+
+	/** the states which cannot be restored from their value alone, <code>null</code> for a {@link DecimalType} */
+	private State[] states = new State[INITIAL_CAPACITY];
+
+	/** the physical index of the oldest entry */
+	private int head = 0;
+
+	private int size = 0;
+
+	RingBuffer(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Appends a sample and removes the oldest entries if there are too many or they are
+	 * too old.
+	 *
+	 * @param time the timestamp of the sample
+	 * @param state the state of the sample
+	 * @param maxSamples the maximum number of entries
+	 * @param maxAge the maximum age of entries relative to the latest one in milliseconds,
+	 *            0 for no limit
+	 */
+	synchronized void append(long time, State state, int maxSamples, long maxAge) {
+		if (size > 0) {
+			time = Math.max(time, times[index(size - 1)]);
+		}
+		if (maxAge > 0) {
+			removeBefore(time - maxAge);
+		}
+		while (size >= maxSamples && size > 0) {
+			removeOldest();
+		}
+		if (size == times.length) {
+			grow(Math.min(Math.max(maxSamples, 1), times.length * 2));
+		}
+		int index = index(size);
+		times[index] = time;
+		if (state instanceof DecimalType) {
+			values[index] = ((DecimalType) state).doubleValue();
+			states[index] = state.getClass() == DecimalType.class ? null : state;
+		} else {
+			values[index] = Double.NaN;
+			states[index] = state;
+		}
+		size++;
+	}
+
+	/**
+	 * Removes all entries before the given time.
+	 */
+	synchronized void removeBefore(long time) {
+		while (size > 0 && times[head] < time) {
+			removeOldest();
+		}
+	}
+
+	synchronized boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Adds the entries of a time range which match the state criteria to a list.
+	 *
+	 * @param begin the minimum timestamp
+	 * @param end the maximum timestamp
+	 * @param ascending <code>true</code> for chronological order, <code>false</code> for the reverse order
+	 * @param operator the operator to compare the states with, or <code>null</code>
+	 * @param state the state to compare with, or <code>null</code>
+	 * @param offset the number of matching entries to skip
+	 * @param limit the maximum number of entries to add
+	 * @param result the list to add the entries to
+	 */
+	synchronized void query(long begin, long end, boolean ascending, Operator operator, State state, long offset,
+			long limit, List<HistoricItem> result) {
+		int from = lowerBound(begin);
+		int to = lowerBound(end == Long.MAX_VALUE ? end : end + 1);
+		double stateValue = numericValue(state);
+		long skipped = 0;
+		long added = 0;
+		for (int i = ascending ? from : to - 1; ascending ? i < to : i >= from; i += ascending ? 1 : -1) {
+			int index = index(i);
+			if (!matches(index, operator, state, stateValue)) {
+				continue;
+			}
+			if (skipped < offset) {
+				skipped++;
+				continue;
+			}
+			if (added >= limit) {
+				break;
+			}
+			result.add(createItem(index));
+			added++;
+		}
+	}
+
+	/**
+	 * Aggregates the numeric entries of a time range which match the state criteria
+	 * without creating any historic items but the minimum and maximum entry.
+	 *
+	 * @param begin the minimum timestamp
+	 * @param end the maximum timestamp
+	 * @param operator the operator to compare the states with, or <code>null</code>
+	 * @param state the state to compare with, or <code>null</code>
+	 * @param numeric <code>true</code> to only consider numeric entries
+	 * @param aggregate the aggregate to add the entries to
+	 */
+	synchronized void aggregate(long begin, long end, Operator operator, State state, boolean numeric,
+			Aggregate aggregate) {
+		int from = lowerBound(begin);
+		int to = lowerBound(end == Long.MAX_VALUE ? end : end + 1);
+		double stateValue = numericValue(state);
+		int minIndex = -1;
+		int maxIndex = -1;
+		for (int i = from; i < to; i++) {
+			int index = index(i);
+			double value = values[index];
+			if ((numeric && Double.isNaN(value)) || !matches(index, operator, state, stateValue)) {
+				continue;
+			}
+			aggregate.count++;
+			if (!numeric) {
+				// the existence of an entry is all that is asked for
+				return;
+			}
+			aggregate.sum += value;
+			// the oldest one of equal entries is kept
+			if (minIndex < 0 || value < values[minIndex]) {
+				minIndex = index;
+			}
+			if (maxIndex < 0 || value > values[maxIndex]) {
+				maxIndex = index;
+			}
+		}
+		if (minIndex >= 0) {
+			aggregate.minimum = createItem(minIndex);
+			aggregate.maximum = createItem(maxIndex);
+		}
+	}
+
+	private boolean matches(int index, Operator operator, State state, double stateValue) {
+		if (operator == null || state == null) {
+			return true;
+		}
+		double value = values[index];
+		if (!Double.isNaN(value) && !Double.isNaN(stateValue)) {
+			switch (operator) {
+			case EQ:
+				return value == stateValue;
+			case NEQ:
+				return value != stateValue;
+			case GT:
+				return value > stateValue;
+			case LT:
+				return value < stateValue;
+			case GTE:
+				return value >= stateValue;
+			case LTE:
+				return value <= stateValue;
+			}
+		}
+		switch (operator) {
+		case EQ:
+			return getState(index).equals(state);
+		case NEQ:
+			return !getState(index).equals(state);
+		default:
+			return false;
+		}
+	}
+
+	private static double numericValue(State state) {
+		return state instanceof DecimalType ? ((DecimalType) state).doubleValue() : Double.NaN;
+	}
+
+	private HistoricItem createItem(int index) {
+		return new MemoryItem(name, getState(index), new Date(times[index]));
+	}
+
+	private State getState(int index) {
+		State state = states[index];
+		return state != null ? state : new DecimalType(BigDecimal.valueOf(values[index]));
+	}
+
+	/**
+	 * @return the logical index of the first entry at or after the given time, or the
+	 *         size if there is none
+	 */
+	private int lowerBound(long time) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (times[index(middle)] < time) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the physical index of the entry with the given logical index
+	 */
+	private int index(int i) {
+		int index = head + i;
+		return index < times.length ? index : index - times.length;
+	}
+
+	private void removeOldest() {
+		states[head] = null;
+		head = index(1);
+		size--;
+	}
+
+	private void grow(int capacity) {
+		long[] newTimes = new long[capacity];
+		double[] newValues = new double[capacity];
+		State[] newStates = new State[capacity];
+		int first = Math.min(size, times.length - head);
+		System.arraycopy(times, head, newTimes, 0, first);
+		System.arraycopy(times, 0, newTimes, first, size - first);
+		System.arraycopy(values, head, newValues, 0, first);
+		System.arraycopy(values, 0, newValues, first, size - first);
+		System.arraycopy(states, head, newStates, 0, first);
+		System.arraycopy(states, 0, newStates, first, size - first);
+		times = newTimes;
+		values = newValues;
+		states = newStates;
+		head = 0;
+	}
+
+	/**
+	 * The aggregation of the entries of a buffer.
+	 */
+	static class Aggregate {
+		long count = 0;
+		double sum = 0.0;
+		HistoricItem minimum;
+		HistoricItem maximum;
+	}
+
+}
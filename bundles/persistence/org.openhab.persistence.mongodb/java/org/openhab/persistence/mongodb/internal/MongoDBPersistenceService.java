@@ -11,10 +11,14 @@ package org.openhab.persistence.mongodb.internal;
 import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.bson.types.ObjectId;
@@ -35,12 +39,16 @@ import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.library.types.OpenClosedType;
 import org.openhab.core.library.types.PercentType;
 import org.openhab.core.library.types.StringType;
+import org.openhab.core.persistence.AggregatingPersistenceService;
+import org.openhab.core.persistence.BatchPersistenceService;
+import org.openhab.core.persistence.BulkQueryablePersistenceService;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.FilterCriteria.Operator;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.NumericSummary;
+import org.openhab.core.persistence.PersistenceSample;
 import org.openhab.core.persistence.PersistenceService;
-import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
 import org.osgi.service.cm.ConfigurationException;
@@ -48,6 +56,7 @@ import org.osgi.service.cm.ManagedService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.mongodb.AggregationOutput;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
@@ -61,8 +70,8 @@ import com.mongodb.MongoClientURI;
  * @author Thorsten Hoeger
  * @since 1.5.0
  */
-public class MongoDBPersistenceService implements QueryablePersistenceService,
-		ManagedService {
+public class MongoDBPersistenceService implements BulkQueryablePersistenceService,
+		AggregatingPersistenceService, BatchPersistenceService, ManagedService {
 
 	private static final String FIELD_ID = "_id";
 	private static final String FIELD_ITEM = "item";
@@ -139,15 +148,59 @@ public class MongoDBPersistenceService implements QueryablePersistenceService,
 		String name = (alias != null) ? alias : realName;
 		Object value = this.convertValue(item.getState());
 
+		DBObject obj = toDBObject(name, realName, value, new Date());
+		this.mongoCollection.save(obj);
+
+		logger.debug("MongoDB save {}={}", name, value);
+	}
+
+	/**
+	 * Stores all samples with a single bulk insert.
+	 */
+	public void store(List<PersistenceSample> samples) {
+		// If we've not initialised the bundle, then return
+		if (initialized == false) {
+			logger.warn("MongoDB not initialized");
+			return;
+		}
+
+		// Connect to mongodb server if we're not already connected
+		if (!isConnected()) {
+			connectToDatabase();
+		}
+
+		// If we still didn't manage to connect, then return!
+		if (!isConnected()) {
+			logger.warn(
+					"mongodb: No connection to database. Can not persist {} item states! Will retry connecting to database next time.",
+					samples.size());
+			return;
+		}
+
+		List<DBObject> objects = new ArrayList<DBObject>(samples.size());
+		for (PersistenceSample sample : samples) {
+			// Don't log undefined/uninitialised data
+			if (sample.getState() instanceof UnDefType) {
+				continue;
+			}
+			String realName = sample.getName();
+			String name = (sample.getAlias() != null) ? sample.getAlias() : realName;
+			objects.add(toDBObject(name, realName, convertValue(sample.getState()), sample.getTimestamp()));
+		}
+		if (!objects.isEmpty()) {
+			this.mongoCollection.insert(objects);
+			logger.debug("MongoDB inserted {} documents", objects.size());
+		}
+	}
+
+	private DBObject toDBObject(String name, String realName, Object value, Date timestamp) {
 		DBObject obj = new BasicDBObject();
 		obj.put(FIELD_ID, new ObjectId());
 		obj.put(FIELD_ITEM, name);
 		obj.put(FIELD_REALNAME, realName);
-		obj.put(FIELD_TIMESTAMP, new Date());
+		obj.put(FIELD_TIMESTAMP, timestamp);
 		obj.put(FIELD_VALUE, value);
-		this.mongoCollection.save(obj);
-
-		logger.debug("MongoDB save {}={}", name, value);
+		return obj;
 	}
 
 	private Object convertValue(State state) {
@@ -250,19 +303,158 @@ public class MongoDBPersistenceService implements QueryablePersistenceService,
 
 	@Override
 	public Iterable<HistoricItem> query(FilterCriteria filter) {
-		if (!initialized)
-			return Collections.emptyList();
-
-		if (!isConnected())
-			connectToDatabase();
-
-		if (!isConnected())
+		if (!isQueryable())
 			return Collections.emptyList();
 
 		String name = filter.getItemName();
 		Item item = getItem(name);
 
 		List<HistoricItem> items = new ArrayList<HistoricItem>();
+		DBObject query = createQuery(filter);
+
+		Integer sortDir = (filter.getOrdering() == Ordering.ASCENDING) ? 1 : -1;
+		DBCursor cursor = this.mongoCollection.find(query)
+				.sort(new BasicDBObject(FIELD_TIMESTAMP, sortDir))
+				.skip(filter.getPageNumber() * filter.getPageSize())
+				.limit(filter.getPageSize());
+
+		while (cursor.hasNext()) {
+			BasicDBObject obj = (BasicDBObject) cursor.next();
+			items.add(new MongoDBItem(name, convertState(item, obj), obj.getDate(FIELD_TIMESTAMP)));
+		}
+
+		return items;
+	}
+
+	/**
+	 * Looks up the latest documents of all items with a single aggregation, which
+	 * sorts the documents of the items by time and takes the first one per item.
+	 */
+	public Map<String, HistoricItem> queryLatest(Collection<String> itemNames) {
+		if (!isQueryable() || itemNames.isEmpty())
+			return Collections.emptyMap();
+
+		DBObject match = new BasicDBObject("$match", new BasicDBObject(FIELD_ITEM, new BasicDBObject("$in",
+				new ArrayList<String>(itemNames))));
+		DBObject sort = new BasicDBObject("$sort", new BasicDBObject(FIELD_TIMESTAMP, -1));
+		DBObject group = new BasicDBObject("$group", new BasicDBObject(FIELD_ID, "$" + FIELD_ITEM)
+				.append(FIELD_TIMESTAMP, new BasicDBObject("$first", "$" + FIELD_TIMESTAMP))
+				.append(FIELD_VALUE, new BasicDBObject("$first", "$" + FIELD_VALUE)));
+		AggregationOutput output = this.mongoCollection.aggregate(match, sort, group);
+
+		Map<String, HistoricItem> items = new HashMap<String, HistoricItem>();
+		for (DBObject result : output.results()) {
+			BasicDBObject obj = (BasicDBObject) result;
+			String name = obj.getString(FIELD_ID);
+			items.put(name, new MongoDBItem(name, convertState(getItem(name), obj), obj.getDate(FIELD_TIMESTAMP)));
+		}
+		return items;
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	public boolean canAggregate(FilterCriteria filter, boolean numeric) {
+		return !numeric || isNumeric(getItem(filter.getItemName()));
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	public HistoricItem minimum(FilterCriteria filter) {
+		return getExtremum(filter, 1);
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	public HistoricItem maximum(FilterCriteria filter) {
+		return getExtremum(filter, -1);
+	}
+
+	/**
+	 * Returns the oldest document with the smallest or largest value.
+	 */
+	private HistoricItem getExtremum(FilterCriteria filter, int valueSortDir) {
+		Item item = getNumericItem(filter.getItemName());
+		if (!isQueryable())
+			return null;
+
+		DBCursor cursor = this.mongoCollection.find(createNumericQuery(filter))
+				.sort(new BasicDBObject(FIELD_VALUE, valueSortDir).append(FIELD_TIMESTAMP, 1))
+				.limit(1);
+		if (cursor.hasNext()) {
+			BasicDBObject obj = (BasicDBObject) cursor.next();
+			return new MongoDBItem(filter.getItemName(), convertState(item, obj), obj.getDate(FIELD_TIMESTAMP));
+		}
+		return null;
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	public NumericSummary summarize(FilterCriteria filter) {
+		DBObject result = aggregate(filter, new BasicDBObject("sum", new BasicDBObject("$sum", "$" + FIELD_VALUE))
+				.append("count", new BasicDBObject("$sum", 1)));
+		if (result == null)
+			return NumericSummary.EMPTY;
+		return new NumericSummary(new DecimalType(((Number) result.get("sum")).doubleValue()),
+				((Number) result.get("count")).longValue());
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	public boolean exists(FilterCriteria filter) {
+		if (!isQueryable())
+			return false;
+
+		return this.mongoCollection.findOne(createQuery(filter)) != null;
+	}
+
+	/**
+	 * Applies group accumulators (like <code>$sum</code>) to all matching documents
+	 * by means of the aggregation framework.
+	 * 
+	 * @param accumulators the accumulators by the names of their results
+	 * @return the results or <code>null</code>, if there is no matching document
+	 */
+	private DBObject aggregate(FilterCriteria filter, BasicDBObject accumulators) {
+		getNumericItem(filter.getItemName());
+		if (!isQueryable())
+			return null;
+
+		DBObject match = new BasicDBObject("$match", createNumericQuery(filter));
+		BasicDBObject groupFields = new BasicDBObject(FIELD_ID, null);
+		groupFields.putAll((DBObject) accumulators);
+		DBObject group = new BasicDBObject("$group", groupFields);
+		AggregationOutput output = this.mongoCollection.aggregate(match, group);
+		Iterator<DBObject> results = output.results().iterator();
+		if (results.hasNext()) {
+			return results.next();
+		}
+		return null;
+	}
+
+	/**
+	 * Checks (and establishes) the database connection for queries.
+	 * 
+	 * @return true, if the database can be queried
+	 */
+	private boolean isQueryable() {
+		if (!initialized)
+			return false;
+
+		if (!isConnected())
+			connectToDatabase();
+
+		return isConnected();
+	}
+
+	/**
+	 * Creates the query for the item name, the state criteria and the date range of a filter.
+	 */
+	private DBObject createQuery(FilterCriteria filter) {
 		DBObject query = new BasicDBObject();
 		if (filter.getItemName() != null) {
 			query.put(FIELD_ITEM, filter.getItemName());
@@ -272,49 +464,79 @@ public class MongoDBPersistenceService implements QueryablePersistenceService,
 			Object value = convertValue(filter.getState());
 			query.put(FIELD_VALUE, new BasicDBObject(op, value));
 		}
+		BasicDBObject timestamp = new BasicDBObject();
 		if (filter.getBeginDate() != null) {
-			query.put(FIELD_TIMESTAMP,
-					new BasicDBObject("$gte", filter.getBeginDate()));
+			timestamp.put("$gte", filter.getBeginDate());
 		}
 		if (filter.getEndDate() != null) {
-			query.put(FIELD_TIMESTAMP,
-					new BasicDBObject("$lte", filter.getEndDate()));
+			timestamp.put("$lte", filter.getEndDate());
 		}
+		if (!timestamp.isEmpty()) {
+			query.put(FIELD_TIMESTAMP, timestamp);
+		}
+		return query;
+	}
 
-		Integer sortDir = (filter.getOrdering() == Ordering.ASCENDING) ? 1 : -1;
-		DBCursor cursor = this.mongoCollection.find(query)
-				.sort(new BasicDBObject(FIELD_TIMESTAMP, sortDir))
-				.skip(filter.getPageNumber() * filter.getPageSize())
-				.limit(filter.getPageSize());
-
-		while (cursor.hasNext()) {
-			BasicDBObject obj = (BasicDBObject) cursor.next();
+	/**
+	 * Creates the query of a filter, which only matches documents with a numeric value.
+	 */
+	private DBObject createNumericQuery(FilterCriteria filter) {
+		DBObject query = createQuery(filter);
+		BasicDBObject value = (BasicDBObject) query.get(FIELD_VALUE);
+		if (value == null) {
+			value = new BasicDBObject();
+		}
+		// numeric values are stored as doubles
+		value.put("$type", 1);
+		query.put(FIELD_VALUE, value);
+		return query;
+	}
 
-			final State state;
-			if (item instanceof NumberItem) {
-				state = new DecimalType(obj.getDouble(FIELD_VALUE));
-			} else if (item instanceof DimmerItem) {
-				state = new PercentType(obj.getInt(FIELD_VALUE));
-			} else if (item instanceof SwitchItem) {
-				state = OnOffType.valueOf(obj.getString(FIELD_VALUE));
-			} else if (item instanceof ContactItem) {
-				state = OpenClosedType.valueOf(obj.getString(FIELD_VALUE));
-			} else if (item instanceof RollershutterItem) {
-				state = new PercentType(obj.getInt(FIELD_VALUE));
-			} else if (item instanceof ColorItem) {
-				state = new HSBType(obj.getString(FIELD_VALUE));
-			} else if (item instanceof DateTimeItem) {
-				Calendar cal = Calendar.getInstance();
-				cal.setTime(obj.getDate(FIELD_VALUE));
-				state = new DateTimeType(cal);
-			} else {
-				state = new StringType(obj.getString(FIELD_VALUE));
-			}
+	private State convertState(Item item, BasicDBObject obj) {
+		final State state;
+		if (item instanceof NumberItem) {
+			state = new DecimalType(obj.getDouble(FIELD_VALUE));
+		} else if (item instanceof DimmerItem) {
+			state = new PercentType(obj.getInt(FIELD_VALUE));
+		} else if (item instanceof SwitchItem) {
+			state = OnOffType.valueOf(obj.getString(FIELD_VALUE));
+		} else if (item instanceof ContactItem) {
+			state = OpenClosedType.valueOf(obj.getString(FIELD_VALUE));
+		} else if (item instanceof RollershutterItem) {
+			state = new PercentType(obj.getInt(FIELD_VALUE));
+		} else if (item instanceof ColorItem) {
+			state = new HSBType(obj.getString(FIELD_VALUE));
+		} else if (item instanceof DateTimeItem) {
+			Calendar cal = Calendar.getInstance();
+			cal.setTime(obj.getDate(FIELD_VALUE));
+			state = new DateTimeType(cal);
+		} else {
+			state = new StringType(obj.getString(FIELD_VALUE));
+		}
+		return state;
+	}
 
-			items.add(new MongoDBItem(name, state, obj.getDate(FIELD_TIMESTAMP)));
+	/**
+	 * Returns the item with the given name, if its values are returned as {@link DecimalType}s
+	 * by {@link #query(FilterCriteria)}.
+	 * 
+	 * @throws UnsupportedOperationException if the values of the item are not numeric
+	 */
+	private Item getNumericItem(String itemName) {
+		Item item = getItem(itemName);
+		if (isNumeric(item)) {
+			return item;
 		}
+		throw new UnsupportedOperationException("The values of item '" + itemName + "' are not numeric");
+	}
 
-		return items;
+	/**
+	 * Checks whether the values of an item are returned as {@link DecimalType}s by
+	 * {@link #query(FilterCriteria)}.
+	 */
+	private static boolean isNumeric(Item item) {
+		return item instanceof NumberItem
+				|| ((item instanceof DimmerItem || item instanceof RollershutterItem) && !(item instanceof ColorItem));
 	}
 
 	private String convertOperator(Operator operator) {
@@ -330,7 +552,7 @@ public class MongoDBPersistenceService implements QueryablePersistenceService,
 		case LTE:
 			return "$lte";
 		case NEQ:
-			return "$neq";
+			return "$ne";
 		default:
 			return null;
 		}
@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.mysql.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openhab.persistence.mysql.internal.MysqlConnectionPool.PooledConnection;
+
+/**
+ * @since 1.5.0
+ */
+public class MysqlConnectionPoolTest {
+
+	private List<Connection> connections;
+
+	private MysqlConnectionPool pool;
+
+	@Before
+	public void init() {
+		connections = new ArrayList<Connection>();
+		pool = createPool(2, 2);
+	}
+
+	@Test
+	public void testReusesReleasedConnection() throws SQLException {
+		PooledConnection first = pool.borrow();
+		first.release(false);
+		PooledConnection second = pool.borrow();
+		assertSame(first, second);
+		assertEquals(1, connections.size());
+	}
+
+	@Test
+	public void testOpensConnectionsOnDemand() throws SQLException {
+		PooledConnection first = pool.borrow();
+		PooledConnection second = pool.borrow();
+		assertNotSame(first.getConnection(), second.getConnection());
+		assertEquals(2, connections.size());
+	}
+
+	@Test
+	public void testCachesPreparedStatements() throws SQLException {
+		PooledConnection connection = pool.borrow();
+		PreparedStatement statement = connection.prepare("SELECT Time, Value FROM Item1");
+		assertSame(statement, connection.prepare("SELECT Time, Value FROM Item1"));
+		verify(connection.getConnection(), times(1)).prepareStatement("SELECT Time, Value FROM Item1");
+	}
+
+	@Test
+	public void testClosesEldestStatement() throws SQLException {
+		PooledConnection connection = pool.borrow();
+		PreparedStatement eldest = connection.prepare("SELECT 0");
+		for (int i = 1; i <= MysqlConnectionPool.STATEMENT_CACHE_SIZE; i++) {
+			connection.prepare("SELECT " + i);
+		}
+		verify(eldest).close();
+	}
+
+	@Test
+	public void testReplacesFailingConnection() throws SQLException {
+		PooledConnection connection = pool.borrow();
+		connection.release(true);
+		connection = pool.borrow();
+		verify(connection.getConnection(), never()).close();
+		connection.release(true);
+		verify(connection.getConnection()).close();
+
+		assertNotSame(connection, pool.borrow());
+		assertEquals(2, connections.size());
+	}
+
+	@Test
+	public void testSuccessResetsErrors() throws SQLException {
+		PooledConnection connection = pool.borrow();
+		connection.release(true);
+		pool.borrow().release(false);
+		pool.borrow().release(true);
+		verify(connection.getConnection(), never()).close();
+	}
+
+	@Test
+	public void testClose() throws SQLException {
+		PooledConnection idle = pool.borrow();
+		PreparedStatement statement = idle.prepare("SELECT 1");
+		PooledConnection used = pool.borrow();
+		idle.release(false);
+
+		pool.close();
+		verify(idle.getConnection()).close();
+		verify(statement).close();
+		verify(used.getConnection(), never()).close();
+
+		used.release(false);
+		verify(used.getConnection()).close();
+	}
+
+	@Test(expected = SQLException.class)
+	public void testBorrowFromClosedPool() throws SQLException {
+		pool.close();
+		pool.borrow();
+	}
+
+	@Test
+	public void testInsertSql() {
+		assertEquals("INSERT IGNORE INTO Item1 (Time, Value) VALUES (?,?)", MysqlPersistenceService.getInsertSql(
+				"Item1", 1));
+		assertEquals("INSERT IGNORE INTO Item2 (Time, Value) VALUES (?,?),(?,?),(?,?)",
+				MysqlPersistenceService.getInsertSql("Item2", 3));
+	}
+
+	private MysqlConnectionPool createPool(int size, int errReconnectThreshold) {
+		return new MysqlConnectionPool("jdbc:mysql://localhost/openhab", "openhab", "openhab", size, -1,
+				errReconnectThreshold) {
+			@Override
+			protected Connection connect() throws SQLException {
+				Connection connection = mock(Connection.class);
+				when(connection.prepareStatement(anyString())).thenAnswer(new Answer<PreparedStatement>() {
+					public PreparedStatement answer(InvocationOnMock invocation) {
+						return mock(PreparedStatement.class);
+					}
+				});
+				connections.add(connection);
+				return connection;
+			}
+		};
+	}
+
+}
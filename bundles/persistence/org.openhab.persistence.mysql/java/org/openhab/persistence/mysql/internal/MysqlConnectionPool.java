@@ -0,0 +1,262 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.mysql.internal;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A small pool of JDBC connections, so that queries do not have to wait for
+ * writes and the other way round.
+ * <p>
+ * At most <code>size</code> connections are in use at the same time, they are
+ * opened on demand and kept open when they are released. Each connection caches
+ * its prepared statements by SQL, so that the statements for the item tables
+ * only have to be prepared once. A connection which failed too often in a row
+ * is closed on release and replaced by a new one.
+ *
+ * @since 1.5.0
+ */
+public class MysqlConnectionPool {
+
+	private static final Logger logger = LoggerFactory.getLogger(MysqlConnectionPool.class);
+
+	/** the maximum number of cached statements per connection */
+	protected static final int STATEMENT_CACHE_SIZE = 100;
+
+	/** the time in seconds to wait for a free connection */
+	private static final long BORROW_TIMEOUT = 30;
+
+	private final String url;
+	private final String user;
+	private final String password;
+	private final int waitTimeout;
+	private final int errReconnectThreshold;
+
+	private final Semaphore permits;
+
+	/** the idle connections, guarded by <code>this</code> */
+	private final LinkedList<PooledConnection> idle = new LinkedList<PooledConnection>();
+
+	private boolean closed = false;
+
+	/**
+	 * @param url the JDBC url of the database
+	 * @param user the database user
+	 * @param password the password of the user
+	 * @param size the maximum number of connections
+	 * @param waitTimeout the MySQL session <code>wait_timeout</code> in seconds, or -1 to keep the default
+	 * @param errReconnectThreshold the number of errors in a row after which a connection is
+	 *            replaced, or 0 to keep it regardless of errors
+	 */
+	public MysqlConnectionPool(String url, String user, String password, int size, int waitTimeout,
+			int errReconnectThreshold) {
+		this.url = url;
+		this.user = user;
+		this.password = password;
+		this.waitTimeout = waitTimeout;
+		this.errReconnectThreshold = errReconnectThreshold;
+		this.permits = new Semaphore(Math.max(1, size), true);
+	}
+
+	/**
+	 * Returns an open connection, which has to be passed to {@link #release(PooledConnection, boolean)}
+	 * after use. If all connections are in use, this method waits until one is released.
+	 *
+	 * @return the connection
+	 * @throws SQLException if no connection is available or a new connection cannot be opened
+	 */
+	public PooledConnection borrow() throws SQLException {
+		try {
+			if (!permits.tryAcquire(BORROW_TIMEOUT, TimeUnit.SECONDS)) {
+				throw new SQLException("No database connection available within " + BORROW_TIMEOUT + " seconds");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a database connection");
+		}
+		synchronized (this) {
+			if (closed) {
+				permits.release();
+				throw new SQLException("The connection pool is closed");
+			}
+			if (!idle.isEmpty()) {
+				return idle.removeFirst();
+			}
+		}
+		try {
+			return new PooledConnection(this, connect());
+		} catch (SQLException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns a connection to the pool.
+	 *
+	 * @param connection the connection returned by {@link #borrow()}
+	 * @param failed <code>true</code>, if the last operation on the connection failed
+	 */
+	public void release(PooledConnection connection, boolean failed) {
+		if (failed) {
+			connection.errors++;
+		} else {
+			connection.errors = 0;
+		}
+		boolean discard = errReconnectThreshold != 0 && connection.errors >= errReconnectThreshold;
+		if (discard) {
+			logger.error("mySQL: Error count exceeded {}. Disconnecting database.", errReconnectThreshold);
+		}
+		synchronized (this) {
+			if (!discard && !closed) {
+				idle.addFirst(connection);
+				connection = null;
+			}
+		}
+		if (connection != null) {
+			connection.close();
+		}
+		permits.release();
+	}
+
+	/**
+	 * Closes all idle connections, connections in use are closed when they are released.
+	 */
+	public void close() {
+		List<PooledConnection> connections;
+		synchronized (this) {
+			closed = true;
+			connections = new ArrayList<PooledConnection>(idle);
+			idle.clear();
+		}
+		for (PooledConnection connection : connections) {
+			connection.close();
+		}
+		logger.debug("mySQL: Disconnected from database {}", url);
+	}
+
+	/**
+	 * Opens a new connection to the database.
+	 */
+	protected Connection connect() throws SQLException {
+		logger.debug("mySQL: Attempting to connect to database {}", url);
+		Connection connection = DriverManager.getConnection(url, user, password);
+		if (waitTimeout != -1) {
+			logger.debug("mySQL: Setting wait_timeout to {} seconds.", waitTimeout);
+			Statement st = connection.createStatement();
+			try {
+				st.executeUpdate("SET SESSION wait_timeout=" + waitTimeout);
+			} finally {
+				st.close();
+			}
+		}
+		logger.debug("mySQL: Connected to database {}", url);
+		return connection;
+	}
+
+	/**
+	 * A connection of the pool along with its prepared statements.
+	 */
+	public static class PooledConnection {
+
+		private final MysqlConnectionPool pool;
+
+		private final Connection connection;
+
+		/** the prepared statements by SQL in access order */
+		private final Map<String, PreparedStatement> statements = new LinkedHashMap<String, PreparedStatement>(16,
+				0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() > STATEMENT_CACHE_SIZE) {
+					closeStatement(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+
+		/** the number of failed operations in a row */
+		private int errors = 0;
+
+		PooledConnection(MysqlConnectionPool pool, Connection connection) {
+			this.pool = pool;
+			this.connection = connection;
+		}
+
+		/**
+		 * @return the JDBC connection, which must not be closed
+		 */
+		public Connection getConnection() {
+			return connection;
+		}
+
+		/**
+		 * Returns the prepared statement for the given SQL, which must not be closed.
+		 *
+		 * @param sql the SQL with parameters
+		 * @return the prepared statement
+		 * @throws SQLException if the statement cannot be prepared
+		 */
+		public PreparedStatement prepare(String sql) throws SQLException {
+			PreparedStatement statement = statements.get(sql);
+			if (statement == null) {
+				statement = connection.prepareStatement(sql);
+				statements.put(sql, statement);
+			}
+			return statement;
+		}
+
+		/**
+		 * Returns this connection to its pool, see {@link MysqlConnectionPool#release(PooledConnection, boolean)}.
+		 *
+		 * @param failed <code>true</code>, if the last operation on the connection failed
+		 */
+		public void release(boolean failed) {
+			pool.release(this, failed);
+		}
+
+		private void close() {
+			for (PreparedStatement statement : statements.values()) {
+				closeStatement(statement);
+			}
+			statements.clear();
+			try {
+				connection.close();
+			} catch (SQLException e) {
+				logger.error("mySQL: Failed disconnecting from the SQL database {}", e);
+			}
+		}
+
+		private static void closeStatement(Statement statement) {
+			try {
+				statement.close();
+			} catch (SQLException hidden) {
+			}
+		}
+
+	}
+
+}
@@ -8,21 +8,30 @@
  */
 package org.openhab.persistence.mysql.internal;
 
-import java.text.SimpleDateFormat;
-import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.Dictionary;
 import java.util.Enumeration;
 import java.util.Formatter;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -45,13 +54,20 @@ import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.library.types.OpenClosedType;
 import org.openhab.core.library.types.PercentType;
 import org.openhab.core.library.types.StringType;
+import org.openhab.core.library.types.UpDownType;
+import org.openhab.core.persistence.AggregatingPersistenceService;
+import org.openhab.core.persistence.BatchPersistenceService;
+import org.openhab.core.persistence.BulkQueryablePersistenceService;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.NumericSummary;
+import org.openhab.core.persistence.PersistenceSample;
 import org.openhab.core.persistence.PersistenceService;
-import org.openhab.core.persistence.QueryablePersistenceService;
+import org.openhab.core.persistence.FilterCriteria.Operator;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.types.State;
 import org.openhab.core.types.UnDefType;
+import org.openhab.persistence.mysql.internal.MysqlConnectionPool.PooledConnection;
 import org.osgi.service.cm.ConfigurationException;
 import org.osgi.service.cm.ManagedService;
 import org.slf4j.Logger;
@@ -78,17 +94,34 @@ import org.slf4j.LoggerFactory;
  * keep the best resolution, we store as a number in SQL and convert to
  * DecimalType before persisting to MySQL.
  * 
+ * The service uses a small pool of connections with cached prepared statements.
+ * New states are buffered and written with multi-row INSERTs, either when the
+ * buffer is full or after the flush interval. Unpaged queries are read in chunks
+ * of rows, so that large results are never held in memory as a whole. The latest
+ * rows of many items, as needed to restore their states, are read with a UNION of
+ * their tables.
+ * 
  * @author Henrik Sjöstrand
  * @author Thomas.Eichstaedt-Engelen
  * @author Chris Jackson
  * @since 1.1.0
  */
-public class MysqlPersistenceService implements QueryablePersistenceService, ManagedService {
+public class MysqlPersistenceService implements BulkQueryablePersistenceService, AggregatingPersistenceService,
+		BatchPersistenceService, ManagedService {
 
 	private static final Pattern EXTRACT_CONFIG_PATTERN = Pattern.compile("^(.*?)\\.([0-9.a-zA-Z]+)$");
 
 	private static final Logger logger = LoggerFactory.getLogger(MysqlPersistenceService.class);
 
+	/** the maximum number of rows written with a single INSERT */
+	private static final int MAX_ROWS_PER_INSERT = 64;
+
+	/** the number of rows read at once by unpaged queries */
+	private static final int QUERY_CHUNK_SIZE = 1000;
+
+	/** the maximum number of item tables which are read by a single query for their latest rows */
+	private static final int LATEST_TABLES_PER_QUERY = 100;
+
 	private String driverClass = "com.mysql.jdbc.Driver";
 	private String url;
 	private String user;
@@ -97,17 +130,30 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 	private boolean initialized = false;
 	protected ItemRegistry itemRegistry;
 
-	// Error counter - used to reconnect to database on error
-	private int errCnt;
+	// Error counter threshold - used to reconnect to database on error
 	private int errReconnectThreshold = 0;
-	
+
 	private int waitTimeout = -1;
 
-	private Connection connection = null;
+	private int poolSize = 3;
+	private int batchSize = 100;
+	private long flushInterval = 1000;
+
+	private volatile MysqlConnectionPool pool = null;
+
+	/** whether the table of all items has been read, only set with <code>tableLock</code> */
+	private volatile boolean tablesLoaded = false;
+	private final Object tableLock = new Object();
 
-	private Map<String, String> sqlTables = new HashMap<String, String>();
+	private Map<String, String> sqlTables = new ConcurrentHashMap<String, String>();
 	private Map<String, String> sqlTypes = new HashMap<String, String>();
 
+	/** the rows which have not been written yet, guarded by itself */
+	private final List<Row> pendingRows = new ArrayList<Row>();
+	private boolean flushScheduled = false;
+
+	private ScheduledExecutorService scheduler;
+
 	public void activate() {
 		// Initialise the type array
 		sqlTypes.put("COLORITEM", "CHAR(25)");
@@ -119,10 +165,14 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 		sqlTypes.put("ROLERSHUTTERITEM", "TINYINT");
 		sqlTypes.put("STRINGITEM", "VARCHAR(20000)");
 		sqlTypes.put("SWITCHITEM", "CHAR(3)");
+
+		scheduler = Executors.newSingleThreadScheduledExecutor();
 	}
 
 	public void deactivate() {
 		logger.debug("mySQL persistence bundle stopping. Disconnecting from database.");
+		scheduler.shutdownNow();
+		flush();
 		disconnectFromDatabase();
 	}
 
@@ -141,11 +191,7 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 		return "mysql";
 	}
 
-	private String getTable(Item item) {
-		Statement statement = null;
-		String sqlCmd = null;
-		int rowId = 0;
-
+	private String getTable(PooledConnection connection, Item item) {
 		String itemName = item.getName();
 
 		String tableName = sqlTables.get(itemName);
@@ -154,13 +200,31 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 		if (tableName != null)
 			return tableName;
 
+		// Only one thread may create the table of an item
+		synchronized (tableLock) {
+			tableName = sqlTables.get(itemName);
+			if (tableName != null)
+				return tableName;
+			return createTable(connection, item);
+		}
+	}
+
+	private String createTable(PooledConnection pooledConnection, Item item) {
+		PreparedStatement statement = null;
+		Statement createStatement = null;
+		String sqlCmd = null;
+		int rowId = 0;
+		String tableName = null;
+
+		String itemName = item.getName();
+
 		// Create a new entry in the Items table. This is the translation of
 		// item name to table
 		try {
-			sqlCmd = new String("INSERT INTO Items (ItemName) VALUES ('" + itemName + "')");
-
-			statement = connection.createStatement();
-			statement.executeUpdate(sqlCmd, Statement.RETURN_GENERATED_KEYS);
+			statement = pooledConnection.getConnection().prepareStatement("INSERT INTO Items (ItemName) VALUES (?)",
+					Statement.RETURN_GENERATED_KEYS);
+			statement.setString(1, itemName);
+			statement.executeUpdate();
 
 			ResultSet resultSet = statement.getGeneratedKeys();
 			if (resultSet != null && resultSet.next()) {
@@ -177,12 +241,7 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 		} catch (SQLException e) {
 			logger.error("mySQL: Could not create table for item '{}': ", itemName, e.getMessage());
 		} finally {
-			if (statement != null) {
-				try {
-					statement.close();
-				} catch (SQLException logOrIgnore) {
-				}
-			}
+			closeStatement(statement);
 		}
 
 		// An error occurred adding the item name into the index list!
@@ -205,22 +264,17 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 		logger.debug("SQL: " + sqlCmd);
 
 		try {
-			statement = connection.createStatement();
-			statement.executeUpdate(sqlCmd);
+			createStatement = pooledConnection.getConnection().createStatement();
+			createStatement.executeUpdate(sqlCmd);
 
 			logger.debug("mySQL: Table created for item '" + itemName + "' with datatype " + mysqlType
 					+ " in SQL database.");
 			sqlTables.put(itemName, tableName);
 		} catch (Exception e) {
 			logger.error("mySQL: Could not create table for item '" + itemName + "' with statement '" + sqlCmd + "': "
-					+ e.getMessage());			
+					+ e.getMessage());
 		} finally {
-			if (statement != null) {
-				try {
-					statement.close();
-				} catch (Exception hidden) {
-				}
-			}
+			closeStatement(createStatement);
 		}
 
 		// Check if the new entry is in the table list
@@ -228,25 +282,20 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 		// The item needs to be removed from the index table to avoid duplicates
 		if(sqlTables.get(itemName) == null) {
 			logger.error("mySQL: Item '{}' was not added to the table - removing index", itemName);
-			sqlCmd = new String("DELETE FROM Items WHERE ItemName='" + itemName+"'");
-			logger.debug("SQL: {}", sqlCmd);
-	
+
+			statement = null;
 			try {
-				statement = connection.createStatement();
-				statement.executeUpdate(sqlCmd);	
+				statement = pooledConnection.getConnection().prepareStatement("DELETE FROM Items WHERE ItemName=?");
+				statement.setString(1, itemName);
+				statement.executeUpdate();
 			} catch (Exception e) {
-				logger.error("mySQL: Could not remove index for item '" + itemName + "' with statement '" + sqlCmd + "': "
-						+ e.getMessage());			
+				logger.error("mySQL: Could not remove index for item '" + itemName + "': " + e.getMessage());
 			} finally {
-				if (statement != null) {
-					try {
-						statement.close();
-					} catch (Exception hidden) {
-					}
-				}
+				closeStatement(statement);
 			}
-		}			
-		
+			return null;
+		}
+
 		return tableName;
 	}
 
@@ -262,124 +311,241 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 		if (initialized == false)
 			return;
 
-		// Connect to mySQL server if we're not already connected 
-		if (!isConnected())
-			connectToDatabase();
+		String value = getValue(item, item.getState());
 
-		// If we still didn't manage to connect, then return!
-		if (!isConnected()) {
-			logger.warn(
-					"mySQL: No connection to database. Can not persist item '{}'! Will retry connecting to database next time.",
-					item);
-			return;
+		logger.debug("mySQL: Buffering item '{}' as '{}'[{}] at {}.", item.getName(), item.getState().toString(),
+				value, (new java.util.Date()).toString());
+
+		boolean full;
+		synchronized (pendingRows) {
+			pendingRows.add(new Row(item, new Date(), value));
+			full = pendingRows.size() >= batchSize;
+			if (!full) {
+				scheduleFlush();
+			}
+		}
+		if (full) {
+			flush();
 		}
+	}
 
-		// Get the table name for this item
-		String tableName = getTable(item);
-		if (tableName == null) {
-			logger.error("Unable to store item '{}'.", item.getName());
+	/**
+	 * @{inheritDoc
+	 */
+	public void store(Item item) {
+		store(item, null);
+	}
+
+	/**
+	 * Stores all samples along with the buffered states through multi-row INSERTs
+	 * within a single transaction.
+	 */
+	public void store(List<PersistenceSample> samples) {
+		// If we've not initialised the bundle, then return
+		if (initialized == false)
 			return;
+
+		synchronized (pendingRows) {
+			for (PersistenceSample sample : samples) {
+				// Don't log undefined/uninitialised data
+				if (sample.getState() instanceof UnDefType)
+					continue;
+				pendingRows.add(new Row(sample.getItem(), sample.getTimestamp(),
+						getValue(sample.getItem(), sample.getState())));
+			}
 		}
+		flush();
+	}
 
-		// Do some type conversion to ensure we know the data type.
-		// This is necessary for items that have multiple types and may return their
-		// state in a format that's not preferred or compatible with the MySQL type.
-		// eg. DimmerItem can return OnOffType (ON, OFF), or PercentType (0-100).
-		// We need to make sure we cover the best type for serialisation.
-		String value;
-		if (item instanceof DimmerItem || item instanceof RollershutterItem) {
-			value = item.getStateAs(PercentType.class).toString();
-		} else if (item instanceof ColorItem) {
-			value = item.getStateAs(HSBType.class).toString();
-		} else {
-			// All other items should return the best format by default
-			value = item.getState().toString();
+	/**
+	 * Converts a state of an item to the value that is stored in the item table.
+	 * <p>
+	 * This is necessary for items that have multiple types and may return their
+	 * state in a format that's not preferred or compatible with the MySQL type.
+	 * eg. DimmerItem can return OnOffType (ON, OFF), or PercentType (0-100).
+	 * We need to make sure we cover the best type for serialisation. The state is
+	 * passed separately, as it might be a sample which differs from the current
+	 * state of the item.
+	 * 
+	 * @param item the item the state belongs to
+	 * @param state the state to convert
+	 * @return the value to store
+	 */
+	private static String getValue(Item item, State state) {
+		if (item instanceof ColorItem) {
+			// ColorItem is a DimmerItem, but keeps its HSBType
+			return state.toString();
+		} else if (item instanceof DimmerItem || item instanceof RollershutterItem) {
+			if (state instanceof OnOffType) {
+				state = state == OnOffType.ON ? PercentType.HUNDRED : PercentType.ZERO;
+			} else if (state instanceof UpDownType) {
+				state = state == UpDownType.UP ? PercentType.ZERO : PercentType.HUNDRED;
+			}
 		}
+		// All other items should return the best format by default
+		return state.toString();
+	}
 
-		String sqlCmd = null;
-		Statement statement = null;
+	/**
+	 * Flushes the buffered rows after the flush interval, if this is not scheduled already.
+	 * Must be called with the lock of <code>pendingRows</code>.
+	 */
+	private void scheduleFlush() {
+		if (flushScheduled)
+			return;
 		try {
-			statement = connection.createStatement();
-			sqlCmd = new String("INSERT INTO " + tableName + " (TIME, VALUE) VALUES(NOW(),'"
-					+ item.getState().toString() + "');");
-			statement.executeUpdate(sqlCmd);
+			scheduler.schedule(new Runnable() {
+				public void run() {
+					flush();
+				}
+			}, flushInterval, TimeUnit.MILLISECONDS);
+			flushScheduled = true;
+		} catch (RejectedExecutionException e) {
+			// this happens if the system is shut down, deactivate() flushes the rows
+		}
+	}
+
+	/**
+	 * Writes all buffered rows through multi-row INSERTs within a single transaction.
+	 */
+	private void flush() {
+		List<Row> rows;
+		synchronized (pendingRows) {
+			flushScheduled = false;
+			if (pendingRows.isEmpty())
+				return;
+			rows = new ArrayList<Row>(pendingRows);
+			pendingRows.clear();
+		}
 
-			logger.debug("mySQL: Stored item '{}' as '{}'[{}] in SQL database at {}.", item.getName(), item.getState()
-					.toString(), value, (new java.util.Date()).toString());
-			logger.debug("mySQL: {}", sqlCmd);
+		PooledConnection connection = borrowConnection();
 
-			// Success
-			errCnt = 0;
-		} catch (Exception e) {
-			errCnt++;
+		// If we still didn't manage to connect, then return!
+		if (connection == null) {
+			logger.warn(
+					"mySQL: No connection to database. Can not persist {} item states! Will retry connecting to database next time.",
+					rows.size());
+			return;
+		}
 
-			logger.error("mySQL: Could not store item '{}' in database with statement '{}': {}", item.getName(),
-					sqlCmd, e.getMessage());
-		} finally {
-			if (statement != null) {
+		boolean failed = false;
+		try {
+			// Resolve (and create) the item tables first, as table creation cannot be part of the transaction
+			Map<String, List<Row>> rowsByTable = new LinkedHashMap<String, List<Row>>();
+			for (Row row : rows) {
+				String tableName = getTable(connection, row.item);
+				if (tableName == null) {
+					logger.error("Unable to store item '{}'.", row.item.getName());
+					continue;
+				}
+				List<Row> tableRows = rowsByTable.get(tableName);
+				if (tableRows == null) {
+					tableRows = new ArrayList<Row>();
+					rowsByTable.put(tableName, tableRows);
+				}
+				tableRows.add(row);
+			}
+
+			connection.getConnection().setAutoCommit(false);
+			try {
+				int count = 0;
+				for (Map.Entry<String, List<Row>> entry : rowsByTable.entrySet()) {
+					insertRows(connection, entry.getKey(), entry.getValue());
+					count += entry.getValue().size();
+				}
+				connection.getConnection().commit();
+
+				logger.debug("mySQL: Stored {} item states in {} tables in SQL database.", count, rowsByTable.size());
+			} catch (SQLException e) {
 				try {
-					statement.close();
-				} catch (Exception hidden) {
+					connection.getConnection().rollback();
+				} catch (SQLException hidden) {
 				}
+				throw e;
+			} finally {
+				connection.getConnection().setAutoCommit(true);
 			}
+		} catch (SQLException e) {
+			failed = true;
+			logger.error("mySQL: Could not store {} item states in database: {}", rows.size(), e.getMessage());
+		} finally {
+			connection.release(failed);
 		}
 	}
 
 	/**
-	 * @{inheritDoc
+	 * Inserts rows into an item table. The rows are written in chunks of
+	 * {@link #MAX_ROWS_PER_INSERT} rows and the remainder in chunks of decreasing
+	 * powers of two, so that only a few statements per table have to be cached.
+	 * Rows for a time which is stored already are ignored, as the time is the primary key.
 	 */
-	public void store(Item item) {
-		store(item, null);
+	private void insertRows(PooledConnection connection, String table, List<Row> rows) throws SQLException {
+		int index = 0;
+		for (int chunk = MAX_ROWS_PER_INSERT; chunk > 0; chunk /= 2) {
+			while (rows.size() - index >= chunk) {
+				PreparedStatement statement = connection.prepare(getInsertSql(table, chunk));
+				for (int i = 0; i < chunk; i++) {
+					Row row = rows.get(index++);
+					statement.setTimestamp(2 * i + 1, row.time);
+					statement.setString(2 * i + 2, row.value);
+				}
+				statement.executeUpdate();
+			}
+		}
 	}
 
-	/**
-	 * Checks if we have a database connection
-	 * 
-	 * @return true if connection has been established, false otherwise
-	 */
-	private boolean isConnected() {
-		// Error check. If we have 'errReconnectThreshold' errors in a row, then
-		// reconnect to the database
-		if (errReconnectThreshold != 0 && errCnt >= errReconnectThreshold) {
-			logger.error("mySQL: Error count exceeded {}. Disconnecting database.", errReconnectThreshold);
-			disconnectFromDatabase();
+	static String getInsertSql(String table, int rows) {
+		StringBuilder sql = new StringBuilder("INSERT IGNORE INTO ").append(table).append(" (Time, Value) VALUES ");
+		for (int i = 0; i < rows; i++) {
+			if (i > 0)
+				sql.append(',');
+			sql.append("(?,?)");
 		}
-		return connection != null;
+		return sql.toString();
 	}
 
 	/**
-	 * Connects to the database
+	 * Returns a connection of the pool, after reading the table of all items if
+	 * this has not been done yet.
+	 *
+	 * @return the connection or <code>null</code>, if there is no connection to the database
 	 */
-	private void connectToDatabase() {
-		try {
-			// Reset the error counter
-			errCnt = 0;
+	private PooledConnection borrowConnection() {
+		MysqlConnectionPool pool = this.pool;
+		if (pool == null)
+			return null;
 
-			logger.debug("mySQL: Attempting to connect to database {}", url);
-			Class.forName(driverClass).newInstance();
-			connection = DriverManager.getConnection(url, user, password);
-			logger.debug("mySQL: Connected to database {}", url);
+		PooledConnection connection;
+		try {
+			connection = pool.borrow();
+		} catch (SQLException e) {
+			logger.error("mySQL: Failed connecting to the SQL database using: driverClass=" + driverClass + ", url="
+					+ url + ", user=" + user + ": " + e.getMessage());
+			return null;
+		}
 
-			Statement st = connection.createStatement();
-			int result = st.executeUpdate("SHOW TABLES LIKE 'Items'");
-			st.close();
-			
-			if(waitTimeout != -1) {
-				logger.debug("mySQL: Setting wait_timeout to {} seconds.", waitTimeout);
-				st = connection.createStatement();
-				st.executeUpdate("SET SESSION wait_timeout="+waitTimeout);
-				st.close();
-			}
-			if (result == 0) {
-				st = connection.createStatement();
-				st.executeUpdate(
-						"CREATE TABLE Items (ItemId INT NOT NULL AUTO_INCREMENT,ItemName VARCHAR(200) NOT NULL,PRIMARY KEY (ItemId));",
-						Statement.RETURN_GENERATED_KEYS);
-				st.close();
+		synchronized (tableLock) {
+			if (!tablesLoaded) {
+				try {
+					loadTables(connection);
+					tablesLoaded = true;
+				} catch (SQLException e) {
+					logger.error("mySQL: Failed reading the item tables: {}", e.getMessage());
+					connection.release(true);
+					return null;
+				}
 			}
+		}
+		return connection;
+	}
 
-			// Retrieve the table array
-			st = connection.createStatement();
+	/**
+	 * Creates the table of all items if necessary and reads the table names of the items.
+	 */
+	private void loadTables(PooledConnection connection) throws SQLException {
+		Statement st = connection.getConnection().createStatement();
+		try {
+			st.executeUpdate("CREATE TABLE IF NOT EXISTS Items (ItemId INT NOT NULL AUTO_INCREMENT,ItemName VARCHAR(200) NOT NULL,PRIMARY KEY (ItemId));");
 
 			// Turn use of the cursor on.
 			st.setFetchSize(50);
@@ -388,10 +554,29 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 				sqlTables.put(rs.getString(2), "Item" + rs.getInt(1));
 			}
 			rs.close();
+		} finally {
 			st.close();
+		}
+	}
+
+	/**
+	 * Connects to the database
+	 */
+	private void connectToDatabase() {
+		try {
+			Class.forName(driverClass).newInstance();
 		} catch (Exception e) {
-			logger.error("mySQL: Failed connecting to the SQL database using: driverClass=" + driverClass + ", url="
-					+ url + ", user=" + user + ", password=" + password, e);
+			logger.error("mySQL: Failed loading the database driver " + driverClass, e);
+		}
+		synchronized (tableLock) {
+			tablesLoaded = false;
+		}
+		pool = new MysqlConnectionPool(url, user, password, poolSize, waitTimeout, errReconnectThreshold);
+
+		// Check the connection and read the item tables right away
+		PooledConnection connection = borrowConnection();
+		if (connection != null) {
+			connection.release(false);
 		}
 	}
 
@@ -399,25 +584,21 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 	 * Disconnects from the database
 	 */
 	private void disconnectFromDatabase() {
-		if (connection != null) {
-			try {
-				connection.close();
-				logger.debug("mySQL: Disconnected from database {}", url);
-			} catch (Exception e) {
-				logger.error("mySQL: Failed disconnecting from the SQL database {}", e);
-			}
-			connection = null;
+		MysqlConnectionPool pool = this.pool;
+		if (pool != null) {
+			this.pool = null;
+			pool.close();
 		}
 	}
 
 	/**
 	 * Formats the given <code>alias</code> by utilizing {@link Formatter}.
-	 * 
+	 *
 	 * @param alias
 	 *            the alias String which contains format strings
 	 * @param values
 	 *            the values which will be replaced in the alias String
-	 * 
+	 *
 	 * @return the formatted value. All format strings are replaced by
 	 *         appropriate values
 	 * @see java.util.Formatter for detailed information on format Strings.
@@ -483,6 +664,22 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 				waitTimeout = Integer.parseInt(tmpString);
 			}
 
+			tmpString = (String) config.get("poolsize");
+			if (StringUtils.isNotBlank(tmpString)) {
+				poolSize = Integer.parseInt(tmpString);
+			}
+
+			tmpString = (String) config.get("batchsize");
+			if (StringUtils.isNotBlank(tmpString)) {
+				batchSize = Integer.parseInt(tmpString);
+			}
+
+			tmpString = (String) config.get("flushinterval");
+			if (StringUtils.isNotBlank(tmpString)) {
+				flushInterval = Long.parseLong(tmpString);
+			}
+
+			flush();
 			disconnectFromDatabase();
 			connectToDatabase();
 
@@ -493,60 +690,52 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 	}
 
 	@Override
-	public Iterable<HistoricItem> query(FilterCriteria filter) {
-		if (!initialized)
-			return Collections.emptyList();
-
-		if (!isConnected())
-			connectToDatabase();
-
-		if (!isConnected())
-			return Collections.emptyList();
-
-		SimpleDateFormat mysqlDateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-
+	public Iterable<HistoricItem> query(final FilterCriteria filter) {
 		// Get the item name from the filter
 		// Also get the Item object so we can determine the type
-		Item item = null;
-		String itemName = filter.getItemName();
+		final String itemName = filter.getItemName();
 		logger.debug("mySQL query: item is {}", itemName);
-		try {
-			if (itemRegistry != null) {
-				item = itemRegistry.getItem(itemName);
-			}
-		} catch (ItemNotFoundException e1) {
-			logger.error("Unable to get item type for {}", itemName);
-
-			// Set type to null - data will be returned as StringType
-			item = null;
-		}
-                   
-                if(item instanceof GroupItem){
-                    // For Group Items is BaseItem needed to get correct Type of Value.
-                    item = GroupItem.class.cast(item).getBaseItem();
-                }
 
-		String table = sqlTables.get(itemName);
-		if (table == null) {
-			logger.error("mySQL: Unable to find table for query '" + itemName + "'.");
+		final String table = getQueryTable(itemName);
+		if (table == null)
 			return Collections.emptyList();
-		}
 
-		String filterString = new String();
+		final Item item = getItem(itemName);
 
-		if (filter.getBeginDate() != null) {
-			if (filterString.isEmpty())
-				filterString += " WHERE";
-			else
-				filterString += " AND";
-			filterString += " TIME>'" + mysqlDateFormat.format(filter.getBeginDate()) + "'";
+		if (filter.getPageSize() != 0x7fffffff) {
+			return queryRows(item, itemName, table, filter, null,
+					" LIMIT " + filter.getPageNumber() * filter.getPageSize() + "," + filter.getPageSize());
 		}
-		if (filter.getEndDate() != null) {
-			if (filterString.isEmpty())
-				filterString += " WHERE";
-			else
-				filterString += " AND";
-			filterString += " TIME<'" + mysqlDateFormat.format(filter.getEndDate().getTime()) + "'";
+
+		// Read large results in chunks, continuing after the time of the last row
+		return new Iterable<HistoricItem>() {
+			public Iterator<HistoricItem> iterator() {
+				return new ChunkIterator(item, itemName, table, filter);
+			}
+		};
+	}
+
+	/**
+	 * Reads the rows of an item table which match the filter.
+	 *
+	 * @param after the time after which (or before which for descending order) the rows are
+	 *            read, may be <code>null</code>
+	 * @param limit the LIMIT clause
+	 * @return the rows or <code>null</code>, if an error occurred
+	 */
+	private List<HistoricItem> queryRows(Item item, String itemName, String table, FilterCriteria filter,
+			Date after, String limit) {
+		PooledConnection connection = borrowConnection();
+		if (connection == null)
+			return null;
+
+		List<Object> parameters = new ArrayList<Object>();
+		String filterString = getWhereClause(filter, parameters);
+
+		if (after != null) {
+			filterString += filterString.isEmpty() ? " WHERE" : " AND";
+			filterString += filter.getOrdering() == Ordering.ASCENDING ? " Time>?" : " Time<?";
+			parameters.add(new Timestamp(after.getTime()));
 		}
 
 		if (filter.getOrdering() == Ordering.ASCENDING) {
@@ -554,71 +743,492 @@ public class MysqlPersistenceService implements QueryablePersistenceService, Man
 		} else {
 			filterString += " ORDER BY Time DESC";
 		}
+		filterString += limit;
 
-		if (filter.getPageSize() != 0x7fffffff)
-			filterString += " LIMIT " + filter.getPageNumber() * filter.getPageSize() + "," + filter.getPageSize();
-
+		String queryString = "SELECT Time, Value FROM " + table + filterString;
+		boolean failed = false;
 		try {
 			long timerStart = System.currentTimeMillis();
 
-			// Retrieve the table array
-			Statement st = connection.createStatement();
-
-			String queryString = new String();
-			queryString = "SELECT Time, Value FROM " + table;
-			if (!filterString.isEmpty())
-				queryString += filterString;
-
 			logger.debug("mySQL: " + queryString);
 
+			PreparedStatement st = connection.prepare(queryString);
+			setParameters(st, parameters);
+
 			// Turn use of the cursor on.
 			st.setFetchSize(50);
 
-			ResultSet rs = st.executeQuery(queryString);
+			ResultSet rs = st.executeQuery();
 
 			long count = 0;
 			List<HistoricItem> items = new ArrayList<HistoricItem>();
-			State state;
 			while (rs.next()) {
 				count++;
 
-				if (item instanceof NumberItem)
-					state = new DecimalType(rs.getDouble(2));
-				else if (item instanceof DimmerItem)
-					state = new PercentType(rs.getInt(2));
-				else if (item instanceof SwitchItem)
-					state = OnOffType.valueOf(rs.getString(2));
-				else if (item instanceof ContactItem)
-					state = OpenClosedType.valueOf(rs.getString(2));
-				else if (item instanceof RollershutterItem)
-					state = new PercentType(rs.getInt(2));
-				else if (item instanceof ColorItem)
-					state = new HSBType(rs.getString(2));
-				else if (item instanceof DateTimeItem) {
-					Calendar calendar = Calendar.getInstance();
-					calendar.setTimeInMillis(rs.getTimestamp(2).getTime());
-					state = new DateTimeType(calendar);
-				} else
-					state = new StringType(rs.getString(2));
-
-				MysqlItem mysqlItem = new MysqlItem(itemName, state, rs.getTimestamp(1));
+				MysqlItem mysqlItem = new MysqlItem(itemName, getState(item, rs, 2), rs.getTimestamp(1));
 				items.add(mysqlItem);
 			}
 
 			rs.close();
-			st.close();
 
 			long timerStop = System.currentTimeMillis();
 			logger.debug("mySQL: query returned {} rows in {}ms", count, timerStop - timerStart);
 
-			// Success
-			errCnt = 0;
-
 			return items;
 		} catch (SQLException e) {
-			errCnt++;
+			failed = true;
 			logger.error("mySQL: Error running querying : " + e.getMessage());
+		} finally {
+			connection.release(failed);
 		}
 		return null;
 	}
+
+	/**
+	 * Converts a value read from an item table into the state of the item.
+	 *
+	 * @param item the item or <code>null</code>, if it is not known
+	 * @param rs the result set, positioned at the row to convert
+	 * @param column the index of the value column
+	 */
+	private State getState(Item item, ResultSet rs, int column) throws SQLException {
+		if (item instanceof NumberItem)
+			return new DecimalType(rs.getDouble(column));
+		else if (item instanceof DimmerItem)
+			return new PercentType(rs.getInt(column));
+		else if (item instanceof SwitchItem)
+			return OnOffType.valueOf(rs.getString(column));
+		else if (item instanceof ContactItem)
+			return OpenClosedType.valueOf(rs.getString(column));
+		else if (item instanceof RollershutterItem)
+			return new PercentType(rs.getInt(column));
+		else if (item instanceof ColorItem)
+			return new HSBType(rs.getString(column));
+		else if (item instanceof DateTimeItem) {
+			Calendar calendar = Calendar.getInstance();
+			calendar.setTimeInMillis(rs.getTimestamp(column).getTime());
+			return new DateTimeType(calendar);
+		} else
+			return new StringType(rs.getString(column));
+	}
+
+	/**
+	 * Reads the latest row of many item tables with few queries: the tables of items of
+	 * the same type, whose values have the same SQL type, are read with a UNION of up to
+	 * {@link #LATEST_TABLES_PER_QUERY} single row SELECTs.
+	 */
+	public Map<String, HistoricItem> queryLatest(Collection<String> itemNames) {
+		Map<String, HistoricItem> latest = new HashMap<String, HistoricItem>();
+		if (!initialized)
+			return latest;
+
+		// the tables of all items are known once there is a connection
+		PooledConnection connection = borrowConnection();
+		if (connection == null)
+			return latest;
+
+		// group the tables by the item type, items without a table have never been stored
+		Map<Class<?>, List<String>> namesByType = new LinkedHashMap<Class<?>, List<String>>();
+		Map<String, Item> items = new HashMap<String, Item>();
+		for (String itemName : itemNames) {
+			if (!sqlTables.containsKey(itemName))
+				continue;
+			Item item = getItem(itemName);
+			items.put(itemName, item);
+			Class<?> type = item != null ? item.getClass() : null;
+			List<String> names = namesByType.get(type);
+			if (names == null) {
+				names = new ArrayList<String>();
+				namesByType.put(type, names);
+			}
+			names.add(itemName);
+		}
+		long timerStart = System.currentTimeMillis();
+		boolean failed = false;
+		try {
+			for (List<String> names : namesByType.values()) {
+				for (int i = 0; i < names.size(); i += LATEST_TABLES_PER_QUERY) {
+					List<String> chunk = names.subList(i, Math.min(names.size(), i + LATEST_TABLES_PER_QUERY));
+					StringBuilder queryString = new StringBuilder();
+					for (int j = 0; j < chunk.size(); j++) {
+						if (j > 0)
+							queryString.append(" UNION ALL ");
+						queryString.append("(SELECT ").append(j).append(" AS Idx, Time, Value FROM ")
+								.append(sqlTables.get(chunk.get(j))).append(" ORDER BY Time DESC LIMIT 1)");
+					}
+					logger.trace("mySQL: {}", queryString);
+
+					Statement st = connection.getConnection().createStatement();
+					try {
+						ResultSet rs = st.executeQuery(queryString.toString());
+						while (rs.next()) {
+							String itemName = chunk.get(rs.getInt(1));
+							latest.put(itemName, new MysqlItem(itemName, getState(items.get(itemName), rs, 3),
+									rs.getTimestamp(2)));
+						}
+						rs.close();
+					} finally {
+						st.close();
+					}
+				}
+			}
+			logger.debug("mySQL: read the latest rows of {} items in {}ms", latest.size(), System.currentTimeMillis()
+					- timerStart);
+		} catch (SQLException e) {
+			failed = true;
+			logger.error("mySQL: Error querying the latest rows: " + e.getMessage());
+		} finally {
+			connection.release(failed);
+		}
+		return latest;
+	}
+
+	/**
+	 * Iterates over all rows of an unpaged query. The rows are read in chunks of
+	 * {@link #QUERY_CHUNK_SIZE} rows, each chunk continuing after the time of the
+	 * last row of the previous one. As the time is the primary key of the item
+	 * tables, no row is skipped or read twice, and no connection is held between
+	 * the chunks.
+	 */
+	private class ChunkIterator implements Iterator<HistoricItem> {
+
+		private final Item item;
+		private final String itemName;
+		private final String table;
+		private final FilterCriteria filter;
+
+		private List<HistoricItem> chunk = Collections.emptyList();
+		private int index = 0;
+		private Date last = null;
+		private boolean exhausted = false;
+
+		ChunkIterator(Item item, String itemName, String table, FilterCriteria filter) {
+			this.item = item;
+			this.itemName = itemName;
+			this.table = table;
+			this.filter = filter;
+		}
+
+		public boolean hasNext() {
+			if (index < chunk.size())
+				return true;
+			if (exhausted)
+				return false;
+
+			List<HistoricItem> rows = queryRows(item, itemName, table, filter, last, " LIMIT " + QUERY_CHUNK_SIZE);
+			if (rows == null) {
+				rows = Collections.emptyList();
+			}
+			exhausted = rows.size() < QUERY_CHUNK_SIZE;
+			chunk = rows;
+			index = 0;
+			if (!rows.isEmpty()) {
+				last = rows.get(rows.size() - 1).getTimestamp();
+			}
+			return index < chunk.size();
+		}
+
+		public HistoricItem next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			return chunk.get(index++);
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * @{inheritDoc
+	 */
+	public boolean canAggregate(FilterCriteria filter, boolean numeric) {
+		return !numeric || isNumeric(getItem(filter.getItemName()));
+	}
+
+	/**
+	 * @{inheritDoc
+	 */
+	public HistoricItem minimum(FilterCriteria filter) {
+		return getExtremum(filter, "ASC");
+	}
+
+	/**
+	 * @{inheritDoc
+	 */
+	public HistoricItem maximum(FilterCriteria filter) {
+		return getExtremum(filter, "DESC");
+	}
+
+	/**
+	 * Returns the oldest row with the smallest or largest value.
+	 */
+	private HistoricItem getExtremum(FilterCriteria filter, String order) {
+		Item item = getNumericItem(filter.getItemName());
+		String table = getQueryTable(filter.getItemName());
+		if (table == null)
+			return null;
+
+		PooledConnection connection = borrowConnection();
+		if (connection == null)
+			return null;
+
+		List<Object> parameters = new ArrayList<Object>();
+		String queryString = "SELECT Time, Value FROM " + table + getWhereClause(filter, parameters)
+				+ " ORDER BY Value " + order + ", Time ASC LIMIT 1";
+		boolean failed = false;
+		try {
+			logger.debug("mySQL: " + queryString);
+			PreparedStatement st = connection.prepare(queryString);
+			setParameters(st, parameters);
+			ResultSet rs = st.executeQuery();
+			HistoricItem result = null;
+			if (rs.next()) {
+				State state;
+				if (item instanceof NumberItem)
+					state = new DecimalType(rs.getDouble(2));
+				else
+					state = new PercentType(rs.getInt(2));
+				result = new MysqlItem(filter.getItemName(), state, rs.getTimestamp(1));
+			}
+			rs.close();
+			return result;
+		} catch (SQLException e) {
+			failed = true;
+			logger.error("mySQL: Error running aggregate query '{}': {}", queryString, e.getMessage());
+			return null;
+		} finally {
+			connection.release(failed);
+		}
+	}
+
+	/**
+	 * @{inheritDoc
+	 */
+	public NumericSummary summarize(FilterCriteria filter) {
+		getNumericItem(filter.getItemName());
+		Double[] result = queryDoubles("SUM(Value), COUNT(Value)", filter, "");
+		if (result == null || result[0] == null)
+			return NumericSummary.EMPTY;
+		return new NumericSummary(new DecimalType(result[0]), result[1].longValue());
+	}
+
+	/**
+	 * @{inheritDoc
+	 */
+	public boolean exists(FilterCriteria filter) {
+		return queryDouble("1", filter, " LIMIT 1") != null;
+	}
+
+	/**
+	 * Runs a query with a single numeric result on the table of the filtered item.
+	 *
+	 * @return the result or <code>null</code>, if there is no result or an error occurred
+	 */
+	private Double queryDouble(String expression, FilterCriteria filter, String suffix) {
+		Double[] result = queryDoubles(expression, filter, suffix);
+		return result != null ? result[0] : null;
+	}
+
+	/**
+	 * Runs a query with a single row of numeric results on the table of the filtered item.
+	 *
+	 * @param expression the comma separated columns to select
+	 * @return the values of the columns, which are <code>null</code> for SQL NULL values, or
+	 *         <code>null</code>, if there is no result or an error occurred
+	 */
+	private Double[] queryDoubles(String expression, FilterCriteria filter, String suffix) {
+		String table = getQueryTable(filter.getItemName());
+		if (table == null)
+			return null;
+
+		PooledConnection connection = borrowConnection();
+		if (connection == null)
+			return null;
+
+		List<Object> parameters = new ArrayList<Object>();
+		String queryString = "SELECT " + expression + " FROM " + table + getWhereClause(filter, parameters) + suffix;
+		boolean failed = false;
+		try {
+			logger.debug("mySQL: " + queryString);
+			PreparedStatement st = connection.prepare(queryString);
+			setParameters(st, parameters);
+			ResultSet rs = st.executeQuery();
+			Double[] result = null;
+			if (rs.next()) {
+				result = new Double[rs.getMetaData().getColumnCount()];
+				for (int i = 0; i < result.length; i++) {
+					double value = rs.getDouble(i + 1);
+					if (!rs.wasNull())
+						result[i] = value;
+				}
+			}
+			rs.close();
+			return result;
+		} catch (SQLException e) {
+			failed = true;
+			logger.error("mySQL: Error running aggregate query '{}': {}", queryString, e.getMessage());
+			return null;
+		} finally {
+			connection.release(failed);
+		}
+	}
+
+	/**
+	 * Returns the table of an item for a query.
+	 *
+	 * @return the table name or <code>null</code>, if there is no connection or no table
+	 */
+	private String getQueryTable(String itemName) {
+		if (!initialized)
+			return null;
+
+		// Make sure the item tables have been read
+		if (!tablesLoaded) {
+			PooledConnection connection = borrowConnection();
+			if (connection == null)
+				return null;
+			connection.release(false);
+		}
+
+		String table = sqlTables.get(itemName);
+		if (table == null) {
+			logger.error("mySQL: Unable to find table for query '" + itemName + "'.");
+		}
+		return table;
+	}
+
+	/**
+	 * Returns the item with the given name (or the base item of a group), so that the type
+	 * of its values can be determined.
+	 */
+	private Item getItem(String itemName) {
+		Item item = null;
+		try {
+			if (itemRegistry != null) {
+				item = itemRegistry.getItem(itemName);
+			}
+		} catch (ItemNotFoundException e1) {
+			logger.error("Unable to get item type for {}", itemName);
+
+			// Set type to null - data will be returned as StringType
+			item = null;
+		}
+
+		if (item instanceof GroupItem) {
+			// For Group Items is BaseItem needed to get correct Type of Value.
+			item = GroupItem.class.cast(item).getBaseItem();
+		}
+		return item;
+	}
+
+	/**
+	 * Returns the item with the given name, if its values are returned as {@link DecimalType}s
+	 * by {@link #query(FilterCriteria)}.
+	 *
+	 * @throws UnsupportedOperationException if the values of the item are not numeric
+	 */
+	private Item getNumericItem(String itemName) {
+		Item item = getItem(itemName);
+		if (isNumeric(item)) {
+			return item;
+		}
+		throw new UnsupportedOperationException("The values of item '" + itemName + "' are not numeric");
+	}
+
+	/**
+	 * Checks whether the values of an item are returned as {@link DecimalType}s by
+	 * {@link #query(FilterCriteria)}.
+	 */
+	private static boolean isNumeric(Item item) {
+		return item instanceof NumberItem
+				|| ((item instanceof DimmerItem || item instanceof RollershutterItem) && !(item instanceof ColorItem));
+	}
+
+	/**
+	 * Builds the WHERE clause for the date range and the state criteria of a filter.
+	 *
+	 * @param parameters the list to add the values of the parameters of the clause to
+	 */
+	private String getWhereClause(FilterCriteria filter, List<Object> parameters) {
+		String filterString = new String();
+
+		if (filter.getBeginDate() != null) {
+			if (filterString.isEmpty())
+				filterString += " WHERE";
+			else
+				filterString += " AND";
+			filterString += " TIME>?";
+			parameters.add(new Timestamp(filter.getBeginDate().getTime()));
+		}
+		if (filter.getEndDate() != null) {
+			if (filterString.isEmpty())
+				filterString += " WHERE";
+			else
+				filterString += " AND";
+			filterString += " TIME<?";
+			parameters.add(new Timestamp(filter.getEndDate().getTime()));
+		}
+		if (filter.getState() != null && filter.getOperator() != null) {
+			if (filterString.isEmpty())
+				filterString += " WHERE";
+			else
+				filterString += " AND";
+			filterString += " Value" + getOperator(filter.getOperator()) + "?";
+			parameters.add(filter.getState().toString());
+		}
+		return filterString;
+	}
+
+	private void setParameters(PreparedStatement statement, List<Object> parameters) throws SQLException {
+		for (int i = 0; i < parameters.size(); i++) {
+			Object parameter = parameters.get(i);
+			if (parameter instanceof Timestamp)
+				statement.setTimestamp(i + 1, (Timestamp) parameter);
+			else
+				statement.setString(i + 1, (String) parameter);
+		}
+	}
+
+	private String getOperator(Operator operator) {
+		switch (operator) {
+		case NEQ:
+			return "!=";
+		case GT:
+			return ">";
+		case LT:
+			return "<";
+		case GTE:
+			return ">=";
+		case LTE:
+			return "<=";
+		default:
+			return "=";
+		}
+	}
+
+	private void closeStatement(Statement statement) {
+		if (statement != null) {
+			try {
+				statement.close();
+			} catch (SQLException hidden) {
+			}
+		}
+	}
+
+	/**
+	 * A state which has not been written yet.
+	 */
+	private static class Row {
+		final Item item;
+		final Timestamp time;
+		final String value;
+
+		Row(Item item, Date time, String value) {
+			this.item = item;
+			// MySQL stores whole seconds, just like NOW()
+			this.time = new Timestamp(time.getTime() / 1000 * 1000);
+			this.value = value;
+		}
+	}
 }
@@ -0,0 +1,225 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.persistence.rrd4j.internal.RRD4jDbPool.Handle;
+import org.rrd4j.ConsolFun;
+import org.rrd4j.DsType;
+import org.rrd4j.core.RrdBackendFactory;
+import org.rrd4j.core.RrdDb;
+import org.rrd4j.core.RrdDef;
+
+/**
+ * @since 1.5.0
+ */
+public class RRD4jDbPoolTest {
+
+	private static final RrdBackendFactory MEMORY = RrdBackendFactory.getFactory("MEMORY");
+
+	private static final RrdBackendFactory FILE = RrdBackendFactory.getFactory("FILE");
+
+	private RecordingOpener opener;
+
+	@Before
+	public void init() {
+		opener = new RecordingOpener();
+	}
+
+	@Test
+	public void testAcquireReusesOpenDatabase() {
+		RRD4jDbPool pool = new RRD4jDbPool(opener, MEMORY, 10, 60000L);
+		Handle handle = pool.acquire("Item", ConsolFun.AVERAGE);
+		RrdDb db = handle.getDb();
+		pool.release(handle);
+
+		handle = pool.acquire("Item", ConsolFun.AVERAGE);
+		assertSame(db, handle.getDb());
+		pool.release(handle);
+		assertEquals(1, opener.opened.size());
+		assertFalse(db.isClosed());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedDatabaseIsClosedOverCapacity() {
+		RRD4jDbPool pool = new RRD4jDbPool(opener, MEMORY, 2, 60000L);
+		acquireAndRelease(pool, "A");
+		acquireAndRelease(pool, "B");
+		acquireAndRelease(pool, "A");
+		acquireAndRelease(pool, "C");
+
+		assertEquals(2, pool.size());
+		assertFalse(opener.get("A").isClosed());
+		assertTrue(opener.get("B").isClosed());
+		assertFalse(opener.get("C").isClosed());
+	}
+
+	@Test
+	public void testDatabaseInUseIsNotClosed() {
+		RRD4jDbPool pool = new RRD4jDbPool(opener, MEMORY, 1, 60000L);
+		Handle handle = pool.acquire("A", ConsolFun.AVERAGE);
+		acquireAndRelease(pool, "B");
+		assertFalse(handle.getDb().isClosed());
+		assertTrue(opener.get("B").isClosed());
+
+		pool.close();
+		assertFalse(handle.getDb().isClosed());
+		RrdDb db = handle.getDb();
+		pool.release(handle);
+		assertTrue(db.isClosed());
+		assertEquals(0, pool.size());
+		assertNull(pool.acquire("A", ConsolFun.AVERAGE));
+	}
+
+	@Test
+	public void testIdleDatabaseIsClosed() throws InterruptedException {
+		RRD4jDbPool pool = new RRD4jDbPool(opener, MEMORY, 10, 1L);
+		acquireAndRelease(pool, "A");
+		Handle handle = pool.acquire("B", ConsolFun.AVERAGE);
+		Thread.sleep(10);
+		pool.evictIdle();
+
+		assertTrue(opener.get("A").isClosed());
+		assertFalse(handle.getDb().isClosed());
+		assertEquals(1, pool.size());
+		pool.release(handle);
+	}
+
+	@Test
+	public void testOtherBackendReopensDatabases() {
+		RRD4jDbPool pool = new RRD4jDbPool(opener, MEMORY, 10, 60000L);
+		acquireAndRelease(pool, "A");
+		Handle handle = pool.acquire("B", ConsolFun.AVERAGE);
+
+		pool.configure(FILE, 10, 60000L);
+		// the unused database is closed at once, the one in use when it is acquired again
+		assertTrue(opener.get("A").isClosed());
+		assertFalse(handle.getDb().isClosed());
+		RrdDb db = handle.getDb();
+		pool.release(handle);
+
+		acquireAndRelease(pool, "B");
+		assertTrue(db.isClosed());
+		assertFalse(opener.get("B").isClosed());
+		assertEquals(3, opener.opened.size());
+		assertSame(FILE, opener.factories.get(2));
+	}
+
+	@Test
+	public void testFailedOpenIsNotKept() {
+		opener.fail = true;
+		RRD4jDbPool pool = new RRD4jDbPool(opener, MEMORY, 10, 60000L);
+		assertNull(pool.acquire("A", ConsolFun.AVERAGE));
+		assertEquals(0, pool.size());
+	}
+
+	@Test
+	public void testDatabaseIsNeverOpenedTwice() throws InterruptedException {
+		final RRD4jDbPool pool = new RRD4jDbPool(opener, MEMORY, 2, 0L);
+		final AtomicInteger errors = new AtomicInteger();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 8; i++) {
+			final Random random = new Random(i);
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 500; j++) {
+						Handle handle = pool.acquire("Item" + random.nextInt(5), ConsolFun.AVERAGE);
+						if (handle == null || handle.getDb().isClosed()) {
+							errors.incrementAndGet();
+						} else {
+							pool.release(handle);
+						}
+						if (j % 50 == 0) {
+							pool.evictIdle();
+						}
+					}
+				}
+			});
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(0, errors.get());
+		assertEquals(0, opener.duplicates.get());
+		pool.close();
+		assertEquals(0, pool.size());
+		for (RrdDb db : opener.opened) {
+			assertTrue(db.isClosed());
+		}
+	}
+
+	private static void acquireAndRelease(RRD4jDbPool pool, String name) {
+		Handle handle = pool.acquire(name, ConsolFun.AVERAGE);
+		assertNotNull(handle);
+		pool.release(handle);
+	}
+
+	/**
+	 * Creates databases in memory and records them. It counts the databases which are
+	 * opened while another one of the same name is still open.
+	 */
+	private static class RecordingOpener implements RRD4jDbPool.Opener {
+
+		final List<RrdDb> opened = new ArrayList<RrdDb>();
+
+		final List<String> names = new ArrayList<String>();
+
+		final List<RrdBackendFactory> factories = new ArrayList<RrdBackendFactory>();
+
+		final AtomicInteger duplicates = new AtomicInteger();
+
+		boolean fail = false;
+
+		public synchronized RrdDb open(String name, ConsolFun function, RrdBackendFactory factory) throws IOException {
+			if (fail) {
+				throw new IOException("cannot open " + name);
+			}
+			RrdDb previous = get(name);
+			if (previous != null && !previous.isClosed()) {
+				duplicates.incrementAndGet();
+			}
+			RrdDef def = new RrdDef(name + opened.size(), 1);
+			def.addDatasource("state", DsType.GAUGE, 60, Double.NaN, Double.NaN);
+			def.addArchive(function, 0.5, 1, 10);
+			RrdDb db = new RrdDb(def, MEMORY);
+			opened.add(db);
+			names.add(name);
+			factories.add(factory);
+			return db;
+		}
+
+		/**
+		 * @return the database which has been opened last for the given name
+		 */
+		synchronized RrdDb get(String name) {
+			int index = names.lastIndexOf(name);
+			return index >= 0 ? opened.get(index) : null;
+		}
+	}
+
+}
@@ -0,0 +1,330 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.rrd4j.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.rrd4j.ConsolFun;
+import org.rrd4j.core.RrdBackendFactory;
+import org.rrd4j.core.RrdDb;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of open {@link RrdDb} instances, so that the database files do not
+ * have to be opened and closed for every sample and every query.
+ * <p>
+ * Each database file has a lock of its own, which is held from {@link #acquire(String, ConsolFun)}
+ * to {@link #release(Handle)}, so that different items do not wait for each other.
+ * If more than <code>capacity</code> files are open, the least recently used ones
+ * are closed as soon as they are not in use anymore. Files which have not been
+ * used for longer than the idle timeout are closed by {@link #evictIdle()}.
+ * <p>
+ * The handles count the threads which use them. A handle stays in the pool until
+ * its database has been closed, and it is only closed if nobody uses it, so that
+ * there is never more than one {@link RrdDb} for the same file. For the same reason
+ * the pool is reconfigured by {@link #configure(RrdBackendFactory, int, long)} instead
+ * of being replaced.
+ *
+ * @since 1.5.0
+ */
+public class RRD4jDbPool {
+
+	private static final Logger logger = LoggerFactory.getLogger(RRD4jDbPool.class);
+
+	/** opens a database, if it is not in the pool yet */
+	public interface Opener {
+		RrdDb open(String name, ConsolFun function, RrdBackendFactory factory) throws IOException;
+	}
+
+	/** all databases by name in access order, including those which are being closed, guarded by <code>this</code> */
+	private final LinkedHashMap<String, Handle> handles = new LinkedHashMap<String, Handle>(16, 0.75f, true);
+
+	private final Opener opener;
+
+	private RrdBackendFactory factory;
+
+	private int capacity;
+
+	private volatile long idleTimeout;
+
+	/** the number of handles which are being closed, guarded by <code>this</code> */
+	private int closing = 0;
+
+	private boolean closed = false;
+
+	/**
+	 * @param opener opens databases which are not in the pool yet
+	 * @param factory the backend to open the databases with
+	 * @param capacity the maximum number of databases which are kept open
+	 * @param idleTimeout the time in milliseconds after which unused databases are closed
+	 */
+	public RRD4jDbPool(Opener opener, RrdBackendFactory factory, int capacity, long idleTimeout) {
+		this.opener = opener;
+		this.factory = factory;
+		this.capacity = capacity;
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Changes the configuration of the pool. If the backend changes, the databases
+	 * which are not in use are closed, the others are reopened with the new backend
+	 * when they are acquired the next time.
+	 *
+	 * @param factory the backend to open the databases with
+	 * @param capacity the maximum number of databases which are kept open
+	 * @param idleTimeout the time in milliseconds after which unused databases are closed
+	 */
+	public void configure(RrdBackendFactory factory, int capacity, long idleTimeout) {
+		List<Handle> evicted = new ArrayList<Handle>();
+		synchronized (this) {
+			boolean backendChanged = this.factory != factory;
+			this.factory = factory;
+			this.capacity = capacity;
+			this.idleTimeout = idleTimeout;
+			for (Handle handle : handles.values()) {
+				if (backendChanged && isUnused(handle)) {
+					evict(handle, evicted);
+				}
+			}
+			evictOverCapacity(evicted);
+		}
+		close(evicted);
+	}
+
+	/**
+	 * Returns the locked database of the given name, which is opened if necessary.
+	 * The handle must be passed to {@link #release(Handle)} after use.
+	 *
+	 * @param name the name of the database
+	 * @param function the consolidation function of a database which has to be created
+	 * @return the locked handle or <code>null</code>, if the database could not be opened
+	 */
+	public Handle acquire(String name, ConsolFun function) {
+		Handle handle;
+		RrdBackendFactory factory;
+		synchronized (this) {
+			if (closed) {
+				return null;
+			}
+			handle = handles.get(name);
+			if (handle == null) {
+				handle = new Handle(name);
+				handles.put(name, handle);
+			}
+			handle.users++;
+			factory = this.factory;
+		}
+		handle.lock.lock();
+		try {
+			if (handle.db != null && handle.factory != factory) {
+				// the pool has been configured with another backend
+				closeDb(handle);
+			}
+			if (handle.db == null || handle.db.isClosed()) {
+				handle.db = opener.open(name, function, factory);
+				handle.factory = factory;
+			}
+			if (handle.db != null) {
+				return handle;
+			}
+		} catch (IOException e) {
+			logger.error("Could not open rrd4j database '{}': {}", name, e.getMessage());
+		}
+		release(handle);
+		return null;
+	}
+
+	/**
+	 * Unlocks a database after use. If the pool is over capacity, the least recently
+	 * used databases are closed.
+	 *
+	 * @param handle the handle returned by {@link #acquire(String, ConsolFun)}
+	 */
+	public void release(Handle handle) {
+		handle.lastAccess = System.currentTimeMillis();
+		handle.lock.unlock();
+		List<Handle> evicted = new ArrayList<Handle>();
+		synchronized (this) {
+			handle.users--;
+			if (handle.db == null && isUnused(handle)) {
+				// the database could not be opened
+				remove(handle);
+			}
+			evictOverCapacity(evicted);
+		}
+		close(evicted);
+	}
+
+	/**
+	 * Closes all databases which are not in use and have not been used within the idle timeout.
+	 */
+	public void evictIdle() {
+		long limit = System.currentTimeMillis() - idleTimeout;
+		List<Handle> evicted = new ArrayList<Handle>();
+		synchronized (this) {
+			for (Handle handle : handles.values()) {
+				if (isUnused(handle) && handle.lastAccess < limit) {
+					evict(handle, evicted);
+				}
+			}
+		}
+		if (!evicted.isEmpty()) {
+			logger.debug("Closing {} idle rrd4j databases", evicted.size());
+		}
+		close(evicted);
+	}
+
+	/**
+	 * Closes all databases which are not in use. Databases in use are closed when they
+	 * are released, no database is opened anymore.
+	 */
+	public void close() {
+		List<Handle> evicted = new ArrayList<Handle>();
+		synchronized (this) {
+			closed = true;
+			evictOverCapacity(evicted);
+		}
+		close(evicted);
+	}
+
+	/**
+	 * @return the number of databases in the pool, including those which are being closed
+	 */
+	public synchronized int size() {
+		return handles.size();
+	}
+
+	/**
+	 * @return the time in milliseconds after which unused databases are closed
+	 */
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Marks the least recently used databases which are not in use for closing, as long as
+	 * there are more open databases than the capacity allows. Must be called while holding
+	 * the lock of the pool.
+	 */
+	private void evictOverCapacity(List<Handle> evicted) {
+		int limit = closed ? 0 : capacity;
+		Iterator<Handle> iterator = handles.values().iterator();
+		while (handles.size() - closing > limit && iterator.hasNext()) {
+			Handle candidate = iterator.next();
+			if (isUnused(candidate)) {
+				evict(candidate, evicted);
+			}
+		}
+	}
+
+	private boolean isUnused(Handle handle) {
+		return handle.users == 0 && !handle.closing;
+	}
+
+	private void evict(Handle handle, List<Handle> evicted) {
+		handle.closing = true;
+		closing++;
+		evicted.add(handle);
+	}
+
+	private void remove(Handle handle) {
+		if (handles.get(handle.name) == handle) {
+			handles.remove(handle.name);
+		}
+	}
+
+	/**
+	 * Closes the databases of evicted handles, unless they have been acquired again in the
+	 * meantime. The handles are removed from the pool only after their database has been
+	 * closed, so that no other database is opened for the same file before.
+	 */
+	private void close(List<Handle> evicted) {
+		for (Handle handle : evicted) {
+			handle.lock.lock();
+			try {
+				boolean unused;
+				synchronized (this) {
+					unused = handle.users == 0;
+				}
+				if (unused) {
+					closeDb(handle);
+				}
+			} finally {
+				handle.lock.unlock();
+			}
+			synchronized (this) {
+				handle.closing = false;
+				closing--;
+				if (handle.users == 0 && handle.db == null) {
+					// otherwise it has been acquired and opened again in the meantime
+					remove(handle);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Closes the database of a handle, which must be locked.
+	 */
+	private void closeDb(Handle handle) {
+		try {
+			if (handle.db != null) {
+				handle.db.close();
+			}
+		} catch (IOException e) {
+			logger.debug("Error closing rrd4j database: {}", e.getMessage());
+		} finally {
+			handle.db = null;
+			handle.factory = null;
+		}
+	}
+
+	/**
+	 * An open database and its lock.
+	 */
+	public static class Handle {
+
+		private final String name;
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		/** the database, changed while holding the lock of the handle */
+		private volatile RrdDb db;
+
+		/** the backend the database has been opened with */
+		private RrdBackendFactory factory;
+
+		/** the number of threads which have acquired or wait for this handle, guarded by the pool */
+		private int users = 0;
+
+		/** whether the database is about to be closed, guarded by the pool */
+		private boolean closing = false;
+
+		private volatile long lastAccess = System.currentTimeMillis();
+
+		private Handle(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * @return the database, which may only be used until the handle is released
+		 */
+		public RrdDb getDb() {
+			return db;
+		}
+
+	}
+
+}
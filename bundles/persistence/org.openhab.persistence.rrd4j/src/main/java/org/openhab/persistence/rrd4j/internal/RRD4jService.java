@@ -13,12 +13,17 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.Dictionary;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
 
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
@@ -30,16 +35,22 @@ import org.openhab.core.library.items.SwitchItem;
 import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.library.types.OnOffType;
 import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.persistence.AggregatingPersistenceService;
 import org.openhab.core.persistence.FilterCriteria;
 import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.NumericSummary;
 import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.QueryablePersistenceService;
 import org.openhab.core.types.State;
+import org.openhab.persistence.rrd4j.internal.RRD4jDbPool.Handle;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.cm.ManagedService;
 import org.rrd4j.ConsolFun;
 import org.rrd4j.DsType;
 import org.rrd4j.core.FetchData;
 import org.rrd4j.core.FetchRequest;
+import org.rrd4j.core.RrdBackendFactory;
 import org.rrd4j.core.RrdDb;
 import org.rrd4j.core.RrdDef;
 import org.rrd4j.core.Sample;
@@ -50,22 +61,58 @@ import org.slf4j.LoggerFactory;
 /**
  * This is the implementation of the RRD4j {@link PersistenceService}. To learn
  * more about RRD4j please visit their <a href="http://code.google.com/p/rrd4j/">website</a>.
+ * <p>
+ * The database files are kept open in a {@link RRD4jDbPool}, so that items only wait
+ * for each other if they are stored in the same file. Values which cannot be stored
+ * because there already is a value for the current second are stored one second
+ * later, where several such values of an item are coalesced into one.
  * 
  * @author Kai Kreuzer
  * @since 1.0.0
  */
-public class RRD4jService implements QueryablePersistenceService {
+public class RRD4jService implements QueryablePersistenceService, AggregatingPersistenceService, ManagedService {
 
 	private static final String DATASOURCE_STATE = "state";
 
 	protected final static String DB_FOLDER = "etc/rrd4j";
 	
+	/** the default maximum number of database files which are kept open */
+	private static final int DEFAULT_CACHE_SIZE = 100;
+	
+	/** the default time in seconds after which unused database files are closed */
+	private static final int DEFAULT_IDLE_TIMEOUT = 600;
+	
 	private static final Logger logger = LoggerFactory.getLogger(RRD4jService.class);
 
-	private Map<String,Timer> timers = new HashMap<String,Timer>();
+	private volatile RRD4jDbPool pool;
+	
+	private ScheduledExecutorService scheduler;
+	
+	private ScheduledFuture<?> evictionJob;
+
+	/** the items which are stored again in the next second by their alias, guarded by itself */
+	private final Map<String, Item> pendingStores = new LinkedHashMap<String, Item>();
+	
+	private boolean flushScheduled = false;
+	
+	private final RRD4jDbPool.Opener opener = new RRD4jDbPool.Opener() {
+		public RrdDb open(String name, ConsolFun function, RrdBackendFactory factory) throws IOException {
+			return openDB(name, function, factory);
+		}
+	};
 	
 	protected ItemRegistry itemRegistry;
 	
+	/** the aggregation of the values of an archive */
+	private static class Aggregate {
+		double min = Double.NaN;
+		double max = Double.NaN;
+		long minTime;
+		long maxTime;
+		double sum = 0.0;
+		long count = 0;
+	}
+	
 	public void setItemRegistry(ItemRegistry itemRegistry) {
 		this.itemRegistry = itemRegistry;
 	}
@@ -74,6 +121,29 @@ public class RRD4jService implements QueryablePersistenceService {
 		this.itemRegistry = null;
 	}
 
+	public synchronized void activate() {
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+		if(pool==null) {
+			configurePool(RrdBackendFactory.getDefaultFactory(), DEFAULT_CACHE_SIZE, DEFAULT_IDLE_TIMEOUT * 1000L);
+		}
+	}
+
+	public synchronized void deactivate() {
+		if(evictionJob!=null) {
+			evictionJob.cancel(false);
+			evictionJob = null;
+		}
+		scheduler.shutdownNow();
+		synchronized(pendingStores) {
+			pendingStores.clear();
+			flushScheduled = false;
+		}
+		if(pool!=null) {
+			pool.close();
+			pool = null;
+		}
+	}
+
 	/**
 	 * @{inheritDoc}
 	 */
@@ -84,72 +154,100 @@ public class RRD4jService implements QueryablePersistenceService {
 	/**
 	 * @{inheritDoc}
 	 */
-	public synchronized void store(final Item item, final String alias) {
-		final String name = alias==null ? item.getName() : alias;
+	public void store(Item item, String alias) {
+		String name = alias==null ? item.getName() : alias;
 		ConsolFun function = getConsolidationFunction(item);
-		RrdDb db = getDB(name, function);
-		if(db!=null) {
-			long now = System.currentTimeMillis()/1000;
-			if(function!=ConsolFun.AVERAGE) {
-				try {
-					// we store the last value again, so that the value change in the database is not interpolated, but
-					// happens right at this spot
-					if(now - 1 > db.getLastUpdateTime()) {
-						// only do it if there is not already a value
-						double lastValue = db.getLastDatasourceValue(DATASOURCE_STATE);
-						if(!Double.isNaN(lastValue)) {
-							Sample sample = db.createSample();
-				            sample.setTime(now - 1);
-				            sample.setValue(DATASOURCE_STATE, lastValue);
-				            sample.update();
-		                    logger.debug("Stored '{}' with state '{}' in rrd4j database", name, mapToState(lastValue, item.getName()));
-						}
+		RRD4jDbPool pool = this.pool;
+		Handle handle = pool!=null ? pool.acquire(name, function) : null;
+		if(handle!=null) {
+			try {
+				store(item, name, function, handle.getDb());
+			} finally {
+				pool.release(handle);
+			}
+		}
+	}
+
+	private void store(Item item, String name, ConsolFun function, RrdDb db) {
+		long now = System.currentTimeMillis()/1000;
+		try {
+			if(now <= db.getLastUpdateTime()) {
+				// rrd4j requires at least one second step, so we try to store the value one second later
+				deferStore(item, name);
+				return;
+			}
+		} catch (IOException e) {
+			logger.debug("Error reading the last update time: {}", e.getMessage());
+		}
+		if(function!=ConsolFun.AVERAGE) {
+			try {
+				// we store the last value again, so that the value change in the database is not interpolated, but
+				// happens right at this spot
+				if(now - 1 > db.getLastUpdateTime()) {
+					// only do it if there is not already a value
+					double lastValue = db.getLastDatasourceValue(DATASOURCE_STATE);
+					if(!Double.isNaN(lastValue)) {
+						Sample sample = db.createSample();
+			            sample.setTime(now - 1);
+			            sample.setValue(DATASOURCE_STATE, lastValue);
+			            sample.update();
+	                    logger.debug("Stored '{}' with state '{}' in rrd4j database", name, mapToState(lastValue, item.getName()));
 					}
-				} catch (IOException e) {
-					logger.debug("Error re-storing last value: {}", e.getMessage());
 				}
+			} catch (IOException e) {
+				logger.debug("Error re-storing last value: {}", e.getMessage());
 			}
-			try {
-				Sample sample = db.createSample();
-	            sample.setTime(now);
-	            
-	            DecimalType state = (DecimalType) item.getStateAs(DecimalType.class);
-	            if (state!=null) {
-                    double value = state.toBigDecimal().doubleValue();
-                    sample.setValue(DATASOURCE_STATE, value);
-                    sample.update();
-                    logger.debug("Stored '{}' with state '{}' in rrd4j database", name, item.getState());
-	            }
-			} catch (IllegalArgumentException e) {
-				if(e.getMessage().contains("at least one second step is required")) {
-
-					// we try to store the value one second later
-					TimerTask task = new TimerTask() {
+		}
+		try {
+			Sample sample = db.createSample();
+            sample.setTime(now);
+            
+            DecimalType state = (DecimalType) item.getStateAs(DecimalType.class);
+            if (state!=null) {
+                double value = state.toBigDecimal().doubleValue();
+                sample.setValue(DATASOURCE_STATE, value);
+                sample.update();
+                logger.debug("Stored '{}' with state '{}' in rrd4j database", name, item.getState());
+            }
+		} catch (Exception e) {
+			logger.warn("Could not persist '{}' to rrd4j database: {}", new String[] { name, e.getMessage() });
+		}
+	}
+	
+	/**
+	 * Stores the current state of an item one second later. If the item is stored
+	 * again before, it is only stored once.
+	 */
+	private void deferStore(Item item, String name) {
+		synchronized(pendingStores) {
+			pendingStores.put(name, item);
+			if(!flushScheduled) {
+				try {
+					scheduler.schedule(new Runnable() {
 						public void run() {
-							store(item, name);
+							flushPendingStores();
 						}
-					};
-					Timer timer = timers.get(name);
-					if(timer!=null) {
-						timer.cancel();
-						timers.remove(name);
-					}
-					timer = new Timer();
-					timers.put(name, timer);
-					timer.schedule(task, 1000);
-				} else {
-					logger.warn("Could not persist '{}' to rrd4j database: {}", new String[] { name, e.getMessage() });
+					}, 1, TimeUnit.SECONDS);
+					flushScheduled = true;
+				} catch(RejectedExecutionException e) {
+					// this happens if the system is shut down
+					pendingStores.clear();
 				}
-			} catch (Exception e) {
-				logger.warn("Could not persist '{}' to rrd4j database: {}", new String[] { name, e.getMessage() });
-			}
-            try {
-				db.close();
-			} catch (IOException e) {
-				logger.debug("Error closing rrd4j database: {}", e.getMessage());
 			}
 		}
 	}
+	
+	private void flushPendingStores() {
+		Map<String, Item> stores;
+		synchronized(pendingStores) {
+			stores = new LinkedHashMap<String, Item>(pendingStores);
+			pendingStores.clear();
+			flushScheduled = false;
+		}
+		for(Map.Entry<String, Item> entry : stores.entrySet()) {
+			store(entry.getValue(), entry.getKey());
+		}
+	}
 
 	/**
 	 * @{inheritDoc}
@@ -162,8 +260,10 @@ public class RRD4jService implements QueryablePersistenceService {
 	public Iterable<HistoricItem> query(FilterCriteria filter) {
 		String itemName = filter.getItemName();
 		ConsolFun consolidationFunction = getConsolidationFunction(itemName);
-		RrdDb db = getDB(itemName, consolidationFunction);
-		if(db!=null) {
+		RRD4jDbPool pool = this.pool;
+		Handle handle = pool!=null ? pool.acquire(itemName, consolidationFunction) : null;
+		if(handle!=null) {
+			RrdDb db = handle.getDb();
 			long start = 0L;
 			long end = filter.getEndDate()==null ? System.currentTimeMillis()/1000 - 1 : filter.getEndDate().getTime()/1000;
 
@@ -208,25 +308,115 @@ public class RRD4jService implements QueryablePersistenceService {
 				return items;
 			} catch (IOException e) {
 				logger.warn("Could not query rrd4j database for item '{}': {}", new String[] { itemName, e.getMessage() });
-			}	
+			} finally {
+				pool.release(handle);
+			}
 		}
 		return Collections.emptyList();
 	}
 
-	protected synchronized RrdDb getDB(String alias, ConsolFun function) {
+	/**
+	 * @{inheritDoc}
+	 */
+	public boolean canAggregate(FilterCriteria filter, boolean numeric) {
+		// the archives can only be fetched within a date range and hold numbers
+		return filter.getBeginDate()!=null && filter.getState()==null
+				&& (!numeric || mapToState(0.0, filter.getItemName()) instanceof DecimalType);
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	public HistoricItem minimum(FilterCriteria filter) {
+		Aggregate aggregate = aggregate(filter, true);
+		return aggregate.count > 0 ? new RRD4jItem(filter.getItemName(), new DecimalType(aggregate.min), new Date(aggregate.minTime * 1000)) : null;
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	public HistoricItem maximum(FilterCriteria filter) {
+		Aggregate aggregate = aggregate(filter, true);
+		return aggregate.count > 0 ? new RRD4jItem(filter.getItemName(), new DecimalType(aggregate.max), new Date(aggregate.maxTime * 1000)) : null;
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	public NumericSummary summarize(FilterCriteria filter) {
+		Aggregate aggregate = aggregate(filter, true);
+		return new NumericSummary(new DecimalType(aggregate.sum), aggregate.count);
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	public boolean exists(FilterCriteria filter) {
+		return aggregate(filter, false).count > 0;
+	}
+
+	/**
+	 * Aggregates the values of the archive, which {@link #query(FilterCriteria)} would return
+	 * for a filter, without creating historic items for them.
+	 * 
+	 * @param filter the filter with a begin date and without state criteria
+	 * @param numeric whether the values are used as numbers
+	 * @throws UnsupportedOperationException if {@link #canAggregate(FilterCriteria, boolean)} does not allow the filter
+	 */
+	private Aggregate aggregate(FilterCriteria filter, boolean numeric) {
+		String itemName = filter.getItemName();
+		if(!canAggregate(filter, numeric)) {
+			throw new UnsupportedOperationException("rrd4j cannot aggregate the values of item '" + itemName + "' for this filter");
+		}
+		Aggregate aggregate = new Aggregate();
+		ConsolFun consolidationFunction = getConsolidationFunction(itemName);
+		RRD4jDbPool pool = this.pool;
+		Handle handle = pool!=null ? pool.acquire(itemName, consolidationFunction) : null;
+		if(handle!=null) {
+			try {
+				long start = filter.getBeginDate().getTime()/1000;
+				long end = filter.getEndDate()==null ? System.currentTimeMillis()/1000 - 1 : filter.getEndDate().getTime()/1000;
+				FetchData result = handle.getDb().createFetchRequest(consolidationFunction, start, end, 1).fetchData();
+				long ts = result.getFirstTimestamp();
+				long step = result.getRowCount() > 1 ? result.getStep() : 0;
+				for(double value : result.getValues(DATASOURCE_STATE)) {
+					if(!Double.isNaN(value)) {
+						if(aggregate.count==0 || value < aggregate.min) {
+							aggregate.min = value;
+							aggregate.minTime = ts;
+						}
+						if(aggregate.count==0 || value > aggregate.max) {
+							aggregate.max = value;
+							aggregate.maxTime = ts;
+						}
+						aggregate.sum += value;
+						aggregate.count++;
+					}
+					ts += step;
+				}
+			} catch (IOException e) {
+				logger.warn("Could not query rrd4j database for item '{}': {}", new String[] { itemName, e.getMessage() });
+			} finally {
+				pool.release(handle);
+			}
+		}
+		return aggregate;
+	}
+
+	private RrdDb openDB(String alias, ConsolFun function, RrdBackendFactory factory) {
 		RrdDb db = null;
         File file = new File(DB_FOLDER + File.separator + alias + ".rrd");
     	try {
             if (file.exists()) {
             	// recreate the RrdDb instance from the file
-            	db = new RrdDb(file.getAbsolutePath());
+            	db = new RrdDb(file.getAbsolutePath(), factory);
             } else {
             	File folder = new File(DB_FOLDER);
             	if(!folder.exists()) {
             		folder.mkdir();
             	}
             	// create a new database file
-                db = new RrdDb(getRrdDef(function, file));
+                db = new RrdDb(getRrdDef(function, file), factory);
             }
 		} catch (IOException e) {
 			logger.error("Could not create rrd4j database file '{}': {}", new String[] { file.getAbsolutePath(), e.getMessage() });
@@ -303,5 +493,69 @@ public class RRD4jService implements QueryablePersistenceService {
 		// just return a DecimalType as a fallback
 		return new DecimalType(value);
 	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	public void updated(Dictionary<String, ?> config) throws ConfigurationException {
+		RrdBackendFactory factory = RrdBackendFactory.getDefaultFactory();
+		int cacheSize = DEFAULT_CACHE_SIZE;
+		int idleTimeout = DEFAULT_IDLE_TIMEOUT;
+		if (config != null) {
+			String backendString = (String) config.get("backend");
+			if (StringUtils.isNotBlank(backendString)) {
+				try {
+					factory = RrdBackendFactory.getFactory(backendString.trim().toUpperCase());
+				} catch (IllegalArgumentException e) {
+					throw new ConfigurationException("rrd4j:backend", "Unknown rrd4j backend '" + backendString + "'");
+				}
+			}
+			cacheSize = parseInt(config, "cachesize", cacheSize);
+			idleTimeout = parseInt(config, "idletimeout", idleTimeout);
+		}
+		configurePool(factory, cacheSize, idleTimeout * 1000L);
+	}
+	
+	private int parseInt(Dictionary<String, ?> config, String key, int defaultValue) throws ConfigurationException {
+		String value = (String) config.get(key);
+		if (StringUtils.isBlank(value)) {
+			return defaultValue;
+		}
+		try {
+			int result = Integer.parseInt(value.trim());
+			if (result > 0) {
+				return result;
+			}
+		} catch (NumberFormatException e) {
+			// handled below
+		}
+		throw new ConfigurationException("rrd4j:" + key, "The value must be a positive number, but is '" + value + "'");
+	}
+	
+	/**
+	 * Creates the pool of open database files or changes its configuration. The pool is
+	 * not replaced, as a second pool could open files which are still open in the first one.
+	 */
+	private synchronized void configurePool(RrdBackendFactory factory, int cacheSize, long idleTimeout) {
+		if(pool==null) {
+			pool = new RRD4jDbPool(opener, factory, cacheSize, idleTimeout);
+		} else {
+			pool.configure(factory, cacheSize, idleTimeout);
+		}
+		final RRD4jDbPool currentPool = pool;
+		if(evictionJob!=null) {
+			evictionJob.cancel(false);
+			evictionJob = null;
+		}
+		if(scheduler!=null) {
+			long period = Math.max(1000L, Math.min(idleTimeout / 2, 60000L));
+			evictionJob = scheduler.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					currentPool.evictIdle();
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		}
+		logger.debug("Keeping up to {} rrd4j databases open with the {} backend", cacheSize, factory.getName());
+	}
 	
 }
@@ -11,6 +11,7 @@ package org.openhab.persistence.rrd4j.internal.charts;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Date;
 import java.util.HashMap;
@@ -23,15 +24,22 @@ import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import org.openhab.core.events.ItemEvent;
 import org.openhab.core.items.GroupItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
 import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.types.EventType;
 import org.openhab.io.net.http.SecureHttpContext;
 import org.openhab.persistence.rrd4j.internal.RRD4jService;
+import org.openhab.ui.chart.ChartCache;
 import org.openhab.ui.chart.ChartProvider;
 import org.openhab.ui.items.ItemUIRegistry;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
 import org.osgi.service.http.HttpContext;
 import org.osgi.service.http.HttpService;
 import org.osgi.service.http.NamespaceException;
@@ -50,13 +58,16 @@ import org.slf4j.LoggerFactory;
  * 	<li>items: A comma separated list of item names to display
  * 	<li>groups: A comma separated list of group names, whose members should be displayed 
  * </ul>
+ * Rendered charts are cached until they are outdated by time or by an update of one of
+ * their items, and requests for a chart the client has already are answered with
+ * <code>304 Not Modified</code>.
  *  
  * @author Kai Kreuzer
  * @author Chris Jackson
  * @since 1.0.0
  *
  */
-public class RRD4jChartServlet implements Servlet, ChartProvider {
+public class RRD4jChartServlet implements Servlet, ChartProvider, EventHandler {
 	
 	private static final Logger logger = LoggerFactory.getLogger(RRD4jChartServlet.class);
 
@@ -91,6 +102,7 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
 	
 	protected HttpService httpService;
 	protected ItemUIRegistry itemUIRegistry;
+	protected final ChartCache cache = new ChartCache(ChartCache.DEFAULT_CAPACITY);
 
 	public void setHttpService(HttpService httpService) {
 		this.httpService = httpService;
@@ -124,12 +136,26 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
 
 	protected void deactivate() {
 		httpService.unregister(SERVLET_NAME);
+		cache.clear();
+	}
+
+	/**
+	 * Invalidates the cached charts of updated items.
+	 */
+	public void handleEvent(Event event) {
+		ItemEvent itemEvent = ItemEvent.fromEvent(event);
+		if (itemEvent != null && itemEvent.getType() == EventType.UPDATE) {
+			cache.itemUpdated(itemEvent.getItemName());
+		}
 	}
 
 	public void service(ServletRequest req, ServletResponse res)
 			throws ServletException, IOException {
 		logger.debug("RRD4J Received incoming chart request: ", req);
 
+		// the time before the databases are read
+		long created = System.currentTimeMillis();
+
 		int width = 480;
 		try {
 			width = Integer.parseInt(req.getParameter("w"));
@@ -149,11 +175,26 @@ public class RRD4jChartServlet implements Servlet, ChartProvider {
 		Date timeEnd = new Date();
 		Date timeBegin = new Date(timeEnd.getTime() + period);
 
-		// Set the content type to that provided by the chart provider
-		res.setContentType("image/"+getChartType());
+		// Send the cached chart, if it is still up to date
+		String contentType = "image/" + getChartType();
+		String key = req.getParameter("items") + "|" + req.getParameter("groups") + "|" + period + "|" + width + "x" + height;
+		ChartCache.Entry entry = cache.get(key);
+		if (entry != null) {
+			ChartCache.write(entry, contentType, (HttpServletRequest) req, (HttpServletResponse) res);
+			return;
+		}
+
+		// the chart moves by one pixel after the time span of a pixel
+		long expires = created + Math.max(1000L, -period / Math.max(1, width));
+
 		try {
 			BufferedImage chart = createChart(null, null, timeBegin, timeEnd, height, width, req.getParameter("items"), req.getParameter("groups"));
-			ImageIO.write(chart, getChartType().toString(), res.getOutputStream());
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ImageIO.write(chart, getChartType().toString(), out);
+			entry = cache.put(key, created, expires,
+					ChartCache.getItemNames(itemUIRegistry, req.getParameter("items"), req.getParameter("groups")),
+					out.toByteArray());
+			ChartCache.write(entry, contentType, (HttpServletRequest) req, (HttpServletResponse) res);
 		} catch (ItemNotFoundException e) {
 			logger.debug("Item not found error while generating chart.");
 		} catch (IllegalArgumentException e) {
@@ -0,0 +1,236 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.timeseries.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.PersistenceSample;
+import org.openhab.core.types.State;
+import org.rrd4j.ConsolFun;
+import org.rrd4j.DsType;
+import org.rrd4j.core.FetchData;
+import org.rrd4j.core.RrdDb;
+import org.rrd4j.core.RrdDef;
+import org.rrd4j.core.Sample;
+
+import com.db4o.Db4oEmbedded;
+import com.db4o.EmbeddedObjectContainer;
+import com.db4o.ObjectSet;
+import com.db4o.config.EmbeddedConfiguration;
+import com.db4o.query.Query;
+
+/**
+ * Compares the ingest rate and the latency of range queries of the time series store
+ * with db4o and rrd4j, used the way the respective persistence services use them. It
+ * stores one sample per minute of one item, one sample at a time, and then queries
+ * random one day ranges.
+ * <p>
+ * This is not a unit test, run it as Java application with the db4o and rrd4j libraries
+ * on the classpath. The number of samples can be given as argument.
+ *
+ * @since 1.5.0
+ */
+public class TimeSeriesBenchmark {
+
+	private static final long MINUTE = 60 * 1000L;
+
+	private static final long DAY = 24 * 60 * MINUTE;
+
+	private static final int QUERIES = 1000;
+
+	private static final File FOLDER = new File("target/benchmark");
+
+	private final int samples;
+
+	private final long start;
+
+	private final Random random = new Random(42);
+
+	private TimeSeriesBenchmark(int samples) {
+		this.samples = samples;
+		this.start = (System.currentTimeMillis() - samples * MINUTE) / DAY * DAY;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int samples = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		FileUtils.deleteDirectory(FOLDER);
+		FOLDER.mkdirs();
+		TimeSeriesBenchmark benchmark = new TimeSeriesBenchmark(samples);
+		System.out.println("Storing " + samples + " samples and running " + QUERIES + " one day range queries");
+		System.out.println(String.format("%-12s %16s %16s %16s %12s", "store", "samples/s", "query ms (avg)",
+				"query ms (p99)", "disk KB"));
+		benchmark.runTimeSeries();
+		benchmark.runDb4o();
+		benchmark.runRrd4j();
+	}
+
+	private void runTimeSeries() {
+		File folder = new File(FOLDER, "timeseries");
+		TimeSeriesPersistenceService service = new TimeSeriesPersistenceService(folder);
+		service.activate();
+		NumberItem item = new NumberItem("Item");
+
+		long begin = System.nanoTime();
+		for (int i = 0; i < samples; i++) {
+			service.store(Arrays.asList(new PersistenceSample(item, null, value(i), new Date(start + i * MINUTE))));
+		}
+		long ingest = System.nanoTime() - begin;
+
+		long[] latencies = new long[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			long from = randomTime();
+			begin = System.nanoTime();
+			FilterCriteria filter = new FilterCriteria().setItemName("Item").setOrdering(Ordering.ASCENDING)
+					.setBeginDate(new Date(from)).setEndDate(new Date(from + DAY));
+			int count = 0;
+			for (HistoricItem historicItem : service.query(filter)) {
+				historicItem.getState();
+				count++;
+			}
+			latencies[i] = System.nanoTime() - begin;
+			check(count);
+		}
+		service.deactivate();
+		report("timeseries", ingest, latencies, folder);
+	}
+
+	private void runDb4o() {
+		File folder = new File(FOLDER, "db4o");
+		folder.mkdirs();
+		EmbeddedConfiguration config = Db4oEmbedded.newConfiguration();
+		config.common().objectClass(Db4oSample.class).objectField("name").indexed(true);
+		config.common().objectClass(Db4oSample.class).objectField("timestamp").indexed(true);
+		EmbeddedObjectContainer db = Db4oEmbedded.openFile(config, new File(folder, "store.db4o").getPath());
+
+		long begin = System.nanoTime();
+		for (int i = 0; i < samples; i++) {
+			db.store(new Db4oSample("Item", value(i), new Date(start + i * MINUTE)));
+			// the persistence service commits every 5 seconds
+			if (i % 1000 == 999) {
+				db.commit();
+			}
+		}
+		db.commit();
+		long ingest = System.nanoTime() - begin;
+
+		long[] latencies = new long[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			long from = randomTime();
+			begin = System.nanoTime();
+			Query query = db.query();
+			query.constrain(Db4oSample.class);
+			query.descend("timestamp").constrain(new Date(from)).greater().equal();
+			query.descend("timestamp").constrain(new Date(from + DAY)).smaller().equal();
+			query.descend("name").constrain("Item").equal();
+			query.descend("timestamp").orderAscending();
+			ObjectSet<Db4oSample> result = query.execute();
+			int count = 0;
+			for (Db4oSample sample : result) {
+				sample.state.toString();
+				count++;
+			}
+			latencies[i] = System.nanoTime() - begin;
+			check(count);
+		}
+		db.close();
+		report("db4o", ingest, latencies, folder);
+	}
+
+	private void runRrd4j() throws IOException {
+		File folder = new File(FOLDER, "rrd4j");
+		folder.mkdirs();
+		RrdDef def = new RrdDef(new File(folder, "Item.rrd").getPath(), start / 1000 - 1, 60);
+		def.addDatasource("state", DsType.GAUGE, 60, Double.NaN, Double.NaN);
+		def.addArchive(ConsolFun.AVERAGE, 0.5, 1, samples);
+		RrdDb db = new RrdDb(def);
+
+		long begin = System.nanoTime();
+		for (int i = 0; i < samples; i++) {
+			Sample sample = db.createSample();
+			sample.setTime((start + i * MINUTE) / 1000);
+			sample.setValue("state", value(i).doubleValue());
+			sample.update();
+		}
+		long ingest = System.nanoTime() - begin;
+
+		long[] latencies = new long[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			long from = randomTime();
+			begin = System.nanoTime();
+			FetchData data = db.createFetchRequest(ConsolFun.AVERAGE, from / 1000, (from + DAY) / 1000).fetchData();
+			double[] values = data.getValues("state");
+			long[] timestamps = data.getTimestamps();
+			int count = 0;
+			for (int j = 0; j < values.length; j++) {
+				if (!Double.isNaN(values[j]) && timestamps[j] * 1000 <= from + DAY) {
+					count++;
+				}
+			}
+			latencies[i] = System.nanoTime() - begin;
+			check(count);
+		}
+		report("rrd4j", ingest, latencies, folder);
+		db.close();
+	}
+
+	private static DecimalType value(int i) {
+		// a temperature like series with one decimal
+		return new DecimalType(new BigDecimal(200 + (i % 1440) / 10).movePointLeft(1));
+	}
+
+	private long randomTime() {
+		return start + (long) (random.nextDouble() * (samples * MINUTE - DAY)) / MINUTE * MINUTE;
+	}
+
+	private static void check(int count) {
+		if (count < 1400) {
+			throw new IllegalStateException("A one day range returned " + count + " samples only");
+		}
+	}
+
+	private void report(String name, long ingest, long[] latencies, File folder) {
+		Arrays.sort(latencies);
+		long total = 0;
+		for (long latency : latencies) {
+			total += latency;
+		}
+		System.out.println(String.format("%-12s %16.0f %16.3f %16.3f %12d", name, samples * 1e9 / ingest, total
+				/ 1e6 / latencies.length, latencies[latencies.length * 99 / 100] / 1e6,
+				FileUtils.sizeOfDirectory(folder) / 1024));
+	}
+
+	/**
+	 * A sample as stored by the db4o persistence service.
+	 */
+	private static class Db4oSample {
+
+		final String name;
+		final State state;
+		final Date timestamp;
+
+		Db4oSample(String name, State state, Date timestamp) {
+			this.name = name;
+			this.state = state;
+			this.timestamp = timestamp;
+		}
+
+	}
+
+}
@@ -0,0 +1,358 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.timeseries.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.core.library.items.NumberItem;
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.library.types.UpDownType;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Operator;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.PersistenceSample;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+import org.osgi.service.cm.ConfigurationException;
+
+/**
+ * @since 1.5.0
+ */
+public class TimeSeriesPersistenceServiceTest {
+
+	private static final long MINUTE = 60 * 1000L;
+
+	private static final long DAY = 24 * 60 * MINUTE;
+
+	private final File folder = new File("target/etc/timeseries");
+
+	private TimeSeriesPersistenceService service;
+
+	private long start;
+
+	@Before
+	public void init() throws IOException {
+		FileUtils.deleteDirectory(folder);
+		start = System.currentTimeMillis() / MINUTE * MINUTE - 10 * DAY;
+		service = createService();
+	}
+
+	@After
+	public void cleanUp() {
+		service.deactivate();
+	}
+
+	@Test
+	public void testStatesAreRestored() {
+		Calendar calendar = Calendar.getInstance();
+		List<State> states = Arrays.<State> asList(new DecimalType("21.35"), new DecimalType(-7),
+				new DecimalType("123456789012345678901234567890.5"), new PercentType(42), new HSBType("120,50,75"),
+				OnOffType.ON, OnOffType.OFF, OpenClosedType.OPEN, OpenClosedType.CLOSED, UpDownType.UP,
+				UpDownType.DOWN, new DateTimeType(calendar), new StringType("café"));
+		for (int i = 0; i < states.size(); i++) {
+			store("Item", start + i, states.get(i));
+		}
+		store("Item", start + states.size(), UnDefType.UNDEF);
+
+		List<HistoricItem> items = query(new FilterCriteria().setItemName("Item").setOrdering(Ordering.ASCENDING));
+		assertEquals(states.size(), items.size());
+		for (int i = 0; i < states.size(); i++) {
+			assertEquals(states.get(i), items.get(i).getState());
+			assertEquals(start + i, items.get(i).getTimestamp().getTime());
+			assertEquals("Item", items.get(i).getName());
+		}
+		assertEquals(calendar.getTimeInMillis(),
+				((DateTimeType) items.get(11).getState()).getCalendar().getTimeInMillis());
+	}
+
+	@Test
+	public void testRangeQuery() throws ConfigurationException {
+		configure("segmentsize", "16");
+		storeMinutes("Item", 10000);
+		assertTrue(folder.listFiles()[0].list().length > 6);
+
+		FilterCriteria filter = new FilterCriteria().setItemName("Item").setOrdering(Ordering.ASCENDING)
+				.setBeginDate(new Date(start + 1234 * MINUTE)).setEndDate(new Date(start + 8765 * MINUTE));
+		List<HistoricItem> items = query(filter);
+		assertEquals(8765 - 1234 + 1, items.size());
+		for (int i = 0; i < items.size(); i++) {
+			assertEquals(start + (1234 + i) * MINUTE, items.get(i).getTimestamp().getTime());
+			assertEquals(new DecimalType(1234 + i), items.get(i).getState());
+		}
+
+		items = query(filter.setOrdering(Ordering.DESCENDING));
+		assertEquals(8765 - 1234 + 1, items.size());
+		for (int i = 0; i < items.size(); i++) {
+			assertEquals(start + (8765 - i) * MINUTE, items.get(i).getTimestamp().getTime());
+		}
+	}
+
+	@Test
+	public void testLatestState() throws ConfigurationException {
+		configure("segmentsize", "16");
+		storeMinutes("Item", 10000);
+
+		FilterCriteria filter = new FilterCriteria().setItemName("Item").setEndDate(
+				new Date(start + 5000 * MINUTE + 1)).setPageSize(1);
+		List<HistoricItem> items = query(filter);
+		assertEquals(1, items.size());
+		assertEquals(new DecimalType(5000), items.get(0).getState());
+
+		assertEquals(0, query(new FilterCriteria().setItemName("Other")).size());
+		assertEquals(0, query(filter.setEndDate(new Date(start - 1))).size());
+	}
+
+	@Test
+	public void testQueryLatest() throws ConfigurationException {
+		configure("segmentsize", "16");
+		storeMinutes("First", 5000);
+		store("Second", start, OnOffType.ON);
+
+		Map<String, HistoricItem> latest = service.queryLatest(Arrays.asList("First", "Second", "Other", "../Invalid"));
+		assertEquals(2, latest.size());
+		assertEquals(new DecimalType(4999), latest.get("First").getState());
+		assertEquals(start + 4999 * MINUTE, latest.get("First").getTimestamp().getTime());
+		assertEquals(OnOffType.ON, latest.get("Second").getState());
+	}
+
+	@Test
+	public void testPagingAndOperators() {
+		storeMinutes("Item", 100);
+
+		FilterCriteria filter = new FilterCriteria().setItemName("Item").setPageSize(10).setPageNumber(2);
+		List<HistoricItem> items = query(filter);
+		assertEquals(10, items.size());
+		assertEquals(new DecimalType(79), items.get(0).getState());
+		assertEquals(new DecimalType(70), items.get(9).getState());
+
+		filter = new FilterCriteria().setItemName("Item").setOrdering(Ordering.ASCENDING)
+				.setOperator(Operator.GT).setState(new DecimalType(95));
+		items = query(filter);
+		assertEquals(4, items.size());
+		assertEquals(new DecimalType(96), items.get(0).getState());
+
+		assertEquals(1, query(filter.setOperator(Operator.EQ)).size());
+		assertEquals(99, query(filter.setOperator(Operator.NEQ)).size());
+	}
+
+	@Test
+	public void testQueryAllItems() {
+		store("First", start, new DecimalType(1));
+		store("Second", start + 1, new DecimalType(2));
+		store("First", start + 2, new DecimalType(3));
+
+		List<HistoricItem> items = query(new FilterCriteria().setOrdering(Ordering.ASCENDING));
+		assertEquals(3, items.size());
+		assertEquals("Second", items.get(1).getName());
+		assertEquals(new DecimalType(3), items.get(2).getState());
+	}
+
+	@Test
+	public void testStatesAreAppendedInOrder() {
+		store("Item", start + 1000, new DecimalType(1));
+		store("Item", start, new DecimalType(2));
+
+		List<HistoricItem> items = query(new FilterCriteria().setItemName("Item").setOrdering(Ordering.ASCENDING));
+		assertEquals(2, items.size());
+		assertEquals(start + 1000, items.get(1).getTimestamp().getTime());
+		assertEquals(new DecimalType(2), items.get(1).getState());
+	}
+
+	@Test
+	public void testIncompleteRecordIsRemoved() throws IOException {
+		storeMinutes("Item", 3);
+		service.deactivate();
+		File segment = new File(folder, "Item").listFiles()[0];
+		FileOutputStream out = new FileOutputStream(segment, true);
+		out.write(new byte[] { (byte) 0x80 });
+		out.close();
+
+		service = createService();
+		assertEquals(3, query(new FilterCriteria().setItemName("Item")).size());
+		store("Item", start + 3 * MINUTE, new DecimalType(3));
+		List<HistoricItem> items = query(new FilterCriteria().setItemName("Item"));
+		assertEquals(4, items.size());
+		assertEquals(new DecimalType(3), items.get(0).getState());
+	}
+
+	@Test
+	public void testIndexIsRebuilt() {
+		storeMinutes("Item", 5000);
+		service.deactivate();
+		File[] files = new File(folder, "Item").listFiles();
+		for (File file : files) {
+			if (file.getName().endsWith(Segment.INDEX_SUFFIX)) {
+				assertTrue(file.delete());
+			}
+		}
+
+		service = createService();
+		FilterCriteria filter = new FilterCriteria().setItemName("Item").setOrdering(Ordering.ASCENDING)
+				.setBeginDate(new Date(start + 4000 * MINUTE));
+		assertEquals(1000, query(filter).size());
+		assertEquals(files.length, new File(folder, "Item").list().length);
+	}
+
+	@Test
+	public void testRetention() throws ConfigurationException {
+		storeMinutes("Item", 10 * 24 * 60);
+		configure("retention", "3");
+		service.maintain();
+
+		List<HistoricItem> items = query(new FilterCriteria().setItemName("Item").setOrdering(Ordering.ASCENDING));
+		long oldest = items.get(0).getTimestamp().getTime();
+		assertTrue(oldest >= System.currentTimeMillis() - 4 * DAY);
+		assertTrue(oldest < System.currentTimeMillis() - 3 * DAY);
+		assertEquals(start + (10 * 24 * 60 - 1) * MINUTE, items.get(items.size() - 1).getTimestamp().getTime());
+	}
+
+	@Test
+	public void testMaxSize() throws IOException {
+		service.deactivate();
+		TimeSeriesStore store = new TimeSeriesStore(folder, 16 * 1024);
+		long[] times = new long[10 * 24 * 60];
+		State[] states = new State[times.length];
+		for (int i = 0; i < times.length; i++) {
+			times[i] = start + i * MINUTE;
+			states[i] = new DecimalType(i);
+		}
+		store.append("First", times.clone(), states, times.length);
+		store.append("Second", times.clone(), states, times.length);
+		store.maintain(Long.MIN_VALUE, Long.MIN_VALUE, 100 * 1024);
+
+		long size = 0;
+		for (File itemFolder : folder.listFiles()) {
+			for (File file : itemFolder.listFiles()) {
+				size += file.length();
+			}
+		}
+		assertTrue(size <= 100 * 1024);
+		TimeSeries.Cursor cursor = store.read("First", Long.MIN_VALUE, Long.MAX_VALUE, false);
+		assertTrue(cursor.next());
+		assertEquals(new DecimalType(times.length - 1), cursor.getState());
+	}
+
+	@Test
+	public void testDeletionWaitsForCursors() throws IOException {
+		service.deactivate();
+		TimeSeriesStore store = new TimeSeriesStore(folder, 1024 * 1024);
+		long[] times = new long[10 * 24 * 60];
+		State[] states = new State[times.length];
+		for (int i = 0; i < times.length; i++) {
+			times[i] = start + i * MINUTE;
+			states[i] = new DecimalType(i);
+		}
+		store.append("Item", times, states, times.length);
+		File itemFolder = new File(folder, "Item");
+		int segments = itemFolder.list().length;
+
+		TimeSeries.Cursor cursor = store.read("Item", Long.MIN_VALUE, Long.MAX_VALUE, true);
+		assertTrue(cursor.next());
+		store.maintain(start + 5 * DAY, Long.MIN_VALUE, 0);
+		// the deleted segments are still read by the cursor
+		assertEquals(segments, itemFolder.list().length);
+		int count = 1;
+		while (cursor.next()) {
+			count++;
+		}
+		assertEquals(times.length, count);
+		assertTrue(itemFolder.list().length < segments);
+
+		TimeSeries.Cursor newCursor = store.read("Item", Long.MIN_VALUE, Long.MAX_VALUE, true);
+		assertTrue(newCursor.next());
+		assertTrue(newCursor.getTimestamp() >= start + 4 * DAY);
+		newCursor.close();
+	}
+
+	@Test
+	public void testCompaction() throws ConfigurationException {
+		for (int i = 0; i < 10 * 24 * 60; i++) {
+			store("Item", start + i * MINUTE, i % 120 < 60 ? OnOffType.ON : OnOffType.OFF);
+		}
+		configure("compactafter", "5");
+		service.maintain();
+
+		List<HistoricItem> items = query(new FilterCriteria().setItemName("Item").setOrdering(Ordering.ASCENDING));
+		int changes = 0;
+		for (int i = 1; i < items.size(); i++) {
+			if (items.get(i).getState().equals(items.get(i - 1).getState())) {
+				assertTrue(items.get(i).getTimestamp().getTime() >= System.currentTimeMillis() - 6 * DAY);
+			} else {
+				assertEquals(0, (items.get(i).getTimestamp().getTime() - start) % (60 * MINUTE));
+				changes++;
+			}
+		}
+		assertTrue(changes > 0);
+		assertTrue(items.size() < 6 * 24 * 60);
+
+		// the compacted segments are kept when the store is opened again
+		service.deactivate();
+		service = createService();
+		assertEquals(items.size(), query(new FilterCriteria().setItemName("Item")).size());
+		assertFalse(new File(folder, "Item").list().length == 0);
+	}
+
+	private TimeSeriesPersistenceService createService() {
+		TimeSeriesPersistenceService service = new TimeSeriesPersistenceService(folder);
+		service.activate();
+		return service;
+	}
+
+	private void configure(String key, String value) throws ConfigurationException {
+		Hashtable<String, String> config = new Hashtable<String, String>();
+		config.put(key, value);
+		service.updated(config);
+	}
+
+	private void store(String name, long time, State state) {
+		service.store(Arrays.asList(new PersistenceSample(new NumberItem(name), null, state, new Date(time))));
+	}
+
+	private void storeMinutes(String name, int count) {
+		List<PersistenceSample> samples = new ArrayList<PersistenceSample>();
+		for (int i = 0; i < count; i++) {
+			samples.add(new PersistenceSample(new NumberItem(name), null, new DecimalType(i), new Date(start + i
+					* MINUTE)));
+		}
+		service.store(samples);
+	}
+
+	private List<HistoricItem> query(FilterCriteria filter) {
+		List<HistoricItem> items = new ArrayList<HistoricItem>();
+		for (HistoricItem item : service.query(filter)) {
+			items.add(item);
+		}
+		return items;
+	}
+
+}
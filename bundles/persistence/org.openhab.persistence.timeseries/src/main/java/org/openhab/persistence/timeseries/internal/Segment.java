@@ -0,0 +1,578 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.timeseries.internal;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.openhab.core.types.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only file with the states of one item in a period of time.
+ * <p>
+ * A segment starts with a header containing the timestamp of its first record, the
+ * <code>base</code>. Each record consists of the difference to the timestamp of the
+ * previous record as variable length integer and the state encoded by {@link StateCodec}.
+ * <p>
+ * Records cannot be read without their predecessors, so a sparse index is kept in a
+ * separate file: about every {@link #INDEX_INTERVAL} bytes, the offset of a record and
+ * the timestamp of its predecessor are stored, so that range queries only have to decode
+ * the blocks between the index entries which contain the range. The segment file is the
+ * only source of truth: the index and incomplete records at the end are recovered
+ * whenever a segment is opened.
+ * <p>
+ * Segments are read into heap buffers instead of being memory mapped, so that no file
+ * handle or mapping outlives a read and segment files can be truncated and deleted on
+ * all platforms. A segment keeps track of the readers which may still read it, so that
+ * it is only deleted if there are none.
+ * <p>
+ * All methods except {@link #view()} and the reading methods of {@link View} must be
+ * called with the lock of the owning {@link TimeSeries}.
+ *
+ * @since 1.5.0
+ */
+class Segment {
+
+	private static final Logger logger = LoggerFactory.getLogger(Segment.class);
+
+	/** the file name suffix of segments */
+	static final String SUFFIX = ".seg";
+
+	/** the file name suffix of compacted segments */
+	static final String COMPACTED_SUFFIX = ".cseg";
+
+	/** the file name suffix of sparse index files */
+	static final String INDEX_SUFFIX = ".idx";
+
+	/** the number of bytes between two entries of the sparse index */
+	static final int INDEX_INTERVAL = 4096;
+
+	/** "OHTS" */
+	private static final int MAGIC = 0x4F485453;
+
+	private static final byte VERSION = 1;
+
+	/** magic, version and base */
+	static final int HEADER_SIZE = 13;
+
+	private static final int INDEX_ENTRY_SIZE = 12;
+
+	private final File file;
+
+	private final File indexFile;
+
+	private final long base;
+
+	private final boolean compacted;
+
+	/** the offsets of the indexed records, the first entry is the first record */
+	private int[] indexOffsets = new int[8];
+
+	/** the timestamps of the records before the indexed records */
+	private long[] indexTimes = new long[8];
+
+	private int indexSize = 0;
+
+	/** the number of valid bytes */
+	private int length = HEADER_SIZE;
+
+	private long lastTimestamp;
+
+	/** the readers which may still read the file; readers which have been collected do not count */
+	private final List<WeakReference<Object>> readers = new ArrayList<WeakReference<Object>>();
+
+	private Segment(File file, long base) {
+		this.file = file;
+		this.indexFile = new File(file.getPath() + INDEX_SUFFIX);
+		this.base = base;
+		this.compacted = file.getName().endsWith(COMPACTED_SUFFIX);
+		this.lastTimestamp = base;
+		addIndexEntry(base, HEADER_SIZE);
+	}
+
+	/**
+	 * Creates a new, empty segment file.
+	 *
+	 * @param folder the folder of the time series
+	 * @param base the timestamp of the first record
+	 * @param suffix either {@link #SUFFIX} or {@link #COMPACTED_SUFFIX}
+	 */
+	static Segment create(File folder, long base, String suffix) throws IOException {
+		Segment segment = new Segment(new File(folder, getName(base) + suffix), base);
+		segment.indexFile.delete();
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(segment.file));
+		try {
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeLong(base);
+		} finally {
+			out.close();
+		}
+		return segment;
+	}
+
+	/**
+	 * Opens an existing segment file, loads its index and removes incomplete records.
+	 *
+	 * @return the segment or <code>null</code>, if the file is not a valid segment
+	 */
+	static Segment open(File file) throws IOException {
+		if (file.length() < HEADER_SIZE) {
+			logger.debug("Deleting empty time series segment '{}'", file);
+			file.delete();
+			new File(file.getPath() + INDEX_SUFFIX).delete();
+			return null;
+		}
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		long base;
+		try {
+			if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+				logger.warn("Ignoring '{}', as it is not a time series segment", file);
+				return null;
+			}
+			base = in.readLong();
+		} finally {
+			in.close();
+		}
+		Segment segment = new Segment(file, base);
+		segment.recover();
+		return segment;
+	}
+
+	static String getName(long base) {
+		String hex = Long.toHexString(base);
+		return "0000000000000000".substring(hex.length()) + hex;
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	long getBase() {
+		return base;
+	}
+
+	boolean isCompacted() {
+		return compacted;
+	}
+
+	boolean isEmpty() {
+		return length == HEADER_SIZE;
+	}
+
+	long getLastTimestamp() {
+		return lastTimestamp;
+	}
+
+	/**
+	 * @return the size of the segment and its index in bytes
+	 */
+	long size() {
+		return length + (long) (indexSize - 1) * INDEX_ENTRY_SIZE;
+	}
+
+	/**
+	 * Appends records until the segment is full. A non-empty segment is full if it
+	 * reached the maximum length or time span, unless the timestamp of the next record
+	 * equals the base, since the next segment would have the same name.
+	 *
+	 * @param times the timestamps, in ascending order and not before the last record
+	 * @param states the states
+	 * @param from the index of the first record to append
+	 * @param to the index after the last record to append
+	 * @param maxLength the maximum length of the segment in bytes
+	 * @param maxSpan the maximum time span of the segment in milliseconds
+	 * @return the number of appended records
+	 */
+	int append(long[] times, State[] states, int from, int to, int maxLength, long maxSpan) throws IOException {
+		ByteArrayOutputStream records = new ByteArrayOutputStream();
+		int oldIndexSize = indexSize;
+		int offset = length;
+		long previous = lastTimestamp;
+		int i = from;
+		for (; i < to; i++) {
+			long time = times[i];
+			if (offset > HEADER_SIZE && time != base && (offset >= maxLength || time - base >= maxSpan)) {
+				break;
+			}
+			if (offset - indexOffsets[indexSize - 1] >= INDEX_INTERVAL) {
+				addIndexEntry(previous, offset);
+			}
+			StateCodec.writeVarLong(records, time - previous);
+			StateCodec.write(records, states[i]);
+			offset = length + records.size();
+			previous = time;
+		}
+		if (i == from) {
+			return 0;
+		}
+		RandomAccessFile out = new RandomAccessFile(file, "rw");
+		try {
+			out.seek(length);
+			out.write(records.toByteArray());
+		} catch (IOException e) {
+			indexSize = oldIndexSize;
+			// do not leave a partial record, which would be recovered on the next start
+			out.setLength(length);
+			throw e;
+		} finally {
+			out.close();
+		}
+		length = offset;
+		lastTimestamp = previous;
+		if (indexSize > oldIndexSize) {
+			try {
+				writeIndex(oldIndexSize);
+			} catch (IOException e) {
+				// the index is rebuilt when the segment is opened the next time
+				logger.warn("Cannot write the index of '{}': {}", file, e.getMessage());
+			}
+		}
+		return i - from;
+	}
+
+	/**
+	 * Deletes the segment and its index.
+	 *
+	 * @return <code>true</code>, if the segment file does not exist anymore
+	 */
+	boolean delete() {
+		if (!file.delete() && file.exists()) {
+			return false;
+		}
+		indexFile.delete();
+		return true;
+	}
+
+	/**
+	 * Registers a reader, which may read the segment until it is removed or garbage collected.
+	 */
+	void addReader(Object reader) {
+		readers.add(new WeakReference<Object>(reader));
+	}
+
+	void removeReader(Object reader) {
+		for (Iterator<WeakReference<Object>> iterator = readers.iterator(); iterator.hasNext();) {
+			Object other = iterator.next().get();
+			if (other == null || other == reader) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return <code>true</code>, if there are readers which may still read the segment
+	 */
+	boolean hasReaders() {
+		removeReader(null);
+		return !readers.isEmpty();
+	}
+
+	/**
+	 * @return a consistent view of the records written so far, which can be read without a lock
+	 */
+	View view() {
+		return new View(this, indexOffsets, indexTimes, indexSize, length, lastTimestamp);
+	}
+
+	private void addIndexEntry(long time, int offset) {
+		if (indexSize == indexOffsets.length) {
+			int[] offsets = new int[indexSize * 2];
+			long[] times = new long[indexSize * 2];
+			System.arraycopy(indexOffsets, 0, offsets, 0, indexSize);
+			System.arraycopy(indexTimes, 0, times, 0, indexSize);
+			indexOffsets = offsets;
+			indexTimes = times;
+		}
+		indexOffsets[indexSize] = offset;
+		indexTimes[indexSize] = time;
+		indexSize++;
+	}
+
+	/**
+	 * Writes the index entries starting with the given one, the implicit first entry is
+	 * not stored.
+	 */
+	private void writeIndex(int from) throws IOException {
+		from = Math.max(from, 1);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream entries = new DataOutputStream(bytes);
+		for (int i = from; i < indexSize; i++) {
+			entries.writeLong(indexTimes[i]);
+			entries.writeInt(indexOffsets[i]);
+		}
+		RandomAccessFile out = new RandomAccessFile(indexFile, "rw");
+		try {
+			out.seek((long) (from - 1) * INDEX_ENTRY_SIZE);
+			out.write(bytes.toByteArray());
+			out.setLength((long) (indexSize - 1) * INDEX_ENTRY_SIZE);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Loads the valid entries of the index file, then decodes the records after the last
+	 * entry to find the end of the segment and any missing index entries.
+	 */
+	private void recover() throws IOException {
+		long fileLength = Math.min(file.length(), Integer.MAX_VALUE);
+		boolean rewriteIndex = false;
+		if (indexFile.exists()) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			try {
+				for (long i = indexFile.length() / INDEX_ENTRY_SIZE; i > 0; i--) {
+					long time = in.readLong();
+					int offset = in.readInt();
+					if (offset <= indexOffsets[indexSize - 1] || offset > fileLength
+							|| time < indexTimes[indexSize - 1]) {
+						rewriteIndex = true;
+						break;
+					}
+					addIndexEntry(time, offset);
+				}
+			} catch (EOFException e) {
+				rewriteIndex = true;
+			} finally {
+				in.close();
+			}
+			rewriteIndex |= indexFile.length() % INDEX_ENTRY_SIZE != 0;
+		}
+
+		int offset = indexOffsets[indexSize - 1];
+		long time = indexTimes[indexSize - 1];
+		int lastIndexed = offset;
+		int loadedIndexSize = indexSize;
+		// the buffer starts at the last index entry
+		ByteBuffer buffer = read(file, offset, (int) fileLength - offset);
+		int bufferOffset = offset;
+		try {
+			while (buffer.hasRemaining()) {
+				if (offset - lastIndexed >= INDEX_INTERVAL) {
+					addIndexEntry(time, offset);
+					lastIndexed = offset;
+				}
+				long delta = StateCodec.readVarLong(buffer);
+				StateCodec.read(buffer);
+				if (delta < 0) {
+					throw new IllegalArgumentException("Negative time difference");
+				}
+				time += delta;
+				offset = bufferOffset + buffer.position();
+			}
+		} catch (BufferUnderflowException e) {
+			logger.warn("Removing incomplete record at the end of '{}'", file);
+		} catch (IllegalArgumentException e) {
+			logger.warn("Removing invalid records at the end of '{}': {}", file, e.getMessage());
+		}
+		// the last index entry might point to the removed records
+		while (indexSize > 1 && indexOffsets[indexSize - 1] >= offset) {
+			indexSize--;
+			rewriteIndex = true;
+		}
+		length = offset;
+		lastTimestamp = time;
+		if (offset < fileLength) {
+			RandomAccessFile out = new RandomAccessFile(file, "rw");
+			try {
+				out.setLength(offset);
+			} finally {
+				out.close();
+			}
+		}
+		if (rewriteIndex || indexSize != loadedIndexSize) {
+			writeIndex(rewriteIndex ? 1 : loadedIndexSize);
+		}
+	}
+
+	/**
+	 * Reads a part of a file into a heap buffer, the file is closed afterwards.
+	 */
+	private static ByteBuffer read(File file, int position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(Math.max(0, length));
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			while (buffer.hasRemaining()) {
+				if (channel.read(buffer, position + buffer.position()) < 0) {
+					throw new EOFException("Unexpected end of '" + file + "'");
+				}
+			}
+		} finally {
+			in.close();
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	@Override
+	public String toString() {
+		return file.getName();
+	}
+
+	/**
+	 * An immutable snapshot of a segment, which reads the records block by block.
+	 */
+	static class View {
+
+		private final Segment segment;
+		private final int[] indexOffsets;
+		private final long[] indexTimes;
+		private final int indexSize;
+		private final int length;
+		private final long lastTimestamp;
+
+		private View(Segment segment, int[] indexOffsets, long[] indexTimes, int indexSize, int length,
+				long lastTimestamp) {
+			this.segment = segment;
+			this.indexOffsets = indexOffsets;
+			this.indexTimes = indexTimes;
+			this.indexSize = indexSize;
+			this.length = length;
+			this.lastTimestamp = lastTimestamp;
+		}
+
+		Segment getSegment() {
+			return segment;
+		}
+
+		long getBase() {
+			return segment.base;
+		}
+
+		long getLastTimestamp() {
+			return lastTimestamp;
+		}
+
+		boolean isEmpty() {
+			return length == HEADER_SIZE;
+		}
+
+		/**
+		 * @return the number of blocks between the index entries
+		 */
+		int getBlockCount() {
+			return indexSize;
+		}
+
+		/**
+		 * @return the first block which may contain records at or after the given time
+		 */
+		int getFirstBlock(long time) {
+			// the blocks before contain records until the timestamp of the next entry only
+			int low = 1;
+			int high = indexSize - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				if (indexTimes[middle] < time) {
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+			return low - 1;
+		}
+
+		/**
+		 * @return the last block which may contain records at or before the given time,
+		 *         or -1 if there is none
+		 */
+		int getLastBlock(long time) {
+			int low = 0;
+			int high = indexSize - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				if (indexTimes[middle] <= time) {
+					low = middle + 1;
+				} else {
+					high = middle - 1;
+				}
+			}
+			return low - 1;
+		}
+
+		/**
+		 * Reads and decodes the records of a block which are in the given time range.
+		 *
+		 * @param block the block to decode
+		 * @param begin the minimum timestamp
+		 * @param end the maximum timestamp
+		 * @param records receives the records
+		 */
+		void readBlock(int block, long begin, long end, Records records) throws IOException {
+			int limit = block + 1 < indexSize ? indexOffsets[block + 1] : length;
+			long time = indexTimes[block];
+			ByteBuffer buffer = read(segment.file, indexOffsets[block], limit - indexOffsets[block]);
+			try {
+				while (buffer.hasRemaining()) {
+					time += StateCodec.readVarLong(buffer);
+					State state = StateCodec.read(buffer);
+					if (time >= begin && time <= end) {
+						records.add(time, state);
+					}
+				}
+			} catch (BufferUnderflowException e) {
+				throw new IOException("Corrupt block " + block + " in '" + segment.file + "'");
+			} catch (IllegalArgumentException e) {
+				throw new IOException("Corrupt block " + block + " in '" + segment.file + "': " + e.getMessage());
+			}
+		}
+
+	}
+
+	/**
+	 * A growable list of records.
+	 */
+	static class Records {
+
+		long[] times = new long[64];
+		State[] states = new State[64];
+		int size = 0;
+
+		void add(long time, State state) {
+			if (size == times.length) {
+				long[] newTimes = new long[size * 2];
+				State[] newStates = new State[size * 2];
+				System.arraycopy(times, 0, newTimes, 0, size);
+				System.arraycopy(states, 0, newStates, 0, size);
+				times = newTimes;
+				states = newStates;
+			}
+			times[size] = time;
+			states[size] = state;
+			size++;
+		}
+
+		void clear() {
+			for (int i = 0; i < size; i++) {
+				states[i] = null;
+			}
+			size = 0;
+		}
+
+	}
+
+}
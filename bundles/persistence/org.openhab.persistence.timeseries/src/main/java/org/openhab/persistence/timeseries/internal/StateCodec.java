@@ -0,0 +1,208 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.timeseries.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Calendar;
+
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.library.types.UpDownType;
+import org.openhab.core.types.State;
+
+/**
+ * Encodes states into a compact binary form and decodes them again.
+ * <p>
+ * Every state starts with a tag byte for its type. Enum states consist of the tag only,
+ * decimals are stored as unscaled value and scale, so that they are restored exactly,
+ * and both numbers are written as variable length integers, so that typical sensor
+ * values take two or three bytes only. States of unknown types are stored by their
+ * string representation and restored as {@link StringType}.
+ *
+ * @since 1.5.0
+ */
+final class StateCodec {
+
+	private static final byte DECIMAL = 1;
+	private static final byte PERCENT = 2;
+	private static final byte HSB = 3;
+	private static final byte ON = 4;
+	private static final byte OFF = 5;
+	private static final byte OPEN = 6;
+	private static final byte CLOSED = 7;
+	private static final byte UP = 8;
+	private static final byte DOWN = 9;
+	private static final byte DATETIME = 10;
+	private static final byte STRING = 11;
+	private static final byte LARGE_DECIMAL = 12;
+
+	private static final String CHARSET = "UTF-8";
+
+	private static final BigInteger MIN_LONG = BigInteger.valueOf(Long.MIN_VALUE);
+	private static final BigInteger MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE);
+
+	private StateCodec() {
+	}
+
+	/**
+	 * Writes the encoded state to the given buffer.
+	 */
+	static void write(ByteArrayOutputStream out, State state) {
+		if (state instanceof HSBType) {
+			HSBType hsb = (HSBType) state;
+			out.write(HSB);
+			writeDecimal(out, hsb.getHue());
+			writeDecimal(out, hsb.getSaturation());
+			writeDecimal(out, hsb.getBrightness());
+		} else if (state instanceof DecimalType && isLong(((DecimalType) state).toBigDecimal())) {
+			out.write(state instanceof PercentType ? PERCENT : DECIMAL);
+			writeDecimal(out, (DecimalType) state);
+		} else if (state instanceof DecimalType && !(state instanceof PercentType)) {
+			out.write(LARGE_DECIMAL);
+			writeString(out, state.toString());
+		} else if (state == OnOffType.ON) {
+			out.write(ON);
+		} else if (state == OnOffType.OFF) {
+			out.write(OFF);
+		} else if (state == OpenClosedType.OPEN) {
+			out.write(OPEN);
+		} else if (state == OpenClosedType.CLOSED) {
+			out.write(CLOSED);
+		} else if (state == UpDownType.UP) {
+			out.write(UP);
+		} else if (state == UpDownType.DOWN) {
+			out.write(DOWN);
+		} else if (state instanceof DateTimeType) {
+			out.write(DATETIME);
+			writeVarLong(out, zigzag(((DateTimeType) state).getCalendar().getTimeInMillis()));
+		} else {
+			out.write(STRING);
+			writeString(out, state.toString());
+		}
+	}
+
+	/**
+	 * Reads an encoded state from the current position of the given buffer.
+	 *
+	 * @throws IllegalArgumentException if the buffer does not contain a valid state
+	 * @throws java.nio.BufferUnderflowException if the state is incomplete
+	 */
+	static State read(ByteBuffer in) {
+		byte tag = in.get();
+		switch (tag) {
+		case DECIMAL:
+			return new DecimalType(readDecimal(in));
+		case PERCENT:
+			return new PercentType(readDecimal(in));
+		case HSB:
+			return new HSBType(new DecimalType(readDecimal(in)), new PercentType(readDecimal(in)), new PercentType(
+					readDecimal(in)));
+		case ON:
+			return OnOffType.ON;
+		case OFF:
+			return OnOffType.OFF;
+		case OPEN:
+			return OpenClosedType.OPEN;
+		case CLOSED:
+			return OpenClosedType.CLOSED;
+		case UP:
+			return UpDownType.UP;
+		case DOWN:
+			return UpDownType.DOWN;
+		case DATETIME:
+			Calendar calendar = Calendar.getInstance();
+			calendar.setTimeInMillis(unzigzag(readVarLong(in)));
+			return new DateTimeType(calendar);
+		case STRING:
+			return new StringType(readString(in));
+		case LARGE_DECIMAL:
+			return new DecimalType(readString(in));
+		default:
+			throw new IllegalArgumentException("Unknown state type " + tag);
+		}
+	}
+
+	static void writeVarLong(ByteArrayOutputStream out, long value) {
+		while ((value & ~0x7FL) != 0) {
+			out.write((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int) value);
+	}
+
+	static long readVarLong(ByteBuffer in) {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			byte b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Malformed variable length integer");
+	}
+
+	private static void writeDecimal(ByteArrayOutputStream out, DecimalType decimal) {
+		BigDecimal value = decimal.toBigDecimal();
+		writeVarLong(out, zigzag(value.scale()));
+		writeVarLong(out, zigzag(value.unscaledValue().longValue()));
+	}
+
+	private static BigDecimal readDecimal(ByteBuffer in) {
+		int scale = (int) unzigzag(readVarLong(in));
+		return BigDecimal.valueOf(unzigzag(readVarLong(in)), scale);
+	}
+
+	private static boolean isLong(BigDecimal value) {
+		BigInteger unscaled = value.unscaledValue();
+		return unscaled.compareTo(MIN_LONG) >= 0 && unscaled.compareTo(MAX_LONG) <= 0;
+	}
+
+	private static void writeString(ByteArrayOutputStream out, String value) {
+		try {
+			byte[] bytes = value.getBytes(CHARSET);
+			writeVarLong(out, bytes.length);
+			out.write(bytes, 0, bytes.length);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String readString(ByteBuffer in) {
+		long length = readVarLong(in);
+		if (length < 0 || length > in.remaining()) {
+			throw new IllegalArgumentException("Invalid string length " + length);
+		}
+		byte[] bytes = new byte[(int) length];
+		in.get(bytes);
+		try {
+			return new String(bytes, CHARSET);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static long zigzag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unzigzag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+}
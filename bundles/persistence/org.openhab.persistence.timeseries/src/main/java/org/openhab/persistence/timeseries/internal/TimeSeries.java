@@ -0,0 +1,424 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.timeseries.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.openhab.core.types.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The states of one item, stored in a folder of {@link Segment}s.
+ * <p>
+ * New records are always appended to the last segment, the active one. If it grows
+ * beyond the configured size or spans more than {@link #SEGMENT_SPAN}, a new segment is
+ * started, so that old data can be removed and compacted by whole files. Records must
+ * be appended in chronological order, earlier timestamps are moved to the time of the
+ * last record.
+ * <p>
+ * Segments which are deleted or replaced by their compacted version are retired: they
+ * are not read anymore, but their files are only deleted when no cursor may read them
+ * anymore. Files which cannot be deleted are kept as retired segments, count towards
+ * the size of the time series and are deleted later.
+ *
+ * @since 1.5.0
+ */
+class TimeSeries {
+
+	private static final Logger logger = LoggerFactory.getLogger(TimeSeries.class);
+
+	/** the maximum time span of a segment in milliseconds */
+	static final long SEGMENT_SPAN = 24L * 60 * 60 * 1000;
+
+	private static final Comparator<Segment> BASE_ORDER = new Comparator<Segment>() {
+		public int compare(Segment o1, Segment o2) {
+			return o1.getBase() < o2.getBase() ? -1 : (o1.getBase() == o2.getBase() ? 0 : 1);
+		}
+	};
+
+	private final File folder;
+
+	/** the segments in chronological order, guarded by <code>this</code> */
+	private final List<Segment> segments = new ArrayList<Segment>();
+
+	/** the segments which are to be deleted, guarded by <code>this</code> */
+	private final List<Segment> retired = new ArrayList<Segment>();
+
+	private TimeSeries(File folder) {
+		this.folder = folder;
+	}
+
+	/**
+	 * Opens the segments in the given folder, which does not have to exist.
+	 */
+	static TimeSeries open(File folder) throws IOException {
+		TimeSeries series = new TimeSeries(folder);
+		File[] files = folder.listFiles();
+		if (files == null) {
+			return series;
+		}
+		Map<String, File> segmentFiles = new HashMap<String, File>();
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(Segment.SUFFIX) || name.endsWith(Segment.COMPACTED_SUFFIX)) {
+				String baseName = name.substring(0, name.lastIndexOf('.'));
+				File other = segmentFiles.put(baseName, file);
+				if (other != null) {
+					// the compaction of a segment has not been finished
+					File compacted = name.endsWith(Segment.COMPACTED_SUFFIX) ? file : other;
+					segmentFiles.put(baseName, compacted == file ? other : file);
+					logger.debug("Deleting incomplete compacted segment '{}'", compacted);
+					compacted.delete();
+					new File(compacted.getPath() + Segment.INDEX_SUFFIX).delete();
+				}
+			}
+		}
+		for (File file : segmentFiles.values()) {
+			Segment segment = Segment.open(file);
+			if (segment != null) {
+				series.segments.add(segment);
+			}
+		}
+		Collections.sort(series.segments, BASE_ORDER);
+		return series;
+	}
+
+	/**
+	 * Appends records to the active segment and starts new segments as needed.
+	 *
+	 * @param times the timestamps in chronological order, which are adjusted if they are
+	 *            before the last record
+	 * @param states the states
+	 * @param count the number of records
+	 * @param segmentSize the maximum size of a segment in bytes
+	 */
+	synchronized void append(long[] times, State[] states, int count, int segmentSize) throws IOException {
+		long last = segments.isEmpty() ? Long.MIN_VALUE : getActiveSegment().getLastTimestamp();
+		for (int i = 0; i < count; i++) {
+			if (times[i] < last) {
+				logger.debug("Storing a state of {}ms ago in '{}' as the latest state", last - times[i], folder);
+				times[i] = last;
+			}
+			last = times[i];
+		}
+		int i = 0;
+		while (i < count) {
+			int appended = 0;
+			if (!segments.isEmpty()) {
+				appended = getActiveSegment().append(times, states, i, count, segmentSize, SEGMENT_SPAN);
+			}
+			if (appended == 0) {
+				folder.mkdirs();
+				segments.add(Segment.create(folder, times[i], Segment.SUFFIX));
+			}
+			i += appended;
+		}
+	}
+
+	/**
+	 * Returns a cursor over the records in the given time range.
+	 *
+	 * @param begin the minimum timestamp
+	 * @param end the maximum timestamp
+	 * @param ascending <code>true</code> for chronological order, <code>false</code> for the reverse order
+	 */
+	synchronized Cursor read(long begin, long end, boolean ascending) {
+		List<Segment.View> views = new ArrayList<Segment.View>(segments.size());
+		for (Segment segment : segments) {
+			views.add(segment.view());
+		}
+		Cursor cursor = new Cursor(this, views, begin, end, ascending);
+		for (Segment segment : segments) {
+			segment.addReader(cursor);
+		}
+		return cursor;
+	}
+
+	/**
+	 * @return the size of all segments in bytes, including the retired ones
+	 */
+	synchronized long size() {
+		long size = 0;
+		for (Segment segment : segments) {
+			size += segment.size();
+		}
+		for (Segment segment : retired) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return all segments but the active one in chronological order
+	 */
+	synchronized List<Segment> getSealedSegments() {
+		return new ArrayList<Segment>(segments.subList(0, Math.max(0, segments.size() - 1)));
+	}
+
+	/**
+	 * Deletes all segments which only contain records before the given time.
+	 *
+	 * @return the number of deleted segments
+	 */
+	synchronized int deleteBefore(long time) {
+		deleteRetired();
+		int deleted = 0;
+		while (!segments.isEmpty()) {
+			Segment segment = segments.get(0);
+			long end = segments.size() > 1 ? segments.get(1).getBase() : segment.getLastTimestamp();
+			if (end >= time) {
+				break;
+			}
+			delete(segment);
+			deleted++;
+		}
+		return deleted;
+	}
+
+	/**
+	 * Deletes a segment as soon as no cursor may read it anymore.
+	 */
+	synchronized void delete(Segment segment) {
+		if (segments.remove(segment)) {
+			retire(segment);
+		}
+	}
+
+	private void retire(Segment segment) {
+		retired.add(segment);
+		deleteRetired();
+	}
+
+	/**
+	 * Deletes the retired segments which are not read anymore. Must be called while
+	 * holding the lock of the time series.
+	 */
+	private void deleteRetired() {
+		for (Iterator<Segment> iterator = retired.iterator(); iterator.hasNext();) {
+			Segment segment = iterator.next();
+			if (segment.hasReaders()) {
+				continue;
+			}
+			if (segment.delete()) {
+				iterator.remove();
+			} else {
+				logger.warn("Cannot delete time series segment '{}', trying again later", segment.getFile());
+			}
+		}
+	}
+
+	/**
+	 * Removes a reader from segments and deletes the retired ones it has been the last reader of.
+	 */
+	private synchronized void release(Segment segment, Object reader) {
+		segment.removeReader(reader);
+		if (!retired.isEmpty()) {
+			deleteRetired();
+		}
+	}
+
+	/**
+	 * Compacts all sealed segments which end before the given time and have not been
+	 * compacted yet: of a sequence of records with the same state, only the first one is
+	 * kept. This does not change the state at any point of time, but the number of
+	 * records. It must not be called concurrently with another compaction or deletion.
+	 *
+	 * @return the number of compacted segments
+	 */
+	int compact(long time) throws IOException {
+		int compacted = 0;
+		for (Segment segment : getSealedSegments()) {
+			Segment.View view;
+			synchronized (this) {
+				int index = segments.indexOf(segment);
+				if (index < 0 || index + 1 >= segments.size() || segments.get(index + 1).getBase() >= time) {
+					break;
+				}
+				if (segment.isCompacted()) {
+					continue;
+				}
+				view = segment.view();
+				segment.addReader(view);
+			}
+			Segment replacement;
+			try {
+				replacement = rewrite(view);
+			} finally {
+				release(segment, view);
+			}
+			synchronized (this) {
+				int index = segments.indexOf(segment);
+				if (index < 0) {
+					replacement.delete();
+					continue;
+				}
+				segments.set(index, replacement);
+				retire(segment);
+			}
+			logger.debug("Compacted time series segment '{}' to {} bytes", segment.getFile(), replacement.size());
+			compacted++;
+		}
+		return compacted;
+	}
+
+	private Segment rewrite(Segment.View view) throws IOException {
+		Segment replacement = Segment.create(folder, view.getBase(), Segment.COMPACTED_SUFFIX);
+		try {
+			Segment.Records records = new Segment.Records();
+			long[] times = new long[64];
+			State[] states = new State[64];
+			State previous = null;
+			for (int block = 0; block < view.getBlockCount(); block++) {
+				records.clear();
+				view.readBlock(block, Long.MIN_VALUE, Long.MAX_VALUE, records);
+				if (times.length < records.size) {
+					times = new long[records.times.length];
+					states = new State[records.times.length];
+				}
+				int count = 0;
+				for (int i = 0; i < records.size; i++) {
+					if (!records.states[i].equals(previous)) {
+						previous = records.states[i];
+						times[count] = records.times[i];
+						states[count] = previous;
+						count++;
+					}
+				}
+				if (count > 0) {
+					replacement.append(times, states, 0, count, Integer.MAX_VALUE, Long.MAX_VALUE);
+				}
+			}
+		} catch (IOException e) {
+			replacement.delete();
+			throw e;
+		}
+		return replacement;
+	}
+
+	private Segment getActiveSegment() {
+		return segments.get(segments.size() - 1);
+	}
+
+	/**
+	 * Reads the records of a time range block by block from consistent views of the
+	 * segments, so that appending is not blocked by reading. Only the segments and
+	 * blocks which may contain the range are read and decoded. The segments are
+	 * released as soon as the cursor has passed them.
+	 */
+	static class Cursor {
+
+		private final TimeSeries timeSeries;
+		private final List<Segment.View> views;
+		private final long begin;
+		private final long end;
+		private final boolean ascending;
+
+		private final Segment.Records records = new Segment.Records();
+
+		private int nextView;
+		private Segment.View view;
+		private int block;
+		private int lastBlock;
+		private int position = 0;
+
+		private long timestamp;
+		private State state;
+
+		private Cursor(TimeSeries timeSeries, List<Segment.View> views, long begin, long end, boolean ascending) {
+			this.timeSeries = timeSeries;
+			this.views = views;
+			this.begin = begin;
+			this.end = end;
+			this.ascending = ascending;
+			this.nextView = ascending ? 0 : views.size() - 1;
+		}
+
+		/**
+		 * Moves to the next record.
+		 *
+		 * @return <code>false</code>, if there are no more records
+		 * @throws IOException if a segment cannot be read
+		 */
+		boolean next() throws IOException {
+			while (position >= records.size) {
+				if (!readNextBlock()) {
+					return false;
+				}
+			}
+			int index = ascending ? position : records.size - 1 - position;
+			position++;
+			timestamp = records.times[index];
+			state = records.states[index];
+			return true;
+		}
+
+		long getTimestamp() {
+			return timestamp;
+		}
+
+		State getState() {
+			return state;
+		}
+
+		/**
+		 * Releases the segments which have not been read yet. The cursor cannot be used
+		 * afterwards; it is closed implicitly when {@link #next()} returns <code>false</code>.
+		 */
+		void close() {
+			if (view != null) {
+				timeSeries.release(view.getSegment(), this);
+				view = null;
+			}
+			while (nextView >= 0 && nextView < views.size()) {
+				timeSeries.release(views.get(nextView).getSegment(), this);
+				nextView += ascending ? 1 : -1;
+			}
+		}
+
+		private boolean readNextBlock() throws IOException {
+			records.clear();
+			position = 0;
+			while (view == null || (ascending ? block > lastBlock : block < lastBlock)) {
+				if (view != null) {
+					timeSeries.release(view.getSegment(), this);
+					view = null;
+				}
+				if (nextView < 0 || nextView >= views.size()) {
+					return false;
+				}
+				Segment.View candidate = views.get(nextView);
+				nextView += ascending ? 1 : -1;
+				int first = candidate.getFirstBlock(begin);
+				int last = candidate.getLastBlock(end);
+				if (candidate.isEmpty() || candidate.getBase() > end || candidate.getLastTimestamp() < begin
+						|| last < first) {
+					timeSeries.release(candidate.getSegment(), this);
+					continue;
+				}
+				view = candidate;
+				block = ascending ? first : last;
+				lastBlock = ascending ? last : first;
+			}
+			view.readBlock(block, begin, end, records);
+			block += ascending ? 1 : -1;
+			return true;
+		}
+
+	}
+
+}
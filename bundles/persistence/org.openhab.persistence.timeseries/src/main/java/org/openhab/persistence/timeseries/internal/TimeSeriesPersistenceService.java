@@ -0,0 +1,442 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.timeseries.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.openhab.core.items.Item;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.persistence.BatchPersistenceService;
+import org.openhab.core.persistence.BulkQueryablePersistenceService;
+import org.openhab.core.persistence.FilterCriteria;
+import org.openhab.core.persistence.FilterCriteria.Operator;
+import org.openhab.core.persistence.FilterCriteria.Ordering;
+import org.openhab.core.persistence.HistoricItem;
+import org.openhab.core.persistence.PersistenceSample;
+import org.openhab.core.persistence.PersistenceService;
+import org.openhab.core.types.State;
+import org.openhab.core.types.UnDefType;
+import org.osgi.service.cm.ConfigurationException;
+import org.osgi.service.cm.ManagedService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This is a {@link PersistenceService} implementation which stores the states of each
+ * item in append-only segment files, see {@link TimeSeries} and {@link Segment}. It
+ * needs no external database, stores typical states in a few bytes and answers range
+ * queries by decoding the affected blocks of memory mapped segments only.
+ * <p>
+ * Records older than the configured retention time are removed and the size of the
+ * store can be limited, which both happens by whole segments once an hour. Segments
+ * older than the configured time can be compacted to the changes of the state.
+ *
+ * @since 1.5.0
+ */
+public class TimeSeriesPersistenceService implements BulkQueryablePersistenceService, BatchPersistenceService,
+		ManagedService {
+
+	private static final Logger logger = LoggerFactory.getLogger(TimeSeriesPersistenceService.class);
+
+	private static final String SERVICE_NAME = "timeseries";
+
+	private static final String DB_FOLDER_NAME = "etc/timeseries";
+
+	/** the default maximum size of a segment in KB */
+	private static final int DEFAULT_SEGMENT_SIZE = 1024;
+
+	/** the interval of the retention and compaction job in minutes */
+	private static final long MAINTENANCE_INTERVAL = 60;
+
+	private static final long DAY = 24L * 60 * 60 * 1000;
+
+	private final File folder;
+
+	private volatile TimeSeriesStore store;
+
+	private ScheduledExecutorService scheduler;
+
+	private int segmentSize = DEFAULT_SEGMENT_SIZE;
+
+	/** the time in days after which records are deleted, 0 to keep them forever */
+	private volatile int retention = 0;
+
+	/** the time in days after which segments are compacted, 0 to never compact them */
+	private volatile int compactAfter = 0;
+
+	/** the maximum size of the store in MB, 0 for no limit */
+	private volatile int maxSize = 0;
+
+	public TimeSeriesPersistenceService() {
+		this(new File(DB_FOLDER_NAME));
+	}
+
+	TimeSeriesPersistenceService(File folder) {
+		this.folder = folder;
+	}
+
+	public String getName() {
+		return SERVICE_NAME;
+	}
+
+	public synchronized void activate() {
+		store = new TimeSeriesStore(folder, segmentSize * 1024);
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				maintain();
+			}
+		}, 1, MAINTENANCE_INTERVAL, TimeUnit.MINUTES);
+	}
+
+	public synchronized void deactivate() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+		store = null;
+	}
+
+	public void store(Item item) {
+		store(item, null);
+	}
+
+	public void store(Item item, String alias) {
+		store(alias != null ? alias : item.getName(), new long[] { System.currentTimeMillis() },
+				new State[] { item.getState() }, 1);
+	}
+
+	/**
+	 * Appends the samples of each item at once.
+	 */
+	public void store(List<PersistenceSample> samples) {
+		Map<String, List<PersistenceSample>> samplesByName = new LinkedHashMap<String, List<PersistenceSample>>();
+		for (PersistenceSample sample : samples) {
+			String name = sample.getAlias() != null ? sample.getAlias() : sample.getName();
+			List<PersistenceSample> itemSamples = samplesByName.get(name);
+			if (itemSamples == null) {
+				itemSamples = new ArrayList<PersistenceSample>();
+				samplesByName.put(name, itemSamples);
+			}
+			itemSamples.add(sample);
+		}
+		for (Map.Entry<String, List<PersistenceSample>> entry : samplesByName.entrySet()) {
+			List<PersistenceSample> itemSamples = entry.getValue();
+			Collections.sort(itemSamples, new Comparator<PersistenceSample>() {
+				public int compare(PersistenceSample o1, PersistenceSample o2) {
+					return o1.getTimestamp().compareTo(o2.getTimestamp());
+				}
+			});
+			long[] times = new long[itemSamples.size()];
+			State[] states = new State[itemSamples.size()];
+			for (int i = 0; i < times.length; i++) {
+				times[i] = itemSamples.get(i).getTimestamp().getTime();
+				states[i] = itemSamples.get(i).getState();
+			}
+			store(entry.getKey(), times, states, times.length);
+		}
+	}
+
+	private void store(String name, long[] times, State[] states, int count) {
+		TimeSeriesStore store = this.store;
+		if (store == null) {
+			logger.debug("Time series persistence service is not active, ignoring states of item '{}'", name);
+			return;
+		}
+		if (!isValidName(name)) {
+			logger.warn("Cannot store states as '{}', since it is not a valid file name", name);
+			return;
+		}
+		// undefined states are not stored
+		int defined = 0;
+		for (int i = 0; i < count; i++) {
+			if (!(states[i] instanceof UnDefType)) {
+				times[defined] = times[i];
+				states[defined] = states[i];
+				defined++;
+			}
+		}
+		if (defined == 0) {
+			return;
+		}
+		try {
+			store.append(name, times, states, defined);
+			logger.debug("Stored {} states of item '{}'", defined, name);
+		} catch (IOException e) {
+			logger.warn("Error storing states of item '{}': {}", name, e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns the matching entries lazily, so that neither all entries of a large range
+	 * nor the entries before the requested page have to be kept in memory. If there is
+	 * no item name in the filter, the entries of all items are returned, which are
+	 * collected and sorted in memory.
+	 */
+	public Iterable<HistoricItem> query(FilterCriteria filter) {
+		final TimeSeriesStore store = this.store;
+		if (store == null) {
+			return Collections.emptyList();
+		}
+		if (filter == null) {
+			filter = new FilterCriteria();
+		}
+		final FilterCriteria criteria = filter;
+		final long offset = (long) filter.getPageNumber() * filter.getPageSize();
+		if (filter.getItemName() != null) {
+			return new Iterable<HistoricItem>() {
+				public Iterator<HistoricItem> iterator() {
+					return new Results(store, criteria.getItemName(), criteria, offset, criteria.getPageSize());
+				}
+			};
+		}
+
+		List<HistoricItem> items = new ArrayList<HistoricItem>();
+		for (String name : store.getNames()) {
+			Iterator<HistoricItem> results = new Results(store, name, filter, 0, Long.MAX_VALUE);
+			while (results.hasNext()) {
+				items.add(results.next());
+			}
+		}
+		final boolean ascending = filter.getOrdering() == Ordering.ASCENDING;
+		Collections.sort(items, new Comparator<HistoricItem>() {
+			public int compare(HistoricItem o1, HistoricItem o2) {
+				int result = o1.getTimestamp().compareTo(o2.getTimestamp());
+				return ascending ? result : -result;
+			}
+		});
+		if (offset >= items.size()) {
+			return Collections.emptyList();
+		}
+		return items.subList((int) offset, (int) Math.min(items.size(), offset + filter.getPageSize()));
+	}
+
+	/**
+	 * Reads the last record of each item, which only decodes the last block of its latest
+	 * segment.
+	 */
+	public Map<String, HistoricItem> queryLatest(Collection<String> itemNames) {
+		TimeSeriesStore store = this.store;
+		Map<String, HistoricItem> latest = new HashMap<String, HistoricItem>();
+		if (store == null) {
+			return latest;
+		}
+		for (String name : itemNames) {
+			if (!isValidName(name)) {
+				continue;
+			}
+			try {
+				TimeSeries.Cursor cursor = store.read(name, Long.MIN_VALUE, Long.MAX_VALUE, false);
+				if (cursor != null) {
+					try {
+						if (cursor.next()) {
+							latest.put(name, new TimeSeriesItem(name, cursor.getState(), new Date(cursor.getTimestamp())));
+						}
+					} finally {
+						cursor.close();
+					}
+				}
+			} catch (IOException e) {
+				logger.warn("Error querying the latest state of item '{}': {}", name, e.getMessage());
+			}
+		}
+		return latest;
+	}
+
+	/**
+	 * Applies the retention and compaction policy.
+	 */
+	void maintain() {
+		TimeSeriesStore store = this.store;
+		if (store == null) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		long deleteBefore = retention > 0 ? now - retention * DAY : Long.MIN_VALUE;
+		long compactBefore = compactAfter > 0 ? now - compactAfter * DAY : Long.MIN_VALUE;
+		long start = System.currentTimeMillis();
+		store.maintain(deleteBefore, compactBefore, maxSize * 1024L * 1024L);
+		logger.debug("Maintained the time series store in {}ms", System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Checks whether a state matches the state criteria of a filter. Numbers are compared by
+	 * their value, all other states can only be tested for (in)equality.
+	 */
+	static boolean matches(State value, Operator operator, State state) {
+		if (operator == null || state == null) {
+			return true;
+		}
+		if (value instanceof DecimalType && state instanceof DecimalType) {
+			int result = ((DecimalType) value).compareTo((DecimalType) state);
+			switch (operator) {
+			case EQ:
+				return result == 0;
+			case NEQ:
+				return result != 0;
+			case GT:
+				return result > 0;
+			case LT:
+				return result < 0;
+			case GTE:
+				return result >= 0;
+			case LTE:
+				return result <= 0;
+			}
+		}
+		switch (operator) {
+		case EQ:
+			return value.equals(state);
+		case NEQ:
+			return !value.equals(state);
+		default:
+			return false;
+		}
+	}
+
+	private static boolean isValidName(String name) {
+		return name.matches("\\w[\\w.\\-]*");
+	}
+
+	/**
+	 * @{inheritDoc}
+	 */
+	public void updated(Dictionary<String, ?> config) throws ConfigurationException {
+		if (config != null) {
+			int newSegmentSize = parseInt(config, "segmentsize", DEFAULT_SEGMENT_SIZE);
+			if (newSegmentSize == 0) {
+				throw new ConfigurationException("timeseries:segmentsize", "The value must be a positive number");
+			}
+			retention = parseInt(config, "retention", 0);
+			compactAfter = parseInt(config, "compactafter", 0);
+			maxSize = parseInt(config, "maxsize", 0);
+			synchronized (this) {
+				segmentSize = newSegmentSize;
+				if (store != null) {
+					store.setSegmentSize(segmentSize * 1024);
+				}
+			}
+		}
+	}
+
+	private int parseInt(Dictionary<String, ?> config, String key, int defaultValue) throws ConfigurationException {
+		String value = (String) config.get(key);
+		if (StringUtils.isBlank(value)) {
+			return defaultValue;
+		}
+		try {
+			int result = Integer.parseInt(value.trim());
+			if (result >= 0) {
+				return result;
+			}
+		} catch (NumberFormatException e) {
+			// handled below
+		}
+		throw new ConfigurationException("timeseries:" + key, "The value must be a number, but is '" + value + "'");
+	}
+
+	/**
+	 * The entries of an item which match a filter, read from a cursor on demand.
+	 */
+	private static class Results implements Iterator<HistoricItem> {
+
+		private final String name;
+		private final Operator operator;
+		private final State state;
+		private final long offset;
+		private final long limit;
+
+		private TimeSeries.Cursor cursor;
+		private HistoricItem next;
+		private long skipped = 0;
+		private long returned = 0;
+
+		Results(TimeSeriesStore store, String name, FilterCriteria filter, long offset, long limit) {
+			this.name = name;
+			this.operator = filter.getOperator();
+			this.state = filter.getState();
+			this.offset = offset;
+			this.limit = limit;
+			long begin = filter.getBeginDate() != null ? filter.getBeginDate().getTime() : Long.MIN_VALUE;
+			long end = filter.getEndDate() != null ? filter.getEndDate().getTime() : Long.MAX_VALUE;
+			try {
+				cursor = store.read(name, begin, end, filter.getOrdering() == Ordering.ASCENDING);
+			} catch (IOException e) {
+				logger.warn("Error querying states of item '{}': {}", name, e.getMessage());
+			}
+			advance();
+		}
+
+		private void advance() {
+			next = null;
+			if (cursor == null) {
+				return;
+			}
+			if (returned >= limit) {
+				cursor.close();
+				cursor = null;
+				return;
+			}
+			try {
+				while (cursor.next()) {
+					if (!matches(cursor.getState(), operator, state)) {
+						continue;
+					}
+					if (skipped < offset) {
+						skipped++;
+						continue;
+					}
+					next = new TimeSeriesItem(name, cursor.getState(), new Date(cursor.getTimestamp()));
+					returned++;
+					return;
+				}
+			} catch (IOException e) {
+				logger.warn("Error querying states of item '{}': {}", name, e.getMessage());
+			}
+			cursor.close();
+			cursor = null;
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public HistoricItem next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			HistoricItem result = next;
+			advance();
+			return result;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.persistence.timeseries.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openhab.core.types.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The time series of all items, each one in a sub folder named like the item. Time
+ * series are opened on first access and kept open, which does not need any file
+ * handles, since segments are only opened for reading and appending.
+ *
+ * @since 1.5.0
+ */
+class TimeSeriesStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(TimeSeriesStore.class);
+
+	private final File folder;
+
+	private volatile int segmentSize;
+
+	private final Map<String, TimeSeries> series = new ConcurrentHashMap<String, TimeSeries>();
+
+	/**
+	 * @param folder the folder of the store
+	 * @param segmentSize the maximum size of a segment in bytes
+	 */
+	TimeSeriesStore(File folder, int segmentSize) {
+		this.folder = folder;
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * @param segmentSize the maximum size of new segments in bytes
+	 */
+	void setSegmentSize(int segmentSize) {
+		this.segmentSize = segmentSize;
+	}
+
+	/**
+	 * Appends records to the time series of an item.
+	 *
+	 * @param name the name of the item
+	 * @param times the timestamps in chronological order
+	 * @param states the states
+	 * @param count the number of records
+	 */
+	void append(String name, long[] times, State[] states, int count) throws IOException {
+		getSeries(name, true).append(times, states, count, segmentSize);
+	}
+
+	/**
+	 * Returns a cursor over the records of an item in the given time range.
+	 *
+	 * @return the cursor or <code>null</code>, if nothing is stored for the item
+	 */
+	TimeSeries.Cursor read(String name, long begin, long end, boolean ascending) throws IOException {
+		TimeSeries timeSeries = getSeries(name, false);
+		return timeSeries != null ? timeSeries.read(begin, end, ascending) : null;
+	}
+
+	/**
+	 * @return the names of all items with a time series
+	 */
+	Set<String> getNames() {
+		Set<String> names = new TreeSet<String>(series.keySet());
+		File[] folders = folder.listFiles();
+		if (folders != null) {
+			for (File itemFolder : folders) {
+				if (itemFolder.isDirectory()) {
+					names.add(itemFolder.getName());
+				}
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Applies the retention and compaction policy to all time series.
+	 *
+	 * @param deleteBefore the time before which records are deleted, or {@link Long#MIN_VALUE}
+	 * @param compactBefore the time before which segments are compacted, or {@link Long#MIN_VALUE}
+	 * @param maxSize the maximum size of the store in bytes, or 0 if it is unlimited; the
+	 *            oldest segments are deleted if the store is larger
+	 */
+	void maintain(long deleteBefore, long compactBefore, long maxSize) {
+		long size = 0;
+		for (String name : getNames()) {
+			try {
+				TimeSeries timeSeries = getSeries(name, false);
+				if (timeSeries == null) {
+					continue;
+				}
+				int deleted = timeSeries.deleteBefore(deleteBefore);
+				if (deleted > 0) {
+					logger.debug("Deleted {} expired segments of item '{}'", deleted, name);
+				}
+				timeSeries.compact(compactBefore);
+				size += timeSeries.size();
+			} catch (IOException e) {
+				logger.warn("Cannot maintain the time series of item '{}': {}", name, e.getMessage());
+			}
+		}
+		if (maxSize > 0 && size > maxSize) {
+			size = deleteOldest(size - maxSize);
+			logger.debug("Reduced the time series store to {} bytes", size);
+		}
+	}
+
+	/**
+	 * Deletes the oldest sealed segments of all time series.
+	 *
+	 * @param excess the number of bytes to delete at least
+	 * @return the number of bytes left
+	 */
+	private long deleteOldest(long excess) {
+		List<SealedSegment> candidates = new ArrayList<SealedSegment>();
+		long size = 0;
+		for (TimeSeries timeSeries : series.values()) {
+			size += timeSeries.size();
+			for (Segment segment : timeSeries.getSealedSegments()) {
+				candidates.add(new SealedSegment(timeSeries, segment));
+			}
+		}
+		Collections.sort(candidates);
+		long deleted = 0;
+		for (SealedSegment candidate : candidates) {
+			if (deleted >= excess) {
+				break;
+			}
+			deleted += candidate.segment.size();
+			candidate.timeSeries.delete(candidate.segment);
+		}
+		return size - deleted;
+	}
+
+	private TimeSeries getSeries(String name, boolean create) throws IOException {
+		TimeSeries timeSeries = series.get(name);
+		if (timeSeries == null) {
+			synchronized (this) {
+				timeSeries = series.get(name);
+				if (timeSeries == null) {
+					File itemFolder = new File(folder, name);
+					if (!create && !itemFolder.isDirectory()) {
+						return null;
+					}
+					timeSeries = TimeSeries.open(itemFolder);
+					series.put(name, timeSeries);
+				}
+			}
+		}
+		return timeSeries;
+	}
+
+	/**
+	 * A sealed segment along with its time series, ordered by age.
+	 */
+	private static class SealedSegment implements Comparable<SealedSegment> {
+
+		final TimeSeries timeSeries;
+		final Segment segment;
+
+		SealedSegment(TimeSeries timeSeries, Segment segment) {
+			this.timeSeries = timeSeries;
+			this.segment = segment;
+		}
+
+		public int compareTo(SealedSegment other) {
+			long base = segment.getBase();
+			long otherBase = other.segment.getBase();
+			return base < otherBase ? -1 : (base == otherBase ? 0 : 1);
+		}
+
+	}
+
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.chart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @since 1.5.0
+ */
+public class ChartCacheTest {
+
+	private static final Collection<String> ITEMS = Arrays.asList("Temperature", "Humidity");
+
+	private static final byte[] DATA = new byte[] { 1, 2, 3 };
+
+	private ChartCache cache;
+
+	private long created;
+
+	@Before
+	public void init() {
+		cache = new ChartCache(2);
+		created = System.currentTimeMillis() - 2 * ChartCache.SETTLE_TIME;
+	}
+
+	@Test
+	public void testValidEntry() {
+		ChartCache.Entry entry = cache.put("chart", created, Long.MAX_VALUE, ITEMS, DATA);
+		assertSame(entry, cache.get("chart"));
+		assertNull(cache.get("other"));
+	}
+
+	@Test
+	public void testExpiredEntry() {
+		cache.put("chart", created, System.currentTimeMillis() - 1, ITEMS, DATA);
+		assertNull(cache.get("chart"));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testUpdatedItem() {
+		cache.put("chart", created, Long.MAX_VALUE, ITEMS, DATA);
+		cache.itemUpdated("Pressure");
+		assertNotNull(cache.get("chart"));
+		cache.itemUpdated("Humidity");
+		assertNull(cache.get("chart"));
+	}
+
+	@Test
+	public void testItemUpdatedBeforeRendering() {
+		cache.itemUpdated("Humidity");
+		cache.put("chart", System.currentTimeMillis(), Long.MAX_VALUE, ITEMS, DATA);
+		assertNull(cache.get("chart"));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEntryIsRemoved() {
+		cache.put("first", created, Long.MAX_VALUE, ITEMS, DATA);
+		cache.put("second", created, Long.MAX_VALUE, ITEMS, DATA);
+		cache.get("first");
+		cache.put("third", created, Long.MAX_VALUE, ITEMS, DATA);
+		assertEquals(2, cache.size());
+		assertNotNull(cache.get("first"));
+		assertNull(cache.get("second"));
+		assertNotNull(cache.get("third"));
+	}
+
+	@Test
+	public void testDisabledCache() {
+		cache = new ChartCache(0);
+		assertNotNull(cache.put("chart", created, Long.MAX_VALUE, ITEMS, DATA));
+		assertNull(cache.get("chart"));
+	}
+
+	@Test
+	public void testWrite() throws IOException {
+		ChartCache.Entry entry = cache.put("chart", created, Long.MAX_VALUE, ITEMS, DATA);
+		HttpServletRequest req = mock(HttpServletRequest.class);
+		when(req.getDateHeader("If-Modified-Since")).thenReturn(-1L);
+		HttpServletResponse res = mock(HttpServletResponse.class);
+		ServletOutputStream out = mock(ServletOutputStream.class);
+		when(res.getOutputStream()).thenReturn(out);
+
+		ChartCache.write(entry, "image/png", req, res);
+		verify(res).setHeader("ETag", entry.getETag());
+		verify(res).setContentType("image/png");
+		verify(out).write(DATA);
+	}
+
+	@Test
+	public void testNotModified() throws IOException {
+		ChartCache.Entry entry = cache.put("chart", created, Long.MAX_VALUE, ITEMS, DATA);
+		HttpServletRequest req = mock(HttpServletRequest.class);
+		when(req.getHeader("If-None-Match")).thenReturn("\"other\", " + entry.getETag());
+		HttpServletResponse res = mock(HttpServletResponse.class);
+
+		ChartCache.write(entry, "image/png", req, res);
+		verify(res).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		verify(res, never()).getOutputStream();
+	}
+
+	@Test
+	public void testNotModifiedSince() throws IOException {
+		ChartCache.Entry entry = cache.put("chart", created, Long.MAX_VALUE, ITEMS, DATA);
+		HttpServletRequest req = mock(HttpServletRequest.class);
+		when(req.getDateHeader("If-Modified-Since")).thenReturn(entry.getLastModified());
+		HttpServletResponse res = mock(HttpServletResponse.class);
+
+		ChartCache.write(entry, "image/png", req, res);
+		verify(res).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		verify(res, never()).getOutputStream();
+	}
+
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.internal.chart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @since 1.5.0
+ */
+public class MinMaxDownsamplerTest {
+
+	private List<Date> xData;
+	private List<Number> yData;
+
+	@Before
+	public void init() {
+		xData = new ArrayList<Date>();
+		yData = new ArrayList<Number>();
+	}
+
+	@Test
+	public void testKeepsAllPointsWithoutBuckets() {
+		MinMaxDownsampler downsampler = new MinMaxDownsampler(xData, yData, new Date(0), new Date(1000), 0);
+		for (int i = 0; i < 100; i++) {
+			downsampler.add(new Date(i), i % 7, false);
+		}
+		downsampler.flush();
+		assertEquals(100, xData.size());
+		assertEquals(100, yData.size());
+	}
+
+	@Test
+	public void testKeepsFirstMinMaxAndLastInOrder() {
+		MinMaxDownsampler downsampler = new MinMaxDownsampler(xData, yData, new Date(0), new Date(100), 1);
+		double[] values = { 5, 3, 9, 1, 4, 8, 6 };
+		for (int i = 0; i < values.length; i++) {
+			downsampler.add(new Date(i), values[i], false);
+		}
+		downsampler.flush();
+		assertEquals(4, xData.size());
+		assertEquals(new Date(0), xData.get(0));
+		assertEquals(new Date(2), xData.get(1));
+		assertEquals(new Date(3), xData.get(2));
+		assertEquals(new Date(6), xData.get(3));
+		assertEquals(5.0, yData.get(0));
+		assertEquals(9.0, yData.get(1));
+		assertEquals(1.0, yData.get(2));
+		assertEquals(6.0, yData.get(3));
+	}
+
+	@Test
+	public void testBoundsPointsPerBucket() {
+		Random random = new Random(4711);
+		MinMaxDownsampler downsampler = new MinMaxDownsampler(xData, yData, new Date(0), new Date(100000), 100);
+		double min = Double.MAX_VALUE;
+		double max = -Double.MAX_VALUE;
+		for (int i = 0; i < 100000; i++) {
+			double value = random.nextGaussian();
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+			downsampler.add(new Date(i), value, false);
+		}
+		downsampler.flush();
+		assertTrue(xData.size() <= 400);
+		assertTrue(yData.contains(min));
+		assertTrue(yData.contains(max));
+		for (int i = 1; i < xData.size(); i++) {
+			assertTrue(xData.get(i - 1).before(xData.get(i)));
+		}
+	}
+
+	@Test
+	public void testHoldsPreviousValue() {
+		MinMaxDownsampler downsampler = new MinMaxDownsampler(xData, yData, new Date(0), new Date(100), 0);
+		downsampler.add(new Date(0), 0, true);
+		downsampler.add(new Date(10), 1, true);
+		downsampler.flush();
+		assertEquals(3, xData.size());
+		assertEquals(new Date(9), xData.get(1));
+		assertEquals(0.0, yData.get(1));
+		assertEquals(1.0, yData.get(2));
+	}
+
+}
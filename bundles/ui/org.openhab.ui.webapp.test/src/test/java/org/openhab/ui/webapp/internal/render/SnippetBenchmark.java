@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.webapp.internal.render;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Compares rendering a page of 200 widgets with the compiled snippets to the
+ * way the widget renderers used to do it: fetching the snippet text through a
+ * synchronized cache and replacing one placeholder after the other. Both
+ * variants use the snippets of the WebApp bundle and have to produce the
+ * same html.
+ * <p>
+ * This is not a unit test, run it as Java application. The directory of the
+ * snippets can be given as argument, the default works when started from this
+ * bundle's directory.
+ *
+ * @since 1.5.0
+ */
+public class SnippetBenchmark {
+
+	private static final int WIDGETS = 200;
+
+	private static final int PAGES = 2000;
+
+	private static final int THREADS = 4;
+
+	private static final String[] TYPES = { "switch", "text", "slider", "group", "setpoint", "text_link" };
+
+	private final Map<String, String> snippetTexts = new HashMap<String, String>();
+
+	private final Map<String, Snippet> snippets = new HashMap<String, Snippet>();
+
+	/* the placeholder values of the widgets, in the order in which the renderers replaced them */
+	private final List<Map<String, String>> widgets = new ArrayList<Map<String, String>>();
+
+	private final List<String> widgetTypes = new ArrayList<String>();
+
+	private SnippetBenchmark(File directory) throws IOException {
+		for (String type : TYPES) {
+			InputStream in = new FileInputStream(new File(directory, type + ".html"));
+			try {
+				String text = IOUtils.toString(in);
+				snippetTexts.put(type, text);
+				snippets.put(type, Snippet.compile(text));
+			} finally {
+				in.close();
+			}
+		}
+		for (int i = 0; i < WIDGETS; i++) {
+			Map<String, String> values = new LinkedHashMap<String, String>();
+			values.put("id", "01" + i);
+			values.put("icon", "temperature");
+			values.put("item", "Item" + i);
+			values.put("label", "Widget " + i + " [" + (i * 0.5) + " C]");
+			values.put("servletname", "openhab.app");
+			values.put("state", Double.toString(i * 0.5));
+			values.put("frequency", "200");
+			values.put("switch", "0");
+			values.put("checked", i % 2 == 0 ? "checked=true" : "");
+			values.put("newlowerstate", Double.toString(i * 0.5 - 1));
+			values.put("newhigherstate", Double.toString(i * 0.5 + 1));
+			values.put("labelstyle", i % 3 == 0 ? "color:red" : "");
+			values.put("valuestyle", i % 5 == 0 ? "color:blue" : "");
+			widgets.add(values);
+			widgetTypes.add(TYPES[i % TYPES.length]);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		File directory = new File(args.length > 0 ? args[0] : "../org.openhab.ui.webapp/snippets");
+		final SnippetBenchmark benchmark = new SnippetBenchmark(directory);
+		if (!benchmark.renderReplace().equals(benchmark.renderCompiled())) {
+			throw new IllegalStateException("The compiled snippets render different html");
+		}
+		System.out.println("Rendering " + PAGES + " pages of " + WIDGETS + " widgets");
+		System.out.println(String.format("%-10s %8s %16s", "rendering", "threads", "pages/s"));
+		// the first rounds warm up the JIT compiler
+		for (int i = 0; i < 3; i++) {
+			for (boolean compiled : new boolean[] { false, true }) {
+				for (int threads : new int[] { 1, THREADS }) {
+					benchmark.run(compiled, threads);
+				}
+			}
+		}
+	}
+
+	private void run(final boolean compiled, int threads) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for (int i = 0; i < threads; i++) {
+			tasks.add(new Callable<Integer>() {
+				public Integer call() throws Exception {
+					int length = 0;
+					for (int page = 0; page < PAGES / THREADS; page++) {
+						length += compiled ? renderCompiled().length() : renderReplace().length();
+					}
+					return length;
+				}
+			});
+		}
+		long begin = System.nanoTime();
+		for (Future<Integer> result : executor.invokeAll(tasks)) {
+			result.get();
+		}
+		long nanos = System.nanoTime() - begin;
+		executor.shutdown();
+		int pages = PAGES / THREADS * threads;
+		System.out.println(String.format("%-10s %8d %16.0f", compiled ? "compiled" : "replace", threads,
+				pages / (nanos / 1e9)));
+	}
+
+	private String renderCompiled() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < WIDGETS; i++) {
+			Map<String, String> widget = widgets.get(i);
+			Map<String, String> values = new HashMap<String, String>();
+			values.put("labelstyle", widget.get("labelstyle"));
+			values.put("valuestyle", widget.get("valuestyle"));
+			for (Map.Entry<String, String> entry : widget.entrySet()) {
+				String value = entry.getValue();
+				if (entry.getKey().equals("label")) {
+					value = StringUtils.replace(value, "[", "<span style=\"" + values.get("valuestyle") + "\">");
+					value = StringUtils.replace(value, "]", "</span>");
+				}
+				values.put(entry.getKey(), value);
+			}
+			snippets.get(widgetTypes.get(i)).render(sb, values);
+		}
+		return sb.toString();
+	}
+
+	private String renderReplace() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < WIDGETS; i++) {
+			Map<String, String> widget = widgets.get(i);
+			String snippet = getSnippet(widgetTypes.get(i));
+			for (Map.Entry<String, String> entry : widget.entrySet()) {
+				String value = entry.getValue();
+				if (entry.getKey().equals("label")) {
+					value = value.replaceAll("\\[", "<span style=\"%valuestyle%\">").replaceAll("\\]", "</span>");
+				}
+				snippet = StringUtils.replace(snippet, "%" + entry.getKey() + "%", value);
+			}
+			sb.append(snippet);
+		}
+		return sb.toString();
+	}
+
+	private synchronized String getSnippet(String type) {
+		return snippetTexts.get(type);
+	}
+
+}
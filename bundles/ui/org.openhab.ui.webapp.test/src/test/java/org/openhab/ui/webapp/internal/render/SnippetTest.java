@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.webapp.internal.render;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @since 1.5.0
+ */
+public class SnippetTest {
+
+	private Map<String, String> values;
+
+	@Before
+	public void init() {
+		values = new HashMap<String, String>();
+		values.put("id", "0101");
+		values.put("label", "Temperature <span>21.5 C</span>");
+		values.put("labelstyle", "");
+	}
+
+	@Test
+	public void testPlaceholdersAreReplaced() {
+		assertEquals("<li id=\"0101\" style=\"\">Temperature <span>21.5 C</span></li>",
+				render("<li id=\"%id%\" style=\"%labelstyle%\">%label%</li>"));
+		assertEquals("0101Temperature <span>21.5 C</span>", render("%id%%label%"));
+		assertEquals("0101", render("%id%"));
+		assertEquals("", render(""));
+	}
+
+	@Test
+	public void testUnknownPlaceholdersAreKept() {
+		assertEquals("<ul>%children%</ul>", render("<ul>%children%</ul>"));
+		assertEquals("0101 %item%", render("%id% %item%"));
+	}
+
+	@Test
+	public void testPercentSignsWhichAreNoPlaceholders() {
+		assertEquals("<img style=\"width:90%\" id=\"0101\"/>", render("<img style=\"width:90%\" id=\"%id%\"/>"));
+		assertEquals("100% 0101%", render("100% %id%%"));
+		assertEquals("%%0101 % %-%", render("%%%id% % %-%"));
+	}
+
+	@Test
+	public void testValuesAreNotExpanded() {
+		values.put("label", "%id%");
+		assertEquals("%id% 0101", render("%label% %id%"));
+	}
+
+	@Test
+	public void testRenderAppends() {
+		StringBuilder sb = new StringBuilder("<ul>");
+		Snippet snippet = Snippet.compile("<li>%id%</li>");
+		snippet.render(sb, values);
+		snippet.render(sb, values);
+		assertEquals("<ul><li>0101</li><li>0101</li>", sb.toString());
+	}
+
+	private String render(String text) {
+		return Snippet.compile(text).render(values);
+	}
+
+}
@@ -12,8 +12,8 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
@@ -50,8 +50,8 @@ abstract public class AbstractWidgetRenderer implements WidgetRenderer {
 	/* the snippet location inside this bundle */
 	protected static final String SNIPPET_LOCATION = "snippets/";
 
-	/* a local cache so we do not have to read the snippets over and over again from the bundle */
-	protected static final Map<String, String> snippetCache = new HashMap<String, String>(); 
+	/* a local cache so we do not have to read and compile the snippets over and over again from the bundle */
+	protected static final Map<String, Snippet> snippetCache = new ConcurrentHashMap<String, Snippet>(); 
 
 	public void setItemUIRegistry(ItemUIRegistry itemUIRegistry) {
 		this.itemUIRegistry = itemUIRegistry;
@@ -72,21 +72,22 @@ abstract public class AbstractWidgetRenderer implements WidgetRenderer {
 	}
 
 	/**
-	 * This method provides the html snippet for a given elementType of the sitemap model.
+	 * This method provides the compiled html snippet for a given elementType of the sitemap model.
 	 * 
 	 * @param elementType the name of the model type (e.g. "Group" or "Switch")
 	 * @return the html snippet to be used in the UI (including placeholders for variables)
 	 * @throws RenderException if snippet could not be read 
 	 */
-	protected synchronized String getSnippet(String elementType) throws RenderException {
+	protected Snippet getSnippet(String elementType) throws RenderException {
 		elementType = elementType.toLowerCase();
-		String snippet = snippetCache.get(elementType);
+		Snippet snippet = snippetCache.get(elementType);
 		if(snippet==null) {
+			// concurrent requests might load the same snippet, which does no harm
 			String snippetLocation = SNIPPET_LOCATION + elementType + SNIPPET_EXT;
 			URL entry = WebAppActivator.getContext().getBundle().getEntry(snippetLocation);
 			if(entry!=null) {
 				try {
-					snippet = IOUtils.toString(entry.openStream());
+					snippet = Snippet.compile(IOUtils.toString(entry.openStream()));
 					snippetCache.put(elementType, snippet);
 				} catch (IOException e) {
 					logger.warn("Cannot load snippet for element type '{}'", elementType, e);
@@ -102,14 +103,17 @@ abstract public class AbstractWidgetRenderer implements WidgetRenderer {
 	 * Retrieves the label for a widget and formats it for the WebApp.Net framework
 	 * 
 	 * @param w the widget to retrieve the label for
+	 * @param values the placeholder values of the widget, which contain the style of the value
 	 * @return the label to use for the widget
 	 */
-	public String getLabel(Widget w) {
+	public String getLabel(Widget w, Map<String, String> values) {
 
 		String label = itemUIRegistry.getLabel(w);
+		String valueStyle = values.get("valuestyle");
 		
 		// insert the span between the left and right side of the label, if state section exists 
-		label = label.replaceAll("\\[", "<span style=\"%valuestyle%\">").replaceAll("\\]", "</span>");
+		label = StringUtils.replace(label, "[", "<span style=\"" + (valueStyle!=null ? valueStyle : "") + "\">");
+		label = StringUtils.replace(label, "]", "</span>");
 
 		return label;
 	}
@@ -135,23 +139,20 @@ abstract public class AbstractWidgetRenderer implements WidgetRenderer {
 	 * 
 	 * @param w
 	 *            The widget to process
-	 * @param snippet
-	 *            The snippet to translate
-	 * @return The updated snippet
+	 * @param values
+	 *            The placeholder values to add the styles to
 	 */
-	protected String processColor(Widget w, String snippet) {
+	protected void processColor(Widget w, Map<String, String> values) {
 		String style = "";
 		String color = itemUIRegistry.getLabelColor(w);
 		if(color != null)
 			style = "color:"+ color;
-		snippet = StringUtils.replace(snippet, "%labelstyle%", style);
+		values.put("labelstyle", style);
 
 		style = "";
 		color = itemUIRegistry.getValueColor(w);
 		if(color != null)
 			style = "color:"+ color;
-		snippet = StringUtils.replace(snippet, "%valuestyle%", style);
-		
-		return snippet;
+		values.put("valuestyle", style);
 	}
 }
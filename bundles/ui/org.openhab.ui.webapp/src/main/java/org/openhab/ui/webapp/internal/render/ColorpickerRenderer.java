@@ -9,8 +9,9 @@
 package org.openhab.ui.webapp.internal.render;
 
 import java.awt.Color;
+import java.util.HashMap;
+import java.util.Map;
 
-import org.apache.commons.lang.StringUtils;
 import org.eclipse.emf.common.util.EList;
 import org.openhab.core.library.types.HSBType;
 import org.openhab.core.types.State;
@@ -48,7 +49,7 @@ public class ColorpickerRenderer extends AbstractWidgetRenderer {
 		
 		String snippetName = "colorpicker";
 
-		String snippet = getSnippet(snippetName);
+		Snippet snippet = getSnippet(snippetName);
 
 		// set the default send-update frequency to 200ms  
 		String frequency = cp.getFrequency()==0 ? "200" : Integer.toString(cp.getFrequency());
@@ -61,36 +62,27 @@ public class ColorpickerRenderer extends AbstractWidgetRenderer {
 			Color color = hsbState.toColor();
 			hexValue = "#" + Integer.toHexString(color.getRGB()).substring(2);
 		}
-		String label = getLabel(cp);
+		Map<String, String> values = new HashMap<String, String>();
+
+		// Process the color tags
+		processColor(w, values);
+
+		String label = getLabel(cp, values);
 		String purelabel = label;
 		if(label.contains("<span>")) {
 			purelabel = purelabel.substring(0, label.indexOf("<span>"));
 		}
 
-		snippet = StringUtils.replace(snippet, "%id%", itemUIRegistry.getWidgetId(cp));
-		snippet = StringUtils.replace(snippet, "%icon%", escapeURLPath(itemUIRegistry.getIcon(cp)));
-		snippet = StringUtils.replace(snippet, "%item%", w.getItem());
-		snippet = StringUtils.replace(snippet, "%label%", label);
-		snippet = StringUtils.replace(snippet, "%purelabel%", purelabel);
-		snippet = StringUtils.replace(snippet, "%state%", hexValue);
-		snippet = StringUtils.replace(snippet, "%frequency%", frequency);
-		snippet = StringUtils.replace(snippet, "%servletname%", WebAppServlet.SERVLET_NAME);
-
-		String style = "";
-		String color = itemUIRegistry.getLabelColor(w);
-		if(color != null) {
-			style = "color:"+ color;
-		}
-		snippet = StringUtils.replace(snippet, "%labelstyle%", style);
-
-		style = "";
-		color = itemUIRegistry.getValueColor(w);
-		if(color != null) {
-			style = "color:"+ color;
-		}
-		snippet = StringUtils.replace(snippet, "%valuestyle%", style);
+		values.put("id", itemUIRegistry.getWidgetId(cp));
+		values.put("icon", escapeURLPath(itemUIRegistry.getIcon(cp)));
+		values.put("item", w.getItem());
+		values.put("label", label);
+		values.put("purelabel", purelabel);
+		values.put("state", hexValue);
+		values.put("frequency", frequency);
+		values.put("servletname", WebAppServlet.SERVLET_NAME);
 
-		sb.append(snippet);
+		snippet.render(sb, values);
 		return null;
 	}
 }
@@ -8,8 +8,10 @@
  */
 package org.openhab.ui.webapp.internal.render;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.apache.commons.lang.StringEscapeUtils;
-import org.apache.commons.lang.StringUtils;
 import org.eclipse.emf.common.util.EList;
 import org.openhab.model.sitemap.Frame;
 import org.openhab.model.sitemap.Widget;
@@ -36,14 +38,14 @@ public class FrameRenderer extends AbstractWidgetRenderer {
 	 * {@inheritDoc}
 	 */
 	public EList<Widget> renderWidget(Widget w, StringBuilder sb) throws RenderException {
-		String snippet = getSnippet("frame");
-
-		snippet = StringUtils.replace(snippet, "%label%", StringEscapeUtils.escapeHtml(getLabel(w)));
+		Map<String, String> values = new HashMap<String, String>();
 
 		// Process the color tags
-		snippet = processColor(w, snippet);
+		processColor(w, values);
+
+		values.put("label", StringEscapeUtils.escapeHtml(getLabel(w, values)));
 
-		sb.append(snippet);
+		getSnippet("frame").render(sb, values);
 		return ((Frame)w).getChildren();
 	}
 }
@@ -8,7 +8,9 @@
  */
 package org.openhab.ui.webapp.internal.render;
 
-import org.apache.commons.lang.StringUtils;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.eclipse.emf.common.util.EList;
 import org.openhab.model.sitemap.List;
 import org.openhab.model.sitemap.Widget;
@@ -35,22 +37,25 @@ public class ListRenderer extends AbstractWidgetRenderer {
 	 * {@inheritDoc}
 	 */
 	public EList<Widget> renderWidget(Widget w, StringBuilder sb) throws RenderException {
-		String snippet = getSnippet("list");
-		snippet = snippet.replaceAll("%label%", getLabel(w));
+		Map<String, String> values = new HashMap<String, String>();
+
+		// Process the color tags
+		processColor(w, values);
+
+		values.put("label", getLabel(w, values));
 		
-		String rowSnippet = getSnippet("list_row");
+		Snippet rowSnippet = getSnippet("list_row");
 		String state = itemUIRegistry.getState(w).toString();
 		String[] rowContents = state.split(((List) w).getSeparator());
 		StringBuilder rowSB = new StringBuilder();
+		Map<String, String> rowValues = new HashMap<String, String>(values);
 		for(String row : rowContents) {
-			rowSB.append(StringUtils.replace(rowSnippet, "%title%", row));
+			rowValues.put("title", row);
+			rowSnippet.render(rowSB, rowValues);
 		}
-		snippet = StringUtils.replace(snippet, "%rows%", rowSB.toString());
-
-		// Process the color tags
-		snippet = processColor(w, snippet);
+		values.put("rows", rowSB.toString());
 
-		sb.append(snippet);
+		getSnippet("list").render(sb, values);
 		return null;
 	}
 }
@@ -9,10 +9,11 @@
 package org.openhab.ui.webapp.internal.render;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringEscapeUtils;
-import org.apache.commons.lang.StringUtils;
 import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.ecore.EObject;
 import org.openhab.model.sitemap.Frame;
@@ -62,8 +63,8 @@ public class PageRenderer extends AbstractWidgetRenderer {
 	 */
 	public StringBuilder processPage(String id, String sitemap, String label, EList<Widget> children, boolean async) throws RenderException {
 		
-		String snippet = getSnippet(async ? "layer" : "main");
-		snippet = snippet.replaceAll("%id%", id);
+		Map<String, String> values = new HashMap<String, String>();
+		values.put("id", id);
 
 		// if the label contains a value span, we remove this span as
 		// the title of a page/layer cannot deal with this
@@ -73,10 +74,11 @@ public class PageRenderer extends AbstractWidgetRenderer {
 		if(label.contains("[") && label.endsWith("]")) {
 			label = label.replace("[", "").replace("]", "");
 		}
-		snippet = StringUtils.replace(snippet, "%label%", label);
-		snippet = StringUtils.replace(snippet, "%servletname%", WebAppServlet.SERVLET_NAME);
-		snippet = StringUtils.replace(snippet, "%sitemap%", sitemap);
+		values.put("label", label);
+		values.put("servletname", WebAppServlet.SERVLET_NAME);
+		values.put("sitemap", sitemap);
 
+		String snippet = getSnippet(async ? "layer" : "main").render(values);
 		String[] parts = snippet.split("%children%");
 
 		StringBuilder pre_children = new StringBuilder(parts[0]);
@@ -98,8 +100,9 @@ public class PageRenderer extends AbstractWidgetRenderer {
 			EObject firstChild = children.get(0);
 			EObject parent = firstChild.eContainer();
 			if(!(firstChild instanceof Frame || parent instanceof Frame || parent instanceof Sitemap || parent instanceof List)) {
-				String frameSnippet = getSnippet("frame");
-				frameSnippet = StringUtils.replace(frameSnippet, "%label%", "");
+				Map<String, String> values = new HashMap<String, String>();
+				values.put("label", "");
+				String frameSnippet = getSnippet("frame").render(values);
 				
 				String[] parts = frameSnippet.split("%children%");
 				if(parts.length>1) {
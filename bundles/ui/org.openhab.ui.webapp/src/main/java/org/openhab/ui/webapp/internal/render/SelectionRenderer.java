@@ -8,7 +8,9 @@
  */
 package org.openhab.ui.webapp.internal.render;
 
-import org.apache.commons.lang.StringUtils;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.eclipse.emf.common.util.EList;
 import org.openhab.model.sitemap.Mapping;
 import org.openhab.model.sitemap.Selection;
@@ -36,33 +38,34 @@ public class SelectionRenderer extends AbstractWidgetRenderer {
 	 * {@inheritDoc}
 	 */
 	public EList<Widget> renderWidget(Widget w, StringBuilder sb) throws RenderException {
-		String snippet = getSnippet("selection");
+		Map<String, String> values = new HashMap<String, String>();
+
+		// Process the color tags
+		processColor(w, values);
 
-		snippet = StringUtils.replace(snippet, "%icon%", escapeURLPath(itemUIRegistry.getIcon(w)));
-		snippet = StringUtils.replace(snippet, "%label_header%", getLabel(w));
+		values.put("icon", escapeURLPath(itemUIRegistry.getIcon(w)));
+		values.put("label_header", getLabel(w, values));
 		
 		String state = itemUIRegistry.getState(w).toString();
 		Selection selection = (Selection) w;
 		
+		Snippet rowSnippet = getSnippet("selection_row");
 		StringBuilder rowSB = new StringBuilder();
+		Map<String, String> rowValues = new HashMap<String, String>(values);
+		rowValues.put("item", w.getItem()!=null ? w.getItem() : "");
 		for(Mapping mapping : selection.getMappings()) {
-			String rowSnippet = getSnippet("selection_row");
-			rowSnippet = StringUtils.replace(rowSnippet, "%item%", w.getItem()!=null ? w.getItem() : "");
-			rowSnippet = StringUtils.replace(rowSnippet, "%cmd%", mapping.getCmd()!=null ? mapping.getCmd() : "");
-			rowSnippet = StringUtils.replace(rowSnippet, "%label%", mapping.getLabel()!=null ? mapping.getLabel() : "");
+			rowValues.put("cmd", mapping.getCmd()!=null ? mapping.getCmd() : "");
+			rowValues.put("label", mapping.getLabel()!=null ? mapping.getLabel() : "");
 			if(state.equals(mapping.getCmd())) {
-				rowSnippet = StringUtils.replace(rowSnippet, "%checked%", "checked=\"true\"");
+				rowValues.put("checked", "checked=\"true\"");
 			} else {
-				rowSnippet = StringUtils.replace(rowSnippet, "%checked%", "");
+				rowValues.put("checked", "");
 			}
-			rowSB.append(rowSnippet);
+			rowSnippet.render(rowSB, rowValues);
 		}
-		snippet = StringUtils.replace(snippet, "%rows%", rowSB.toString());
+		values.put("rows", rowSB.toString());
 		
-		// Process the color tags
-		snippet = processColor(w, snippet);
-
-		sb.append(snippet);
+		getSnippet("selection").render(sb, values);
 		return null;
 	}
 }
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.webapp.internal.render;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This is a compiled html snippet. The snippet text is split once into literal
+ * segments and placeholders (e.g. "%label%"), so that rendering only appends the
+ * segments and the placeholder values to a string builder instead of searching
+ * and copying the whole snippet for every placeholder.
+ *
+ * Placeholders without a value are rendered unchanged, so that e.g. "%children%"
+ * is kept for the {@link PageRenderer}. Values are inserted as they are and are not
+ * searched for placeholders themselves.
+ *
+ * Snippets are immutable and can be rendered concurrently.
+ *
+ * @since 1.5.0
+ *
+ */
+public class Snippet {
+
+	private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("%(\\w+)%");
+
+	/* the literal text before each placeholder and after the last one */
+	private final String[] segments;
+
+	/* the names of the placeholders, without the enclosing '%' */
+	private final String[] placeholders;
+
+	/* the length of all segments, used to size the output */
+	private final int length;
+
+	private Snippet(String[] segments, String[] placeholders) {
+		this.segments = segments;
+		this.placeholders = placeholders;
+		int length = 0;
+		for(String segment : segments) {
+			length += segment.length();
+		}
+		this.length = length;
+	}
+
+	/**
+	 * Compiles the text of a snippet.
+	 *
+	 * @param text the snippet text including placeholders like "%label%"
+	 * @return the compiled snippet
+	 */
+	public static Snippet compile(String text) {
+		List<String> segments = new ArrayList<String>();
+		List<String> placeholders = new ArrayList<String>();
+		Matcher matcher = PLACEHOLDER_PATTERN.matcher(text);
+		int start = 0;
+		while(matcher.find()) {
+			segments.add(text.substring(start, matcher.start()));
+			placeholders.add(matcher.group(1));
+			start = matcher.end();
+		}
+		segments.add(text.substring(start));
+		return new Snippet(segments.toArray(new String[segments.size()]),
+				placeholders.toArray(new String[placeholders.size()]));
+	}
+
+	/**
+	 * Appends the snippet to a string builder, with its placeholders replaced by the given values.
+	 *
+	 * @param sb the string builder to append the snippet to
+	 * @param values the values of the placeholders by their names (without '%')
+	 * @return the string builder
+	 */
+	public StringBuilder render(StringBuilder sb, Map<String, String> values) {
+		sb.ensureCapacity(sb.length() + length);
+		for(int i = 0; i < placeholders.length; i++) {
+			sb.append(segments[i]);
+			String value = values.get(placeholders[i]);
+			if(value!=null) {
+				sb.append(value);
+			} else {
+				sb.append('%').append(placeholders[i]).append('%');
+			}
+		}
+		return sb.append(segments[placeholders.length]);
+	}
+
+	/**
+	 * Returns the snippet with its placeholders replaced by the given values.
+	 *
+	 * @param values the values of the placeholders by their names (without '%')
+	 * @return the rendered snippet
+	 */
+	public String render(Map<String, String> values) {
+		return render(new StringBuilder(), values).toString();
+	}
+
+}
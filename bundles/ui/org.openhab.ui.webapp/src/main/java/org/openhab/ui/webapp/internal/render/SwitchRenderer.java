@@ -8,7 +8,9 @@
  */
 package org.openhab.ui.webapp.internal.render;
 
-import org.apache.commons.lang.StringUtils;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.eclipse.emf.common.util.EList;
 import org.openhab.core.items.GroupItem;
 import org.openhab.core.items.Item;
@@ -71,13 +73,18 @@ public class SwitchRenderer extends AbstractWidgetRenderer {
 			snippetName = "switch";
 		}
 
-		String snippet = getSnippet(snippetName);
+		Snippet snippet = getSnippet(snippetName);
+
+		Map<String, String> values = new HashMap<String, String>();
+
+		// Process the color tags
+		processColor(w, values);
 
-		snippet = StringUtils.replace(snippet, "%id%", itemUIRegistry.getWidgetId(w));
-		snippet = StringUtils.replace(snippet, "%icon%", escapeURLPath(itemUIRegistry.getIcon(w)));
-		snippet = StringUtils.replace(snippet, "%item%", w.getItem());
-		snippet = StringUtils.replace(snippet, "%label%", getLabel(w));
-		snippet = StringUtils.replace(snippet, "%servletname%", WebAppServlet.SERVLET_NAME);
+		values.put("id", itemUIRegistry.getWidgetId(w));
+		values.put("icon", escapeURLPath(itemUIRegistry.getIcon(w)));
+		values.put("item", w.getItem());
+		values.put("label", getLabel(w, values));
+		values.put("servletname", WebAppServlet.SERVLET_NAME);
 		
 		State state = itemUIRegistry.getState(w);
 		
@@ -86,31 +93,28 @@ public class SwitchRenderer extends AbstractWidgetRenderer {
 				state = ((PercentType) state).intValue() > 0 ? OnOffType.ON : OnOffType.OFF;
 			}
 			if(state.equals(OnOffType.ON)) {
-				snippet = snippet.replaceAll("%checked%", "checked=true");
+				values.put("checked", "checked=true");
 			} else {
-				snippet = snippet.replaceAll("%checked%", "");
+				values.put("checked", "");
 			}
 		} else {
+			Snippet button = getSnippet("button");
 			StringBuilder buttons = new StringBuilder();
+			Map<String, String> buttonValues = new HashMap<String, String>(values);
 			for(Mapping mapping : s.getMappings()) {
-				String button = getSnippet("button");
-				button = StringUtils.replace(button, "%item%",w.getItem());
-				button = StringUtils.replace(button, "%cmd%", mapping.getCmd());
-				button = StringUtils.replace(button, "%label%", mapping.getLabel());
+				buttonValues.put("cmd", mapping.getCmd());
+				buttonValues.put("label", mapping.getLabel());
 				if(s.getMappings().size()>1 && state.toString().equals(mapping.getCmd())) {
-					button = StringUtils.replace(button, "%type%", "Warn"); // button with red color
+					buttonValues.put("type", "Warn"); // button with red color
 				} else {
-					button = StringUtils.replace(button, "%type%", "Action"); // button with blue color
+					buttonValues.put("type", "Action"); // button with blue color
 				}
-				buttons.insert(0, button);
+				buttons.insert(0, button.render(buttonValues));
 			}
-			snippet = StringUtils.replace(snippet, "%buttons%", buttons.toString());
+			values.put("buttons", buttons.toString());
 		}
 		
-		// Process the color tags
-		snippet = processColor(w, snippet);
-
-		sb.append(snippet);
+		snippet.render(sb, values);
 		return null;
 	}
 }
@@ -8,7 +8,9 @@
  */
 package org.openhab.ui.webapp.internal.render;
 
-import org.apache.commons.lang.StringUtils;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.eclipse.emf.common.util.EList;
 import org.openhab.model.sitemap.Text;
 import org.openhab.model.sitemap.Widget;
@@ -37,17 +39,19 @@ public class TextRenderer extends AbstractWidgetRenderer {
 	 */
 	public EList<Widget> renderWidget(Widget w, StringBuilder sb) throws RenderException {
 		Text text = (Text) w;
-		String snippet = (text.getChildren().size() > 0) ? 
+		Snippet snippet = (text.getChildren().size() > 0) ? 
 			getSnippet("text_link") : getSnippet("text");			
 			
-		snippet = StringUtils.replace(snippet, "%id%", itemUIRegistry.getWidgetId(w));
-		snippet = StringUtils.replace(snippet, "%icon%", escapeURLPath(itemUIRegistry.getIcon(w)));
-		snippet = StringUtils.replace(snippet, "%label%", getLabel(w));
+		Map<String, String> values = new HashMap<String, String>();
 
 		// Process the color tags
-		snippet = processColor(w, snippet);
+		processColor(w, values);
+
+		values.put("id", itemUIRegistry.getWidgetId(w));
+		values.put("icon", escapeURLPath(itemUIRegistry.getIcon(w)));
+		values.put("label", getLabel(w, values));
 
-		sb.append(snippet);
+		snippet.render(sb, values);
 		return null;
 	}
 }
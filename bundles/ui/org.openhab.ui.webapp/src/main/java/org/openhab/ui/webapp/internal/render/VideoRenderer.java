@@ -8,7 +8,9 @@
  */
 package org.openhab.ui.webapp.internal.render;
 
-import org.apache.commons.lang.StringUtils;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.eclipse.emf.common.util.EList;
 import org.openhab.model.sitemap.Video;
 import org.openhab.model.sitemap.Widget;
@@ -37,7 +39,8 @@ public class VideoRenderer extends AbstractWidgetRenderer {
 	 */
 	public EList<Widget> renderWidget(Widget w, StringBuilder sb) throws RenderException {
 		Video videoWidget = (Video) w;
-		String snippet = null;
+		Snippet snippet = null;
+		Map<String, String> values = new HashMap<String, String>();
 		
 		String widgetId = itemUIRegistry.getWidgetId(w);		
 		String sitemap = w.eResource().getURI().path();
@@ -45,14 +48,14 @@ public class VideoRenderer extends AbstractWidgetRenderer {
 		if(videoWidget.getEncoding() !=null && videoWidget.getEncoding().contains("mjpeg")) {
 			// we handle mjpeg streams as an html image as browser can usually handle this
 			snippet = getSnippet("image");
-			snippet = StringUtils.replace(snippet, "%setrefresh%", "");
-			snippet = StringUtils.replace(snippet, "%refresh%", "");
+			values.put("setrefresh", "");
+			values.put("refresh", "");
 		} else {
 			snippet = getSnippet("video");			
 		}
 		String url = "proxy?sitemap=" + sitemap + "&widgetId=" + widgetId;
-		snippet = StringUtils.replace(snippet, "%url%", url);
-		sb.append(snippet);
+		values.put("url", url);
+		snippet.render(sb, values);
 		return null;
 	}
 }
@@ -8,7 +8,9 @@
  */
 package org.openhab.ui.webapp.internal.render;
 
-import org.apache.commons.lang.StringUtils;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.eclipse.emf.common.util.EList;
 import org.openhab.model.sitemap.Webview;
 import org.openhab.model.sitemap.Widget;
@@ -37,17 +39,18 @@ public class WebviewRenderer extends AbstractWidgetRenderer {
 	 */
 	public EList<Widget> renderWidget(Widget w, StringBuilder sb) throws RenderException {
 		Webview webview = (Webview) w;
-		String snippet = getSnippet("webview");			
+		Snippet snippet = getSnippet("webview");			
 
 		int height = webview.getHeight();
 		if(height==0) {
 			height = 1;
 		}
 		
-		snippet = StringUtils.replace(snippet, "%url%", webview.getUrl());
-		snippet = StringUtils.replace(snippet, "%height%", Integer.toString(height*36));
+		Map<String, String> values = new HashMap<String, String>();
+		values.put("url", webview.getUrl());
+		values.put("height", Integer.toString(height*36));
 		
-		sb.append(snippet);
+		snippet.render(sb, values);
 		return null;
 	}
 }
@@ -9,9 +9,14 @@
 package org.openhab.ui.webapp.internal.servlet;
 
 import java.io.IOException;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.servlet.ServletException;
@@ -19,6 +24,9 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 
 import org.eclipse.emf.common.util.EList;
+import org.eclipse.jetty.continuation.Continuation;
+import org.eclipse.jetty.continuation.ContinuationListener;
+import org.eclipse.jetty.continuation.ContinuationSupport;
 import org.openhab.core.items.GenericItem;
 import org.openhab.core.items.Item;
 import org.openhab.core.items.ItemNotFoundException;
@@ -56,6 +64,9 @@ public class WebAppServlet extends BaseServlet {
 		
 	private PageRenderer renderer;
 	protected SitemapProvider sitemapProvider;
+
+	/** the listeners for the pages which are polled, by the names of the items on the page */
+	private final Map<Set<String>, PageChangeListener> pageListeners = new HashMap<Set<String>, PageChangeListener>();
 	
 	
 	public void setSitemapProvider(SitemapProvider sitemapProvider) {
@@ -87,6 +98,11 @@ public class WebAppServlet extends BaseServlet {
 	protected void deactivate() {
 		httpService.unregister(WEBAPP_ALIAS + SERVLET_NAME);
 		httpService.unregister(WEBAPP_ALIAS);
+		synchronized(pageListeners) {
+			for(PageChangeListener listener : new ArrayList<PageChangeListener>(pageListeners.values())) {
+				removePageListener(listener);
+			}
+		}
 		logger.info("Stopped Classic UI");
 	}
 	
@@ -118,9 +134,7 @@ public class WebAppServlet extends BaseServlet {
 				// we are at the homepage, so we render the children of the sitemap root node
 				String label = sitemap.getLabel()!=null ? sitemap.getLabel() : sitemapName;
 				EList<Widget> children = sitemap.getChildren();
-				if(poll && waitForChanges(children)==false) {
-					// we have reached the timeout, so we do not return any content as nothing has changed
-					res.getWriter().append(getTimeoutResponse()).close();
+				if(poll && waitForChanges(req, res, children)) {
 					return;
 				}
 				result.append(renderer.processPage("Home", sitemapName, label, sitemap.getChildren(), async));
@@ -132,9 +146,7 @@ public class WebAppServlet extends BaseServlet {
 						throw new RenderException("Widget '" + w + "' can not have any content");
 					}
 					EList<Widget> children = renderer.getItemUIRegistry().getChildren((LinkableWidget) w);
-					if(poll && waitForChanges(children)==false) {
-						// we have reached the timeout, so we do not return any content as nothing has changed
-						res.getWriter().append(getTimeoutResponse()).close();
+					if(poll && waitForChanges(req, res, children)) {
 						return;
 					}
 					String label = renderer.getItemUIRegistry().getLabel(w);
@@ -165,32 +177,65 @@ public class WebAppServlet extends BaseServlet {
 	}
 
 	/**
-	 * This method only returns when a change has occurred to any item on the page to display
+	 * Suspends a polling request until a change has occurred to any item on the page to display,
+	 * so that it does not block a thread while it is waiting. When a change occurs, the request is
+	 * dispatched again and the page is rendered; when the timeout is reached, the timeout response
+	 * is returned.
 	 * 
+	 * @param req the polling request
+	 * @param res the response to the request
 	 * @param widgets the widgets of the page to observe
+	 * @return true, if the request has been suspended or answered, false if the page should be rendered
+	 * @throws IOException if the timeout response cannot be written
 	 */
-	private boolean waitForChanges(EList<Widget> widgets) {
-		long startTime = (new Date()).getTime();
-		boolean timeout = false;
-		BlockingStateChangeListener listener = new BlockingStateChangeListener();
-		// let's get all items for these widgets
-		Set<GenericItem> items = getAllItems(widgets);
-		for(GenericItem item : items) {			
-			item.addStateChangeListener(listener);
+	private boolean waitForChanges(ServletRequest req, ServletResponse res, EList<Widget> widgets) throws IOException {
+		Continuation continuation = ContinuationSupport.getContinuation(req);
+		if(continuation.isExpired()) {
+			// we have reached the timeout, so we do not return any content as nothing has changed
+			res.getWriter().append(getTimeoutResponse()).close();
+			return true;
+		}
+		if(!continuation.isInitial()) {
+			// the request has been resumed as an item has changed
+			return false;
 		}
-		do {
-			timeout = (new Date()).getTime() - startTime > TIMEOUT_IN_MS;
-			try {
-				Thread.sleep(500);
-			} catch (InterruptedException e) {
-				timeout = true;
-				break;
+		continuation.setTimeout(TIMEOUT_IN_MS);
+		continuation.suspend();
+
+		// all clients which watch the same items share a single listener
+		Map<String, GenericItem> items = getAllItems(widgets);
+		synchronized(pageListeners) {
+			PageChangeListener listener = pageListeners.get(items.keySet());
+			if(listener==null || !listener.observes(items.values())) {
+				// the items might have been replaced after the listener has been registered
+				listener = new PageChangeListener(new HashSet<String>(items.keySet()), items.values());
+				pageListeners.put(listener.itemNames, listener);
+				for(GenericItem item : listener.items) {
+					item.addStateChangeListener(listener);
+				}
+			}
+			listener.continuations.add(continuation);
+			continuation.addContinuationListener(listener);
+		}
+		return true;
+	}
+
+	/**
+	 * Unregisters a page listener from its items, if it is not already unregistered.
+	 * Has to be called while holding the lock of {@link #pageListeners}.
+	 * 
+	 * @param listener the listener to unregister
+	 */
+	private void removePageListener(PageChangeListener listener) {
+		if(!listener.removed) {
+			listener.removed = true;
+			for(GenericItem item : listener.items) {
+				item.removeStateChangeListener(listener);
+			}
+			if(pageListeners.get(listener.itemNames)==listener) {
+				pageListeners.remove(listener.itemNames);
 			}
-		} while(!listener.hasChangeOccurred() && !timeout);
-		for(GenericItem item : items) {
-			item.removeStateChangeListener(listener);
 		}
-		return !timeout;
 	}
 
 	/**
@@ -199,8 +244,8 @@ public class WebAppServlet extends BaseServlet {
 	 * @param widgets the widget list to get the items for
 	 * @return all items that are represented by the list of widgets
 	 */
-	private Set<GenericItem> getAllItems(EList<Widget> widgets) {
-		Set<GenericItem> items = new HashSet<GenericItem>();
+	private Map<String, GenericItem> getAllItems(EList<Widget> widgets) {
+		Map<String, GenericItem> items = new LinkedHashMap<String, GenericItem>();
 		if(itemRegistry!=null) {
 			for(Widget widget : widgets) {
 				String itemName = widget.getItem();
@@ -209,14 +254,14 @@ public class WebAppServlet extends BaseServlet {
 						Item item = itemRegistry.getItem(itemName);
 						if (item instanceof GenericItem) {
 							final GenericItem gItem = (GenericItem) item;
-							items.add(gItem);
+							items.put(gItem.getName(), gItem);
 						}
 					} catch (ItemNotFoundException e) {
 						// ignore
 					}
 				} else {
 					if(widget instanceof Frame) {
-						items.addAll(getAllItems(((Frame) widget).getChildren()));
+						items.putAll(getAllItems(((Frame) widget).getChildren()));
 					}
 				}
 			}
@@ -225,37 +270,99 @@ public class WebAppServlet extends BaseServlet {
 	}
 
 	/**
-	 * This is a state change listener, which is merely used to determine, if a state
-	 * change has occurred on one of a list of items.
+	 * This is a state change listener for the items of a page, which resumes all polling requests
+	 * for this page when a state changes or is updated. It unregisters itself from the items when
+	 * no request is waiting for it anymore.
 	 * 
 	 * @author Kai Kreuzer
 	 *
 	 */
-	private static class BlockingStateChangeListener implements StateChangeListener {
-		
-		private boolean changed = false;
-		
+	private class PageChangeListener implements StateChangeListener, ContinuationListener {
+
+		private final Set<String> itemNames;
+
+		private final List<GenericItem> items;
+
+		/** the suspended requests, guarded by the lock of {@link #pageListeners} */
+		private final List<Continuation> continuations = new ArrayList<Continuation>();
+
+		/** whether the listener has been unregistered from its items */
+		private boolean removed = false;
+
+		public PageChangeListener(Set<String> itemNames, Collection<GenericItem> items) {
+			this.itemNames = itemNames;
+			this.items = new ArrayList<GenericItem>(items);
+		}
+
+		/**
+		 * determines, whether this listener is registered on exactly the given item instances
+		 * 
+		 * @param items the items to check
+		 * @return true, if the listener observes these items
+		 */
+		public boolean observes(Collection<GenericItem> items) {
+			if(removed || items.size()!=this.items.size()) {
+				return false;
+			}
+			int i = 0;
+			for(GenericItem item : items) {
+				if(item!=this.items.get(i++)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
 		/**
 		 * {@inheritDoc}
 		 */
 		public void stateChanged(Item item, State oldState, State newState) {
-			changed = true;
+			resumeAll();
 		}
 
 		/**
-		 * determines, whether a state change has occurred since its creation
-		 * 
-		 * @return true, if a state has changed
+		 * {@inheritDoc}
+		 */
+		public void stateUpdated(Item item, State state) {
+			resumeAll();
+		}
+
+		private void resumeAll() {
+			List<Continuation> resumed;
+			synchronized(pageListeners) {
+				resumed = new ArrayList<Continuation>(continuations);
+				continuations.clear();
+				removePageListener(this);
+			}
+			for(Continuation continuation : resumed) {
+				try {
+					continuation.resume();
+				} catch (IllegalStateException e) {
+					// the request has expired in the meantime
+				}
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
 		 */
-		public boolean hasChangeOccurred() {
-			return changed;
+		public void onTimeout(Continuation continuation) {
+			remove(continuation);
 		}
 
 		/**
 		 * {@inheritDoc}
 		 */
-		public void stateUpdated(Item item, State state) {
-			changed = true;
+		public void onComplete(Continuation continuation) {
+			remove(continuation);
+		}
+
+		private void remove(Continuation continuation) {
+			synchronized(pageListeners) {
+				if(continuations.remove(continuation) && continuations.isEmpty()) {
+					removePageListener(this);
+				}
+			}
 		}
 		
 	}
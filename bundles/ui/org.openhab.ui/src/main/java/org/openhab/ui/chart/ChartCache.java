@@ -0,0 +1,279 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.chart;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openhab.core.items.GroupItem;
+import org.openhab.core.items.Item;
+import org.openhab.core.items.ItemNotFoundException;
+import org.openhab.ui.items.ItemUIRegistry;
+
+/**
+ * A bounded cache of encoded chart images for chart servlets, so that charts which
+ * are requested again and again (e.g. by wall-mounted tablets) are not queried and
+ * rendered every time.
+ * <p>
+ * An entry is valid until it expires, which is usually after the time span of one
+ * pixel for charts ending now, or until one of its items is updated. Updates shortly
+ * before rendering invalidate an entry as well, since the persistence services might
+ * not have stored the new state at the time of rendering. If more than
+ * <code>capacity</code> charts are cached, the least recently used ones are removed.
+ * <p>
+ * Entries can be sent with {@link #write(Entry, String, HttpServletRequest, HttpServletResponse)},
+ * which answers conditional requests of clients having the current image already with
+ * <code>304 Not Modified</code>.
+ *
+ * @since 1.5.0
+ */
+public class ChartCache {
+
+	/** the default number of cached charts */
+	public static final int DEFAULT_CAPACITY = 20;
+
+	/** the time in milliseconds which persistence services may take to store a new state */
+	protected static final long SETTLE_TIME = 5000L;
+
+	private final int capacity;
+
+	/** the cached charts by key in access order, guarded by <code>this</code> */
+	private final LinkedHashMap<String, Entry> entries;
+
+	/** the time of the last update by item name */
+	private final Map<String, Long> lastUpdates = new ConcurrentHashMap<String, Long>();
+
+	/**
+	 * @param capacity the maximum number of cached charts, which may be 0 to disable the cache
+	 */
+	public ChartCache(int capacity) {
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > ChartCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached chart for the given key, if it is still valid.
+	 *
+	 * @param key the key, which contains all parameters of the chart
+	 * @return the cached chart or <code>null</code>, if there is no valid one
+	 */
+	public Entry get(String key) {
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(key);
+		}
+		if (entry == null) {
+			return null;
+		}
+		if (isValid(entry)) {
+			return entry;
+		}
+		synchronized (this) {
+			if (entries.get(key) == entry) {
+				entries.remove(key);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Caches a chart.
+	 *
+	 * @param key the key, which contains all parameters of the chart
+	 * @param created the time before the persistence services were queried for the chart
+	 * @param expires the time after which the chart is outdated, regardless of updates
+	 * @param itemNames the names of the items shown in the chart
+	 * @param data the encoded image
+	 * @return the new entry
+	 */
+	public Entry put(String key, long created, long expires, Collection<String> itemNames, byte[] data) {
+		Entry entry = new Entry(key, created, expires, itemNames.toArray(new String[itemNames.size()]), data);
+		if (capacity > 0 && isValid(entry)) {
+			synchronized (this) {
+				entries.put(key, entry);
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Invalidates all charts showing the given item.
+	 *
+	 * @param itemName the name of the updated item
+	 */
+	public void itemUpdated(String itemName) {
+		lastUpdates.put(itemName, System.currentTimeMillis());
+	}
+
+	/**
+	 * Removes all cached charts.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @return the number of cached charts
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private boolean isValid(Entry entry) {
+		if (System.currentTimeMillis() >= entry.expires) {
+			return false;
+		}
+		for (String itemName : entry.itemNames) {
+			Long lastUpdate = lastUpdates.get(itemName);
+			if (lastUpdate != null && lastUpdate >= entry.created - SETTLE_TIME) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Determines the names of all items which are shown in a chart, i.e. the
+	 * given items and the members of the given groups. Unknown items are ignored.
+	 *
+	 * @param itemUIRegistry the registry to look up the items in
+	 * @param items a comma separated list of item names, may be <code>null</code>
+	 * @param groups a comma separated list of group names, may be <code>null</code>
+	 * @return the names of all items
+	 */
+	public static Collection<String> getItemNames(ItemUIRegistry itemUIRegistry, String items, String groups) {
+		Set<String> itemNames = new LinkedHashSet<String>();
+		if (items != null) {
+			for (String itemName : items.split(",")) {
+				itemNames.add(itemName);
+			}
+		}
+		if (groups != null) {
+			for (String groupName : groups.split(",")) {
+				itemNames.add(groupName);
+				try {
+					Item item = itemUIRegistry.getItem(groupName);
+					if (item instanceof GroupItem) {
+						for (Item member : ((GroupItem) item).getMembers()) {
+							itemNames.add(member.getName());
+						}
+					}
+				} catch (ItemNotFoundException e) {
+					// the chart cannot be rendered anyway
+				}
+			}
+		}
+		return itemNames;
+	}
+
+	/**
+	 * Sends a chart to the client along with its ETag and last modification time. If the
+	 * request is conditional and the client has this chart already, only the status
+	 * <code>304 Not Modified</code> is sent.
+	 *
+	 * @param entry the chart to send
+	 * @param contentType the content type of the image
+	 * @param req the request
+	 * @param res the response
+	 * @throws IOException if the chart cannot be written
+	 */
+	public static void write(Entry entry, String contentType, HttpServletRequest req, HttpServletResponse res)
+			throws IOException {
+		res.setHeader("ETag", entry.getETag());
+		res.setDateHeader("Last-Modified", entry.getLastModified());
+		// the client has to ask whether the chart is still up to date
+		res.setHeader("Cache-Control", "no-cache");
+
+		if (isNotModified(entry, req)) {
+			res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		res.setContentType(contentType);
+		res.setContentLength(entry.data.length);
+		res.getOutputStream().write(entry.data);
+	}
+
+	private static boolean isNotModified(Entry entry, HttpServletRequest req) {
+		String ifNoneMatch = req.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+				if (tag.equals("*") || tag.equals(entry.getETag())) {
+					return true;
+				}
+			}
+			return false;
+		}
+		try {
+			long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+			return ifModifiedSince != -1 && ifModifiedSince >= entry.getLastModified();
+		} catch (IllegalArgumentException e) {
+			// the header is not a valid date
+			return false;
+		}
+	}
+
+	/**
+	 * An encoded chart image.
+	 */
+	public static class Entry {
+
+		private final long created;
+		private final long expires;
+		private final String[] itemNames;
+		private final byte[] data;
+		private final String eTag;
+
+		private Entry(String key, long created, long expires, String[] itemNames, byte[] data) {
+			this.created = created;
+			this.expires = expires;
+			this.itemNames = itemNames;
+			this.data = data;
+			this.eTag = "\"" + Integer.toHexString(key.hashCode()) + "-" + Long.toHexString(created) + "\"";
+		}
+
+		/**
+		 * @return the encoded image
+		 */
+		public byte[] getData() {
+			return data;
+		}
+
+		/**
+		 * @return the quoted entity tag of the chart
+		 */
+		public String getETag() {
+			return eTag;
+		}
+
+		/**
+		 * @return the time of rendering in milliseconds, truncated to seconds as in HTTP headers
+		 */
+		public long getLastModified() {
+			return created / 1000 * 1000;
+		}
+
+	}
+
+}
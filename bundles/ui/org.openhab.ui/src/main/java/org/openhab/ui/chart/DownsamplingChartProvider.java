@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.chart;
+
+import java.awt.image.BufferedImage;
+import java.util.Date;
+
+import org.openhab.core.items.ItemNotFoundException;
+
+/**
+ * A chart provider which is able to reduce the historic data of each series to
+ * the number of points which can actually be displayed in a chart of the requested
+ * width.
+ *
+ * @since 1.5.0
+ */
+public interface DownsamplingChartProvider extends ChartProvider {
+
+	/**
+	 * Creates a chart object just like
+	 * {@link ChartProvider#createChart(String, String, Date, Date, int, int, String, String)},
+	 * but reduces the data of each series with the given method.
+	 *
+	 * @param downsampling
+	 *            The method to reduce the data of each series with. May be null
+	 *            to use the default method of the provider.
+	 *
+	 * @return BufferedImage object if the chart is rendered correctly,
+	 *         otherwise null.
+	 *
+	 * @throws ItemNotFoundException if an item or group is not found
+	 * @throws IllegalArgumentException if an invalid argument is passed
+	 */
+	BufferedImage createChart(String service, String theme, Date startTime, Date endTime, int height,
+			int width, String items, String groups, Downsampling downsampling) throws ItemNotFoundException;
+
+	/**
+	 * Provides a list of methods to reduce the data of a series
+	 */
+	public enum Downsampling {
+		/** all historic data is displayed */
+		none,
+		/**
+		 * keeps the first, the last, the minimum and the maximum value within the time
+		 * span of each horizontal pixel, so that the chart looks the same as with all data
+		 */
+		minmax;
+	}
+}
@@ -10,12 +10,14 @@ package org.openhab.ui.internal.chart;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Dictionary;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
@@ -27,12 +29,19 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.openhab.core.events.ItemEvent;
 import org.openhab.core.items.ItemNotFoundException;
+import org.openhab.core.types.EventType;
 import org.openhab.io.net.http.SecureHttpContext;
+import org.openhab.ui.chart.ChartCache;
 import org.openhab.ui.chart.ChartProvider;
+import org.openhab.ui.chart.DownsamplingChartProvider;
+import org.openhab.ui.chart.DownsamplingChartProvider.Downsampling;
 import org.openhab.ui.items.ItemUIRegistry;
 import org.osgi.service.cm.ConfigurationException;
 import org.osgi.service.cm.ManagedService;
+import org.osgi.service.event.Event;
+import org.osgi.service.event.EventHandler;
 import org.osgi.service.http.HttpContext;
 import org.osgi.service.http.HttpService;
 import org.osgi.service.http.NamespaceException;
@@ -52,14 +61,19 @@ import org.slf4j.LoggerFactory;
  * <li>groups: A comma separated list of group names, whose members should be
  * displayed</li>
  * <li>service: The persistence service name. If not supplied the first service found will be used.</li>
+ * <li>downsampling: The method to reduce the data of each series with, either 'none' or 'minmax'.
+ * If not supplied, the method configured for the service or the default method will be used.</li>
  * </ul>
+ * Rendered charts are cached until they are outdated by time or by an update of one of
+ * their items, and requests for a chart the client has already are answered with
+ * <code>304 Not Modified</code>.
  * 
  * @author Chris Jackson
  * @since 1.4.0
  * 
  */
 
-public class ChartServlet extends HttpServlet implements ManagedService {
+public class ChartServlet extends HttpServlet implements ManagedService, EventHandler {
 
 	private static final long serialVersionUID = 7700873790924746422L;
 	private static final Integer CHART_HEIGHT = 240;
@@ -74,6 +88,9 @@ public class ChartServlet extends HttpServlet implements ManagedService {
 	protected Integer defaultHeight = CHART_HEIGHT;
 	protected Integer defaultWidth = CHART_WIDTH;
 	protected Double scale = 1.0;
+	protected Downsampling defaultDownsampling = Downsampling.minmax;
+	protected Map<String, Downsampling> serviceDownsampling = new HashMap<String, Downsampling>();
+	protected volatile ChartCache cache = new ChartCache(ChartCache.DEFAULT_CAPACITY);
 	
 	// The URI of this servlet
 	public static final String SERVLET_NAME = "/chart";
@@ -150,12 +167,26 @@ public class ChartServlet extends HttpServlet implements ManagedService {
 
 	protected void deactivate() {
 		httpService.unregister(SERVLET_NAME);
+		cache.clear();
+	}
+
+	/**
+	 * Invalidates the cached charts of updated items.
+	 */
+	public void handleEvent(Event event) {
+		ItemEvent itemEvent = ItemEvent.fromEvent(event);
+		if (itemEvent != null && itemEvent.getType() == EventType.UPDATE) {
+			cache.itemUpdated(itemEvent.getItemName());
+		}
 	}
 
 	@Override
 	protected void doGet(HttpServletRequest req, HttpServletResponse res) throws ServletException, IOException {
 		logger.debug("Received incoming chart request: ", req);
 
+		// the time before any persistence service is queried
+		long created = System.currentTimeMillis();
+
 		int width = defaultWidth;
 
 		try {
@@ -239,12 +270,51 @@ public class ChartServlet extends HttpServlet implements ManagedService {
 		if (provider == null)
 			throw new ServletException("Could not get chart provider.");
 
-		// Set the content type to that provided by the chart provider
-		res.setContentType("image/" + provider.getChartType());
+		// The downsampling method of the request overrides the one configured for the service
+		Downsampling downsampling = defaultDownsampling;
+		if (req.getParameter("downsampling") != null) {
+			try {
+				downsampling = Downsampling.valueOf(req.getParameter("downsampling"));
+			} catch (IllegalArgumentException e) {
+				throw new ServletException("Unknown downsampling method '" + req.getParameter("downsampling") + "'.");
+			}
+		} else if (serviceName != null && serviceDownsampling.containsKey(serviceName)) {
+			downsampling = serviceDownsampling.get(serviceName);
+		}
+
+		// Send the cached chart, if it is still up to date
+		String contentType = "image/" + provider.getChartType();
+		String key = providerName + "|" + serviceName + "|" + req.getParameter("items") + "|"
+				+ req.getParameter("groups") + "|" + req.getParameter("period") + "|" + req.getParameter("begin") + "|"
+				+ req.getParameter("end") + "|" + width + "x" + height + "|" + downsampling;
+		ChartCache cache = this.cache;
+		ChartCache.Entry entry = cache.get(key);
+		if (entry != null) {
+			ChartCache.write(entry, contentType, req, res);
+			return;
+		}
+
+		// Charts ending in the future move by one pixel after the time span of a pixel
+		long expires = Long.MAX_VALUE;
+		if (timeEnd.getTime() >= created) {
+			expires = created + Math.max(1000L, (timeEnd.getTime() - timeBegin.getTime()) / Math.max(1, width));
+		}
+
 		try {
-			BufferedImage chart = provider.createChart(serviceName, null, timeBegin, timeEnd, height, width,
-					req.getParameter("items"), req.getParameter("groups"));
-			ImageIO.write(chart, provider.getChartType().toString(), res.getOutputStream());
+			BufferedImage chart;
+			if (provider instanceof DownsamplingChartProvider) {
+				chart = ((DownsamplingChartProvider) provider).createChart(serviceName, null, timeBegin, timeEnd,
+						height, width, req.getParameter("items"), req.getParameter("groups"), downsampling);
+			} else {
+				chart = provider.createChart(serviceName, null, timeBegin, timeEnd, height, width,
+						req.getParameter("items"), req.getParameter("groups"));
+			}
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ImageIO.write(chart, provider.getChartType().toString(), out);
+			entry = cache.put(key, created, expires,
+					ChartCache.getItemNames(itemUIRegistry, req.getParameter("items"), req.getParameter("groups")),
+					out.toByteArray());
+			ChartCache.write(entry, contentType, req, res);
 		} catch (ItemNotFoundException e) {
 			logger.debug("Item not found error while generating chart.");
 		} catch (IllegalArgumentException e) {
@@ -307,11 +377,49 @@ public class ChartServlet extends HttpServlet implements ManagedService {
 		if(properties.get("defaultWidth") != null) {
 			defaultWidth = Integer.parseInt((String)properties.get("defaultWidth"));
 		}
+		if(properties.get("cachesize") != null) {
+			String cacheSize = ((String) properties.get("cachesize")).trim();
+			int capacity;
+			try {
+				capacity = Integer.parseInt(cacheSize);
+			} catch (NumberFormatException e) {
+				throw new ConfigurationException("cachesize", "The chart cache size '" + cacheSize + "' is not a number.");
+			}
+			if(capacity < 0) {
+				throw new ConfigurationException("cachesize", "The chart cache size must not be negative.");
+			}
+			cache = new ChartCache(capacity);
+		}
 		if(properties.get("scale") != null) {
 			scale = Double.parseDouble((String)properties.get("scale"));
 			if(scale < 0.5)
 				scale = 1.0;
 		}
+
+		// downsampling=<method> sets the default, downsampling.<service>=<method> the one of a service
+		Map<String, Downsampling> downsamplings = new HashMap<String, Downsampling>();
+		Downsampling downsampling = Downsampling.minmax;
+		Enumeration<String> keys = properties.keys();
+		while (keys.hasMoreElements()) {
+			String key = keys.nextElement();
+			if (!key.equals("downsampling") && !key.startsWith("downsampling.")) {
+				continue;
+			}
+			String value = ((String) properties.get(key)).trim();
+			Downsampling method;
+			try {
+				method = Downsampling.valueOf(value);
+			} catch (IllegalArgumentException e) {
+				throw new ConfigurationException(key, "Unknown downsampling method '" + value + "'.");
+			}
+			if (key.equals("downsampling")) {
+				downsampling = method;
+			} else {
+				downsamplings.put(key.substring("downsampling.".length()), method);
+			}
+		}
+		defaultDownsampling = downsampling;
+		serviceDownsampling = downsamplings;
 	}
 
 }
@@ -13,7 +13,6 @@ import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -33,7 +32,7 @@ import org.openhab.core.persistence.FilterCriteria.Ordering;
 import org.openhab.core.persistence.HistoricItem;
 import org.openhab.core.persistence.PersistenceService;
 import org.openhab.core.persistence.QueryablePersistenceService;
-import org.openhab.ui.chart.ChartProvider;
+import org.openhab.ui.chart.DownsamplingChartProvider;
 import org.openhab.ui.items.ItemUIRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,6 +58,8 @@ import com.xeiam.xchart.StyleManager.LegendPosition;
  * displayed</li>
  * <li>service: The persistence service name. If not supplied the first service
  * found will be used.</li>
+ * <li>downsampling: The method to reduce the data of each series with, which
+ * is {@link Downsampling#minmax} if not supplied.</li>
  * </ul>
  * 
  * @author Chris Jackson
@@ -66,7 +67,7 @@ import com.xeiam.xchart.StyleManager.LegendPosition;
  * 
  */
 
-public class DefaultChartProvider implements ChartProvider {
+public class DefaultChartProvider implements DownsamplingChartProvider {
 
 	private static final Logger logger = LoggerFactory.getLogger(DefaultChartProvider.class);
 
@@ -123,6 +124,13 @@ public class DefaultChartProvider implements ChartProvider {
 	@Override
 	public BufferedImage createChart(String service, String theme, Date startTime, Date endTime,
 			int height, int width, String items, String groups) throws ItemNotFoundException, IllegalArgumentException {
+		return createChart(service, theme, startTime, endTime, height, width, items, groups, null);
+	}
+
+	@Override
+	public BufferedImage createChart(String service, String theme, Date startTime, Date endTime,
+			int height, int width, String items, String groups, Downsampling downsampling)
+			throws ItemNotFoundException, IllegalArgumentException {
 
 		QueryablePersistenceService persistenceService;
 
@@ -176,12 +184,18 @@ public class DefaultChartProvider implements ChartProvider {
 			throw new IllegalArgumentException("Persistence service not found '" + service + "'.");
 		}
 
+		// Keep the first, last, minimum and maximum value per pixel, unless all data is requested
+		int buckets = 0;
+		if (downsampling == null || downsampling == Downsampling.minmax) {
+			buckets = width;
+		}
+
 		// Loop through all the items
 		if (items != null) {
 			String[] itemNames = items.split(",");
 			for (String itemName : itemNames) {
 				Item item = itemUIRegistry.getItem(itemName);
-				if(addItem(chart, persistenceService, startTime, endTime, item, seriesCounter))
+				if(addItem(chart, persistenceService, startTime, endTime, item, seriesCounter, buckets))
 					seriesCounter++;
 			}
 		}
@@ -194,7 +208,7 @@ public class DefaultChartProvider implements ChartProvider {
 				if (item instanceof GroupItem) {
 					GroupItem groupItem = (GroupItem) item;
 					for (Item member : groupItem.getMembers()) {
-						if(addItem(chart, persistenceService, startTime, endTime, member, seriesCounter))
+						if(addItem(chart, persistenceService, startTime, endTime, member, seriesCounter, buckets))
 							seriesCounter++;
 					}
 				} else {
@@ -260,7 +274,7 @@ public class DefaultChartProvider implements ChartProvider {
 	}
 
 	boolean addItem(Chart chart, QueryablePersistenceService service, Date timeBegin, Date timeEnd, Item item,
-			int seriesCounter) {
+			int seriesCounter, int buckets) {
 		Color color = LINECOLORS[seriesCounter % LINECOLORS.length];
 
 		// Get the item label
@@ -282,6 +296,7 @@ public class DefaultChartProvider implements ChartProvider {
 		// Generate data collections
 		Collection<Date> xData = new ArrayList<Date>();
 		Collection<Number> yData = new ArrayList<Number>();
+		MinMaxDownsampler data = new MinMaxDownsampler(xData, yData, timeBegin, timeEnd, buckets);
 		
 		// Declare state here so it will hold the last value at the end of the process
 		org.openhab.core.types.State state = null;
@@ -299,8 +314,7 @@ public class DefaultChartProvider implements ChartProvider {
 			HistoricItem historicItem = result.iterator().next();
 
 			state = historicItem.getState();
-			xData.add(timeBegin);
-			yData.add(convertData(state));
+			data.add(timeBegin, convertData(state), false);
 		}
 
 		// Now, get all the data between the start and end time
@@ -313,30 +327,23 @@ public class DefaultChartProvider implements ChartProvider {
 		result = service.query(filter);
 		Iterator<HistoricItem> it = result.iterator();
 
-		// Iterate through the data
+		// Iterate through the data, which is downsampled on the fly
 		while (it.hasNext()) {
 			HistoricItem historicItem = it.next();
 			
 			// For 'binary' states, we need to replicate the data
 			// to avoid diagonal lines
-			if(state instanceof OnOffType || state instanceof OpenClosedType) {
-				Calendar cal = Calendar.getInstance();
-				cal.setTime(historicItem.getTimestamp());
-				cal.add(Calendar.MILLISECOND, -1);
-				xData.add(cal.getTime());
-				yData.add(convertData(state));
-			}
+			boolean hold = state instanceof OnOffType || state instanceof OpenClosedType;
 
 			state = historicItem.getState();
-			xData.add(historicItem.getTimestamp());
-			yData.add(convertData(state));
+			data.add(historicItem.getTimestamp(), convertData(state), hold);
 		}
 
 		// Lastly, add the final state at the endtime
 		if (state != null) {
-			xData.add(timeEnd);
-			yData.add(convertData(state));
+			data.add(timeEnd, convertData(state), false);
 		}
+		data.flush();
 
 		// Add the new series to the chart - only if there's data elements to display
 		// The chart engine will throw an exception if there's no data
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2010-2014, openHAB.org and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.ui.internal.chart;
+
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * Collects the data points of a chart series, which have to be added in ascending
+ * order of time. The time span of the chart is divided into buckets, usually one
+ * per horizontal pixel, and only the first, the last, the minimum and the maximum
+ * value of each bucket is kept. Since a line drawn through these points covers the
+ * same pixels as a line drawn through all points, the chart looks the same, but has
+ * at most four points per bucket. Only the points of the current bucket are held
+ * in memory, all others are written to the data collections right away.
+ * <p>
+ * A point may be marked to hold the previous value up to its time, which adds a
+ * step just before it to avoid diagonal lines for 'binary' states.
+ *
+ * @since 1.5.0
+ */
+public class MinMaxDownsampler {
+
+	private final Collection<Date> xData;
+	private final Collection<Number> yData;
+
+	private final long begin;
+	private final long bucketSize;
+
+	private long bucket = Long.MIN_VALUE;
+
+	/** the sequence number of the last added point */
+	private long sequence = 0;
+
+	private final Point first = new Point();
+	private final Point min = new Point();
+	private final Point max = new Point();
+	private final Point last = new Point();
+
+	/** the sequence number of the last written point, which is 0 if there is none */
+	private long writtenSequence = 0;
+	private double writtenValue;
+
+	/**
+	 * @param xData the collection to write the times of the kept points to
+	 * @param yData the collection to write the values of the kept points to
+	 * @param begin the begin of the chart
+	 * @param end the end of the chart
+	 * @param buckets the number of buckets to divide the time span into, which
+	 *            may be 0 to keep all points
+	 */
+	public MinMaxDownsampler(Collection<Date> xData, Collection<Number> yData, Date begin, Date end, int buckets) {
+		this.xData = xData;
+		this.yData = yData;
+		this.begin = begin.getTime();
+		if (buckets > 0) {
+			this.bucketSize = Math.max(1, (end.getTime() - this.begin) / buckets);
+		} else {
+			this.bucketSize = 0;
+		}
+	}
+
+	/**
+	 * Adds a point to the series.
+	 *
+	 * @param time the time of the point, which must not be before the time of the previous point
+	 * @param value the value of the point
+	 * @param hold <code>true</code>, if the previous value is valid up to the time of this point
+	 */
+	public void add(Date time, double value, boolean hold) {
+		sequence++;
+		if (bucketSize == 0) {
+			last.set(sequence, time, value, hold);
+			write(last);
+			return;
+		}
+
+		long current = Math.max(0, time.getTime() - begin) / bucketSize;
+		if (current != bucket) {
+			flush();
+			bucket = current;
+			first.set(sequence, time, value, hold);
+			min.set(sequence, time, value, hold);
+			max.set(sequence, time, value, hold);
+		} else if (value < min.value) {
+			min.set(sequence, time, value, hold);
+		} else if (value > max.value) {
+			max.set(sequence, time, value, hold);
+		}
+		last.set(sequence, time, value, hold);
+	}
+
+	/**
+	 * Writes the kept points of the current bucket to the data collections. This
+	 * must be called after the last point has been added.
+	 */
+	public void flush() {
+		if (bucket == Long.MIN_VALUE) {
+			return;
+		}
+		write(first);
+		if (min.sequence < max.sequence) {
+			write(min);
+			write(max);
+		} else {
+			write(max);
+			write(min);
+		}
+		write(last);
+		bucket = Long.MIN_VALUE;
+	}
+
+	private void write(Point point) {
+		if (point.sequence <= writtenSequence) {
+			// the point has already been written as another extreme of the bucket
+			return;
+		}
+		if (point.hold && writtenSequence > 0) {
+			xData.add(new Date(point.time.getTime() - 1));
+			yData.add(writtenValue);
+		}
+		xData.add(point.time);
+		yData.add(point.value);
+		writtenSequence = point.sequence;
+		writtenValue = point.value;
+	}
+
+	private static class Point {
+		long sequence;
+		Date time;
+		double value;
+		boolean hold;
+
+		void set(long sequence, Date time, double value, boolean hold) {
+			this.sequence = sequence;
+			this.time = time;
+			this.value = value;
+			this.hold = hold;
+		}
+	}
+
+}